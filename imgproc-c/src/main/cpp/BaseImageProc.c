@@ -20,116 +20,240 @@
  */
 #include "BaseImageProc.h"
 
-void calc_raw_grey(int32_t *result, const int32_t *__restrict__ argb, int32_t size) {
-    for (int32_t i = 0; i < size; ++i) {
-        result[i] = color_to_grey(argb[i]);
+/*
+ * Point kernels walk h rows of w pixels, row y of source starts at argb + y * argb_stride and
+ * row y of result starts at result + y * result_stride, result may be argb for in-place.
+ * For contiguous pixels, pass w = size, h = 1, or stride = w.
+ */
+
+void calc_raw_grey(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                   int32_t w, int32_t h) {
+    for (int32_t y = 0; y < h; ++y) {
+        int32_t *dst = result + (size_t) y * result_stride;
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        for (int32_t x = 0; x < w; ++x) {
+            dst[x] = color_to_grey(src[x]);
+        }
     }
 }
 
-void calc_grey_color(int32_t *result, const int32_t *__restrict__ argb, int32_t size) {
-    for (int32_t i = 0; i < size; ++i) {
-        result[i] = grey_to_color(color_to_grey(argb[i]));
+void calc_grey_color(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                     int32_t w, int32_t h) {
+    for (int32_t y = 0; y < h; ++y) {
+        int32_t *dst = result + (size_t) y * result_stride;
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        for (int32_t x = 0; x < w; ++x) {
+            dst[x] = grey_to_color(color_to_grey(src[x]));
+        }
     }
 }
 
 void calc_grey_normal_filter(double *result, const double *__restrict__ argb, int32_t size,
-                             reset_filter reset, component_filter grey_filter) {
+                             const FilterInfo *grey_info, component_filter grey_filter) {
     for (int32_t i = 0; i < size; ++i) {
-        reset();
-        result[i] = grey_filter((int32_t) (argb[i] * 255.0)) / 255.0;
+        result[i] = grey_filter(grey_info, double_to_int(argb[i] * 255.0)) / 255.0;
     }
 }
 
-void calc_grey_color_filter(int32_t *result, const int32_t *__restrict__ argb, int32_t size,
-                            reset_filter reset, component_filter grey_filter) {
-    for (int32_t i = 0; i < size; ++i) {
-        reset();
-        result[i] = grey_to_color(grey_filter(color_to_grey(argb[i])));
+void build_component_lut(int32_t *lut, const FilterInfo *info, component_filter filter) {
+    int32_t value;
+    for (int32_t i = 0; i < 256; ++i) {
+        value = filter(info, i);
+        if (value > 255) { value = 255; } if (value < 0) { value = 0; } // same clamp as assemble_color_int
+        lut[i] = value;
     }
 }
 
-void calc_rgb_color_filter(int32_t *result, const int32_t *__restrict__ argb, int32_t size, reset_filter reset,
-                      component_filter r_filter, component_filter g_filter, component_filter b_filter) {
-    int32_t r, g, b;
-    for (int32_t i = 0; i < size; ++i) {
-        r = (argb[i] >> 16) & 0xFF;
-        g = (argb[i] >> 8) & 0xFF;
-        b = argb[i] & 0xFF;
-        reset();
-        r = r_filter(r);
-        reset();
-        g = g_filter(g);
-        reset();
-        b = b_filter(b);
-        result[i] = assemble_color_int(r, g, b);
+void calc_grey_color_lut(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                         int32_t w, int32_t h, const int32_t *grey_lut) {
+    int32_t colors[256];
+    for (int32_t i = 0; i < 256; ++i) {
+        colors[i] = grey_to_color(grey_lut[i]);
+    }
+    for (int32_t y = 0; y < h; ++y) {
+        int32_t *dst = result + (size_t) y * result_stride;
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        for (int32_t x = 0; x < w; ++x) {
+            dst[x] = colors[color_to_grey(src[x])];
+        }
     }
 }
 
-void calc_grey_bit_plane(int32_t *result, const int32_t *__restrict__ argb, int32_t size, int32_t bit_position) {
-    int32_t avg;
-    for (int32_t i = 0; i < size; ++i) {
-        avg = color_to_grey(argb[i]);
-        if (((avg & 0xFF) & (1 << bit_position)) == 0) {
-            result[i] = 0xFF000000;
-        } else {
-            result[i] = 0xFFFFFFFF;
+void calc_rgb_color_lut(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                        int32_t w, int32_t h, const int32_t *r_lut, const int32_t *g_lut, const int32_t *b_lut) {
+    /* shift each component into place once, so every pixel is three loads and two ors */
+    int32_t reds[256], greens[256], blues[256];
+    for (int32_t i = 0; i < 256; ++i) {
+        reds[i] = (int32_t) (0xFF000000 | ((r_lut[i] & 0xFF) << 16));
+        greens[i] = (g_lut[i] & 0xFF) << 8;
+        blues[i] = b_lut[i] & 0xFF;
+    }
+    int32_t color;
+    for (int32_t y = 0; y < h; ++y) {
+        int32_t *dst = result + (size_t) y * result_stride;
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        for (int32_t x = 0; x < w; ++x) {
+            color = src[x];
+            dst[x] = reds[(color >> 16) & 0xFF] | greens[(color >> 8) & 0xFF] | blues[color & 0xFF];
         }
     }
 }
 
-void calc_rgb_bit_plane(int32_t *result, const int32_t *__restrict__ argb, int32_t size, int32_t bit_position) {
-    for (int32_t i = 0; i < size; ++i) {
-        if (((argb[i] & (((int32_t) 1) << bit_position)) & 0xFFFFFFFF) == 0) {
-            result[i] = 0xFF000000;
-        } else {
-            if (bit_position < 8) {
-                result[i] = 0xFF0000FF;
-            } else if (bit_position < 16) {
-                result[i] = 0xFF00FF00;
-            } else if (bit_position < 24) {
-                result[i] = 0xFFFF0000;
+void calc_grey_bit_plane(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                         int32_t w, int32_t h, int32_t bit_position) {
+    int32_t avg;
+    for (int32_t y = 0; y < h; ++y) {
+        int32_t *dst = result + (size_t) y * result_stride;
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        for (int32_t x = 0; x < w; ++x) {
+            avg = color_to_grey(src[x]);
+            if (((avg & 0xFF) & (1 << bit_position)) == 0) {
+                dst[x] = 0xFF000000;
             } else {
-                result[i] = 0xFFFFFFFF;
+                dst[x] = 0xFFFFFFFF;
             }
         }
     }
 }
 
-void calc_rgb_component_plane(int32_t *result, const int32_t *__restrict__ argb, int32_t size,
-                              int32_t position, int32_t type) {
-    int32_t comp;
-    for (int32_t i = 0; i < size; ++i) {
-        switch(position) {
-            case COMPONENT_ALPHA:
-                result[i] = 0xFF000000;
-                break;
-            case COMPONENT_RED:
-                comp = (argb[i] >> 16) & 0xFF;
-                if (type == TYPE_ARGB_COLOR) {
-                    result[i] = assemble_color_int(comp, 0, 0);
-                } else {
-                    result[i] = grey_to_color(comp);
-                }
-                break;
-            case COMPONENT_GREEN:
-                comp = (argb[i] >> 8) & 0xFF;
-                if (type == TYPE_ARGB_COLOR) {
-                    result[i] = assemble_color_int(0, comp, 0);
-                } else {
-                    result[i] = grey_to_color(comp);
-                }
-                break;
-            case COMPONENT_BLUE:
-                comp = argb[i] & 0xFF;
-                if (type == TYPE_ARGB_COLOR) {
-                    result[i] = assemble_color_int(0, 0, comp);
+void calc_rgb_bit_plane(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                        int32_t w, int32_t h, int32_t bit_position) {
+    for (int32_t y = 0; y < h; ++y) {
+        int32_t *dst = result + (size_t) y * result_stride;
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        for (int32_t x = 0; x < w; ++x) {
+            if (((src[x] & (((int32_t) 1) << bit_position)) & 0xFFFFFFFF) == 0) {
+                dst[x] = 0xFF000000;
+            } else {
+                if (bit_position < 8) {
+                    dst[x] = 0xFF0000FF;
+                } else if (bit_position < 16) {
+                    dst[x] = 0xFF00FF00;
+                } else if (bit_position < 24) {
+                    dst[x] = 0xFFFF0000;
                 } else {
-                    result[i] = grey_to_color(comp);
+                    dst[x] = 0xFFFFFFFF;
                 }
-                break;
-            default:
-                result[i] = 0xFFFFFFFF;
-                break;
+            }
+        }
+    }
+}
+
+/* color of a set bit in rgb bit plane, bit 0..7 blue, 8..15 green, 16..23 red */
+_inline_ int32_t rgb_bit_plane_color(int32_t bit_position) {
+    if (bit_position < 8) {
+        return 0xFF0000FF;
+    } else if (bit_position < 16) {
+        return 0xFF00FF00;
+    } else if (bit_position < 24) {
+        return 0xFFFF0000;
+    } else {
+        return 0xFFFFFFFF;
+    }
+}
+
+void calc_grey_bit_planes_all(int32_t *const *results, int32_t result_stride,
+                              const int32_t *__restrict__ argb, int32_t argb_stride, int32_t w, int32_t h) {
+    int32_t avg;
+    for (int32_t y = 0; y < h; ++y) {
+        const size_t row = (size_t) y * result_stride;
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        for (int32_t x = 0; x < w; ++x) {
+            avg = color_to_grey(src[x]);
+            for (int32_t p = 0; p < GREY_BIT_PLANE_COUNT; ++p) {
+                /* 0xFF000000 if bit clear, 0xFFFFFFFF if set */
+                results[p][row + x] = (int32_t) (0xFF000000 | (-((avg >> p) & 1) & 0x00FFFFFF));
+            }
+        }
+    }
+}
+
+void calc_rgb_bit_planes_all(int32_t *const *results, int32_t result_stride,
+                             const int32_t *__restrict__ argb, int32_t argb_stride, int32_t w, int32_t h) {
+    int32_t masks[RGB_BIT_PLANE_COUNT];
+    for (int32_t p = 0; p < RGB_BIT_PLANE_COUNT; ++p) {
+        masks[p] = rgb_bit_plane_color(p) & 0x00FFFFFF;
+    }
+    int32_t color;
+    for (int32_t y = 0; y < h; ++y) {
+        const size_t row = (size_t) y * result_stride;
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        for (int32_t x = 0; x < w; ++x) {
+            color = src[x];
+            for (int32_t p = 0; p < RGB_BIT_PLANE_COUNT; ++p) {
+                results[p][row + x] = (int32_t) (0xFF000000 | (-((color >> p) & 1) & masks[p]));
+            }
+        }
+    }
+}
+
+/* pixel i of a packed plane is bit (i & 63) of word (i >> 6), the layout of java.util.BitSet */
+static void pack_bit_planes(uint64_t *const *planes, int32_t plane_count,
+                            const int32_t *__restrict__ argb, int32_t size, int32_t grey) {
+    uint64_t words[RGB_BIT_PLANE_COUNT];
+    int32_t value;
+    for (int32_t base = 0, word = 0; base < size; base += 64, ++word) {
+        const int32_t count = size - base < 64 ? size - base : 64;
+        memset(words, 0, sizeof(words));
+        for (int32_t j = 0; j < count; ++j) {
+            value = grey ? color_to_grey(argb[base + j]) : argb[base + j];
+            for (int32_t p = 0; p < plane_count; ++p) {
+                words[p] |= ((uint64_t) ((value >> p) & 1)) << j;
+            }
+        }
+        for (int32_t p = 0; p < plane_count; ++p) {
+            planes[p][word] = words[p];
+        }
+    }
+}
+
+void calc_grey_bit_planes_packed(uint64_t *const *planes, const int32_t *__restrict__ argb, int32_t size) {
+    pack_bit_planes(planes, GREY_BIT_PLANE_COUNT, argb, size, 1);
+}
+
+void calc_rgb_bit_planes_packed(uint64_t *const *planes, const int32_t *__restrict__ argb, int32_t size) {
+    pack_bit_planes(planes, RGB_BIT_PLANE_COUNT, argb, size, 0);
+}
+
+void calc_rgb_component_plane(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                              int32_t w, int32_t h, int32_t position, int32_t type) {
+    int32_t comp;
+    for (int32_t y = 0; y < h; ++y) {
+        int32_t *dst = result + (size_t) y * result_stride;
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        for (int32_t x = 0; x < w; ++x) {
+            switch(position) {
+                case COMPONENT_ALPHA:
+                    dst[x] = 0xFF000000;
+                    break;
+                case COMPONENT_RED:
+                    comp = (src[x] >> 16) & 0xFF;
+                    if (type == TYPE_ARGB_COLOR) {
+                        dst[x] = assemble_color_int(comp, 0, 0);
+                    } else {
+                        dst[x] = grey_to_color(comp);
+                    }
+                    break;
+                case COMPONENT_GREEN:
+                    comp = (src[x] >> 8) & 0xFF;
+                    if (type == TYPE_ARGB_COLOR) {
+                        dst[x] = assemble_color_int(0, comp, 0);
+                    } else {
+                        dst[x] = grey_to_color(comp);
+                    }
+                    break;
+                case COMPONENT_BLUE:
+                    comp = src[x] & 0xFF;
+                    if (type == TYPE_ARGB_COLOR) {
+                        dst[x] = assemble_color_int(0, 0, comp);
+                    } else {
+                        dst[x] = grey_to_color(comp);
+                    }
+                    break;
+                default:
+                    dst[x] = 0xFFFFFFFF;
+                    break;
+            }
         }
     }
 }
@@ -147,42 +271,120 @@ void calc_combine_simple_plane(int32_t *source, const int32_t *__restrict__ targ
     }
 }
 
-void calc_combine_bits_plane(int32_t *result, const int32_t *__restrict__ argb, int32_t size,
-                             int32_t type, int32_t mask) {
-    for (int32_t i = 0; i < size; ++i) {
-        if (type == TYPE_GREY_COLOR) {
-            result[i] = grey_to_color(color_to_grey(argb[i]) & mask);
-        } else {
-            result[i] = argb[i] & mask;
+void calc_combine_bits_plane(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                             int32_t w, int32_t h, int32_t type, int32_t mask) {
+    for (int32_t y = 0; y < h; ++y) {
+        int32_t *dst = result + (size_t) y * result_stride;
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        for (int32_t x = 0; x < w; ++x) {
+            if (type == TYPE_GREY_COLOR) {
+                dst[x] = grey_to_color(color_to_grey(src[x]) & mask);
+            } else {
+                dst[x] = src[x] & mask;
+            }
         }
     }
 }
 
-void map_component_color_count(int32_t **result, int32_t  *result_size, const int32_t *__restrict__ argb, int32_t size,
-                               int32_t type) {
-    *result_size = 256;
-    const size_t result_byte_size = *result_size * sizeof(int32_t);
-    int32_t *map = (int32_t *) malloc(result_byte_size);
-    memset(map, 0, result_byte_size);
-    for (int32_t i = 0; i < size; ++i) {
+void accumulate_component_color_count(int32_t *counts, const int32_t *__restrict__ argb, int32_t argb_stride,
+                                      int32_t w, int32_t h, int32_t type) {
+    for (int32_t y = 0; y < h; ++y) {
+        const int32_t *src = argb + (size_t) y * argb_stride;
         switch (type) {
             case COMPONENT_ALPHA:
-                ++map[(argb[i] >> 24) & 0xFF];
+                for (int32_t x = 0; x < w; ++x) {
+                    ++counts[(src[x] >> 24) & 0xFF];
+                }
                 break;
             case COMPONENT_RED:
-                ++map[(argb[i] >> 16) & 0xFF];
+                for (int32_t x = 0; x < w; ++x) {
+                    ++counts[(src[x] >> 16) & 0xFF];
+                }
                 break;
             case COMPONENT_GREEN:
-                ++map[(argb[i] >> 8) & 0xFF];
+                for (int32_t x = 0; x < w; ++x) {
+                    ++counts[(src[x] >> 8) & 0xFF];
+                }
                 break;
             case COMPONENT_BLUE:
-                ++map[argb[i] & 0xFF];
+                for (int32_t x = 0; x < w; ++x) {
+                    ++counts[src[x] & 0xFF];
+                }
                 break;
             default:
-                ++map[color_to_grey(argb[i])];
+                for (int32_t x = 0; x < w; ++x) {
+                    ++counts[color_to_grey(src[x])];
+                }
                 break;
         }
     }
+}
+
+void calc_component_color_count(int32_t *counts, const int32_t *__restrict__ argb, int32_t size, int32_t type) {
+    memset(counts, 0, 256 * sizeof(int32_t));
+    accumulate_component_color_count(counts, argb, size, size, 1, type);
+}
+
+#define HISTOGRAM_LANES 4
+
+/*
+ * Counts of neighbour pixels often hit the same bin, the increment then waits for the previous store,
+ * so 4 pixels in a row go to HISTOGRAM_LANES separate sub-histograms, which are summed at last.
+ */
+void accumulate_all_histograms(int32_t *histograms, const int32_t *__restrict__ argb, int32_t argb_stride,
+                               int32_t w, int32_t h, int32_t with_alpha) {
+    uint32_t (*sub)[HISTOGRAM_COUNT][256] = calloc(HISTOGRAM_LANES, sizeof(*sub));
+    int32_t color, lane;
+    if (sub == NULL) {
+        /* no memory for the lanes, count straight into histograms, one lane */
+        for (int32_t y = 0; y < h; ++y) {
+            const int32_t *src = argb + (size_t) y * argb_stride;
+            for (int32_t x = 0; x < w; ++x) {
+                color = src[x];
+                ++histograms[TYPE_GREY_COLOR * 256 + color_to_grey(color)];
+                ++histograms[COMPONENT_RED * 256 + ((color >> 16) & 0xFF)];
+                ++histograms[COMPONENT_GREEN * 256 + ((color >> 8) & 0xFF)];
+                ++histograms[COMPONENT_BLUE * 256 + (color & 0xFF)];
+                if (with_alpha) {
+                    ++histograms[COMPONENT_ALPHA * 256 + ((color >> 24) & 0xFF)];
+                }
+            }
+        }
+        return;
+    }
+    for (int32_t y = 0; y < h; ++y) {
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        for (int32_t x = 0; x < w; ++x) {
+            color = src[x];
+            lane = x & (HISTOGRAM_LANES - 1);
+            ++sub[lane][TYPE_GREY_COLOR][color_to_grey(color)];
+            ++sub[lane][COMPONENT_RED][(color >> 16) & 0xFF];
+            ++sub[lane][COMPONENT_GREEN][(color >> 8) & 0xFF];
+            ++sub[lane][COMPONENT_BLUE][color & 0xFF];
+        }
+        if (with_alpha) {
+            for (int32_t x = 0; x < w; ++x) {
+                ++sub[x & (HISTOGRAM_LANES - 1)][COMPONENT_ALPHA][(src[x] >> 24) & 0xFF];
+            }
+        }
+    }
+    const int32_t count = with_alpha ? HISTOGRAM_COUNT : HISTOGRAM_COUNT - 1;
+    for (int32_t c = 0; c < count; ++c) {
+        for (int32_t l = 0; l < HISTOGRAM_LANES; ++l) {
+            for (int32_t i = 0; i < 256; ++i) {
+                histograms[c * 256 + i] += (int32_t) sub[l][c][i];
+            }
+        }
+    }
+    free(sub);
+}
+
+void map_component_color_count(int32_t **result, int32_t  *result_size, const int32_t *__restrict__ argb, int32_t size,
+                               int32_t type) {
+    *result_size = 256;
+    const size_t result_byte_size = *result_size * sizeof(int32_t);
+    int32_t *map = (int32_t *) malloc(result_byte_size);
+    calc_component_color_count(map, argb, size, type);
     *result = map;
 }
 
@@ -194,7 +396,7 @@ void histogram_equalization_classic(int32_t **result, const int32_t *__restrict_
     double cum = 0.0;
     for (int32_t i = 0; i < size; ++i) {
         cum = cum + hist[i] / (double) counts;
-        map[i] = (int32_t) round(cum * 255.0);
+        map[i] = double_to_int(round(cum * 255.0));
     }
     *result = map;
 }
@@ -204,9 +406,10 @@ void histogram_equalization_photoshop(int32_t **result, const int32_t *__restric
     int32_t *map;
     histogram_equalization_classic(&map, hist, size, counts);
     int32_t min_val = map[0];
-    double scale = 255.0 / (255.0 - min_val);
+    /* a single level histogram maps everything to 255 by classic, so keep it instead of dividing by zero */
+    double scale = min_val < 255 ? 255.0 / (255.0 - min_val) : 0.0;
     for (int32_t i = 0; i < size; ++i) {
-        map[i] = (int32_t) round((map[i] - min_val) * scale);
+        map[i] = double_to_int(round((map[i] - min_val) * scale));
     }
     *result = map;
 }
@@ -237,3 +440,171 @@ void map_component_equalization(int32_t **result, const int32_t *__restrict__ hi
     }
     *result = map;
 }
+
+void build_equalization_lut(int32_t *lut, const int32_t *__restrict__ hist, int32_t counts, int32_t classic) {
+    int32_t *map;
+    if (classic) {
+        histogram_equalization_classic(&map, hist, 256, counts);
+    } else {
+        histogram_equalization_photoshop(&map, hist, 256, counts);
+    }
+    memcpy(lut, map, 256 * sizeof(int32_t));
+    free(map);
+}
+
+void calc_rgb_equalization(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                           int32_t w, int32_t h, const int32_t *r_lut, const int32_t *g_lut, const int32_t *b_lut) {
+    int32_t color;
+    for (int32_t y = 0; y < h; ++y) {
+        int32_t *dst = result + (size_t) y * result_stride;
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        for (int32_t x = 0; x < w; ++x) {
+            color = src[x];
+            dst[x] = (color & 0xFF000000) | (r_lut[(color >> 16) & 0xFF] << 16)
+                     | (g_lut[(color >> 8) & 0xFF] << 8) | b_lut[color & 0xFF];
+        }
+    }
+}
+
+
+void build_clahe_lut(int32_t *lut, const int32_t *__restrict__ hist, int32_t clip_limit) {
+    int32_t bins[256];
+    int32_t counts = 0;
+    for (int32_t i = 0; i < 256; ++i) {
+        bins[i] = hist[i];
+        counts += hist[i];
+    }
+    if (counts == 0) {
+        for (int32_t i = 0; i < 256; ++i) {
+            lut[i] = i;
+        }
+        return;
+    }
+    if (clip_limit > 0) {
+        int32_t excess = 0;
+        for (int32_t i = 0; i < 256; ++i) {
+            if (bins[i] > clip_limit) {
+                excess += bins[i] - clip_limit;
+                bins[i] = clip_limit;
+            }
+        }
+        const int32_t batch = excess / 256;
+        int32_t residual = excess - batch * 256;
+        for (int32_t i = 0; i < 256; ++i) {
+            bins[i] += batch;
+        }
+        if (residual > 0) {
+            const int32_t step = 256 / residual > 1 ? 256 / residual : 1;
+            for (int32_t i = 0; i < 256 && residual > 0; i += step, --residual) {
+                ++bins[i];
+            }
+        }
+    }
+    int64_t cdf = 0;
+    for (int32_t i = 0; i < 256; ++i) {
+        cdf += bins[i];
+        lut[i] = (int32_t) ((cdf * 255 + counts / 2) / counts);
+    }
+}
+
+/* tiles (from both sides) of pixels [from, to) along an axis and the 8 bits weight of the upper one,
+ * tile i covers [i * size / tiles, (i + 1) * size / tiles) and positions are doubled to keep centres exact */
+static void clahe_axis(int32_t *lower, int32_t *upper, int32_t *weight, int32_t from, int32_t to,
+                       int32_t size, int32_t tiles) {
+    int32_t i = 0;
+    for (int32_t p = from; p < to; ++p) {
+        const int64_t pos = 2 * (int64_t) p + 1;
+        while (i + 1 < tiles && (int64_t) (i + 1) * size / tiles + (int64_t) (i + 2) * size / tiles <= pos) {
+            ++i;
+        }
+        const int64_t centre = (int64_t) i * size / tiles + (int64_t) (i + 1) * size / tiles;
+        const int32_t k = p - from;
+        if (pos < centre || i + 1 == tiles) {
+            lower[k] = upper[k] = i;
+            weight[k] = 0;
+        } else {
+            const int64_t next = (int64_t) (i + 1) * size / tiles + (int64_t) (i + 2) * size / tiles;
+            lower[k] = i;
+            upper[k] = i + 1;
+            weight[k] = (int32_t) (((pos - centre) << 8) / (next - centre));
+        }
+    }
+}
+
+_inline_ int32_t clahe_blend(int32_t tl, int32_t tr, int32_t bl, int32_t br, int32_t wx, int32_t wy) {
+    return ((tl * (256 - wx) + tr * wx) * (256 - wy) + (bl * (256 - wx) + br * wx) * wy + 32768) >> 16;
+}
+
+/* same as clahe_blend with the top and bottom tiles already blended by wy into left and right */
+_inline_ int32_t clahe_blend_band(int32_t left, int32_t right, int32_t wx) {
+    return (left * (256 - wx) + right * wx + 32768) >> 16;
+}
+
+void calc_clahe_interpolation(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                              int32_t w, int32_t h, int32_t row_from, int32_t row_to, int32_t tiles_x,
+                              int32_t tiles_y, const int32_t *luts, const int32_t *columns, int32_t grey) {
+    if (w <= 0 || row_from >= row_to) {
+        return;
+    }
+    const int32_t tile_size = grey ? 256 : 3 * 256;
+    const size_t band_size = (size_t) tiles_x * tile_size;
+    const int32_t *left = columns;
+    const int32_t *right = columns + w;
+    const int32_t *wx = columns + 2 * (size_t) w;
+    /* tiles at least 128 pixels wide: blending the two tile rows once per image row is cheaper than
+     * the two extra lookups per component of every pixel, and gives the same integers,
+     * so the per pixel blending stays the fallback if the band is not allocated */
+    int32_t *band = (int64_t) tiles_x * 128 <= w ? (int32_t *) malloc(band_size * sizeof(int32_t)) : NULL;
+    const int32_t banded = band != NULL;
+    int32_t ty0, ty1, wy, color, v, r, g, b;
+    for (int32_t y = row_from; y < row_to; ++y) {
+        clahe_axis(&ty0, &ty1, &wy, y, y + 1, h, tiles_y);
+        const int32_t *top = luts + (size_t) ty0 * band_size;
+        const int32_t *bottom = luts + (size_t) ty1 * band_size;
+        const int32_t *src = argb + (size_t) y * argb_stride;
+        int32_t *dst = result + (size_t) y * result_stride;
+        if (banded) {
+            for (size_t i = 0; i < band_size; ++i) {
+                band[i] = top[i] * (256 - wy) + bottom[i] * wy;
+            }
+            if (grey) {
+                for (int32_t x = 0; x < w; ++x) {
+                    v = color_to_grey(src[x]);
+                    dst[x] = grey_to_color(clahe_blend_band(band[left[x] + v], band[right[x] + v], wx[x]));
+                }
+            } else {
+                for (int32_t x = 0; x < w; ++x) {
+                    color = src[x];
+                    r = (color >> 16) & 0xFF;
+                    g = ((color >> 8) & 0xFF) + 256;
+                    b = (color & 0xFF) + 512;
+                    r = clahe_blend_band(band[left[x] + r], band[right[x] + r], wx[x]);
+                    g = clahe_blend_band(band[left[x] + g], band[right[x] + g], wx[x]);
+                    b = clahe_blend_band(band[left[x] + b], band[right[x] + b], wx[x]);
+                    dst[x] = (color & 0xFF000000) | (r << 16) | (g << 8) | b;
+                }
+            }
+        } else if (grey) {
+            for (int32_t x = 0; x < w; ++x) {
+                v = color_to_grey(src[x]);
+                dst[x] = grey_to_color(clahe_blend(top[left[x] + v], top[right[x] + v],
+                                                   bottom[left[x] + v], bottom[right[x] + v], wx[x], wy));
+            }
+        } else {
+            for (int32_t x = 0; x < w; ++x) {
+                color = src[x];
+                r = (color >> 16) & 0xFF;
+                g = ((color >> 8) & 0xFF) + 256;
+                b = (color & 0xFF) + 512;
+                r = clahe_blend(top[left[x] + r], top[right[x] + r], bottom[left[x] + r], bottom[right[x] + r],
+                                wx[x], wy);
+                g = clahe_blend(top[left[x] + g], top[right[x] + g], bottom[left[x] + g], bottom[right[x] + g],
+                                wx[x], wy);
+                b = clahe_blend(top[left[x] + b], top[right[x] + b], bottom[left[x] + b], bottom[right[x] + b],
+                                wx[x], wy);
+                dst[x] = (color & 0xFF000000) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+    free(band);
+}
@@ -30,8 +30,30 @@
 #define COMPONENT_BLUE 3
 #define COMPONENT_ALPHA 4
 
-typedef int32_t (*component_filter) (int32_t);
-typedef void (*reset_filter) ();
+/* grey, red, green, blue, alpha histograms, indexed by TYPE_GREY_COLOR and COMPONENT_XXX */
+#define HISTOGRAM_COUNT 5
+
+#define GREY_BIT_PLANE_COUNT 8
+#define RGB_BIT_PLANE_COUNT 24
+
+#define FILTER_POLICY_SAME_LEVEL 0
+#define FILTER_POLICY_MIN 1
+#define FILTER_POLICY_MAX 2
+
+typedef struct tagFilterInfo {
+    int32_t index;
+    float arg_c;
+    float arg_l;
+    float arg_g;
+    int32_t low_value;
+    int32_t low_policy;
+    int32_t high_value;
+    int32_t high_policy;
+} FilterInfo;
+
+#define FILTER_INFO_DEFAULT { 0, 0, 1, 1, -1, 0, -1, 0 }
+
+typedef int32_t (*component_filter) (const FilterInfo *, int32_t);
 
 _inline_ int32_t grey_to_color(int32_t avg) {
     if (avg > 255) { avg = 255; } if (avg < 0) { avg = 0; } // not (avg & 0xFF)
@@ -53,22 +75,54 @@ _inline_ int32_t assemble_color_int(int32_t r, int32_t g, int32_t b) {
     return (255 << 24) + (r << 16) + (g << 8) + b;
 }
 
-void calc_raw_grey(int32_t *result, const int32_t *__restrict__ argb, int32_t size);
-void calc_grey_color(int32_t *result, const int32_t *__restrict__ argb, int32_t size);
+/* same as java (int) cast, NaN is 0 and out of range saturates, where a plain c cast is undefined */
+_inline_ int32_t double_to_int(double value) {
+    if (value != value) { return 0; }
+    if (value >= 2147483647.0) { return INT32_MAX; }
+    if (value <= -2147483648.0) { return INT32_MIN; }
+    return (int32_t) value;
+}
+
+/* point kernels on h rows of w pixels with row stride, result may be argb for in-place */
+void calc_raw_grey(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                   int32_t w, int32_t h);
+void calc_grey_color(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                     int32_t w, int32_t h);
 void calc_grey_normal_filter(double *result, const double *__restrict__ argb, int32_t size,
-                            reset_filter reset, component_filter grey_filter);
-void calc_grey_color_filter(int32_t *result, const int32_t *__restrict__ argb, int32_t size,
-                            reset_filter reset, component_filter grey_filter);
-void calc_rgb_color_filter(int32_t *result, const int32_t *__restrict__ argb, int32_t size, reset_filter reset,
-                           component_filter r_filter, component_filter g_filter, component_filter b_filter);
-void calc_grey_bit_plane(int32_t *result, const int32_t *__restrict__ argb, int32_t size, int32_t bit_position);
-void calc_rgb_bit_plane(int32_t *result, const int32_t *__restrict__ argb, int32_t size, int32_t bit_position);
-void calc_rgb_component_plane(int32_t *result, const int32_t *__restrict__ argb, int32_t size,
-                              int32_t position, int32_t type);
+                             const FilterInfo *grey_info, component_filter grey_filter);
+/* filter every 0..255 component once into lut, clamped to 0..255 */
+void build_component_lut(int32_t *lut, const FilterInfo *info, component_filter filter);
+/* map grey level of each pixel by 256 entries grey_lut */
+void calc_grey_color_lut(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                         int32_t w, int32_t h, const int32_t *grey_lut);
+/* map each rgb component by its own 256 entries lut, alpha set to 255 */
+void calc_rgb_color_lut(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                        int32_t w, int32_t h, const int32_t *r_lut, const int32_t *g_lut, const int32_t *b_lut);
+void calc_grey_bit_plane(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                         int32_t w, int32_t h, int32_t bit_position);
+void calc_rgb_bit_plane(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                        int32_t w, int32_t h, int32_t bit_position);
+/* all planes in one pass, results[p] receives plane of bit p, 8 planes for grey and 24 for rgb */
+void calc_grey_bit_planes_all(int32_t *const *results, int32_t result_stride,
+                              const int32_t *__restrict__ argb, int32_t argb_stride, int32_t w, int32_t h);
+void calc_rgb_bit_planes_all(int32_t *const *results, int32_t result_stride,
+                             const int32_t *__restrict__ argb, int32_t argb_stride, int32_t w, int32_t h);
+/* all planes in one pass as bitsets, planes[p] has (size + 63) / 64 words */
+void calc_grey_bit_planes_packed(uint64_t *const *planes, const int32_t *__restrict__ argb, int32_t size);
+void calc_rgb_bit_planes_packed(uint64_t *const *planes, const int32_t *__restrict__ argb, int32_t size);
+void calc_rgb_component_plane(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                              int32_t w, int32_t h, int32_t position, int32_t type);
 void calc_combine_simple_plane(int32_t *source, const int32_t *__restrict__ target, int32_t size);
-void calc_combine_bits_plane(int32_t *result, const int32_t *__restrict__ argb, int32_t size,
-                             int32_t type, int32_t mask);
+void calc_combine_bits_plane(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                             int32_t w, int32_t h, int32_t type, int32_t mask);
 
+/* add 256 counts of the rectangle into counts without clear, so partial counts can be merged */
+void accumulate_component_color_count(int32_t *counts, const int32_t *__restrict__ argb, int32_t argb_stride,
+                                      int32_t w, int32_t h, int32_t type);
+/* add counts of the rectangle into histograms[HISTOGRAM_COUNT * 256] in one pass, alpha counted only if with_alpha */
+void accumulate_all_histograms(int32_t *histograms, const int32_t *__restrict__ argb, int32_t argb_stride,
+                               int32_t w, int32_t h, int32_t with_alpha);
+void calc_component_color_count(int32_t *counts, const int32_t *__restrict__ argb, int32_t size, int32_t type);
 void map_component_color_count(int32_t **result, int32_t  *result_size, const int32_t *__restrict__ argb,
                                int32_t size, int32_t type);
 void histogram_equalization_classic(int32_t **result, const int32_t *__restrict__ hist, int32_t size,
@@ -77,5 +131,19 @@ void histogram_equalization_photoshop(int32_t **result, const int32_t *__restric
                                       int32_t counts);
 void map_component_equalization(int32_t **result, const int32_t *__restrict__ hist, int32_t hist_size,
                                 const int32_t *__restrict__ argb, int32_t size, int32_t type);
+/* equalization mapping of a 256 bins histogram into lut, counts is the pixel count */
+void build_equalization_lut(int32_t *lut, const int32_t *__restrict__ hist, int32_t counts, int32_t classic);
+/* map rgb components by their equalization lut, alpha kept */
+void calc_rgb_equalization(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                           int32_t w, int32_t h, const int32_t *r_lut, const int32_t *g_lut, const int32_t *b_lut);
+/* clahe mapping of a 256 bins tile histogram into lut, bins clipped at clip_limit and the excess spread evenly,
+ * clip_limit <= 0 means no clipping */
+void build_clahe_lut(int32_t *lut, const int32_t *__restrict__ hist, int32_t clip_limit);
+/* rows [row_from, row_to) of the w * h image mapped by the bilinear interpolation of the four nearest tile luts,
+ * argb and result point at pixel (0, 0), luts has 256 entries per tile if grey, otherwise 3 * 256 (r, g, b),
+ * columns holds the left tile lut offsets, the right tile lut offsets and the 8 bits right weights, w each */
+void calc_clahe_interpolation(int32_t *result, int32_t result_stride, const int32_t *argb, int32_t argb_stride,
+                              int32_t w, int32_t h, int32_t row_from, int32_t row_to, int32_t tiles_x,
+                              int32_t tiles_y, const int32_t *luts, const int32_t *columns, int32_t grey);
 
 #endif //PROJECT_BASEIMAGEPROC_H
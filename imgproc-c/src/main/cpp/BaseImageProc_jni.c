@@ -26,37 +26,92 @@ extern "C" {
 #endif
 
 #define PROJECT_PACKAGE_NAME com_johnsoft_alg
-#define CLASS_NAME BaseImageProc
+#define CLASS_NAME NativeImageProcBackend
 #define JNI_SYMBOL(package_name, class_name, method_name) Java_##package_name##_##class_name##_##method_name
 #define JNI_PREFIX(package_name, class_name, method_name, return_value) JNIEXPORT return_value JNICALL \
 JNI_SYMBOL(package_name, class_name, method_name)
 #define JNI_METHOD(return_value, method_name) JNI_PREFIX(PROJECT_PACKAGE_NAME, CLASS_NAME, method_name, return_value)
 
 /* interface definitions begin */
-JNI_METHOD(jint, calcGrey)(JNIEnv *env, jclass klass, jint argb);
-JNI_METHOD(jintArray, grey)(JNIEnv *env, jclass klass, jintArray argb, jint w, jint h);
-JNI_METHOD(jintArray, greyColor)(JNIEnv *env, jclass klass, jintArray argb, jint w, jint h);
-JNI_METHOD(jdoubleArray, calcGreyFilter)(JNIEnv *env, jclass klass, jdoubleArray argb);
-JNI_METHOD(jintArray, greyFilter)(JNIEnv *env, jclass klass, jintArray argb, jint w, jint h);
-JNI_METHOD(jintArray, colorFilter)(JNIEnv *env, jclass klass, jintArray argb, jint w, jint h);
-JNI_METHOD(jintArray, greyBitPlaneSlicing)(JNIEnv *env, jclass klass, jintArray argb,
-                                           jint w, jint h, jint bitPosition);
-JNI_METHOD(jintArray, colorBitPlaneSlicing)(JNIEnv *env, jclass klass, jintArray argb,
-                                            jint w, jint h, jint bitPosition);
-JNI_METHOD(jintArray, colorComponentPlaneSlicing)(JNIEnv *env, jclass klass, jintArray argb,
-                                            jint w, jint h, jint position, jint type);
-JNI_METHOD(jintArray, combineSimplePlane)(JNIEnv *env, jclass klass, jobjectArray argbs, jint w, jint h);
-JNI_METHOD(jintArray, combineBitsPlane)(JNIEnv *env, jclass klass, jintArray argb, jint w, jint h,
-                                        jint type, jint mask);
-
-JNI_METHOD(jboolean, filterIndex)(JNIEnv *env, jclass klass, jint type, jint index);
-JNI_METHOD(jboolean, filterParam)(JNIEnv *env, jclass klass, jfloat c, jfloat l, jfloat g);
-JNI_METHOD(jboolean, filterParam2)(JNIEnv *env, jclass klass,
-                                   jint lowLevel, jint lowPolicy, jint highLevel, jint highPolicy);
-
-JNI_METHOD(jintArray, getAllColorCounts)(JNIEnv *env, jclass klass, jintArray argb, jint position);
-JNI_METHOD(jintArray, simpleHistogramEqualization)(JNIEnv *env, jclass klass, jintArray argb,
+JNI_METHOD(jint, nativeCalcGrey)(JNIEnv *env, jclass klass, jint argb);
+JNI_METHOD(jdoubleArray, nativeCalcGreyFilter)(JNIEnv *env, jclass klass, jdoubleArray argb, jobject spec);
+JNI_METHOD(jintArray, nativeCombineSimplePlane)(JNIEnv *env, jclass klass, jobjectArray argbs, jint w, jint h);
+JNI_METHOD(jintArray, nativeSimpleHistogramEqualization)(JNIEnv *env, jclass klass, jintArray argb,
                                                    jint position, jboolean usingClassic);
+JNI_METHOD(void, nativeGreyDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                   jobject result, jint result_offset, jint size);
+JNI_METHOD(void, nativeGreyColorDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                        jobject result, jint result_offset, jint size);
+JNI_METHOD(void, nativeGreyLutDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                      jobject result, jint result_offset, jint size, jintArray grey_lut);
+JNI_METHOD(void, nativeColorLutDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                       jobject result, jint result_offset, jint size,
+                                       jintArray red_lut, jintArray green_lut, jintArray blue_lut);
+JNI_METHOD(void, nativeGreyBitPlaneSlicingDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                                  jobject result, jint result_offset, jint size,
+                                                  jint bitPosition);
+JNI_METHOD(void, nativeColorBitPlaneSlicingDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                                   jobject result, jint result_offset, jint size,
+                                                   jint bitPosition);
+JNI_METHOD(void, nativeColorComponentPlaneSlicingDirect)(JNIEnv *env, jclass klass, jobject argb,
+                                                         jint argb_offset, jobject result, jint result_offset,
+                                                         jint size, jint position, jint type);
+JNI_METHOD(void, nativeGetAllColorCountsDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                                jobject counts, jint counts_offset, jint size, jint position);
+JNI_METHOD(void, nativeGreyRect)(JNIEnv *env, jclass klass,
+                                 jintArray argb, jint argb_offset, jint argb_stride,
+                                 jintArray result, jint result_offset, jint result_stride,
+                                 jint w, jint h);
+JNI_METHOD(void, nativeGreyColorRect)(JNIEnv *env, jclass klass,
+                                      jintArray argb, jint argb_offset, jint argb_stride,
+                                      jintArray result, jint result_offset, jint result_stride,
+                                      jint w, jint h);
+JNI_METHOD(void, nativeGreyBitPlaneSlicingRect)(JNIEnv *env, jclass klass,
+                                                jintArray argb, jint argb_offset, jint argb_stride,
+                                                jintArray result, jint result_offset, jint result_stride,
+                                                jint w, jint h, jint bitPosition);
+JNI_METHOD(void, nativeColorBitPlaneSlicingRect)(JNIEnv *env, jclass klass,
+                                                 jintArray argb, jint argb_offset, jint argb_stride,
+                                                 jintArray result, jint result_offset, jint result_stride,
+                                                 jint w, jint h, jint bitPosition);
+JNI_METHOD(void, nativeColorComponentPlaneSlicingRect)(JNIEnv *env, jclass klass,
+                                                       jintArray argb, jint argb_offset, jint argb_stride,
+                                                       jintArray result, jint result_offset, jint result_stride,
+                                                       jint w, jint h, jint position, jint type);
+JNI_METHOD(void, nativeCombineBitsPlaneRect)(JNIEnv *env, jclass klass,
+                                             jintArray argb, jint argb_offset, jint argb_stride,
+                                             jintArray result, jint result_offset, jint result_stride,
+                                             jint w, jint h, jint type, jint mask);
+JNI_METHOD(void, nativeGetAllColorCountsRect)(JNIEnv *env, jclass klass,
+                                              jintArray argb, jint argb_offset, jint argb_stride,
+                                              jint w, jint h, jint position, jintArray counts);
+JNI_METHOD(jintArray, nativeBuildLut)(JNIEnv *env, jclass klass, jobject spec);
+JNI_METHOD(void, nativeGreyLutRect)(JNIEnv *env, jclass klass,
+                                    jintArray argb, jint argb_offset, jint argb_stride,
+                                    jintArray result, jint result_offset, jint result_stride,
+                                    jint w, jint h, jintArray grey_lut);
+JNI_METHOD(void, nativeColorLutRect)(JNIEnv *env, jclass klass,
+                                     jintArray argb, jint argb_offset, jint argb_stride,
+                                     jintArray result, jint result_offset, jint result_stride,
+                                     jint w, jint h, jintArray red_lut, jintArray green_lut, jintArray blue_lut);
+JNI_METHOD(jobjectArray, nativeBitPlanesAll)(JNIEnv *env, jclass klass, jintArray argb, jint w, jint h,
+                                             jboolean grey, jboolean packed);
+JNI_METHOD(void, nativeGetAllHistograms)(JNIEnv *env, jclass klass,
+                                         jintArray argb, jint argb_offset, jint argb_stride,
+                                         jint w, jint h, jobjectArray histograms);
+JNI_METHOD(jintArray, nativeBuildEqualizationLut)(JNIEnv *env, jclass klass, jintArray histogram,
+                                                  jboolean usingClassic);
+JNI_METHOD(void, nativeEqualizeRgbRect)(JNIEnv *env, jclass klass,
+                                        jintArray argb, jint argb_offset, jint argb_stride,
+                                        jintArray result, jint result_offset, jint result_stride,
+                                        jint w, jint h, jintArray red_lut, jintArray green_lut, jintArray blue_lut);
+JNI_METHOD(jintArray, nativeBuildClaheLut)(JNIEnv *env, jclass klass, jintArray histogram, jint clip_limit);
+JNI_METHOD(void, nativeClaheInterpolateRect)(JNIEnv *env, jclass klass,
+                                             jintArray argb, jint argb_offset, jint argb_stride,
+                                             jintArray result, jint result_offset, jint result_stride,
+                                             jint w, jint h, jint row_from, jint row_to,
+                                             jint tiles_x, jint tiles_y, jintArray luts, jintArray columns,
+                                             jboolean grey);
 /* interface definitions end */
 
 #ifdef __cplusplus
@@ -65,97 +120,56 @@ JNI_METHOD(jintArray, simpleHistogramEqualization)(JNIEnv *env, jclass klass, ji
 
 /* private utilities begin */
 
-#define FILTER_POLICY_SAME_LEVEL 0
-#define FILTER_POLICY_MIN 1
-#define FILTER_POLICY_MAX 2
-
-typedef struct tagFilterInfo {
-    int32_t index;
-    float arg_c;
-    float arg_l;
-    float arg_g;
-    int32_t low_value;
-    int32_t low_policy;
-    int32_t high_value;
-    int32_t high_policy;
-} FilterInfo;
-
-FilterInfo grey_filter_info = { 0, 0, 1, 1, -1, 0, -1, 0 };
-FilterInfo red_filter_info = { 0, 0, 1, 1, -1, 0, -1, 0 };
-FilterInfo green_filter_info = { 0, 0, 1, 1, -1, 0, -1, 0 };
-FilterInfo blue_filter_info = { 0, 0, 1, 1, -1, 0, -1, 0 };
-
-FilterInfo *curr_filter_info_ptr;
-
-void grey_filter_reset() {
-    curr_filter_info_ptr = &grey_filter_info;
-}
-
-void red_filter_reset() {
-    curr_filter_info_ptr = &red_filter_info;
-}
-
-void green_filter_reset() {
-    curr_filter_info_ptr = &green_filter_info;
-}
-
-void blue_filter_reset() {
-    curr_filter_info_ptr = &blue_filter_info;
-}
-
-void color_filter_reset() {
-    static int8_t resetting_color_type = 0;
-    switch (resetting_color_type) {
-        case 0:
-            red_filter_reset();
-            break;
-        case 1:
-            green_filter_reset();
-            break;
-        case 2:
-            blue_filter_reset();
-            break;
-        default:
-            break;
-    }
-    if (resetting_color_type < 2) {
-        resetting_color_type++;
-    } else{
-        resetting_color_type = 0;
+/* read com.johnsoft.alg.FilterSpec into FilterInfo, NULL spec means no filter */
+static void read_filter_info(JNIEnv *env, jobject spec, FilterInfo *info) {
+    const FilterInfo default_info = FILTER_INFO_DEFAULT;
+    *info = default_info;
+    if (spec == NULL) {
+        return;
     }
+    jclass spec_class = (*env)->GetObjectClass(env, spec);
+    info->index = (*env)->GetIntField(env, spec, (*env)->GetFieldID(env, spec_class, "index", "I"));
+    info->arg_c = (*env)->GetFloatField(env, spec, (*env)->GetFieldID(env, spec_class, "c", "F"));
+    info->arg_l = (*env)->GetFloatField(env, spec, (*env)->GetFieldID(env, spec_class, "l", "F"));
+    info->arg_g = (*env)->GetFloatField(env, spec, (*env)->GetFieldID(env, spec_class, "g", "F"));
+    info->low_value = (*env)->GetIntField(env, spec, (*env)->GetFieldID(env, spec_class, "lowLevel", "I"));
+    info->low_policy = (*env)->GetIntField(env, spec, (*env)->GetFieldID(env, spec_class, "lowPolicy", "I"));
+    info->high_value = (*env)->GetIntField(env, spec, (*env)->GetFieldID(env, spec_class, "highLevel", "I"));
+    info->high_policy = (*env)->GetIntField(env, spec, (*env)->GetFieldID(env, spec_class, "highPolicy", "I"));
+    (*env)->DeleteLocalRef(env, spec_class);
 }
 
-int32_t no_filter(int32_t component) {
+int32_t no_filter(const FilterInfo *info, int32_t component) {
     return component;
 }
 
-int32_t reverse_filter(int32_t component) {
+int32_t reverse_filter(const FilterInfo *info, int32_t component) {
     return (int32_t) (255 - component);
 }
 
-int32_t linear_filter(int32_t component) {
-    return (int32_t) (curr_filter_info_ptr->arg_c + curr_filter_info_ptr->arg_l * component);
+int32_t linear_filter(const FilterInfo *info, int32_t component) {
+    return double_to_int(info->arg_c + info->arg_l * component);
 }
 
-int32_t log_filter(int32_t component) {
-    const double arg_c = curr_filter_info_ptr->arg_c;
-    const double arg_l = curr_filter_info_ptr->arg_l;
-    const double arg_g = curr_filter_info_ptr->arg_g;
+int32_t log_filter(const FilterInfo *info, int32_t component) {
+    const double arg_c = info->arg_c;
+    const double arg_l = info->arg_l;
+    const double arg_g = info->arg_g;
     double normal = component / 255.0;
     double result = arg_c + arg_l * (log(normal * arg_g + 1.0) / (log(arg_g + 1.0) + 0.001));
-    return (int32_t) (result * 255.0);
+    return double_to_int(result * 255.0);
 }
 
-int32_t gamma_filter(int32_t component) {
-    const float arg_c = curr_filter_info_ptr->arg_c;
-    const float arg_l = curr_filter_info_ptr->arg_l;
-    const float arg_g = curr_filter_info_ptr->arg_g;
+int32_t gamma_filter(const FilterInfo *info, int32_t component) {
+    const float arg_c = info->arg_c;
+    const float arg_l = info->arg_l;
+    const float arg_g = info->arg_g;
     float normal = component / 255.0F;
     float result = arg_c + arg_l * (float) pow(normal, arg_g);
-    return (int32_t) (result * 255.0F);
+    return double_to_int(result * 255.0F);
 }
 
-int32_t stretch_filter(int32_t component) {
+int32_t stretch_filter(const FilterInfo *info, int32_t component) {
     double normal = component / 255.0;
     double m = 0.5;
     double temp = m / (normal + 0.05);
@@ -163,14 +177,14 @@ int32_t stretch_filter(int32_t component) {
     double e2 = log(1.0 / 0.95 - 1.0) / log(m / 0.95);
     double e = ceil(fmin(e1, e2));
     double result = 1.0 / (1.0 + pow(temp, e));
-    return (int32_t) (result * 255.0);
+    return double_to_int(result * 255.0);
 }
 
-int32_t binary_filter(int32_t component) {
-    const int32_t high_value = curr_filter_info_ptr->high_value;
-    const int32_t high_policy = curr_filter_info_ptr->high_policy;
-    const int32_t low_value = curr_filter_info_ptr->low_value;
-    const int32_t low_policy = curr_filter_info_ptr->low_policy;
+int32_t binary_filter(const FilterInfo *info, int32_t component) {
+    const int32_t high_value = info->high_value;
+    const int32_t high_policy = info->high_policy;
+    const int32_t low_value = info->low_value;
+    const int32_t low_policy = info->low_policy;
     if (high_value >= 0 && component >= high_value) {
         switch (high_policy) {
             case FILTER_POLICY_SAME_LEVEL:
@@ -198,7 +212,7 @@ int32_t binary_filter(int32_t component) {
     }
 }
 
-component_filter grey_color_filters[] = {
+static const component_filter grey_color_filters[] = {
         no_filter,
         reverse_filter,
         linear_filter,
@@ -208,52 +222,111 @@ component_filter grey_color_filters[] = {
         binary_filter,
 };
 
-/* private utilities end */
-
-/* interface implements begin */
-JNI_METHOD(jint, calcGrey)(JNIEnv *env, jclass klass, jint argb) {
-    return color_to_grey(argb);
+static component_filter filter_of(const FilterInfo *info) {
+    const int32_t count = (int32_t) (sizeof(grey_color_filters) / sizeof(grey_color_filters[0]));
+    if (info->index < 0 || info->index >= count) {
+        return no_filter;
+    }
+    return grey_color_filters[info->index];
 }
 
-JNI_METHOD(jintArray, grey)(JNIEnv *env, jclass klass, jintArray argb, jint w, jint h) {
-    jsize size = (jsize) w * h;
-    jintArray result = (*env)->NewIntArray(env, size);
-
-    jint *result_ptr = (*env)->GetIntArrayElements(env, result, NULL);
-    jint *argb_ptr = (*env)->GetIntArrayElements(env, argb, NULL);
-
-    calc_raw_grey((int32_t *) result_ptr, (int32_t *) argb_ptr, size);
-
-    (*env)->ReleaseIntArrayElements(env, argb, argb_ptr, 0);
-    (*env)->ReleaseIntArrayElements(env, result, result_ptr, 0);
+/* compile the filter of spec into 256 entries lookup table */
+static void read_filter_lut(JNIEnv *env, jobject spec, int32_t *lut) {
+    FilterInfo info;
+    read_filter_info(env, spec, &info);
+    build_component_lut(lut, &info, filter_of(&info));
+}
 
-    return result;
+/* address of direct buffer plus offset in bytes, throw IllegalArgumentException if not accessible */
+static int32_t *direct_pixels(JNIEnv *env, jobject buffer, jint byte_offset) {
+    uint8_t *address = (uint8_t *) (*env)->GetDirectBufferAddress(env, buffer);
+    if (address == NULL) {
+        jclass exception_class = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+        if (exception_class != NULL) {
+            (*env)->ThrowNew(env, exception_class, "direct buffer address not accessible");
+        }
+        return NULL;
+    }
+    return (int32_t *) (address + byte_offset);
 }
 
-JNI_METHOD(jintArray, greyColor)(JNIEnv *env, jclass klass, jintArray argb, jint w, jint h) {
-    jsize size = (jsize) w * h;
-    jintArray result = (*env)->NewIntArray(env, size);
+/*
+ * pin source and result array in critical mode, share one pointer if they are the same array (in-place),
+ * return JNI_FALSE if failed and nothing need to release.
+ * critical mode never copies the whole array, so concurrent calls on disjoint rows of one array
+ * (see ParallelImageProc) never overwrite each other; no JNI call allowed until unlock_pixels.
+ */
+static jboolean lock_pixels(JNIEnv *env, jintArray argb, int32_t **argb_ptr,
+                            jintArray result, int32_t **result_ptr) {
+    const jboolean in_place = (*env)->IsSameObject(env, argb, result);
+    *argb_ptr = (int32_t *) (*env)->GetPrimitiveArrayCritical(env, argb, NULL);
+    if (*argb_ptr == NULL) {
+        return JNI_FALSE;
+    }
+    if (in_place) {
+        *result_ptr = *argb_ptr;
+        return JNI_TRUE;
+    }
+    *result_ptr = (int32_t *) (*env)->GetPrimitiveArrayCritical(env, result, NULL);
+    if (*result_ptr == NULL) {
+        (*env)->ReleasePrimitiveArrayCritical(env, argb, *argb_ptr, JNI_ABORT);
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
 
-    jint *result_ptr = (*env)->GetIntArrayElements(env, result, NULL);
-    jint *argb_ptr = (*env)->GetIntArrayElements(env, argb, NULL);
+/* source is released without copy back unless it is also the result */
+static void unlock_pixels(JNIEnv *env, jintArray argb, int32_t *argb_ptr,
+                          jintArray result, int32_t *result_ptr) {
+    if (argb_ptr == result_ptr) {
+        (*env)->ReleasePrimitiveArrayCritical(env, argb, argb_ptr, 0);
+    } else {
+        (*env)->ReleasePrimitiveArrayCritical(env, result, result_ptr, 0);
+        (*env)->ReleasePrimitiveArrayCritical(env, argb, argb_ptr, JNI_ABORT);
+    }
+}
 
-    calc_grey_color((int32_t *) result_ptr, (int32_t *) argb_ptr, size);
+/* array of count planes, each is int[length] or long[length] if packed, return NULL if exception pending */
+static jobjectArray new_planes(JNIEnv *env, jint count, jsize length, jboolean packed) {
+    jclass plane_class = (*env)->FindClass(env, packed ? "[J" : "[I");
+    if (plane_class == NULL) {
+        return NULL;
+    }
+    jobjectArray planes = (*env)->NewObjectArray(env, count, plane_class, NULL);
+    (*env)->DeleteLocalRef(env, plane_class);
+    if (planes == NULL) {
+        return NULL;
+    }
+    for (jint i = 0; i < count; ++i) {
+        jarray plane = packed ? (jarray) (*env)->NewLongArray(env, length) : (*env)->NewIntArray(env, length);
+        if (plane == NULL) {
+            return NULL;
+        }
+        (*env)->SetObjectArrayElement(env, planes, i, plane);
+        (*env)->DeleteLocalRef(env, plane);
+    }
+    return planes;
+}
 
-    (*env)->ReleaseIntArrayElements(env, argb, argb_ptr, 0);
-    (*env)->ReleaseIntArrayElements(env, result, result_ptr, 0);
+/* private utilities end */
 
-    return result;
+/* interface implements begin */
+JNI_METHOD(jint, nativeCalcGrey)(JNIEnv *env, jclass klass, jint argb) {
+    return color_to_grey(argb);
 }
 
-JNI_METHOD(jdoubleArray, calcGreyFilter)(JNIEnv *env, jclass klass, jdoubleArray argb) {
+JNI_METHOD(jdoubleArray, nativeCalcGreyFilter)(JNIEnv *env, jclass klass, jdoubleArray argb, jobject spec) {
+    FilterInfo grey_info;
+    read_filter_info(env, spec, &grey_info);
+
     jsize size = (*env)->GetArrayLength(env, argb);
     jdoubleArray result = (*env)->NewDoubleArray(env, size);
 
     jdouble *result_ptr = (*env)->GetDoubleArrayElements(env, result, NULL);
     jdouble *argb_ptr = (*env)->GetDoubleArrayElements(env, argb, NULL);
 
-    calc_grey_normal_filter((double *) result_ptr, (double *) argb_ptr, size, grey_filter_reset,
-                           grey_color_filters[grey_filter_info.index]);
+    calc_grey_normal_filter((double *) result_ptr, (double *) argb_ptr, size,
+                            &grey_info, filter_of(&grey_info));
 
     (*env)->ReleaseDoubleArrayElements(env, argb, argb_ptr, 0);
     (*env)->ReleaseDoubleArrayElements(env, result, result_ptr, 0);
@@ -261,213 +334,435 @@ JNI_METHOD(jdoubleArray, calcGreyFilter)(JNIEnv *env, jclass klass, jdoubleArray
     return result;
 }
 
-JNI_METHOD(jintArray, greyFilter)(JNIEnv *env, jclass klass, jintArray argb, jint w, jint h) {
+JNI_METHOD(jintArray, nativeCombineSimplePlane)(JNIEnv *env, jclass klass, jobjectArray argbs, jint w, jint h) {
     jsize size = (jsize) w * h;
-    jintArray result = (*env)->NewIntArray(env, size);
-
-    jint *result_ptr = (*env)->GetIntArrayElements(env, result, NULL);
-    jint *argb_ptr = (*env)->GetIntArrayElements(env, argb, NULL);
-
-    calc_grey_color_filter((int32_t *) result_ptr, (int32_t *) argb_ptr, size, grey_filter_reset,
-                     grey_color_filters[grey_filter_info.index]);
-
-    (*env)->ReleaseIntArrayElements(env, argb, argb_ptr, 0);
-    (*env)->ReleaseIntArrayElements(env, result, result_ptr, 0);
 
-    return result;
-}
-
-JNI_METHOD(jintArray, colorFilter)(JNIEnv *env, jclass klass, jintArray argb, jint w, jint h) {
-    jsize size = (jsize) w * h;
     jintArray result = (*env)->NewIntArray(env, size);
-
     jint *result_ptr = (*env)->GetIntArrayElements(env, result, NULL);
-    jint *argb_ptr = (*env)->GetIntArrayElements(env, argb, NULL);
 
-    calc_rgb_color_filter((int32_t *) result_ptr, (int32_t *) argb_ptr, size, color_filter_reset,
-                     grey_color_filters[red_filter_info.index],
-                     grey_color_filters[green_filter_info.index],
-                     grey_color_filters[blue_filter_info.index]);
+    jsize length = (*env)->GetArrayLength(env, argbs);
+    if (length > 0) {
+        jintArray source = (jintArray) (*env)->GetObjectArrayElement(env, argbs, 0);
+        jint *source_ptr = (*env)->GetIntArrayElements(env, source, NULL);
+        memcpy(result_ptr, source_ptr, size * sizeof(int32_t));
+        (*env)->ReleaseIntArrayElements(env, source, source_ptr, 0);
+
+        if (length > 1) {
+            for (jsize i = 1; i < length; ++i) {
+                jintArray target = (jintArray) (*env)->GetObjectArrayElement(env, argbs,i);
+                jint *target_ptr = (*env)->GetIntArrayElements(env, target, NULL);
+                calc_combine_simple_plane((int32_t *) result_ptr, (int32_t *) target_ptr, size);
+                (*env)->ReleaseIntArrayElements(env, target, target_ptr, 0);
+            }
+        }
+    }
 
-    (*env)->ReleaseIntArrayElements(env, argb, argb_ptr, 0);
     (*env)->ReleaseIntArrayElements(env, result, result_ptr, 0);
-
     return result;
 }
 
-JNI_METHOD(jintArray, greyBitPlaneSlicing)(JNIEnv *env, jclass klass, jintArray argb,
-                                           jint w, jint h, jint bitPosition) {
-    jsize size = (jsize) w * h;
-    jintArray result = (*env)->NewIntArray(env, size);
-
-    jint *result_ptr = (*env)->GetIntArrayElements(env, result, NULL);
+JNI_METHOD(jintArray, nativeSimpleHistogramEqualization)(JNIEnv *env, jclass klass, jintArray argb,
+                                                   jint position, jboolean usingClassic) {
+    jsize size = (*env)->GetArrayLength(env, argb);
     jint *argb_ptr = (*env)->GetIntArrayElements(env, argb, NULL);
 
-    calc_grey_bit_plane((int32_t *) result_ptr, (int32_t *) argb_ptr, size, bitPosition);
-
+    int32_t *map_ptr;
+    int32_t *data_ptr;
+    int32_t length;
+    map_component_color_count(&data_ptr, &length, argb_ptr, size, position);
+    if (usingClassic == JNI_FALSE) {
+        histogram_equalization_photoshop(&map_ptr, data_ptr, length, size);
+    } else{
+        histogram_equalization_classic(&map_ptr, data_ptr, length, size);
+    }
+    free(data_ptr);
+    map_component_equalization(&data_ptr, map_ptr, length, argb_ptr, size, position);
+    free(map_ptr);
     (*env)->ReleaseIntArrayElements(env, argb, argb_ptr, 0);
-    (*env)->ReleaseIntArrayElements(env, result, result_ptr, 0);
 
-    return result;
-}
-
-JNI_METHOD(jintArray, colorBitPlaneSlicing)(JNIEnv *env, jclass klass, jintArray argb,
-                                            jint w, jint h, jint bitPosition) {
-    jsize size = (jsize) w * h;
     jintArray result = (*env)->NewIntArray(env, size);
-
     jint *result_ptr = (*env)->GetIntArrayElements(env, result, NULL);
-    jint *argb_ptr = (*env)->GetIntArrayElements(env, argb, NULL);
-
-    calc_rgb_bit_plane((int32_t *) result_ptr, (int32_t *) argb_ptr, size, bitPosition);
+    memcpy(result_ptr, data_ptr, size * sizeof(int32_t));
 
-    (*env)->ReleaseIntArrayElements(env, argb, argb_ptr, 0);
     (*env)->ReleaseIntArrayElements(env, result, result_ptr, 0);
+    free(data_ptr);
 
     return result;
 }
 
-JNI_METHOD(jintArray, colorComponentPlaneSlicing)(JNIEnv *env, jclass klass, jintArray argb,
-                                                  jint w, jint h, jint position, jint type) {
-    jsize size = (jsize) w * h;
-    jintArray result = (*env)->NewIntArray(env, size);
+JNI_METHOD(void, nativeGreyDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                   jobject result, jint result_offset, jint size) {
+    int32_t *argb_ptr, *result_ptr;
+    if ((argb_ptr = direct_pixels(env, argb, argb_offset)) == NULL
+        || (result_ptr = direct_pixels(env, result, result_offset)) == NULL) {
+        return;
+    }
+    calc_raw_grey(result_ptr, size, argb_ptr, size, size, 1);
+}
 
-    jint *result_ptr = (*env)->GetIntArrayElements(env, result, NULL);
-    jint *argb_ptr = (*env)->GetIntArrayElements(env, argb, NULL);
+JNI_METHOD(void, nativeGreyColorDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                        jobject result, jint result_offset, jint size) {
+    int32_t *argb_ptr, *result_ptr;
+    if ((argb_ptr = direct_pixels(env, argb, argb_offset)) == NULL
+        || (result_ptr = direct_pixels(env, result, result_offset)) == NULL) {
+        return;
+    }
+    calc_grey_color(result_ptr, size, argb_ptr, size, size, 1);
+}
 
-    calc_rgb_component_plane((int32_t *) result_ptr, (int32_t *) argb_ptr, size, position, type);
+JNI_METHOD(void, nativeGreyLutDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                      jobject result, jint result_offset, jint size, jintArray grey_lut) {
+    int32_t *argb_ptr, *result_ptr;
+    if ((argb_ptr = direct_pixels(env, argb, argb_offset)) == NULL
+        || (result_ptr = direct_pixels(env, result, result_offset)) == NULL) {
+        return;
+    }
+    int32_t lut[256];
+    (*env)->GetIntArrayRegion(env, grey_lut, 0, 256, (jint *) lut);
+    calc_grey_color_lut(result_ptr, size, argb_ptr, size, size, 1, lut);
+}
 
-    (*env)->ReleaseIntArrayElements(env, argb, argb_ptr, 0);
-    (*env)->ReleaseIntArrayElements(env, result, result_ptr, 0);
+JNI_METHOD(void, nativeColorLutDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                       jobject result, jint result_offset, jint size,
+                                       jintArray red_lut, jintArray green_lut, jintArray blue_lut) {
+    int32_t *argb_ptr, *result_ptr;
+    if ((argb_ptr = direct_pixels(env, argb, argb_offset)) == NULL
+        || (result_ptr = direct_pixels(env, result, result_offset)) == NULL) {
+        return;
+    }
+    int32_t r_lut[256], g_lut[256], b_lut[256];
+    (*env)->GetIntArrayRegion(env, red_lut, 0, 256, (jint *) r_lut);
+    (*env)->GetIntArrayRegion(env, green_lut, 0, 256, (jint *) g_lut);
+    (*env)->GetIntArrayRegion(env, blue_lut, 0, 256, (jint *) b_lut);
+    calc_rgb_color_lut(result_ptr, size, argb_ptr, size, size, 1, r_lut, g_lut, b_lut);
+}
 
-    return result;
+JNI_METHOD(void, nativeGreyBitPlaneSlicingDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                                  jobject result, jint result_offset, jint size,
+                                                  jint bitPosition) {
+    int32_t *argb_ptr, *result_ptr;
+    if ((argb_ptr = direct_pixels(env, argb, argb_offset)) == NULL
+        || (result_ptr = direct_pixels(env, result, result_offset)) == NULL) {
+        return;
+    }
+    calc_grey_bit_plane(result_ptr, size, argb_ptr, size, size, 1, bitPosition);
 }
 
-JNI_METHOD(jintArray, combineSimplePlane)(JNIEnv *env, jclass klass, jobjectArray argbs, jint w, jint h) {
-    jsize size = (jsize) w * h;
+JNI_METHOD(void, nativeColorBitPlaneSlicingDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                                   jobject result, jint result_offset, jint size,
+                                                   jint bitPosition) {
+    int32_t *argb_ptr, *result_ptr;
+    if ((argb_ptr = direct_pixels(env, argb, argb_offset)) == NULL
+        || (result_ptr = direct_pixels(env, result, result_offset)) == NULL) {
+        return;
+    }
+    calc_rgb_bit_plane(result_ptr, size, argb_ptr, size, size, 1, bitPosition);
+}
 
-    jintArray result = (*env)->NewIntArray(env, size);
-    jint *result_ptr = (*env)->GetIntArrayElements(env, result, NULL);
+JNI_METHOD(void, nativeColorComponentPlaneSlicingDirect)(JNIEnv *env, jclass klass, jobject argb,
+                                                         jint argb_offset, jobject result, jint result_offset,
+                                                         jint size, jint position, jint type) {
+    int32_t *argb_ptr, *result_ptr;
+    if ((argb_ptr = direct_pixels(env, argb, argb_offset)) == NULL
+        || (result_ptr = direct_pixels(env, result, result_offset)) == NULL) {
+        return;
+    }
+    calc_rgb_component_plane(result_ptr, size, argb_ptr, size, size, 1, position, type);
+}
 
-    jsize length = (*env)->GetArrayLength(env, argbs);
-    if (length > 0) {
-        jintArray source = (jintArray) (*env)->GetObjectArrayElement(env, argbs, 0);
-        jint *source_ptr = (*env)->GetIntArrayElements(env, source, NULL);
-        memcpy(result_ptr, source_ptr, size);
-        (*env)->ReleaseIntArrayElements(env, source, source_ptr, 0);
+JNI_METHOD(void, nativeGetAllColorCountsDirect)(JNIEnv *env, jclass klass, jobject argb, jint argb_offset,
+                                                jobject counts, jint counts_offset, jint size, jint position) {
+    int32_t *argb_ptr, *counts_ptr;
+    if ((argb_ptr = direct_pixels(env, argb, argb_offset)) == NULL
+        || (counts_ptr = direct_pixels(env, counts, counts_offset)) == NULL) {
+        return;
+    }
+    calc_component_color_count(counts_ptr, argb_ptr, size, position);
+}
 
-        if (length > 1) {
-            for (jsize i = 1; i < length; ++i) {
-                jintArray target = (jintArray) (*env)->GetObjectArrayElement(env, argbs,i);
-                jint *target_ptr = (*env)->GetIntArrayElements(env, target, NULL);
-                calc_combine_simple_plane((int32_t *) result_ptr, (int32_t *) target_ptr, size);
-                (*env)->ReleaseIntArrayElements(env, target, target_ptr, 0);
-            }
-        }
+JNI_METHOD(void, nativeGreyRect)(JNIEnv *env, jclass klass,
+                                 jintArray argb, jint argb_offset, jint argb_stride,
+                                 jintArray result, jint result_offset, jint result_stride,
+                                 jint w, jint h) {
+    int32_t *argb_ptr, *result_ptr;
+    if (!lock_pixels(env, argb, &argb_ptr, result, &result_ptr)) {
+        return;
     }
+    const int32_t *src = argb_ptr + argb_offset;
+    int32_t *dst = result_ptr + result_offset;
+    calc_raw_grey(dst, result_stride, src, argb_stride, w, h);
+    unlock_pixels(env, argb, argb_ptr, result, result_ptr);
+}
 
-    (*env)->ReleaseIntArrayElements(env, result, result_ptr, 0);
-    return result;
+JNI_METHOD(void, nativeGreyColorRect)(JNIEnv *env, jclass klass,
+                                      jintArray argb, jint argb_offset, jint argb_stride,
+                                      jintArray result, jint result_offset, jint result_stride,
+                                      jint w, jint h) {
+    int32_t *argb_ptr, *result_ptr;
+    if (!lock_pixels(env, argb, &argb_ptr, result, &result_ptr)) {
+        return;
+    }
+    const int32_t *src = argb_ptr + argb_offset;
+    int32_t *dst = result_ptr + result_offset;
+    calc_grey_color(dst, result_stride, src, argb_stride, w, h);
+    unlock_pixels(env, argb, argb_ptr, result, result_ptr);
 }
 
-JNI_METHOD(jintArray, combineBitsPlane)(JNIEnv *env, jclass klass, jintArray argb, jint w, jint h,
-                                        jint type, jint mask) {
-    jsize size = (jsize) w * h;
-    jintArray result = (*env)->NewIntArray(env, size);
+JNI_METHOD(void, nativeGreyBitPlaneSlicingRect)(JNIEnv *env, jclass klass,
+                                                jintArray argb, jint argb_offset, jint argb_stride,
+                                                jintArray result, jint result_offset, jint result_stride,
+                                                jint w, jint h, jint bitPosition) {
+    int32_t *argb_ptr, *result_ptr;
+    if (!lock_pixels(env, argb, &argb_ptr, result, &result_ptr)) {
+        return;
+    }
+    const int32_t *src = argb_ptr + argb_offset;
+    int32_t *dst = result_ptr + result_offset;
+    calc_grey_bit_plane(dst, result_stride, src, argb_stride, w, h, bitPosition);
+    unlock_pixels(env, argb, argb_ptr, result, result_ptr);
+}
 
-    jint *result_ptr = (*env)->GetIntArrayElements(env, result, NULL);
-    jint *argb_ptr = (*env)->GetIntArrayElements(env, argb, NULL);
+JNI_METHOD(void, nativeColorBitPlaneSlicingRect)(JNIEnv *env, jclass klass,
+                                                 jintArray argb, jint argb_offset, jint argb_stride,
+                                                 jintArray result, jint result_offset, jint result_stride,
+                                                 jint w, jint h, jint bitPosition) {
+    int32_t *argb_ptr, *result_ptr;
+    if (!lock_pixels(env, argb, &argb_ptr, result, &result_ptr)) {
+        return;
+    }
+    const int32_t *src = argb_ptr + argb_offset;
+    int32_t *dst = result_ptr + result_offset;
+    calc_rgb_bit_plane(dst, result_stride, src, argb_stride, w, h, bitPosition);
+    unlock_pixels(env, argb, argb_ptr, result, result_ptr);
+}
 
-    calc_combine_bits_plane((int32_t *) result_ptr, (int32_t *) argb_ptr, size, type, mask);
+JNI_METHOD(void, nativeColorComponentPlaneSlicingRect)(JNIEnv *env, jclass klass,
+                                                       jintArray argb, jint argb_offset, jint argb_stride,
+                                                       jintArray result, jint result_offset, jint result_stride,
+                                                       jint w, jint h, jint position, jint type) {
+    int32_t *argb_ptr, *result_ptr;
+    if (!lock_pixels(env, argb, &argb_ptr, result, &result_ptr)) {
+        return;
+    }
+    const int32_t *src = argb_ptr + argb_offset;
+    int32_t *dst = result_ptr + result_offset;
+    calc_rgb_component_plane(dst, result_stride, src, argb_stride, w, h, position, type);
+    unlock_pixels(env, argb, argb_ptr, result, result_ptr);
+}
 
-    (*env)->ReleaseIntArrayElements(env, argb, argb_ptr, 0);
-    (*env)->ReleaseIntArrayElements(env, result, result_ptr, 0);
+JNI_METHOD(void, nativeCombineBitsPlaneRect)(JNIEnv *env, jclass klass,
+                                             jintArray argb, jint argb_offset, jint argb_stride,
+                                             jintArray result, jint result_offset, jint result_stride,
+                                             jint w, jint h, jint type, jint mask) {
+    int32_t *argb_ptr, *result_ptr;
+    if (!lock_pixels(env, argb, &argb_ptr, result, &result_ptr)) {
+        return;
+    }
+    const int32_t *src = argb_ptr + argb_offset;
+    int32_t *dst = result_ptr + result_offset;
+    calc_combine_bits_plane(dst, result_stride, src, argb_stride, w, h, type, mask);
+    unlock_pixels(env, argb, argb_ptr, result, result_ptr);
+}
 
-    return result;
+JNI_METHOD(void, nativeGetAllColorCountsRect)(JNIEnv *env, jclass klass,
+                                              jintArray argb, jint argb_offset, jint argb_stride,
+                                              jint w, jint h, jint position, jintArray counts) {
+    int32_t *argb_ptr, *counts_ptr;
+    if (!lock_pixels(env, argb, &argb_ptr, counts, &counts_ptr)) {
+        return;
+    }
+    accumulate_component_color_count(counts_ptr, argb_ptr + argb_offset, argb_stride, w, h, position);
+    unlock_pixels(env, argb, argb_ptr, counts, counts_ptr);
 }
 
-JNI_METHOD(jboolean, filterIndex)(JNIEnv *env, jclass klass, jint type, jint index) {
-    switch (type) {
-        case TYPE_GREY_COLOR:
-            grey_filter_reset();
-            break;
-        case COMPONENT_RED:
-            red_filter_reset();
-            break;
-        case COMPONENT_GREEN:
-            green_filter_reset();
-            break;
-        case COMPONENT_BLUE:
-            blue_filter_reset();
-            break;
-        default:
-            break;
-    }
-    curr_filter_info_ptr->index = index;
-    return JNI_TRUE;
+JNI_METHOD(jintArray, nativeBuildLut)(JNIEnv *env, jclass klass, jobject spec) {
+    int32_t lut[256];
+    read_filter_lut(env, spec, lut);
+    jintArray result = (*env)->NewIntArray(env, 256);
+    if (result != NULL) {
+        (*env)->SetIntArrayRegion(env, result, 0, 256, (const jint *) lut);
+    }
+    return result;
 }
 
-JNI_METHOD(jboolean, filterParam)(JNIEnv *env, jclass klass, jfloat c, jfloat l, jfloat g) {
-    curr_filter_info_ptr->arg_c = c;
-    curr_filter_info_ptr->arg_l = l;
-    curr_filter_info_ptr->arg_g = g;
-    return JNI_TRUE;
+JNI_METHOD(void, nativeGreyLutRect)(JNIEnv *env, jclass klass,
+                                    jintArray argb, jint argb_offset, jint argb_stride,
+                                    jintArray result, jint result_offset, jint result_stride,
+                                    jint w, jint h, jintArray grey_lut) {
+    int32_t lut[256];
+    (*env)->GetIntArrayRegion(env, grey_lut, 0, 256, (jint *) lut);
+    int32_t *argb_ptr, *result_ptr;
+    if (!lock_pixels(env, argb, &argb_ptr, result, &result_ptr)) {
+        return;
+    }
+    const int32_t *src = argb_ptr + argb_offset;
+    int32_t *dst = result_ptr + result_offset;
+    calc_grey_color_lut(dst, result_stride, src, argb_stride, w, h, lut);
+    unlock_pixels(env, argb, argb_ptr, result, result_ptr);
 }
 
-JNI_METHOD(jboolean, filterParam2)(JNIEnv *env, jclass klass,
-                                   jint lowLevel, jint lowPolicy, jint highLevel, jint highPolicy) {
-    curr_filter_info_ptr->low_value = lowLevel;
-    curr_filter_info_ptr->low_policy = lowPolicy;
-    curr_filter_info_ptr->high_value = highLevel;
-    curr_filter_info_ptr->high_policy = highPolicy;
-    return JNI_TRUE;
+JNI_METHOD(void, nativeColorLutRect)(JNIEnv *env, jclass klass,
+                                     jintArray argb, jint argb_offset, jint argb_stride,
+                                     jintArray result, jint result_offset, jint result_stride,
+                                     jint w, jint h, jintArray red_lut, jintArray green_lut, jintArray blue_lut) {
+    int32_t r_lut[256], g_lut[256], b_lut[256];
+    (*env)->GetIntArrayRegion(env, red_lut, 0, 256, (jint *) r_lut);
+    (*env)->GetIntArrayRegion(env, green_lut, 0, 256, (jint *) g_lut);
+    (*env)->GetIntArrayRegion(env, blue_lut, 0, 256, (jint *) b_lut);
+    int32_t *argb_ptr, *result_ptr;
+    if (!lock_pixels(env, argb, &argb_ptr, result, &result_ptr)) {
+        return;
+    }
+    const int32_t *src = argb_ptr + argb_offset;
+    int32_t *dst = result_ptr + result_offset;
+    calc_rgb_color_lut(dst, result_stride, src, argb_stride, w, h, r_lut, g_lut, b_lut);
+    unlock_pixels(env, argb, argb_ptr, result, result_ptr);
 }
 
-JNI_METHOD(jintArray, getAllColorCounts)(JNIEnv *env, jclass klass, jintArray argb, jint position) {
-    jsize size = (*env)->GetArrayLength(env, argb);
-    jint *argb_ptr = (*env)->GetIntArrayElements(env, argb, NULL);
+JNI_METHOD(jobjectArray, nativeBitPlanesAll)(JNIEnv *env, jclass klass, jintArray argb, jint w, jint h,
+                                             jboolean grey, jboolean packed) {
+    const jsize size = (jsize) w * h;
+    const jint count = grey ? GREY_BIT_PLANE_COUNT : RGB_BIT_PLANE_COUNT;
+    if ((*env)->EnsureLocalCapacity(env, count + 4) != 0) {
+        return NULL;
+    }
+    jobjectArray planes = new_planes(env, count, packed ? (size + 63) / 64 : size, packed);
+    if (planes == NULL) {
+        return NULL;
+    }
+    jarray plane_refs[RGB_BIT_PLANE_COUNT];
+    void *plane_ptrs[RGB_BIT_PLANE_COUNT];
+    for (jint i = 0; i < count; ++i) {
+        plane_refs[i] = (jarray) (*env)->GetObjectArrayElement(env, planes, i);
+    }
 
-    int32_t *data_ptr;
-    int32_t length;
-    map_component_color_count(&data_ptr, &length, argb_ptr, size, position);
+    /* every plane written in the same pass, so all of them are pinned together */
+    jint locked = 0;
+    int32_t *argb_ptr = (int32_t *) (*env)->GetPrimitiveArrayCritical(env, argb, NULL);
+    if (argb_ptr != NULL) {
+        for (; locked < count; ++locked) {
+            plane_ptrs[locked] = (*env)->GetPrimitiveArrayCritical(env, plane_refs[locked], NULL);
+            if (plane_ptrs[locked] == NULL) {
+                break;
+            }
+        }
+        if (locked == count) {
+            if (packed && grey) {
+                calc_grey_bit_planes_packed((uint64_t *const *) plane_ptrs, argb_ptr, size);
+            } else if (packed) {
+                calc_rgb_bit_planes_packed((uint64_t *const *) plane_ptrs, argb_ptr, size);
+            } else if (grey) {
+                calc_grey_bit_planes_all((int32_t *const *) plane_ptrs, w, argb_ptr, w, w, h);
+            } else {
+                calc_rgb_bit_planes_all((int32_t *const *) plane_ptrs, w, argb_ptr, w, w, h);
+            }
+        }
+        while (--locked >= 0) {
+            (*env)->ReleasePrimitiveArrayCritical(env, plane_refs[locked], plane_ptrs[locked], 0);
+        }
+        (*env)->ReleasePrimitiveArrayCritical(env, argb, argb_ptr, JNI_ABORT);
+    }
+    for (jint i = 0; i < count; ++i) {
+        (*env)->DeleteLocalRef(env, plane_refs[i]);
+    }
+    return planes;
+}
 
-    (*env)->ReleaseIntArrayElements(env, argb, argb_ptr, 0);
+JNI_METHOD(void, nativeGetAllHistograms)(JNIEnv *env, jclass klass,
+                                         jintArray argb, jint argb_offset, jint argb_stride,
+                                         jint w, jint h, jobjectArray histograms) {
+    const jsize count = (*env)->GetArrayLength(env, histograms);
+    int32_t counts[HISTOGRAM_COUNT * 256];
+    memset(counts, 0, sizeof(counts));
 
-    jintArray result = (*env)->NewIntArray(env, length);
-    jint *result_ptr = (*env)->GetIntArrayElements(env, result, NULL);
-    memcpy(result_ptr, data_ptr, length * sizeof(int32_t));
-    (*env)->ReleaseIntArrayElements(env, result, result_ptr, 0);
-    free(data_ptr);
+    int32_t *argb_ptr = (int32_t *) (*env)->GetPrimitiveArrayCritical(env, argb, NULL);
+    if (argb_ptr == NULL) {
+        return;
+    }
+    accumulate_all_histograms(counts, argb_ptr + argb_offset, argb_stride, w, h, count >= HISTOGRAM_COUNT);
+    (*env)->ReleasePrimitiveArrayCritical(env, argb, argb_ptr, JNI_ABORT);
+
+    /* add into the existing counts of caller, so partial histograms can be merged */
+    jint values[256];
+    for (jsize c = 0; c < count && c < HISTOGRAM_COUNT; ++c) {
+        jintArray histogram = (jintArray) (*env)->GetObjectArrayElement(env, histograms, c);
+        (*env)->GetIntArrayRegion(env, histogram, 0, 256, values);
+        for (int32_t i = 0; i < 256; ++i) {
+            values[i] += counts[c * 256 + i];
+        }
+        (*env)->SetIntArrayRegion(env, histogram, 0, 256, values);
+        (*env)->DeleteLocalRef(env, histogram);
+    }
+}
 
+JNI_METHOD(jintArray, nativeBuildEqualizationLut)(JNIEnv *env, jclass klass, jintArray histogram,
+                                                  jboolean usingClassic) {
+    int32_t hist[256], lut[256];
+    (*env)->GetIntArrayRegion(env, histogram, 0, 256, (jint *) hist);
+    int32_t counts = 0;
+    for (int32_t i = 0; i < 256; ++i) {
+        counts += hist[i];
+    }
+    build_equalization_lut(lut, hist, counts, usingClassic);
+    jintArray result = (*env)->NewIntArray(env, 256);
+    if (result != NULL) {
+        (*env)->SetIntArrayRegion(env, result, 0, 256, (const jint *) lut);
+    }
     return result;
 }
 
-JNI_METHOD(jintArray, simpleHistogramEqualization)(JNIEnv *env, jclass klass, jintArray argb,
-                                                   jint position, jboolean usingClassic) {
-    jsize size = (*env)->GetArrayLength(env, argb);
-    jint *argb_ptr = (*env)->GetIntArrayElements(env, argb, NULL);
-
-    int32_t *map_ptr;
-    int32_t *data_ptr;
-    int32_t length;
-    map_component_color_count(&data_ptr, &length, argb_ptr, size, position);
-    if (usingClassic == JNI_FALSE) {
-        histogram_equalization_photoshop(&map_ptr, data_ptr, length, size);
-    } else{
-        histogram_equalization_classic(&map_ptr, data_ptr, length, size);
+JNI_METHOD(void, nativeEqualizeRgbRect)(JNIEnv *env, jclass klass,
+                                        jintArray argb, jint argb_offset, jint argb_stride,
+                                        jintArray result, jint result_offset, jint result_stride,
+                                        jint w, jint h, jintArray red_lut, jintArray green_lut, jintArray blue_lut) {
+    int32_t r_lut[256], g_lut[256], b_lut[256];
+    (*env)->GetIntArrayRegion(env, red_lut, 0, 256, (jint *) r_lut);
+    (*env)->GetIntArrayRegion(env, green_lut, 0, 256, (jint *) g_lut);
+    (*env)->GetIntArrayRegion(env, blue_lut, 0, 256, (jint *) b_lut);
+    int32_t *argb_ptr, *result_ptr;
+    if (!lock_pixels(env, argb, &argb_ptr, result, &result_ptr)) {
+        return;
     }
-    free(data_ptr);
-    map_component_equalization(&data_ptr, map_ptr, length, argb_ptr, size, position);
-    free(map_ptr);
-    (*env)->ReleaseIntArrayElements(env, argb, argb_ptr, 0);
-
-    jintArray result = (*env)->NewIntArray(env, size);
-    jint *result_ptr = (*env)->GetIntArrayElements(env, result, NULL);
-    memcpy(result_ptr, data_ptr, size * sizeof(int32_t));
-
-    (*env)->ReleaseIntArrayElements(env, result, result_ptr, 0);
-    free(data_ptr);
+    const int32_t *src = argb_ptr + argb_offset;
+    int32_t *dst = result_ptr + result_offset;
+    calc_rgb_equalization(dst, result_stride, src, argb_stride, w, h, r_lut, g_lut, b_lut);
+    unlock_pixels(env, argb, argb_ptr, result, result_ptr);
+}
 
+JNI_METHOD(jintArray, nativeBuildClaheLut)(JNIEnv *env, jclass klass, jintArray histogram, jint clip_limit) {
+    int32_t hist[256], lut[256];
+    (*env)->GetIntArrayRegion(env, histogram, 0, 256, (jint *) hist);
+    build_clahe_lut(lut, hist, clip_limit);
+    jintArray result = (*env)->NewIntArray(env, 256);
+    if (result != NULL) {
+        (*env)->SetIntArrayRegion(env, result, 0, 256, (const jint *) lut);
+    }
     return result;
 }
-/* interface implements end */
\ No newline at end of file
+
+JNI_METHOD(void, nativeClaheInterpolateRect)(JNIEnv *env, jclass klass,
+                                             jintArray argb, jint argb_offset, jint argb_stride,
+                                             jintArray result, jint result_offset, jint result_stride,
+                                             jint w, jint h, jint row_from, jint row_to,
+                                             jint tiles_x, jint tiles_y, jintArray luts, jintArray columns,
+                                             jboolean grey) {
+    int32_t *argb_ptr, *result_ptr;
+    if (!lock_pixels(env, argb, &argb_ptr, result, &result_ptr)) {
+        return;
+    }
+    /* luts and columns are only read, pinned along with the pixels instead of copied on every strip */
+    int32_t *lut_ptr = (int32_t *) (*env)->GetPrimitiveArrayCritical(env, luts, NULL);
+    if (lut_ptr != NULL) {
+        int32_t *column_ptr = (int32_t *) (*env)->GetPrimitiveArrayCritical(env, columns, NULL);
+        if (column_ptr != NULL) {
+            const int32_t *src = argb_ptr + argb_offset;
+            int32_t *dst = result_ptr + result_offset;
+            calc_clahe_interpolation(dst, result_stride, src, argb_stride, w, h, row_from, row_to,
+                                     tiles_x, tiles_y, lut_ptr, column_ptr, grey);
+            (*env)->ReleasePrimitiveArrayCritical(env, columns, column_ptr, JNI_ABORT);
+        }
+        (*env)->ReleasePrimitiveArrayCritical(env, luts, lut_ptr, JNI_ABORT);
+    }
+    unlock_pixels(env, argb, argb_ptr, result, result_ptr);
+}
+/* interface implements end */
@@ -19,6 +19,7 @@
  * @version 2017-09-25
  */
 #include "image_io.h"
+#include <setjmp.h>
 
 static bool is_image_type(const uint8_t *start, const uint8_t *type, const int32_t byte_count) {
     bool is_type = true;
@@ -39,7 +40,10 @@ static bool str_ends_with(const char *str, const char *suffix) {
 
 imgio_type imgio_get_image_type(PARAM_IN const char *file_path, PARAM_IN  const bool check_file_extend) {
     FILE *file = fopen(file_path, "rb");
-    uint8_t start[8];
+    if (file == NULL) {
+        return UNKNOWN;
+    }
+    uint8_t start[8] = { 0 };
     fread(start, sizeof(uint8_t), 8, file);
 
     uint8_t png[8] = { 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A };
@@ -70,7 +74,7 @@ imgio_type imgio_get_image_type(PARAM_IN const char *file_path, PARAM_IN  const
 
     uint8_t webp_start[4] = { 'R', 'I', 'F', 'F'};
     uint8_t webp_end[4] = { 'W', 'E', 'B', 'P'};
-    uint8_t middle[4];
+    uint8_t middle[4] = { 0 };
     fread(middle, sizeof(uint8_t), 4, file);
     if (is_image_type(start, webp_start, 4) && is_image_type(middle, webp_end, 4)
         && (check_file_extend ? str_ends_with(file_path, ".webp") : true)) {
@@ -78,7 +82,7 @@ imgio_type imgio_get_image_type(PARAM_IN const char *file_path, PARAM_IN  const
         return WEBP;
     }
 
-    uint8_t end[2];
+    uint8_t end[2] = { 0 };
     fseek(file, -2L,SEEK_END);
     fread(end, sizeof(uint8_t), 2, file);
     if (start[0] == 0xFF && start[1] == 0xD8 && end[0] == 0xFF && end[1] == 0xD9
@@ -87,6 +91,7 @@ imgio_type imgio_get_image_type(PARAM_IN const char *file_path, PARAM_IN  const
         return JPEG;
     }
 
+    fclose(file);
     return UNKNOWN;
 }
 
@@ -783,6 +788,222 @@ int imgio_read_jpeg(PARAM_IN char * filename, PARAM_OUT JSAMPLE **image_rgb_buff
     return 0;
 }
 
+typedef struct tagJpegErrorManager {
+    struct jpeg_error_mgr pub;
+    jmp_buf jump;
+} JpegErrorManager;
+
+/* instead of exit() of jpeg_std_error, which would take the whole process (and jvm) with it */
+static void jpeg_error_jump(j_common_ptr cinfo) {
+    JpegErrorManager *manager = (JpegErrorManager *) cinfo->err;
+    (*cinfo->err->output_message)(cinfo);
+    longjmp(manager->jump, 1);
+}
+
+static int read_png_argb(const char *file_path, uint32_t *argb, const uint32_t width, const uint32_t height) {
+    png_image image;
+    memset(&image, 0, sizeof(image));
+    image.version = PNG_IMAGE_VERSION;
+    if (png_image_begin_read_from_file(&image, file_path) == 0) {
+        base_error_log("png open: %s\n", image.message);
+        return -1;
+    }
+    if (image.width != width || image.height != height) {
+        png_image_free(&image);
+        return -1;
+    }
+    /* bytes of argb int in memory, so libpng writes the ints directly */
+    const uint32_t probe = 1;
+    image.format = *(const uint8_t *) &probe == 1 ? PNG_FORMAT_BGRA : PNG_FORMAT_ARGB;
+    if (png_image_finish_read(&image, NULL/*background*/, argb, 0/*row_stride*/, NULL/*colormap*/) == 0) {
+        base_error_log("png read: %s\n", image.message);
+        return -1;
+    }
+    return 0;
+}
+
+static int read_jpeg_argb(const char *file_path, uint32_t *argb, const uint32_t width, const uint32_t height) {
+    FILE *infile;
+    if ((infile = fopen(file_path, "rb")) == NULL) {
+        base_error_log("can't open %s\n", file_path);
+        return -1;
+    }
+
+    struct jpeg_decompress_struct cinfo;
+    JpegErrorManager jerr;
+    cinfo.err = jpeg_std_error(&jerr.pub);
+    jerr.pub.error_exit = jpeg_error_jump;
+    if (setjmp(jerr.jump)) {
+        jpeg_destroy_decompress(&cinfo);
+        fclose(infile);
+        return -1;
+    }
+
+    jpeg_create_decompress(&cinfo);
+    jpeg_stdio_src(&cinfo, infile);
+    jpeg_read_header(&cinfo, TRUE);
+    if (cinfo.jpeg_color_space == JCS_CMYK || cinfo.jpeg_color_space == JCS_YCCK
+        || cinfo.image_width != width || cinfo.image_height != height) {
+        jpeg_destroy_decompress(&cinfo);
+        fclose(infile);
+        return -1;
+    }
+    if (cinfo.out_color_space != JCS_GRAYSCALE) {
+        cinfo.out_color_space = JCS_RGB;
+    }
+    jpeg_start_decompress(&cinfo);
+
+    const JDIMENSION components = (JDIMENSION) cinfo.output_components;
+    JSAMPARRAY buffer = (*cinfo.mem->alloc_sarray)
+            ((j_common_ptr) &cinfo, JPOOL_IMAGE, cinfo.output_width * components, 1);
+    uint32_t *row;
+    JSAMPLE *sample;
+    while (cinfo.output_scanline < cinfo.output_height) {
+        row = argb + cinfo.output_scanline * width;
+        jpeg_read_scanlines(&cinfo, buffer, 1);
+        sample = buffer[0];
+        if (components == 1) {
+            for (uint32_t x = 0; x < width; ++x, ++sample) {
+                row[x] = 0xFF000000U | (sample[0] << 16) | (sample[0] << 8) | sample[0];
+            }
+        } else {
+            for (uint32_t x = 0; x < width; ++x, sample += 3) {
+                row[x] = 0xFF000000U | (sample[0] << 16) | (sample[1] << 8) | sample[2];
+            }
+        }
+    }
+
+    jpeg_finish_decompress(&cinfo);
+    jpeg_destroy_decompress(&cinfo);
+    fclose(infile);
+    return 0;
+}
+
+/*
+ * draw frame index of a slurped gif over argb of the logical screen, transparent pixels are kept,
+ * out of screen parts clipped; return -1 if the frame has no color map
+ */
+static int draw_gif_frame(const GifFileType *gif_file, const int32_t index,
+                          uint32_t *argb, const uint32_t width, const uint32_t height) {
+    const SavedImage *image = gif_file->SavedImages + index;
+    const ColorMapObject *color_map = image->ImageDesc.ColorMap != NULL
+                                      ? image->ImageDesc.ColorMap : gif_file->SColorMap;
+    if (color_map == NULL) {
+        return -1;
+    }
+    GraphicsControlBlock gcb;
+    int32_t transparent = NO_TRANSPARENT_COLOR;
+    if (DGifSavedExtensionToGCB((GifFileType *) gif_file, index, &gcb) == GIF_OK) {
+        transparent = gcb.TransparentColor;
+    }
+    const int32_t left = image->ImageDesc.Left;
+    const int32_t top = image->ImageDesc.Top;
+    const int32_t frame_width = image->ImageDesc.Width;
+    const int32_t frame_height = image->ImageDesc.Height;
+    const GifByteType *raster;
+    GifColorType color;
+    for (int32_t y = top < 0 ? 0 : top; y < top + frame_height && y < (int32_t) height; ++y) {
+        raster = image->RasterBits + (y - top) * frame_width;
+        for (int32_t x = left < 0 ? 0 : left; x < left + frame_width && x < (int32_t) width; ++x) {
+            const int32_t color_index = raster[x - left];
+            if (color_index == transparent || color_index >= color_map->ColorCount) {
+                continue;
+            }
+            color = color_map->Colors[color_index];
+            argb[y * width + x] = 0xFF000000U | (color.Red << 16) | (color.Green << 8) | color.Blue;
+        }
+    }
+    return 0;
+}
+
+static int read_gif_argb(const char *file_path, uint32_t *argb, const uint32_t width, const uint32_t height) {
+    int error;
+    GifFileType *gif_file = DGifOpenFileName(file_path, &error);
+    if (gif_file == NULL) {
+        base_error_log("gif open: %s\n", GifErrorString(error));
+        return -1;
+    }
+    int result = -1;
+    if (DGifSlurp(gif_file) == GIF_OK && gif_file->ImageCount > 0
+        && (uint32_t) gif_file->SWidth == width && (uint32_t) gif_file->SHeight == height) {
+        memset(argb, 0, width * height * sizeof(uint32_t));
+        result = draw_gif_frame(gif_file, 0, argb, width, height);
+    } else {
+        base_error_log("gif slurp: %s\n", GifErrorString(gif_file->Error));
+    }
+    DGifCloseFile(gif_file, &error);
+    return result;
+}
+
+imgio_type imgio_read_argb_info(PARAM_IN const char *file_path,
+                                PARAM_OUT uint32_t *width, PARAM_OUT uint32_t *height) {
+    const imgio_type type = imgio_get_image_type(file_path, false);
+    switch (type) {
+        case PNG: {
+            png_image image;
+            memset(&image, 0, sizeof(image));
+            image.version = PNG_IMAGE_VERSION;
+            if (png_image_begin_read_from_file(&image, file_path) == 0) {
+                return UNKNOWN;
+            }
+            *width = image.width;
+            *height = image.height;
+            png_image_free(&image);
+            return type;
+        }
+        case JPEG: {
+            FILE *infile;
+            if ((infile = fopen(file_path, "rb")) == NULL) {
+                return UNKNOWN;
+            }
+            struct jpeg_decompress_struct cinfo;
+            JpegErrorManager jerr;
+            cinfo.err = jpeg_std_error(&jerr.pub);
+            jerr.pub.error_exit = jpeg_error_jump;
+            if (setjmp(jerr.jump)) {
+                jpeg_destroy_decompress(&cinfo);
+                fclose(infile);
+                return UNKNOWN;
+            }
+            jpeg_create_decompress(&cinfo);
+            jpeg_stdio_src(&cinfo, infile);
+            jpeg_read_header(&cinfo, TRUE);
+            *width = cinfo.image_width;
+            *height = cinfo.image_height;
+            jpeg_destroy_decompress(&cinfo);
+            fclose(infile);
+            return type;
+        }
+        case GIF: {
+            int error;
+            GifFileType *gif_file = DGifOpenFileName(file_path, &error);
+            if (gif_file == NULL) {
+                return UNKNOWN;
+            }
+            *width = (uint32_t) gif_file->SWidth;
+            *height = (uint32_t) gif_file->SHeight;
+            DGifCloseFile(gif_file, &error);
+            return type;
+        }
+        default:
+            return UNKNOWN;
+    }
+}
+
+int imgio_read_argb(PARAM_IN const char *file_path, PARAM_IN const imgio_type type,
+                    PARAM_INOUT uint32_t *argb, PARAM_IN const uint32_t width, PARAM_IN const uint32_t height) {
+    switch (type) {
+        case PNG:
+            return read_png_argb(file_path, argb, width, height);
+        case JPEG:
+            return read_jpeg_argb(file_path, argb, width, height);
+        case GIF:
+            return read_gif_argb(file_path, argb, width, height);
+        default:
+            return -1;
+    }
+}
+
 static void parse_extension_block(int32_t extension_block_count, ExtensionBlock *extension_block_ptr,
                                   GifWord *curr_delay_time, GifWord *curr_disposal_mode,
                                   GifWord *curr_trans_color_idx, GifWord *global_loop_times) {
@@ -894,6 +1115,267 @@ int imgio_read_gif(PARAM_IN char * filename, PARAM_IN bool make_alpha, PARAM_IN
     return 0;
 }
 
+struct tagGifStream {
+    GifFileType *gif_file;
+    char *file_path;
+    GifPicture picture;
+    uint32_t *screen;
+    /* copy of screen for DISPOSE_PREVIOUS, allocated on first use */
+    uint32_t *previous;
+    GifByteType *line;
+    GifWord line_width;
+    GifWord image_index;
+    /* graphics control of the coming image */
+    GifWord delay_time;
+    GifWord disposal_mode;
+    GifWord trans_color_idx;
+    /* disposal of the last image, applied before the next one */
+    GifWord last_disposal_mode;
+    GifWord last_left;
+    GifWord last_top;
+    GifWord last_width;
+    GifWord last_height;
+};
+
+static void reset_gif_stream(GifStream *stream) {
+    const size_t screen_size = (size_t) stream->picture.screen_width * stream->picture.screen_height;
+    memset(stream->screen, 0, screen_size * sizeof(uint32_t));
+    stream->picture.image_count = -1;
+    stream->picture.anim_loop_times = 0;
+    stream->image_index = 0;
+    stream->delay_time = 0;
+    stream->disposal_mode = DISPOSAL_UNSPECIFIED;
+    stream->trans_color_idx = NO_TRANSPARENT_COLOR;
+    stream->last_disposal_mode = DISPOSAL_UNSPECIFIED;
+}
+
+GifStream *imgio_gif_stream_open(PARAM_IN const char *file_path, PARAM_OUT GifPicture *picture) {
+    int error;
+    GifFileType *gif_file = DGifOpenFileName(file_path, &error);
+    if (gif_file == NULL) {
+        base_error_log("gif open: %s\n", GifErrorString(error));
+        return NULL;
+    }
+    if (gif_file->SWidth <= 0 || gif_file->SHeight <= 0) {
+        DGifCloseFile(gif_file, &error);
+        return NULL;
+    }
+    GifStream *stream = (GifStream *) calloc(1, sizeof(GifStream));
+    if (stream != NULL) {
+        stream->file_path = (char *) malloc(strlen(file_path) + 1);
+        stream->screen = (uint32_t *) malloc((size_t) gif_file->SWidth * gif_file->SHeight * sizeof(uint32_t));
+    }
+    if (stream == NULL || stream->file_path == NULL || stream->screen == NULL) {
+        base_error_log("gif stream malloc failed\n");
+        if (stream != NULL) {
+            free(stream->file_path);
+            free(stream->screen);
+            free(stream);
+        }
+        DGifCloseFile(gif_file, &error);
+        return NULL;
+    }
+    strcpy(stream->file_path, file_path);
+    stream->gif_file = gif_file;
+    stream->picture.screen_width = gif_file->SWidth;
+    stream->picture.screen_height = gif_file->SHeight;
+    reset_gif_stream(stream);
+    *picture = stream->picture;
+    return stream;
+}
+
+static void dispose_gif_frame(GifStream *stream) {
+    const GifWord screen_width = stream->picture.screen_width;
+    const GifWord screen_height = stream->picture.screen_height;
+    if (stream->last_disposal_mode == DISPOSE_BACKGROUND) {
+        /* background is transparent as browsers do, not SBackGroundColor */
+        for (GifWord y = stream->last_top < 0 ? 0 : stream->last_top;
+             y < stream->last_top + stream->last_height && y < screen_height; ++y) {
+            for (GifWord x = stream->last_left < 0 ? 0 : stream->last_left;
+                 x < stream->last_left + stream->last_width && x < screen_width; ++x) {
+                stream->screen[y * screen_width + x] = 0;
+            }
+        }
+    } else if (stream->last_disposal_mode == DISPOSE_PREVIOUS && stream->previous != NULL) {
+        memcpy(stream->screen, stream->previous, (size_t) screen_width * screen_height * sizeof(uint32_t));
+    }
+    stream->last_disposal_mode = DISPOSAL_UNSPECIFIED;
+}
+
+static void parse_extension_record(GifStream *stream, const int ext_code, GifByteType *ext) {
+    if (ext_code == GRAPHICS_EXT_FUNC_CODE && ext[0] >= 4) {
+        stream->disposal_mode = (ext[1] >> 2) & 0x07;
+        stream->delay_time = ext[2] | (ext[3] << 8);
+        stream->trans_color_idx = (ext[1] & 0x01) ? ext[4] : NO_TRANSPARENT_COLOR;
+    }
+}
+
+static int read_gif_stream_image(GifStream *stream) {
+    GifFileType *gif_file = stream->gif_file;
+    if (DGifGetImageDesc(gif_file) == GIF_ERROR) {
+        return -1;
+    }
+    const GifImageDesc *desc = &gif_file->Image;
+    const ColorMapObject *color_map = desc->ColorMap != NULL ? desc->ColorMap : gif_file->SColorMap;
+    if (color_map == NULL || desc->Width <= 0 || desc->Height <= 0) {
+        return -1;
+    }
+    if (desc->Width > stream->line_width) {
+        GifByteType *line = (GifByteType *) realloc(stream->line, (size_t) desc->Width);
+        if (line == NULL) {
+            return -1;
+        }
+        stream->line = line;
+        stream->line_width = desc->Width;
+    }
+    const GifWord screen_width = stream->picture.screen_width;
+    const GifWord screen_height = stream->picture.screen_height;
+    if (stream->disposal_mode == DISPOSE_PREVIOUS) {
+        const size_t screen_bytes = (size_t) screen_width * screen_height * sizeof(uint32_t);
+        if (stream->previous == NULL && (stream->previous = (uint32_t *) malloc(screen_bytes)) == NULL) {
+            return -1;
+        }
+        memcpy(stream->previous, stream->screen, screen_bytes);
+    }
+
+    /* rows of interlaced image come in 4 passes */
+    static const GifWord offsets[] = { 0, 4, 2, 1 };
+    static const GifWord jumps[] = { 8, 8, 4, 2 };
+    const GifWord passes = desc->Interlace ? 4 : 1;
+    const GifWord left = desc->Left;
+    const GifWord top = desc->Top;
+    GifColorType color;
+    for (GifWord pass = 0; pass < passes; ++pass) {
+        const GifWord offset = desc->Interlace ? offsets[pass] : 0;
+        const GifWord jump = desc->Interlace ? jumps[pass] : 1;
+        for (GifWord row = offset; row < desc->Height; row += jump) {
+            if (DGifGetLine(gif_file, stream->line, desc->Width) == GIF_ERROR) {
+                return -1;
+            }
+            const GifWord y = top + row;
+            if (y < 0 || y >= screen_height) {
+                continue;
+            }
+            uint32_t *screen_row = stream->screen + y * screen_width;
+            for (GifWord x = left < 0 ? 0 : left; x < left + desc->Width && x < screen_width; ++x) {
+                const GifWord color_index = stream->line[x - left];
+                if (color_index == stream->trans_color_idx || color_index >= color_map->ColorCount) {
+                    continue;
+                }
+                color = color_map->Colors[color_index];
+                screen_row[x] = 0xFF000000U | (color.Red << 16) | (color.Green << 8) | color.Blue;
+            }
+        }
+    }
+    stream->last_disposal_mode = stream->disposal_mode;
+    stream->last_left = left;
+    stream->last_top = top;
+    stream->last_width = desc->Width;
+    stream->last_height = desc->Height;
+    return 0;
+}
+
+int imgio_gif_stream_next(PARAM_INOUT GifStream *stream, PARAM_OUT GifPicture *picture, PARAM_OUT GifFrame *frame) {
+    GifFileType *gif_file = stream->gif_file;
+    GifRecordType record_type;
+    int ext_code;
+    GifByteType *ext;
+    if (gif_file == NULL) {
+        return -1;
+    }
+    dispose_gif_frame(stream);
+    do {
+        if (DGifGetRecordType(gif_file, &record_type) == GIF_ERROR) {
+            base_error_log("gif record: %s\n", GifErrorString(gif_file->Error));
+            return -1;
+        }
+        switch (record_type) {
+            case IMAGE_DESC_RECORD_TYPE:
+                if (read_gif_stream_image(stream) != 0) {
+                    base_error_log("gif image: %s\n", GifErrorString(gif_file->Error));
+                    return -1;
+                }
+                /* c99 feature */
+                *frame = (GifFrame) {
+                        .image_index = stream->image_index,
+                        .per_pixel_bytes = 4,
+                        .rgb_buffer = (GifByteType *) stream->screen,
+                        .delay_time = stream->delay_time,
+                        .disposal_mode = stream->disposal_mode,
+                        .left = stream->last_left,
+                        .top = stream->last_top,
+                        .image_width = stream->last_width,
+                        .image_height = stream->last_height
+                };
+                ++stream->image_index;
+                stream->delay_time = 0;
+                stream->disposal_mode = DISPOSAL_UNSPECIFIED;
+                stream->trans_color_idx = NO_TRANSPARENT_COLOR;
+                *picture = stream->picture;
+                return 1;
+            case EXTENSION_RECORD_TYPE: {
+                if (DGifGetExtension(gif_file, &ext_code, &ext) == GIF_ERROR) {
+                    return -1;
+                }
+                bool is_netscape = false;
+                if (ext != NULL) {
+                    parse_extension_record(stream, ext_code, ext);
+                    is_netscape = ext_code == APPLICATION_EXT_FUNC_CODE && ext[0] == 11
+                                  && !memcmp((const char *) (ext + 1), "NETSCAPE2.0", 11);
+                }
+                while (ext != NULL) {
+                    if (DGifGetExtensionNext(gif_file, &ext) == GIF_ERROR) {
+                        return -1;
+                    }
+                    if (is_netscape && ext != NULL && ext[0] >= 3 && ext[1] == 1) {
+                        stream->picture.anim_loop_times = ext[2] | (ext[3] << 8);
+                        is_netscape = false;
+                    }
+                }
+                break;
+            }
+            case TERMINATE_RECORD_TYPE:
+                stream->picture.image_count = stream->image_index;
+                *picture = stream->picture;
+                return 0;
+            default:
+                break;
+        }
+    } while (true);
+}
+
+int imgio_gif_stream_rewind(PARAM_INOUT GifStream *stream) {
+    int error;
+    if (stream->gif_file != NULL) {
+        DGifCloseFile(stream->gif_file, &error);
+    }
+    stream->gif_file = DGifOpenFileName(stream->file_path, &error);
+    if (stream->gif_file == NULL) {
+        base_error_log("gif open: %s\n", GifErrorString(error));
+        return -1;
+    }
+    if (stream->gif_file->SWidth != stream->picture.screen_width
+        || stream->gif_file->SHeight != stream->picture.screen_height) {
+        DGifCloseFile(stream->gif_file, &error);
+        stream->gif_file = NULL;
+        return -1;
+    }
+    reset_gif_stream(stream);
+    return 0;
+}
+
+void imgio_gif_stream_close(PARAM_IN GifStream *stream) {
+    int error;
+    if (stream->gif_file != NULL) {
+        DGifCloseFile(stream->gif_file, &error);
+    }
+    free(stream->file_path);
+    free(stream->screen);
+    free(stream->previous);
+    free(stream->line);
+    free(stream);
+}
+
 int imgio_write_gif(PARAM_IN const char * filename, PARAM_IN const GifDataModelInterface *interface,
                     PARAM_IN const GifWord loop_count, PARAM_IN const GifColorType *background_color) {
     if (!check_GifDataModelInterface(interface)) {
@@ -1168,6 +1650,55 @@ int imgio_rgba_scale_bicubic_convolution(PARAM_IN const uint32_t component /* pe
 #undef F
 }
 
+_inline_ uint32_t round_component(double value) {
+    value += 0.5;
+    return value <= 0.0 ? 0 : value >= 255.0 ? 255 : (uint32_t) value;
+}
+
+int imgio_argb_scale_rows(PARAM_IN const uint32_t *_restrict_ buffer_src, PARAM_IN const uint32_t stride_src,
+                          PARAM_INOUT uint32_t *_restrict_ buffer_dst, PARAM_IN const uint32_t stride_dst,
+                          PARAM_IN const uint32_t width_dst,
+                          PARAM_IN const uint32_t row_from, PARAM_IN const uint32_t row_to,
+                          PARAM_IN const uint32_t taps,
+                          PARAM_IN const int32_t *x_index, PARAM_IN const double *x_weight,
+                          PARAM_IN const int32_t *y_index, PARAM_IN const double *y_weight) {
+    const uint32_t *row_src;
+    const int32_t *xi, *yi;
+    const double *xw, *yw;
+    uint32_t *row_dst;
+    uint32_t pixel;
+    double a, r, g, b, ra, rr, rg, rb;
+
+    for (uint32_t i = row_from; i < row_to; ++i) {
+        yi = y_index + i * taps;
+        yw = y_weight + i * taps;
+        row_dst = buffer_dst + i * stride_dst;
+        for (uint32_t j = 0; j < width_dst; ++j) {
+            xi = x_index + j * taps;
+            xw = x_weight + j * taps;
+            a = r = g = b = 0.0;
+            for (uint32_t ty = 0; ty < taps; ++ty) {
+                row_src = buffer_src + yi[ty] * stride_src;
+                ra = rr = rg = rb = 0.0;
+                for (uint32_t tx = 0; tx < taps; ++tx) {
+                    pixel = row_src[xi[tx]];
+                    ra += xw[tx] * ((pixel >> 24) & 0xFF);
+                    rr += xw[tx] * ((pixel >> 16) & 0xFF);
+                    rg += xw[tx] * ((pixel >> 8) & 0xFF);
+                    rb += xw[tx] * (pixel & 0xFF);
+                }
+                a += yw[ty] * ra;
+                r += yw[ty] * rr;
+                g += yw[ty] * rg;
+                b += yw[ty] * rb;
+            }
+            row_dst[j] = (round_component(a) << 24) | (round_component(r) << 16)
+                         | (round_component(g) << 8) | round_component(b);
+        }
+    }
+    return 0;
+}
+
 /* S(a,x) */
 double_t imgio_scale_bicubic_s_custom(double_t a, double_t x) {
     double_t y = (x >= 0.0 ? x : -x);
@@ -95,6 +95,17 @@ int imgio_write_png2(PARAM_IN const char *file_name, PARAM_IN const png_bytep im
                      PARAM_IN const png_uint_32 width, PARAM_IN const png_uint_32 height,
                      PARAM_IN const bool use_interlace, PARAM_IN const png_uint_32 dpi, PARAM_IN const bool has_alpha);
 
+/* size of png, jpeg or gif (logical screen) from the file header, return the type or UNKNOWN if not one of them */
+imgio_type imgio_read_argb_info(PARAM_IN const char *file_path,
+                                PARAM_OUT uint32_t *width, PARAM_OUT uint32_t *height);
+
+/*
+ * decode png, jpeg or the first frame of gif into caller allocated argb ints (0xAARRGGBB in native order),
+ * width and height should be the ones of imgio_read_argb_info; never exit on corrupt data, return -1 instead
+ */
+int imgio_read_argb(PARAM_IN const char *file_path, PARAM_IN const imgio_type type,
+                    PARAM_INOUT uint32_t *argb, PARAM_IN const uint32_t width, PARAM_IN const uint32_t height);
+
 int imgio_write_jpeg(PARAM_IN const char *filename, PARAM_IN const JDIMENSION quality/* 1 ~ 100 */,
                      PARAM_IN const JSAMPLE *image_rgb_buffer,
                      PARAM_IN const JDIMENSION image_width, PARAM_IN const JDIMENSION image_height);
@@ -160,6 +171,27 @@ _inline_ bool check_GifDataModelInterface(const GifDataModelInterface *interface
 /* stream callback function, no interlace feature */
 int imgio_read_gif(PARAM_IN char *filename, PARAM_IN bool make_alpha, PARAM_IN func_on_gif_frame on_gif_frame);
 
+/* incremental gif decoder, interlaced images and local palettes are handled */
+typedef struct tagGifStream GifStream;
+
+/*
+ * open for incremental decode record by record, unlike imgio_read_gif only one raster line and
+ * the composed screen are kept in memory; picture->image_count is -1 until the end is reached
+ */
+GifStream *imgio_gif_stream_open(PARAM_IN const char *file_path, PARAM_OUT GifPicture *picture);
+
+/*
+ * compose the next frame over the screen with the disposal of the previous one applied,
+ * frame->rgb_buffer points to the screen as argb ints (per_pixel_bytes 4), valid until the next call;
+ * return 1 if a frame, 0 at the end, -1 on error
+ */
+int imgio_gif_stream_next(PARAM_INOUT GifStream *stream, PARAM_OUT GifPicture *picture, PARAM_OUT GifFrame *frame);
+
+/* back to the first frame with a transparent screen, return -1 if reopen failed */
+int imgio_gif_stream_rewind(PARAM_INOUT GifStream *stream);
+
+void imgio_gif_stream_close(PARAM_IN GifStream *stream);
+
 /* stream extract interface function, no interlace feature, global palette */
 int imgio_write_gif(PARAM_IN const char *filename, PARAM_IN const GifDataModelInterface *interface,
                     PARAM_IN const GifWord loop_count, PARAM_IN const GifColorType *background_color);
@@ -205,6 +237,20 @@ _inline_ int imgio_rgba_scale_bicubic(PARAM_IN const uint32_t component /* per p
 #define imgio_rgba_scale imgio_rgba_scale_bilinear
 #endif
 
+/*
+ * separable scale of argb int pixels with coefficient tables prepared once per size pair,
+ * only destination rows [row_from, row_to) are written, so rows can be split across threads.
+ * x_index/x_weight hold taps entries per destination column, y_index/y_weight per destination row,
+ * indexes are already clamped into source; every channel rounded and clamped into [0, 255].
+ */
+int imgio_argb_scale_rows(PARAM_IN const uint32_t *_restrict_ buffer_src, PARAM_IN const uint32_t stride_src,
+                          PARAM_INOUT uint32_t *_restrict_ buffer_dst, PARAM_IN const uint32_t stride_dst,
+                          PARAM_IN const uint32_t width_dst,
+                          PARAM_IN const uint32_t row_from, PARAM_IN const uint32_t row_to,
+                          PARAM_IN const uint32_t taps,
+                          PARAM_IN const int32_t *x_index, PARAM_IN const double *x_weight,
+                          PARAM_IN const int32_t *y_index, PARAM_IN const double *y_weight);
+
 #ifdef __cplusplus
 } // close 'extern "C" {'
 #endif
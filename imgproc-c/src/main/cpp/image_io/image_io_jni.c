@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+/**
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+#include <jni.h>
+#include "image_io.h"
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+#define PROJECT_PACKAGE_NAME com_johnsoft_alg
+#define JNI_SYMBOL(package_name, class_name, method_name) Java_##package_name##_##class_name##_##method_name
+#define JNI_PREFIX(package_name, class_name, method_name, return_value) JNIEXPORT return_value JNICALL \
+JNI_SYMBOL(package_name, class_name, method_name)
+#define JNI_METHOD(return_value, method_name) JNI_PREFIX(PROJECT_PACKAGE_NAME, CLASS_NAME, method_name, return_value)
+
+/* interface definitions begin */
+#define CLASS_NAME NativeScaler
+JNI_METHOD(void, nativeScaleRows)(JNIEnv *env, jclass klass,
+                                  jintArray argb, jint argb_offset, jint argb_stride,
+                                  jintArray result, jint result_offset, jint result_stride,
+                                  jint w, jint row_from, jint row_to, jint taps,
+                                  jintArray x_index, jdoubleArray x_weight,
+                                  jintArray y_index, jdoubleArray y_weight);
+JNI_METHOD(void, nativeScaleRowsDirect)(JNIEnv *env, jclass klass,
+                                        jobject argb, jint argb_offset, jint argb_stride,
+                                        jobject result, jint result_offset, jint result_stride,
+                                        jint w, jint row_from, jint row_to, jint taps,
+                                        jintArray x_index, jdoubleArray x_weight,
+                                        jintArray y_index, jdoubleArray y_weight);
+#undef CLASS_NAME
+
+#define CLASS_NAME NativeImageDecoder
+JNI_METHOD(jint, nativeReadInfo)(JNIEnv *env, jclass klass, jstring path, jintArray size);
+JNI_METHOD(jint, nativeDecode)(JNIEnv *env, jclass klass, jstring path, jint type,
+                               jintArray argb, jint w, jint h);
+JNI_METHOD(jint, nativeDecodeDirect)(JNIEnv *env, jclass klass, jstring path, jint type,
+                                     jobject argb, jint argb_offset, jint w, jint h);
+#undef CLASS_NAME
+
+#define CLASS_NAME NativeGifStream
+JNI_METHOD(jlong, nativeOpen)(JNIEnv *env, jclass klass, jstring path, jintArray size);
+JNI_METHOD(jint, nativeNext)(JNIEnv *env, jclass klass, jlong handle, jintArray argb, jintArray info);
+JNI_METHOD(jint, nativeRewind)(JNIEnv *env, jclass klass, jlong handle);
+JNI_METHOD(void, nativeClose)(JNIEnv *env, jclass klass, jlong handle);
+#undef CLASS_NAME
+
+#define CLASS_NAME ColorQuantizer
+JNI_METHOD(jintArray, nativeOctreePalette)(JNIEnv *env, jclass klass,
+                                           jintArray argb, jint argb_offset, jint argb_stride,
+                                           jint w, jint h, jint max_colors,
+                                           jbyteArray indices, jint indices_offset, jint indices_stride);
+#undef CLASS_NAME
+/* interface definitions end */
+
+#ifdef __cplusplus
+}
+#endif
+
+/* private utilities begin */
+
+/* address of direct buffer plus offset in bytes, throw IllegalArgumentException if not accessible */
+static uint8_t *direct_address(JNIEnv *env, jobject buffer, jint byte_offset) {
+    uint8_t *address = (uint8_t *) (*env)->GetDirectBufferAddress(env, buffer);
+    if (address == NULL) {
+        jclass exception_class = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+        if (exception_class != NULL) {
+            (*env)->ThrowNew(env, exception_class, "direct buffer address not accessible");
+        }
+        return NULL;
+    }
+    return address + byte_offset;
+}
+
+typedef struct tagScaleTables {
+    int32_t *x_index;
+    double *x_weight;
+    int32_t *y_index;
+    double *y_weight;
+} ScaleTables;
+
+/* pin the coefficient tables in critical mode, return JNI_FALSE if failed and nothing need to release */
+static jboolean lock_tables(JNIEnv *env, jintArray x_index, jdoubleArray x_weight,
+                            jintArray y_index, jdoubleArray y_weight, ScaleTables *tables) {
+    tables->x_weight = NULL;
+    tables->y_index = NULL;
+    tables->y_weight = NULL;
+    if ((tables->x_index = (int32_t *) (*env)->GetPrimitiveArrayCritical(env, x_index, NULL)) == NULL
+        || (tables->x_weight = (double *) (*env)->GetPrimitiveArrayCritical(env, x_weight, NULL)) == NULL
+        || (tables->y_index = (int32_t *) (*env)->GetPrimitiveArrayCritical(env, y_index, NULL)) == NULL
+        || (tables->y_weight = (double *) (*env)->GetPrimitiveArrayCritical(env, y_weight, NULL)) == NULL) {
+        if (tables->y_index != NULL) {
+            (*env)->ReleasePrimitiveArrayCritical(env, y_index, tables->y_index, JNI_ABORT);
+        }
+        if (tables->x_weight != NULL) {
+            (*env)->ReleasePrimitiveArrayCritical(env, x_weight, tables->x_weight, JNI_ABORT);
+        }
+        if (tables->x_index != NULL) {
+            (*env)->ReleasePrimitiveArrayCritical(env, x_index, tables->x_index, JNI_ABORT);
+        }
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
+
+/* tables are read only, released without copy back */
+static void unlock_tables(JNIEnv *env, jintArray x_index, jdoubleArray x_weight,
+                          jintArray y_index, jdoubleArray y_weight, ScaleTables *tables) {
+    (*env)->ReleasePrimitiveArrayCritical(env, y_weight, tables->y_weight, JNI_ABORT);
+    (*env)->ReleasePrimitiveArrayCritical(env, y_index, tables->y_index, JNI_ABORT);
+    (*env)->ReleasePrimitiveArrayCritical(env, x_weight, tables->x_weight, JNI_ABORT);
+    (*env)->ReleasePrimitiveArrayCritical(env, x_index, tables->x_index, JNI_ABORT);
+}
+
+/* pixels per block copied out of the java array while quantizing, so the gc is never held */
+#define OCTREE_BLOCK_PIXELS 65536
+
+/* copy rows of w ints from offset with stride into block packed, JNI_FALSE with an exception pending if failed */
+static jboolean read_int_rows(JNIEnv *env, jintArray array, jint offset, jint stride, jint w, jint rows,
+                              jint *block) {
+    for (jint y = 0; y < rows; ++y) {
+        (*env)->GetIntArrayRegion(env, array, offset + y * stride, w, block + y * w);
+        if ((*env)->ExceptionCheck(env)) {
+            return JNI_FALSE;
+        }
+    }
+    return JNI_TRUE;
+}
+
+/* private utilities end */
+
+/* interface implementations begin */
+
+#define CLASS_NAME NativeScaler
+
+/*
+ * source and result are never the same array since sizes differ, pinned in critical mode,
+ * so concurrent calls on disjoint rows of one result (see NativeScaler) never overwrite each other
+ */
+JNI_METHOD(void, nativeScaleRows)(JNIEnv *env, jclass klass,
+                                  jintArray argb, jint argb_offset, jint argb_stride,
+                                  jintArray result, jint result_offset, jint result_stride,
+                                  jint w, jint row_from, jint row_to, jint taps,
+                                  jintArray x_index, jdoubleArray x_weight,
+                                  jintArray y_index, jdoubleArray y_weight) {
+    ScaleTables tables;
+    if (!lock_tables(env, x_index, x_weight, y_index, y_weight, &tables)) {
+        return;
+    }
+    uint32_t *argb_ptr = (uint32_t *) (*env)->GetPrimitiveArrayCritical(env, argb, NULL);
+    if (argb_ptr != NULL) {
+        uint32_t *result_ptr = (uint32_t *) (*env)->GetPrimitiveArrayCritical(env, result, NULL);
+        if (result_ptr != NULL) {
+            imgio_argb_scale_rows(argb_ptr + argb_offset, (uint32_t) argb_stride,
+                                  result_ptr + result_offset, (uint32_t) result_stride,
+                                  (uint32_t) w, (uint32_t) row_from, (uint32_t) row_to, (uint32_t) taps,
+                                  tables.x_index, tables.x_weight, tables.y_index, tables.y_weight);
+            (*env)->ReleasePrimitiveArrayCritical(env, result, result_ptr, 0);
+        }
+        (*env)->ReleasePrimitiveArrayCritical(env, argb, argb_ptr, JNI_ABORT);
+    }
+    unlock_tables(env, x_index, x_weight, y_index, y_weight, &tables);
+}
+
+JNI_METHOD(void, nativeScaleRowsDirect)(JNIEnv *env, jclass klass,
+                                        jobject argb, jint argb_offset, jint argb_stride,
+                                        jobject result, jint result_offset, jint result_stride,
+                                        jint w, jint row_from, jint row_to, jint taps,
+                                        jintArray x_index, jdoubleArray x_weight,
+                                        jintArray y_index, jdoubleArray y_weight) {
+    uint8_t *argb_ptr, *result_ptr;
+    if ((argb_ptr = direct_address(env, argb, argb_offset)) == NULL
+        || (result_ptr = direct_address(env, result, result_offset)) == NULL) {
+        return;
+    }
+    ScaleTables tables;
+    if (!lock_tables(env, x_index, x_weight, y_index, y_weight, &tables)) {
+        return;
+    }
+    imgio_argb_scale_rows((uint32_t *) argb_ptr, (uint32_t) argb_stride,
+                          (uint32_t *) result_ptr, (uint32_t) result_stride,
+                          (uint32_t) w, (uint32_t) row_from, (uint32_t) row_to, (uint32_t) taps,
+                          tables.x_index, tables.x_weight, tables.y_index, tables.y_weight);
+    unlock_tables(env, x_index, x_weight, y_index, y_weight, &tables);
+}
+
+#undef CLASS_NAME
+
+#define CLASS_NAME NativeImageDecoder
+
+/* type of imgio_type, UNKNOWN if not decodable here; size receives width and height */
+JNI_METHOD(jint, nativeReadInfo)(JNIEnv *env, jclass klass, jstring path, jintArray size) {
+    const char *file_path = (*env)->GetStringUTFChars(env, path, NULL);
+    if (file_path == NULL) {
+        return UNKNOWN;
+    }
+    uint32_t width = 0, height = 0;
+    const imgio_type type = imgio_read_argb_info(file_path, &width, &height);
+    (*env)->ReleaseStringUTFChars(env, path, file_path);
+    const jint values[2] = { (jint) width, (jint) height };
+    (*env)->SetIntArrayRegion(env, size, 0, 2, values);
+    return type;
+}
+
+/*
+ * decode into native memory then copy once, the decoder reads the file
+ * so the java array can not be pinned in critical mode meanwhile
+ */
+JNI_METHOD(jint, nativeDecode)(JNIEnv *env, jclass klass, jstring path, jint type,
+                               jintArray argb, jint w, jint h) {
+    const char *file_path = (*env)->GetStringUTFChars(env, path, NULL);
+    if (file_path == NULL) {
+        return -1;
+    }
+    int result = -1;
+    uint32_t *pixels = (uint32_t *) malloc((size_t) w * h * sizeof(uint32_t));
+    if (pixels != NULL) {
+        result = imgio_read_argb(file_path, (imgio_type) type, pixels, (uint32_t) w, (uint32_t) h);
+        if (result == 0) {
+            (*env)->SetIntArrayRegion(env, argb, 0, w * h, (const jint *) pixels);
+        }
+        free(pixels);
+    }
+    (*env)->ReleaseStringUTFChars(env, path, file_path);
+    return result;
+}
+
+/* decode straight into the direct buffer, no copy */
+JNI_METHOD(jint, nativeDecodeDirect)(JNIEnv *env, jclass klass, jstring path, jint type,
+                                     jobject argb, jint argb_offset, jint w, jint h) {
+    uint8_t *argb_ptr = direct_address(env, argb, argb_offset);
+    if (argb_ptr == NULL) {
+        return -1;
+    }
+    const char *file_path = (*env)->GetStringUTFChars(env, path, NULL);
+    if (file_path == NULL) {
+        return -1;
+    }
+    const int result = imgio_read_argb(file_path, (imgio_type) type, (uint32_t *) argb_ptr,
+                                       (uint32_t) w, (uint32_t) h);
+    (*env)->ReleaseStringUTFChars(env, path, file_path);
+    return result;
+}
+
+#undef CLASS_NAME
+
+#define CLASS_NAME NativeGifStream
+
+/* GifStream pointer or 0, size receives screen width and height */
+JNI_METHOD(jlong, nativeOpen)(JNIEnv *env, jclass klass, jstring path, jintArray size) {
+    const char *file_path = (*env)->GetStringUTFChars(env, path, NULL);
+    if (file_path == NULL) {
+        return 0;
+    }
+    GifPicture picture;
+    GifStream *stream = imgio_gif_stream_open(file_path, &picture);
+    (*env)->ReleaseStringUTFChars(env, path, file_path);
+    if (stream != NULL) {
+        const jint values[2] = { picture.screen_width, picture.screen_height };
+        (*env)->SetIntArrayRegion(env, size, 0, 2, values);
+    }
+    return (jlong) (intptr_t) stream;
+}
+
+/*
+ * copy the composed screen into argb, the copy is needed anyway since the screen is kept for the next frame;
+ * info receives image index, delay time in 1/100 s, disposal mode, loop times and image count
+ */
+JNI_METHOD(jint, nativeNext)(JNIEnv *env, jclass klass, jlong handle, jintArray argb, jintArray info) {
+    GifStream *stream = (GifStream *) (intptr_t) handle;
+    GifPicture picture;
+    GifFrame frame;
+    const int result = imgio_gif_stream_next(stream, &picture, &frame);
+    if (result == 1) {
+        (*env)->SetIntArrayRegion(env, argb, 0, picture.screen_width * picture.screen_height,
+                                  (const jint *) frame.rgb_buffer);
+    }
+    if (result >= 0) {
+        const jint values[5] = {
+                result == 1 ? frame.image_index : -1, result == 1 ? frame.delay_time : 0,
+                result == 1 ? frame.disposal_mode : 0, picture.anim_loop_times, picture.image_count
+        };
+        (*env)->SetIntArrayRegion(env, info, 0, 5, values);
+    }
+    return result;
+}
+
+JNI_METHOD(jint, nativeRewind)(JNIEnv *env, jclass klass, jlong handle) {
+    return imgio_gif_stream_rewind((GifStream *) (intptr_t) handle);
+}
+
+JNI_METHOD(void, nativeClose)(JNIEnv *env, jclass klass, jlong handle) {
+    imgio_gif_stream_close((GifStream *) (intptr_t) handle);
+}
+
+#undef CLASS_NAME
+
+#define CLASS_NAME ColorQuantizer
+
+/*
+ * build the octree of the rectangle, return the palette as opaque argb ints or null if failed;
+ * if indices not null, map every pixel to its leaf by index_of_palette, which never misses
+ * since every color of the rectangle was added. Pixels are copied in blocks of rows with
+ * GetIntArrayRegion and indices written back per row, no array is pinned while the tree grows
+ */
+JNI_METHOD(jintArray, nativeOctreePalette)(JNIEnv *env, jclass klass,
+                                           jintArray argb, jint argb_offset, jint argb_stride,
+                                           jint w, jint h, jint max_colors,
+                                           jbyteArray indices, jint indices_offset, jint indices_stride) {
+    ColorQuantization *quantization = create_color_quantization();
+    if (quantization == NULL) {
+        return NULL;
+    }
+    jintArray result = NULL;
+    uint8_t *palette = NULL;
+    const jint block_rows = (w > 0 && w < OCTREE_BLOCK_PIXELS) ? OCTREE_BLOCK_PIXELS / w : 1;
+    const size_t block_size = (size_t) block_rows * (size_t) (w > 0 ? w : 1);
+    jint *block = (jint *) malloc(sizeof(jint) * block_size);
+    uint8_t *index_block = indices != NULL ? (uint8_t *) malloc(block_size) : NULL;
+    bool prepared = block != NULL && (indices == NULL || index_block != NULL);
+    jint y = 0;
+    do { /* once even if h is 0, the last block builds the index */
+        const jint rows = h - y < block_rows ? h - y : block_rows;
+        prepared = prepared
+                   && read_int_rows(env, argb, argb_offset + y * argb_stride, argb_stride, w, rows, block)
+                   && prepare_color_palette_argb(quantization, (const uint32_t *) block, (uint32_t) w,
+                                                 (uint32_t) w, (uint32_t) rows, (uint32_t) max_colors,
+                                                 y + rows >= h);
+        y += rows;
+    } while (prepared && y < h);
+    for (y = 0; prepared && indices != NULL && y < h; y += block_rows) {
+        const jint rows = h - y < block_rows ? h - y : block_rows;
+        prepared = read_int_rows(env, argb, argb_offset + y * argb_stride, argb_stride, w, rows, block);
+        for (jint i = 0; prepared && i < rows * w; ++i) {
+            const uint32_t color = (uint32_t) block[i];
+            index_block[i] = (uint8_t) index_of_palette(quantization, (uint8_t) (color >> 16),
+                                                        (uint8_t) (color >> 8), (uint8_t) color);
+        }
+        for (jint r = 0; prepared && r < rows; ++r) {
+            (*env)->SetByteArrayRegion(env, indices, indices_offset + (y + r) * indices_stride, w,
+                                       (const jbyte *) index_block + r * w);
+            prepared = !(*env)->ExceptionCheck(env);
+        }
+    }
+    free(index_block);
+    free(block);
+
+    if (prepared && generate_color_palette(quantization, &palette)) {
+        const uint32_t count = count_of_palette(quantization);
+        jint colors[256];
+        for (uint32_t i = 0; i < count; ++i) {
+            colors[i] = (jint) (0xFF000000U | (palette[i * 3] << 16) | (palette[i * 3 + 1] << 8) | palette[i * 3 + 2]);
+        }
+        free(palette);
+        result = (*env)->NewIntArray(env, (jsize) count);
+        if (result != NULL) {
+            (*env)->SetIntArrayRegion(env, result, 0, (jsize) count, colors);
+        }
+    }
+    destroy_color_quantization(quantization);
+    return result;
+}
+
+#undef CLASS_NAME
+
+/* interface implementations end */
@@ -227,6 +227,34 @@ bool prepare_color_palette(ColorQuantization *quantization, uint8_t *rgb_data,
     return true;
 }
 
+bool prepare_color_palette_argb(ColorQuantization *quantization, const uint32_t *argb, uint32_t stride,
+                                uint32_t width, uint32_t height, uint32_t max_colors, bool build_index) {
+    if (max_colors > 256 || max_colors <= 0) {
+        return false;
+    }
+    quantization->max_pixel_count = max_colors;
+    for (uint32_t y = 0; y < height; ++y) {
+        const uint32_t *row = argb + y * stride;
+        for (uint32_t x = 0; x < width; ++x) {
+            if (!add_color(quantization, (uint8_t) (row[x] >> 16), (uint8_t) (row[x] >> 8), (uint8_t) row[x])) {
+                return false;
+            }
+            while (quantization->leaf_count > max_colors) {
+                reduce_color(quantization);
+            }
+        }
+    }
+    if (build_index) {
+        int32_t index = 0;
+        set_color_index(quantization->tree_root, &index);
+    }
+    return true;
+}
+
+uint32_t count_of_palette(ColorQuantization *quantization) {
+    return (uint32_t) quantization->leaf_count;
+}
+
 int32_t index_of_palette(ColorQuantization *quantization, uint8_t r, uint8_t g, uint8_t b) {
     OctreeNode *node = quantization->tree_root;
     if (node == NULL) return -1;
@@ -34,4 +34,11 @@ bool generate_color_palette(ColorQuantization *quantization, uint8_t **palette/*
 
 int32_t index_of_palette(ColorQuantization *quantization, uint8_t r, uint8_t g, uint8_t b);
 
+/* same as prepare_color_palette with 0xAARRGGBB pixels of a rectangle, alpha ignored */
+bool prepare_color_palette_argb(ColorQuantization *quantization, const uint32_t *argb, uint32_t stride,
+                                uint32_t width, uint32_t height, uint32_t max_colors, bool build_index);
+
+/* colors really in the palette after prepare_color_palette, the rest of generate_color_palette is undefined */
+uint32_t count_of_palette(ColorQuantization *quantization);
+
 #endif /* OCTREE_PALETTE_H */
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg.benchmark;
+
+/**
+ * Deterministic synthetic images, pixel (x, y) depends on nothing but x, y and the pattern,
+ * so every run, fork and build benchmarks exactly the same pixels.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-13
+ */
+public final class BenchmarkImages {
+    /** smooth gradients with a little noise, histograms are skewed like a photo */
+    public static final String PATTERN_PHOTO = "photo";
+    /** uniform noise on all channels, every histogram bin and lookup table entry is hit */
+    public static final String PATTERN_NOISE = "noise";
+
+    private BenchmarkImages() {
+    }
+
+    /** @param size VGA, 1080p, 4K or 24MP */
+    public static int width(String size) {
+        return dimensions(size)[0];
+    }
+
+    /** @param size VGA, 1080p, 4K or 24MP */
+    public static int height(String size) {
+        return dimensions(size)[1];
+    }
+
+    private static int[] dimensions(String size) {
+        switch (size) {
+            case "VGA":
+                return new int[] {640, 480};
+            case "1080p":
+                return new int[] {1920, 1080};
+            case "4K":
+                return new int[] {3840, 2160};
+            case "24MP":
+                return new int[] {6000, 4000};
+            default:
+                throw new IllegalArgumentException("Unknown size: " + size);
+        }
+    }
+
+    public static int[] create(String pattern, int w, int h) {
+        final int[] argb = new int[w * h];
+        final boolean noise = PATTERN_NOISE.equals(pattern);
+        if (!noise && !PATTERN_PHOTO.equals(pattern)) {
+            throw new IllegalArgumentException("Unknown pattern: " + pattern);
+        }
+        for (int y = 0; y < h; ++y) {
+            for (int x = 0; x < w; ++x) {
+                final int hash = hash(x, y);
+                if (noise) {
+                    argb[y * w + x] = hash;
+                } else {
+                    final int jitter = (hash & 0x0F) - 8;
+                    final int r = clamp(x * 255 / w + jitter);
+                    final int g = clamp(y * 255 / h + jitter);
+                    final int b = clamp(((x + y) * 127 / (w + h)) + 64 + jitter);
+                    argb[y * w + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+                }
+            }
+        }
+        return argb;
+    }
+
+    /** murmur3 finalizer of the pixel position */
+    private static int hash(int x, int y) {
+        int k = x * 0x9E3779B1 + y * 0x85EBCA77;
+        k ^= k >>> 16;
+        k *= 0x85EBCA6B;
+        k ^= k >>> 13;
+        k *= 0xC2B2AE35;
+        k ^= k >>> 16;
+        return k;
+    }
+
+    private static int clamp(int value) {
+        return value > 255 ? 255 : value < 0 ? 0 : value;
+    }
+}
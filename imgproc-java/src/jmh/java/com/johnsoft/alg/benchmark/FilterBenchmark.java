@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.FilterSpec;
+
+/**
+ * Grey and color filters of every filter index, since filters are compiled into lookup tables
+ * all indexes should cost the same, buildLut is the per call compile cost.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-13
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FilterBenchmark {
+    @State(Scope.Thread)
+    public static class SpecState {
+        @Param({"0", "1", "2", "3", "4", "5", "6"})
+        public int filterIndex;
+
+        public FilterSpec spec;
+        public int[] lut;
+
+        @Setup
+        public void setupSpec() {
+            spec = spec(filterIndex);
+            lut = BaseImageProc.buildLut(spec);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FilterState extends ImageState {
+        @Param({"0", "1", "2", "3", "4", "5", "6"})
+        public int filterIndex;
+
+        public FilterSpec spec;
+
+        @Setup
+        public void setupSpec() {
+            spec = spec(filterIndex);
+        }
+    }
+
+    /** typical parameters of each filter index, as the filter dialog defaults */
+    static FilterSpec spec(int filterIndex) {
+        switch (filterIndex) {
+            case BaseImageProc.INDEX_LINEAR_FILTER:
+                return FilterSpec.of(filterIndex).withParams(0.1F, 0.8F, 1.0F);
+            case BaseImageProc.INDEX_LOG_FILTER:
+                return FilterSpec.of(filterIndex).withParams(0.0F, 1.0F, 10.0F);
+            case BaseImageProc.INDEX_GAMMA_FILTER:
+                return FilterSpec.of(filterIndex).withParams(0.0F, 1.0F, 2.2F);
+            case BaseImageProc.INDEX_BINARY_FILTER:
+                return FilterSpec.of(filterIndex).withLevels(64, BaseImageProc.BINARY_FILTER_POLICY_MIN,
+                        192, BaseImageProc.BINARY_FILTER_POLICY_MAX);
+            default:
+                return FilterSpec.of(filterIndex);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int[] buildLut(SpecState state) {
+        return BaseImageProc.buildLut(state.spec);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] greyFilter(FilterState image) {
+        BaseImageProc.greyFilter(image.argb, 0, image.w, image.result, 0, image.w, image.w, image.h, image.spec);
+        return image.result;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] colorFilter(FilterState image) {
+        BaseImageProc.colorFilter(image.argb, 0, image.w, image.result, 0, image.w, image.w, image.h,
+                image.spec, image.spec, image.spec);
+        return image.result;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] greyFilterAllocating(FilterState image) {
+        return BaseImageProc.greyFilter(image.argb, image.w, image.h, image.spec);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] greyColor(ImageState image) {
+        BaseImageProc.greyColor(image.argb, 0, image.w, image.result, 0, image.w, image.w, image.h);
+        return image.result;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.ParallelImageProc;
+
+/**
+ * Histograms and equalization; run with '-p pattern=noise' for the worst case of bins.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-13
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistogramBenchmark {
+    @Benchmark
+    @Threads(1)
+    public int[] greyColorCounts(ImageState image) {
+        return BaseImageProc.getAllColorCounts(image.argb, BaseImageProc.TYPE_GREY_COLOR);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] redColorCounts(ImageState image) {
+        return BaseImageProc.getAllColorCounts(image.argb, BaseImageProc.COMPONENT_RED);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[][] allHistograms(ImageState image) {
+        return BaseImageProc.getAllHistograms(image.argb, image.w, image.h, false);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[][] allHistogramsWithAlpha(ImageState image) {
+        return BaseImageProc.getAllHistograms(image.argb, image.w, image.h, true);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[][] allHistogramsParallel(ImageState image) {
+        return ParallelImageProc.getDefault().getAllHistograms(image.argb, image.w, image.h, false);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] greyEqualizationClassic(ImageState image) {
+        return BaseImageProc.simpleHistogramEqualization(image.argb, BaseImageProc.TYPE_GREY_COLOR, true);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] greyEqualizationPhotoshop(ImageState image) {
+        return BaseImageProc.simpleHistogramEqualization(image.argb, BaseImageProc.TYPE_GREY_COLOR, false);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] rgbEqualization(ImageState image) {
+        return BaseImageProc.equalizeRgb(image.argb, image.w, image.h, true);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] rgbEqualizationParallel(ImageState image) {
+        return ParallelImageProc.getDefault().equalizeRgb(image.argb, image.w, image.h, true);
+    }
+}
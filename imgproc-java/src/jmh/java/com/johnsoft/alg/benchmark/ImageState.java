@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.NativeImageProcBackend;
+
+/**
+ * Source image and a reusable result of one size, created once per trial.
+ * The backend is a parameter so that it is kept in the results, build.gradle sets it from -Pbackend.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-13
+ */
+@State(Scope.Thread)
+public class ImageState {
+    @Param({"VGA", "1080p", "4K", "24MP"})
+    public String size;
+
+    @Param({BenchmarkImages.PATTERN_PHOTO})
+    public String pattern;
+
+    @Param({NativeImageProcBackend.NAME})
+    public String backend;
+
+    public int w;
+    public int h;
+    public int[] argb;
+    public int[] result;
+
+    @Setup
+    public void setup() {
+        w = BenchmarkImages.width(size);
+        h = BenchmarkImages.height(size);
+        argb = BenchmarkImages.create(pattern, w, h);
+        result = new int[w * h];
+        checkBackend(backend);
+    }
+
+    /** the loaded backend should be the one reported, not a fallback to java */
+    static void checkBackend(String backend) {
+        final String name = BaseImageProc.getBackend().getName();
+        if (!name.equals(backend)) {
+            throw new IllegalStateException("Backend is " + name + " instead of " + backend
+                    + ", see -PjniLibs and -Pbackend");
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg.benchmark;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsoft.alg.BaseImageProc;
+
+/**
+ * Where the time of a call goes: arrayCopy is the memory traffic floor of touching every pixel twice,
+ * greyIntoResult adds the grey compute on pinned arrays, greyAllocating adds a new result array,
+ * greyDirect works on direct buffers without pinning, and calcGrey is one bare call per pixel.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-13
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JniOverheadBenchmark {
+    @State(Scope.Thread)
+    public static class DirectState extends ImageState {
+        public IntBuffer argbBuffer;
+        public IntBuffer resultBuffer;
+
+        @Setup
+        public void setupBuffers() {
+            argbBuffer = BaseImageProc.allocateDirectPixels(w, h);
+            argbBuffer.put(argb).clear();
+            resultBuffer = BaseImageProc.allocateDirectPixels(w, h);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PixelState {
+        public int argb = 0xFF40C080;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] arrayCopy(ImageState image) {
+        System.arraycopy(image.argb, 0, image.result, 0, image.argb.length);
+        return image.result;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] greyIntoResult(ImageState image) {
+        BaseImageProc.grey(image.argb, 0, image.w, image.result, 0, image.w, image.w, image.h);
+        return image.result;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] greyAllocating(ImageState image) {
+        return BaseImageProc.grey(image.argb, image.w, image.h);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public IntBuffer greyDirect(DirectState image) {
+        BaseImageProc.grey(image.argbBuffer, image.resultBuffer, image.w, image.h);
+        return image.resultBuffer;
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int calcGrey(PixelState pixel) {
+        return BaseImageProc.calcGrey(pixel.argb);
+    }
+}
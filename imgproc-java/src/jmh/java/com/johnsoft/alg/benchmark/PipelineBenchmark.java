@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.FilterSpec;
+import com.johnsoft.alg.ImagePipeline;
+
+/**
+ * The grey -> gamma -> equalization -> combine bits workflow, as four allocating calls
+ * against one {@link ImagePipeline} with a stats pass and a fused pass.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-14
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PipelineBenchmark {
+    private static final FilterSpec GAMMA = FilterSpec.of(BaseImageProc.INDEX_GAMMA_FILTER)
+            .withParams(0.0F, 1.0F, 2.2F);
+    private static final int MASK = 0xF0;
+
+    @State(Scope.Thread)
+    public static class PipelineState extends ImageState {
+        public ImagePipeline pipeline;
+
+        @Setup
+        public void setupPipeline() {
+            pipeline = ImagePipeline.builder()
+                    .greyColor()
+                    .greyFilter(GAMMA)
+                    .equalizeGrey(true)
+                    .combineBitsPlane(BaseImageProc.TYPE_GREY_COLOR, MASK)
+                    .build();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] sequential(ImageState image) {
+        int[] argb = BaseImageProc.greyColor(image.argb, image.w, image.h);
+        argb = BaseImageProc.greyFilter(argb, image.w, image.h, GAMMA);
+        argb = BaseImageProc.simpleHistogramEqualization(argb, BaseImageProc.TYPE_GREY_COLOR, true);
+        return BaseImageProc.combineBitsPlane(argb, image.w, image.h, BaseImageProc.TYPE_GREY_COLOR, MASK);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] pipeline(PipelineState image) {
+        image.pipeline.apply(image.argb, 0, image.w, image.result, 0, image.w, image.w, image.h);
+        return image.result;
+    }
+}
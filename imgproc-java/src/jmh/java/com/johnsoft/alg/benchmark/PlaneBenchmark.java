@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.NativeImageProcBackend;
+
+/**
+ * Plane slicing and combining. The int[] planes of greyBitPlanesAll and colorBitPlanesAll take
+ * 8 or 24 times the image, so they stop at 4K; the packed variants run at every size.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-13
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlaneBenchmark {
+    @State(Scope.Thread)
+    public static class CombineState extends ImageState {
+        public int[][] planes;
+
+        @Setup
+        public void setupPlanes() {
+            planes = new int[][] {
+                    BaseImageProc.colorComponentPlaneSlicing(argb, w, h, BaseImageProc.COMPONENT_RED,
+                            BaseImageProc.TYPE_ARGB_COLOR),
+                    BaseImageProc.colorComponentPlaneSlicing(argb, w, h, BaseImageProc.COMPONENT_GREEN,
+                            BaseImageProc.TYPE_ARGB_COLOR),
+                    BaseImageProc.colorComponentPlaneSlicing(argb, w, h, BaseImageProc.COMPONENT_BLUE,
+                            BaseImageProc.TYPE_ARGB_COLOR)
+            };
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SmallImageState {
+        @Param({"VGA", "1080p", "4K"})
+        public String size;
+
+        @Param({NativeImageProcBackend.NAME})
+        public String backend;
+
+        public int w;
+        public int h;
+        public int[] argb;
+
+        @Setup
+        public void setup() {
+            w = BenchmarkImages.width(size);
+            h = BenchmarkImages.height(size);
+            argb = BenchmarkImages.create(BenchmarkImages.PATTERN_PHOTO, w, h);
+            ImageState.checkBackend(backend);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] greyBitPlaneSlicing(ImageState image) {
+        BaseImageProc.greyBitPlaneSlicing(image.argb, 0, image.w, image.result, 0, image.w, image.w, image.h, 4);
+        return image.result;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] colorBitPlaneSlicing(ImageState image) {
+        BaseImageProc.colorBitPlaneSlicing(image.argb, 0, image.w, image.result, 0, image.w, image.w, image.h, 12);
+        return image.result;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] colorComponentPlaneSlicing(ImageState image) {
+        BaseImageProc.colorComponentPlaneSlicing(image.argb, 0, image.w, image.result, 0, image.w, image.w, image.h,
+                BaseImageProc.COMPONENT_RED, BaseImageProc.TYPE_ARGB_COLOR);
+        return image.result;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] combineBitsPlane(ImageState image) {
+        BaseImageProc.combineBitsPlane(image.argb, 0, image.w, image.result, 0, image.w, image.w, image.h,
+                BaseImageProc.TYPE_ARGB_COLOR, 0xFFF0F0F0);
+        return image.result;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[] combineSimplePlane(CombineState image) {
+        return BaseImageProc.combineSimplePlane(image.planes, image.w, image.h);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long[][] greyBitPlanesPacked(ImageState image) {
+        return BaseImageProc.greyBitPlanesPacked(image.argb, image.w, image.h);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long[][] colorBitPlanesPacked(ImageState image) {
+        return BaseImageProc.colorBitPlanesPacked(image.argb, image.w, image.h);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[][] greyBitPlanesAll(SmallImageState image) {
+        return BaseImageProc.greyBitPlanesAll(image.argb, image.w, image.h);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int[][] colorBitPlanesAll(SmallImageState image) {
+        return BaseImageProc.colorBitPlanesAll(image.argb, image.w, image.h);
+    }
+}
@@ -65,6 +65,23 @@ public class MainLauncher {
                         face.getAction("Filter-Simple-Histogram-Equalization-Blue"))
                 .addMenuItem("Simple Histogram Equalization", "All",
                         face.getAction("Filter-Simple-Histogram-Equalization-Color"))
+                .addMenuItem("Simple Histogram Equalization", "CLAHE...",
+                        face.getAction("Filter-CLAHE"))
+                .addMenuItem("Filter", "Blur...",
+                        face.getAction("Filter-Blur"))
+                .addSubMenu("Filter", "Convolution")
+                .addMenuItem("Convolution", "Box Blur",
+                        face.getAction("Filter-Convolution-Box-Blur"))
+                .addMenuItem("Convolution", "Gaussian Blur",
+                        face.getAction("Filter-Convolution-Gaussian-Blur"))
+                .addMenuItem("Convolution", "Sharpen",
+                        face.getAction("Filter-Convolution-Sharpen"))
+                .addMenuItem("Convolution", "Edge",
+                        face.getAction("Filter-Convolution-Edge"))
+                .addMenuItem("Convolution", "Emboss",
+                        face.getAction("Filter-Convolution-Emboss"))
+                .addMenuItem("Convolution", "Custom...",
+                        face.getAction("Filter-Convolution-Custom"))
                 .addSubMenu("Filter", "GPU")
                 .addMenuItem("GPU", "normal",
                         face.getAction("Filter-GPU-normal"))
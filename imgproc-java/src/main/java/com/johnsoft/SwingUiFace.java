@@ -38,13 +38,17 @@ import javax.swing.UIManager;
 import javax.swing.WindowConstants;
 
 import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.NativeImageDecoder;
 import com.johnsoft.swing.DialogUtilities;
 import com.johnsoft.swing.JImageView;
 import com.johnsoft.swing.SwingImageView;
 import com.johnsoft.swing.SwingMainWindow;
 import com.johnsoft.swing.SwingMenuManager;
 import com.johnsoft.swing.SwingTabPane;
+import com.johnsoft.swing.actions.BlurAction;
 import com.johnsoft.swing.actions.ChartHistogramAction;
+import com.johnsoft.swing.actions.ClaheAction;
+import com.johnsoft.swing.actions.ConvolutionAction;
 import com.johnsoft.swing.actions.DelegateAction;
 import com.johnsoft.swing.actions.FilterColorPictureAction;
 import com.johnsoft.swing.actions.FilterGreyPictureAction;
@@ -175,6 +179,22 @@ public class SwingUiFace implements UiFace {
             return new SimpleHistEqualizeAction(BaseImageProc.COMPONENT_BLUE);
         } else if ("Filter-Simple-Histogram-Equalization-Color".equals(command)) {
             return new SimpleHistEqualizeAction(BaseImageProc.TYPE_ARGB_COLOR);
+        } else if ("Filter-CLAHE".equals(command)) {
+            return new ClaheAction();
+        } else if ("Filter-Convolution-Box-Blur".equals(command)) {
+            return new ConvolutionAction(ConvolutionAction.BOX_BLUR);
+        } else if ("Filter-Convolution-Gaussian-Blur".equals(command)) {
+            return new ConvolutionAction(ConvolutionAction.GAUSSIAN_BLUR);
+        } else if ("Filter-Convolution-Sharpen".equals(command)) {
+            return new ConvolutionAction(ConvolutionAction.SHARPEN);
+        } else if ("Filter-Convolution-Edge".equals(command)) {
+            return new ConvolutionAction(ConvolutionAction.EDGE);
+        } else if ("Filter-Convolution-Emboss".equals(command)) {
+            return new ConvolutionAction(ConvolutionAction.EMBOSS);
+        } else if ("Filter-Convolution-Custom".equals(command)) {
+            return new ConvolutionAction(ConvolutionAction.CUSTOM);
+        } else if ("Filter-Blur".equals(command)) {
+            return new BlurAction();
         } else if ("Filter-GPU-normal".equals(command)) {
             return new GpuImageProcAction("normal");
         } else if ("Filter-GPU-negative".equals(command)) {
@@ -200,7 +220,7 @@ public class SwingUiFace implements UiFace {
                 public void actionPerformed(final ActionEvent e) {
                     final BufferedImage image;
                     try {
-                        image = ImageIO.read(file);
+                        image = NativeImageDecoder.read(file);
                     } catch (IOException ex) {
                         DialogUtilities.showErrorMessageBox(ex);
                         return;
@@ -16,16 +16,28 @@
  */
 package com.johnsoft.alg;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
 import org.intellij.lang.annotations.MagicConstant;
 
 /**
+ * All methods are reentrant and hold no lock, filter parameters are passed by {@link FilterSpec} per call;
+ * only the compatible filterIndex/filterParam/filterParam2 keep a shared state.
+ * <p>
+ * Arguments are checked here, then the work is done by the {@link ImageProcBackend} chosen at class loading
+ * by system property {@link #BACKEND_PROPERTY}: "native" or "java", the default is native if
+ * libimgproc can be loaded, otherwise java.
+ *
  * @author John Kenrinus Lee
  * @version 2017-06-05
  */
 public class BaseImageProc {
-    static {
-        System.loadLibrary("imgproc-1.0.0");
-    }
+    public static final String BACKEND_PROPERTY = "imgproc.backend";
+    private static final ImageProcBackend backend = loadBackend();
 
     public static final int TYPE_GREY_COLOR = 0;
     public static final int TYPE_ARGB_COLOR = 5;
@@ -46,85 +58,700 @@ public class BaseImageProc {
     public static final int BINARY_FILTER_POLICY_MIN = 1;
     public static final int BINARY_FILTER_POLICY_MAX = 2;
 
-    public static native synchronized int calcGrey(int argb);
-    public static native synchronized int[] grey(int[] argb, int w, int h);
-    public static native synchronized int[] greyColor(int[] argb, int w, int h);
-
-    public static native synchronized double[] calcGreyFilter(double[] argb);
-    public static native synchronized int[] greyFilter(int[] argb, int w, int h);
-    public static native synchronized int[] colorFilter(int[] argb, int w, int h);
-
-    public static native synchronized int[] greyBitPlaneSlicing(int[] argb, int w, int h, int bitPosition);
-    public static native synchronized int[] colorBitPlaneSlicing(int[] argb, int w, int h, int bitPosition);
-    public static native synchronized int[] colorComponentPlaneSlicing(int[] argb, int w, int h,
-                                                                       @MagicConstant(intValues = {
-                                                                               COMPONENT_ALPHA,
-                                                                               COMPONENT_RED,
-                                                                               COMPONENT_GREEN,
-                                                                               COMPONENT_BLUE
-                                                                       })
-                                                                               int position,
-                                                                       @MagicConstant(intValues = {
-                                                                               TYPE_GREY_COLOR,
-                                                                               TYPE_ARGB_COLOR
-                                                                       })
-                                                                               int type);
-
-    public static native synchronized int[] combineSimplePlane(int[][] argbs, int w, int h);
-    public static native synchronized int[] combineBitsPlane(int[] argb, int w, int h,
-                                                             @MagicConstant(intValues = {
-                                                                     TYPE_GREY_COLOR,
-                                                                     TYPE_ARGB_COLOR
-                                                             }) int type, int mask);
+    public static ImageProcBackend getBackend() {
+        return backend;
+    }
+
+    public static int calcGrey(int argb) {
+        return backend.calcGrey(argb);
+    }
+
+    public static int[] grey(int[] argb, int w, int h) {
+        final int[] result = new int[checkSize(argb, w, h)];
+        grey(argb, 0, w, result, 0, w, w, h);
+        return result;
+    }
+
+    public static int[] greyColor(int[] argb, int w, int h) {
+        final int[] result = new int[checkSize(argb, w, h)];
+        greyColor(argb, 0, w, result, 0, w, w, h);
+        return result;
+    }
+
+    /** Apply grey filter on normalized [0, 1] values, used for mapping preview */
+    public static double[] calcGreyFilter(double[] argb, FilterSpec spec) {
+        if (argb == null) {
+            throw new IllegalArgumentException("Values array is null");
+        }
+        return backend.calcGreyFilter(argb, spec);
+    }
 
     /**
+     * Compile the filter into a 256 entries lookup table, entry i is the [0, 255] level which i mapped to.
+     * greyFilter and colorFilter apply exactly this table on each pixel.
+     */
+    public static int[] buildLut(FilterSpec spec) {
+        return backend.buildLut(spec);
+    }
+
+    public static int[] greyFilter(int[] argb, int w, int h, FilterSpec spec) {
+        final int[] result = new int[checkSize(argb, w, h)];
+        greyFilter(argb, 0, w, result, 0, w, w, h, spec);
+        return result;
+    }
+
+    public static int[] colorFilter(int[] argb, int w, int h,
+                                    FilterSpec redSpec, FilterSpec greenSpec, FilterSpec blueSpec) {
+        final int[] result = new int[checkSize(argb, w, h)];
+        colorFilter(argb, 0, w, result, 0, w, w, h, redSpec, greenSpec, blueSpec);
+        return result;
+    }
+
+    /** @see #filterIndex(int, int) */
+    public static double[] calcGreyFilter(double[] argb) {
+        return calcGreyFilter(argb, legacySpec(TYPE_GREY_COLOR));
+    }
+
+    /** @see #filterIndex(int, int) */
+    public static int[] greyFilter(int[] argb, int w, int h) {
+        return greyFilter(argb, w, h, legacySpec(TYPE_GREY_COLOR));
+    }
+
+    /** @see #filterIndex(int, int) */
+    public static int[] colorFilter(int[] argb, int w, int h) {
+        final FilterSpec[] specs;
+        synchronized (BaseImageProc.class) {
+            specs = legacySpecs.clone();
+        }
+        return colorFilter(argb, w, h, specs[COMPONENT_RED], specs[COMPONENT_GREEN], specs[COMPONENT_BLUE]);
+    }
+
+    public static int[] greyBitPlaneSlicing(int[] argb, int w, int h, int bitPosition) {
+        final int[] result = new int[checkSize(argb, w, h)];
+        greyBitPlaneSlicing(argb, 0, w, result, 0, w, w, h, bitPosition);
+        return result;
+    }
+
+    public static int[] colorBitPlaneSlicing(int[] argb, int w, int h, int bitPosition) {
+        final int[] result = new int[checkSize(argb, w, h)];
+        colorBitPlaneSlicing(argb, 0, w, result, 0, w, w, h, bitPosition);
+        return result;
+    }
+
+    /** All 8 grey bit planes in one pass, planes[i] equals greyBitPlaneSlicing(argb, w, h, i) */
+    public static int[][] greyBitPlanesAll(int[] argb, int w, int h) {
+        checkRect(argb, 0, w, w, h);
+        return backend.bitPlanesAll(argb, w, h, true);
+    }
+
+    /** All 24 rgb bit planes in one pass, planes[i] equals colorBitPlaneSlicing(argb, w, h, i) */
+    public static int[][] colorBitPlanesAll(int[] argb, int w, int h) {
+        checkRect(argb, 0, w, w, h);
+        return backend.bitPlanesAll(argb, w, h, false);
+    }
+
+    /**
+     * All 8 grey bit planes in one pass as bitsets, pixel i is set in planes[p] if bit p of its grey level set.
+     * Each plane has (w * h + 63) / 64 words in layout of {@link java.util.BitSet#valueOf(long[])}.
+     */
+    public static long[][] greyBitPlanesPacked(int[] argb, int w, int h) {
+        checkRect(argb, 0, w, w, h);
+        return backend.bitPlanesPacked(argb, w, h, true);
+    }
+
+    /** All 24 rgb bit planes in one pass as bitsets, see {@link #greyBitPlanesPacked(int[], int, int)} */
+    public static long[][] colorBitPlanesPacked(int[] argb, int w, int h) {
+        checkRect(argb, 0, w, w, h);
+        return backend.bitPlanesPacked(argb, w, h, false);
+    }
+
+    /** Whether pixel index is set in the packed plane */
+    public static boolean isBitSet(long[] plane, int index) {
+        return (plane[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public static int[] colorComponentPlaneSlicing(int[] argb, int w, int h,
+                                                          @MagicConstant(intValues = {
+                                                                  COMPONENT_ALPHA,
+                                                                  COMPONENT_RED,
+                                                                  COMPONENT_GREEN,
+                                                                  COMPONENT_BLUE
+                                                          })
+                                                                  int position,
+                                                          @MagicConstant(intValues = {
+                                                                  TYPE_GREY_COLOR,
+                                                                  TYPE_ARGB_COLOR
+                                                          })
+                                                                  int type) {
+        final int[] result = new int[checkSize(argb, w, h)];
+        colorComponentPlaneSlicing(argb, 0, w, result, 0, w, w, h, position, type);
+        return result;
+    }
+
+    /** Later planes win, for each rgb component of each pixel the last non-zero one is kept */
+    public static int[] combineSimplePlane(int[][] argbs, int w, int h) {
+        if (argbs == null) {
+            throw new IllegalArgumentException("Planes array is null");
+        }
+        for (int[] argb : argbs) {
+            checkRect(argb, 0, w, w, h);
+        }
+        return backend.combineSimplePlane(argbs, w, h);
+    }
+
+    public static int[] combineBitsPlane(int[] argb, int w, int h,
+                                         @MagicConstant(intValues = {
+                                                 TYPE_GREY_COLOR,
+                                                 TYPE_ARGB_COLOR
+                                         }) int type, int mask) {
+        final int[] result = new int[checkSize(argb, w, h)];
+        combineBitsPlane(argb, 0, w, result, 0, w, w, h, type, mask);
+        return result;
+    }
+
+    /**
+     * Stateful filter setting kept for compatibility, state is shared by all threads,
+     * prefer passing {@link FilterSpec} to {@link #greyFilter(int[], int, int, FilterSpec)}
+     * or {@link #colorFilter(int[], int, int, FilterSpec, FilterSpec, FilterSpec)}.
+     *
      * @param type  0=grey, 1=red, 2=green, 3=blue
      * @param index 0=no_filter, 1=reverse_filter, 2=linear_filter, 3=log_filter,
      *              4=gamma_filter, 5=stretch_filter, 6=binary_filter
      */
-    public static native synchronized boolean filterIndex(
+    public static synchronized boolean filterIndex(
             @MagicConstant(intValues = {TYPE_GREY_COLOR, COMPONENT_RED, COMPONENT_GREEN, COMPONENT_BLUE})
                     int type,
             @MagicConstant(intValues = {INDEX_NO_FILTER, INDEX_REVERSE_FILTER, INDEX_LINEAR_FILTER,
                     INDEX_LOG_FILTER, INDEX_GAMMA_FILTER, INDEX_STRETCH_FILTER, INDEX_BINARY_FILTER})
-                    int index);
+                    int index) {
+        if (type >= TYPE_GREY_COLOR && type <= COMPONENT_BLUE) {
+            legacyType = type;
+        }
+        legacySpecs[legacyType] = legacySpecs[legacyType].withIndex(index);
+        return true;
+    }
+
     /** like c + l * pow({filter-value}, g) */
-    public static native synchronized boolean filterParam(float c, float l, float g);
+    public static synchronized boolean filterParam(float c, float l, float g) {
+        legacySpecs[legacyType] = legacySpecs[legacyType].withParams(c, l, g);
+        return true;
+    }
 
     /**
      * require: level >= 0 && level <= 255
      * policy: 0=same as level, 1=value 0, 2=value 255, others=no change
      */
-    public static native synchronized boolean filterParam2(int lowLevel,
-                                                           @MagicConstant(intValues = {
-                                                                   BINARY_FILTER_POLICY_SAME,
-                                                                   BINARY_FILTER_POLICY_MIN,
-                                                                   BINARY_FILTER_POLICY_MAX})
-                                                                   int lowPolicy,
-                                                           int highLevel,
+    public static synchronized boolean filterParam2(int lowLevel,
+                                                    @MagicConstant(intValues = {
+                                                            BINARY_FILTER_POLICY_SAME,
+                                                            BINARY_FILTER_POLICY_MIN,
+                                                            BINARY_FILTER_POLICY_MAX})
+                                                            int lowPolicy,
+                                                    int highLevel,
+                                                    @MagicConstant(intValues = {
+                                                            BINARY_FILTER_POLICY_SAME,
+                                                            BINARY_FILTER_POLICY_MIN,
+                                                            BINARY_FILTER_POLICY_MAX})
+                                                            int highPolicy) {
+        legacySpecs[legacyType] = legacySpecs[legacyType].withLevels(lowLevel, lowPolicy, highLevel, highPolicy);
+        return true;
+    }
+
+    public static int[] getAllColorCounts(int[] argb,
+                                                 @MagicConstant(intValues = {
+                                                         TYPE_GREY_COLOR,
+                                                         COMPONENT_ALPHA,
+                                                         COMPONENT_RED,
+                                                         COMPONENT_GREEN,
+                                                         COMPONENT_BLUE
+                                                 })
+                                                         int position) {
+        if (argb == null) {
+            throw new IllegalArgumentException("Pixels array is null");
+        }
+        final int[] counts = new int[256];
+        backend.getAllColorCounts(argb, 0, argb.length, argb.length, 1, position, counts);
+        return counts;
+    }
+
+    public static int[] simpleHistogramEqualization(int[] argb,
                                                            @MagicConstant(intValues = {
-                                                                   BINARY_FILTER_POLICY_SAME,
-                                                                   BINARY_FILTER_POLICY_MIN,
-                                                                   BINARY_FILTER_POLICY_MAX})
-                                                                   int highPolicy);
-
-    public static native synchronized int[] getAllColorCounts(int[] argb,
-                                                              @MagicConstant(intValues = {
-                                                                      TYPE_GREY_COLOR,
-                                                                      COMPONENT_ALPHA,
-                                                                      COMPONENT_RED,
-                                                                      COMPONENT_GREEN,
-                                                                      COMPONENT_BLUE
-                                                              })
-                                                                      int position);
-    public static native synchronized int[] simpleHistogramEqualization(int[] argb,
-                                                                        @MagicConstant(intValues = {
-                                                                                TYPE_GREY_COLOR,
-                                                                                COMPONENT_ALPHA,
-                                                                                COMPONENT_RED,
-                                                                                COMPONENT_GREEN,
-                                                                                COMPONENT_BLUE
-                                                                        })
-                                                                                int position,
-                                                                        boolean usingClassic);
+                                                                   TYPE_GREY_COLOR,
+                                                                   COMPONENT_ALPHA,
+                                                                   COMPONENT_RED,
+                                                                   COMPONENT_GREEN,
+                                                                   COMPONENT_BLUE
+                                                           })
+                                                                   int position,
+                                                           boolean usingClassic) {
+        if (argb == null) {
+            throw new IllegalArgumentException("Pixels array is null");
+        }
+        return backend.simpleHistogramEqualization(argb, position, usingClassic);
+    }
+
+    /**
+     * Same result as simpleHistogramEqualization on COMPONENT_RED, COMPONENT_GREEN and COMPONENT_BLUE in sequence,
+     * but the three histograms are counted in one pass and remapped in a second pass into one new array
+     */
+    public static int[] equalizeRgb(int[] argb, int w, int h, boolean usingClassic) {
+        final int[][] histograms = getAllHistograms(argb, w, h, false);
+        final int[] result = new int[w * h];
+        backend.equalizeRgb(argb, 0, w, result, 0, w, w, h,
+                backend.buildEqualizationLut(histograms[COMPONENT_RED], usingClassic),
+                backend.buildEqualizationLut(histograms[COMPONENT_GREEN], usingClassic),
+                backend.buildEqualizationLut(histograms[COMPONENT_BLUE], usingClassic));
+        return result;
+    }
+
+    /** Equalization mapping of a histogram with 256 counts, such as one of getAllHistograms() */
+    public static int[] buildEqualizationLut(int[] histogram, boolean usingClassic) {
+        checkLut(histogram);
+        return backend.buildEqualizationLut(histogram, usingClassic);
+    }
+
+    /**
+     * The remap pass of {@link #equalizeRgb(int[], int, int, boolean)} with the lookup tables built by
+     * {@link #buildEqualizationLut(int[], boolean)}, alpha kept
+     */
+    public static void equalizeRgb(int[] argb, int argbOffset, int argbStride,
+                                   int[] result, int resultOffset, int resultStride, int w, int h,
+                                   int[] redLut, int[] greenLut, int[] blueLut) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        checkRect(result, resultOffset, resultStride, w, h);
+        checkLut(redLut);
+        checkLut(greenLut);
+        checkLut(blueLut);
+        backend.equalizeRgb(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                redLut, greenLut, blueLut);
+    }
+
+    /**
+     * Contrast limited adaptive histogram equalization. The image is cut into tilesX * tilesY tiles, each tile
+     * gets its own equalization mapping with histogram bins clipped at clipLimit times the mean bin count
+     * (as OpenCV, 2 to 4 is usual, 0 for no limit), and every pixel is mapped by the bilinear interpolation of
+     * the mappings of its four nearest tiles. Grey type equalizes the grey level into a grey image,
+     * argb type equalizes red, green and blue separately with alpha kept.
+     */
+    public static int[] clahe(int[] argb, int w, int h, int tilesX, int tilesY, float clipLimit,
+                              @MagicConstant(intValues = {TYPE_GREY_COLOR, TYPE_ARGB_COLOR}) int type) {
+        checkRect(argb, 0, w, w, h);
+        final boolean grey = checkClahe(w, h, tilesX, tilesY, type);
+        final int[] luts = new int[tilesX * tilesY * (grey ? 256 : 3 * 256)];
+        buildClaheLuts(argb, w, h, tilesX, tilesY, clipLimit, grey, 0, tilesX * tilesY, luts);
+        final int[] result = new int[w * h];
+        backend.claheInterpolate(argb, 0, w, result, 0, w, w, h, 0, h, tilesX, tilesY, luts,
+                JavaImageProcBackend.claheColumns(w, tilesX, grey), grey);
+        return result;
+    }
+
+    /** Clahe mapping of a histogram with 256 counts, clipLimit is the absolute bin limit, 0 for none */
+    public static int[] buildClaheLut(int[] histogram, int clipLimit) {
+        checkLut(histogram);
+        return backend.buildClaheLut(histogram, Math.max(clipLimit, 0));
+    }
+
+    /**
+     * The interpolation pass of {@link #clahe(int[], int, int, int, int, float, int)} over rows [rowFrom, rowTo)
+     * of the w * h image, argbOffset and resultOffset point at pixel (0, 0). luts holds the
+     * {@link #buildClaheLut(int[], int) mappings} of the tiles row by row, 256 entries per tile if grey,
+     * otherwise red, green and blue 256 entries each.
+     */
+    public static void claheInterpolate(int[] argb, int argbOffset, int argbStride,
+                                        int[] result, int resultOffset, int resultStride, int w, int h,
+                                        int rowFrom, int rowTo, int tilesX, int tilesY, int[] luts, boolean grey) {
+        claheInterpolate(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h, rowFrom, rowTo,
+                tilesX, tilesY, luts, null, grey);
+    }
+
+    /** columns from {@link JavaImageProcBackend#claheColumns(int, int, boolean)} shared by strips, null to build */
+    static void claheInterpolate(int[] argb, int argbOffset, int argbStride,
+                                 int[] result, int resultOffset, int resultStride, int w, int h,
+                                 int rowFrom, int rowTo, int tilesX, int tilesY, int[] luts, int[] columns,
+                                 boolean grey) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        checkRect(result, resultOffset, resultStride, w, h);
+        checkClahe(w, h, tilesX, tilesY, grey ? TYPE_GREY_COLOR : TYPE_ARGB_COLOR);
+        if (rowFrom < 0 || rowTo < rowFrom || rowTo > h) {
+            throw new IllegalArgumentException("Row range [" + rowFrom + ", " + rowTo + ") invalid");
+        }
+        if (luts == null || luts.length != tilesX * tilesY * (grey ? 256 : 3 * 256)) {
+            throw new IllegalArgumentException("Require " + tilesX * tilesY * (grey ? 256 : 3 * 256)
+                    + " lookup table entries");
+        }
+        if (columns == null) {
+            columns = JavaImageProcBackend.claheColumns(w, tilesX, grey);
+        } else if (columns.length != 3 * w) {
+            throw new IllegalArgumentException("Require " + 3 * w + " column entries");
+        }
+        backend.claheInterpolate(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                rowFrom, rowTo, tilesX, tilesY, luts, columns, grey);
+    }
+
+    /** mappings of tiles [tileFrom, tileTo) of the grid into luts in the layout of claheInterpolate */
+    static void buildClaheLuts(int[] argb, int w, int h, int tilesX, int tilesY, float clipLimit, boolean grey,
+                               int tileFrom, int tileTo, int[] luts) {
+        final int[][] histograms = new int[4][256];
+        for (int t = tileFrom; t < tileTo; ++t) {
+            final int x0 = (int) ((long) (t % tilesX) * w / tilesX);
+            final int x1 = (int) ((long) (t % tilesX + 1) * w / tilesX);
+            final int y0 = (int) ((long) (t / tilesX) * h / tilesY);
+            final int y1 = (int) ((long) (t / tilesX + 1) * h / tilesY);
+            for (int[] histogram : histograms) {
+                Arrays.fill(histogram, 0);
+            }
+            backend.getAllHistograms(argb, y0 * w + x0, w, x1 - x0, y1 - y0, histograms);
+            final int limit = clipLimit > 0 ? Math.max(1, (int) (clipLimit * (x1 - x0) * (y1 - y0) / 256)) : 0;
+            if (grey) {
+                System.arraycopy(backend.buildClaheLut(histograms[TYPE_GREY_COLOR], limit), 0, luts, t * 256, 256);
+            } else {
+                for (int c = 0; c < 3; ++c) {
+                    System.arraycopy(backend.buildClaheLut(histograms[COMPONENT_RED + c], limit), 0,
+                            luts, (t * 3 + c) * 256, 256);
+                }
+            }
+        }
+    }
+
+    /** @return true if grey */
+    static boolean checkClahe(int w, int h, int tilesX, int tilesY, int type) {
+        if (tilesX < 1 || tilesY < 1 || tilesX > w || tilesY > h) {
+            throw new IllegalArgumentException("Tile grid " + tilesX + 'x' + tilesY + " does not fit image "
+                    + w + 'x' + h);
+        }
+        if (type != TYPE_GREY_COLOR && type != TYPE_ARGB_COLOR) {
+            throw new IllegalArgumentException("Unsupported type " + type);
+        }
+        return type == TYPE_GREY_COLOR;
+    }
+
+    /*
+     * Caller supplied result variants: result is written into the w * h rectangle starting at
+     * resultOffset with row stride resultStride, source is read in the same way. So result buffers
+     * can be reused, the rectangle can be a part of a larger image, and result can be argb for in-place.
+     */
+
+    public static void grey(int[] argb, int argbOffset, int argbStride,
+                            int[] result, int resultOffset, int resultStride, int w, int h) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        checkRect(result, resultOffset, resultStride, w, h);
+        backend.grey(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h);
+    }
+
+    public static void greyColor(int[] argb, int argbOffset, int argbStride,
+                                 int[] result, int resultOffset, int resultStride, int w, int h) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        checkRect(result, resultOffset, resultStride, w, h);
+        backend.greyColor(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h);
+    }
+
+    public static void greyFilter(int[] argb, int argbOffset, int argbStride,
+                                  int[] result, int resultOffset, int resultStride, int w, int h,
+                                  FilterSpec spec) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        checkRect(result, resultOffset, resultStride, w, h);
+        backend.greyLut(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                backend.buildLut(spec));
+    }
+
+    public static void colorFilter(int[] argb, int argbOffset, int argbStride,
+                                   int[] result, int resultOffset, int resultStride, int w, int h,
+                                   FilterSpec redSpec, FilterSpec greenSpec, FilterSpec blueSpec) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        checkRect(result, resultOffset, resultStride, w, h);
+        backend.colorLut(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                backend.buildLut(redSpec), backend.buildLut(greenSpec), backend.buildLut(blueSpec));
+    }
+
+    public static void greyBitPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                           int[] result, int resultOffset, int resultStride, int w, int h,
+                                           int bitPosition) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        checkRect(result, resultOffset, resultStride, w, h);
+        checkBitPosition(bitPosition);
+        backend.greyBitPlaneSlicing(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                bitPosition);
+    }
+
+    public static void colorBitPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                            int[] result, int resultOffset, int resultStride, int w, int h,
+                                            int bitPosition) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        checkRect(result, resultOffset, resultStride, w, h);
+        checkBitPosition(bitPosition);
+        backend.colorBitPlaneSlicing(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                bitPosition);
+    }
+
+    public static void colorComponentPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                                  int[] result, int resultOffset, int resultStride, int w, int h,
+                                                  @MagicConstant(intValues = {
+                                                          COMPONENT_ALPHA,
+                                                          COMPONENT_RED,
+                                                          COMPONENT_GREEN,
+                                                          COMPONENT_BLUE
+                                                  })
+                                                          int position,
+                                                  @MagicConstant(intValues = {
+                                                          TYPE_GREY_COLOR,
+                                                          TYPE_ARGB_COLOR
+                                                  })
+                                                          int type) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        checkRect(result, resultOffset, resultStride, w, h);
+        backend.colorComponentPlaneSlicing(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                position, type);
+    }
+
+    public static void combineBitsPlane(int[] argb, int argbOffset, int argbStride,
+                                        int[] result, int resultOffset, int resultStride, int w, int h,
+                                        @MagicConstant(intValues = {
+                                                TYPE_GREY_COLOR,
+                                                TYPE_ARGB_COLOR
+                                        }) int type, int mask) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        checkRect(result, resultOffset, resultStride, w, h);
+        backend.combineBitsPlane(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h, type, mask);
+    }
+
+    /** Map grey level of each pixel by greyLut which built by {@link #buildLut(FilterSpec)} */
+    public static void greyLut(int[] argb, int argbOffset, int argbStride,
+                               int[] result, int resultOffset, int resultStride, int w, int h, int[] greyLut) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        checkRect(result, resultOffset, resultStride, w, h);
+        checkLut(greyLut);
+        backend.greyLut(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h, greyLut);
+    }
+
+    /** Map each rgb component by the lookup tables which built by {@link #buildLut(FilterSpec)} */
+    public static void colorLut(int[] argb, int argbOffset, int argbStride,
+                                int[] result, int resultOffset, int resultStride, int w, int h,
+                                int[] redLut, int[] greenLut, int[] blueLut) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        checkRect(result, resultOffset, resultStride, w, h);
+        checkLut(redLut);
+        checkLut(greenLut);
+        checkLut(blueLut);
+        backend.colorLut(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                redLut, greenLut, blueLut);
+    }
+
+    /**
+     * Grey, red, green, blue and optional alpha histograms in one pass,
+     * indexed by TYPE_GREY_COLOR, COMPONENT_RED, COMPONENT_GREEN, COMPONENT_BLUE and COMPONENT_ALPHA.
+     * @return int[4][256], or int[5][256] if withAlpha
+     */
+    public static int[][] getAllHistograms(int[] argb, int w, int h, boolean withAlpha) {
+        final int[][] histograms = new int[withAlpha ? 5 : 4][256];
+        getAllHistograms(argb, 0, w, w, 0, h, histograms);
+        return histograms;
+    }
+
+    /**
+     * Add histograms of rows [fromRow, toRow) into histograms which has 4 or 5 (with alpha) arrays of 256 counts,
+     * histograms is not cleared before, so partial histograms of row ranges can be accumulated.
+     */
+    public static void getAllHistograms(int[] argb, int argbOffset, int argbStride, int w, int fromRow, int toRow,
+                                        int[][] histograms) {
+        if (fromRow < 0 || toRow < fromRow) {
+            throw new IllegalArgumentException("Row range [" + fromRow + ", " + toRow + ") invalid");
+        }
+        final int offset = argbOffset + fromRow * argbStride;
+        checkRect(argb, offset, argbStride, w, toRow - fromRow);
+        if (histograms == null || (histograms.length != 4 && histograms.length != 5)) {
+            throw new IllegalArgumentException("Require 4 or 5 histograms");
+        }
+        for (int[] histogram : histograms) {
+            if (histogram == null || histogram.length < 256) {
+                throw new IllegalArgumentException("Require histogram with 256 elements at least");
+            }
+        }
+        backend.getAllHistograms(argb, offset, argbStride, w, toRow - fromRow, histograms);
+    }
+
+    /**
+     * Add 256 counts of the rectangle into counts, counts is not cleared before,
+     * so partial counts of several rectangles can be accumulated into one array.
+     */
+    public static void getAllColorCounts(int[] argb, int argbOffset, int argbStride, int w, int h,
+                                         @MagicConstant(intValues = {
+                                                 TYPE_GREY_COLOR,
+                                                 COMPONENT_ALPHA,
+                                                 COMPONENT_RED,
+                                                 COMPONENT_GREEN,
+                                                 COMPONENT_BLUE
+                                         })
+                                                 int position,
+                                         int[] counts) {
+        checkRect(argb, argbOffset, argbStride, w, h);
+        if (counts == null || counts.length < 256 || counts == argb) {
+            throw new IllegalArgumentException("Require a separate counts array with 256 elements at least");
+        }
+        backend.getAllColorCounts(argb, argbOffset, argbStride, w, h, position, counts);
+    }
+
+    private static int checkSize(int[] pixels, int w, int h) {
+        checkRect(pixels, 0, w, w, h);
+        return w * h;
+    }
+
+    static void checkBitPosition(int bitPosition) {
+        if (bitPosition < 0 || bitPosition > 31) {
+            throw new IllegalArgumentException("Bit position " + bitPosition + " out of [0, 31]");
+        }
+    }
+
+    static void checkLut(int[] lut) {
+        if (lut == null || lut.length != 256) {
+            throw new IllegalArgumentException("Require lookup table with 256 elements");
+        }
+    }
+
+    static void checkRect(int[] pixels, int offset, int stride, int w, int h) {
+        if (pixels == null) {
+            throw new IllegalArgumentException("Pixels array is null");
+        }
+        if (w < 0 || h < 0 || offset < 0 || stride < w
+                || (h > 0 && offset + (long) (h - 1) * stride + w > pixels.length)) {
+            throw new IllegalArgumentException("Rectangle [offset=" + offset + ", stride=" + stride
+                    + ", w=" + w + ", h=" + h + "] out of array length " + pixels.length);
+        }
+    }
+
+    /*
+     * Direct buffer variants: pixels are read and written in place, no copy of pixels into java heap.
+     * Each buffer should be a direct IntBuffer or ByteBuffer
+     * in native byte order, the pixels start at buffer's current position, and the position is not changed.
+     * A ByteBuffer position should be a multiple of 4, result and counts buffers should not be read-only.
+     */
+
+    public static void grey(Buffer argb, Buffer result, int w, int h) {
+        final int size = w * h;
+        backend.grey(checkDirect(argb, size), checkResult(result, size), size);
+    }
+
+    public static void greyColor(Buffer argb, Buffer result, int w, int h) {
+        final int size = w * h;
+        backend.greyColor(checkDirect(argb, size), checkResult(result, size), size);
+    }
+
+    public static void greyFilter(Buffer argb, Buffer result, int w, int h, FilterSpec spec) {
+        final int size = w * h;
+        backend.greyLut(checkDirect(argb, size), checkResult(result, size), size, backend.buildLut(spec));
+    }
+
+    public static void colorFilter(Buffer argb, Buffer result, int w, int h,
+                                   FilterSpec redSpec, FilterSpec greenSpec, FilterSpec blueSpec) {
+        final int size = w * h;
+        backend.colorLut(checkDirect(argb, size), checkResult(result, size), size,
+                backend.buildLut(redSpec), backend.buildLut(greenSpec), backend.buildLut(blueSpec));
+    }
+
+    public static void greyBitPlaneSlicing(Buffer argb, Buffer result, int w, int h, int bitPosition) {
+        final int size = w * h;
+        checkBitPosition(bitPosition);
+        backend.greyBitPlaneSlicing(checkDirect(argb, size), checkResult(result, size), size, bitPosition);
+    }
+
+    public static void colorBitPlaneSlicing(Buffer argb, Buffer result, int w, int h, int bitPosition) {
+        final int size = w * h;
+        checkBitPosition(bitPosition);
+        backend.colorBitPlaneSlicing(checkDirect(argb, size), checkResult(result, size), size, bitPosition);
+    }
+
+    public static void colorComponentPlaneSlicing(Buffer argb, Buffer result, int w, int h,
+                                                  @MagicConstant(intValues = {
+                                                          COMPONENT_ALPHA,
+                                                          COMPONENT_RED,
+                                                          COMPONENT_GREEN,
+                                                          COMPONENT_BLUE
+                                                  })
+                                                          int position,
+                                                  @MagicConstant(intValues = {
+                                                          TYPE_GREY_COLOR,
+                                                          TYPE_ARGB_COLOR
+                                                  })
+                                                          int type) {
+        final int size = w * h;
+        backend.colorComponentPlaneSlicing(checkDirect(argb, size), checkResult(result, size), size,
+                position, type);
+    }
+
+    /** @param counts receive 256 counts */
+    public static void getAllColorCounts(Buffer argb, int w, int h,
+                                         @MagicConstant(intValues = {
+                                                 TYPE_GREY_COLOR,
+                                                 COMPONENT_ALPHA,
+                                                 COMPONENT_RED,
+                                                 COMPONENT_GREEN,
+                                                 COMPONENT_BLUE
+                                         })
+                                                 int position,
+                                         Buffer counts) {
+        final int size = w * h;
+        backend.getAllColorCounts(checkDirect(argb, size), size, position, checkResult(counts, 256));
+    }
+
+    /** Allocate a direct buffer for w * h pixels which all direct buffer variants accepted */
+    public static IntBuffer allocateDirectPixels(int w, int h) {
+        return ByteBuffer.allocateDirect(w * h * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    private static Buffer checkDirect(Buffer buffer, int intCount) {
+        if (buffer == null || !buffer.isDirect()) {
+            throw new IllegalArgumentException("Require direct buffer");
+        }
+        final int remaining;
+        if (buffer instanceof IntBuffer) {
+            if (((IntBuffer) buffer).order() != ByteOrder.nativeOrder()) {
+                throw new IllegalArgumentException("Require native byte order");
+            }
+            remaining = buffer.remaining();
+        } else if (buffer instanceof ByteBuffer) {
+            if (((ByteBuffer) buffer).order() != ByteOrder.nativeOrder()) {
+                throw new IllegalArgumentException("Require native byte order");
+            }
+            if ((buffer.position() & 3) != 0) {
+                throw new IllegalArgumentException("ByteBuffer position should be a multiple of 4");
+            }
+            remaining = buffer.remaining() >> 2;
+        } else {
+            throw new IllegalArgumentException("Require IntBuffer or ByteBuffer");
+        }
+        if (intCount < 0 || remaining < intCount) {
+            throw new IllegalArgumentException("Buffer remaining " + remaining + " less than " + intCount);
+        }
+        return buffer;
+    }
+
+    /** native code writes through the address, a read-only buffer would not stop it */
+    private static Buffer checkResult(Buffer buffer, int intCount) {
+        checkDirect(buffer, intCount);
+        if (buffer.isReadOnly()) {
+            throw new IllegalArgumentException("Result buffer is read-only");
+        }
+        return buffer;
+    }
+
+    /** indexed by type: 0=grey, 1=red, 2=green, 3=blue; only for the stateful compatible methods */
+    private static final FilterSpec[] legacySpecs = new FilterSpec[] {
+            FilterSpec.NONE, FilterSpec.NONE, FilterSpec.NONE, FilterSpec.NONE
+    };
+    private static int legacyType = TYPE_GREY_COLOR;
+
+    private static synchronized FilterSpec legacySpec(int type) {
+        return legacySpecs[type];
+    }
+
+    private static ImageProcBackend loadBackend() {
+        final String name = System.getProperty(BACKEND_PROPERTY, "");
+        if (JavaImageProcBackend.NAME.equals(name)) {
+            return new JavaImageProcBackend();
+        }
+        if (NativeImageProcBackend.isAvailable()) {
+            return new NativeImageProcBackend();
+        }
+        System.out.println("BaseImageProc: native library not loaded, use java backend");
+        return new JavaImageProcBackend();
+    }
 }
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.util.Arrays;
+
+/**
+ * Black and white image packed 64 pixels per long, each row starts at a new word so that rows can be shifted
+ * and combined word by word; bit x &amp; 63 of word x &gt;&gt;&gt; 6 of a row is pixel x, bits past the width are 0.
+ * Converts from the bit planes of {@link BaseImageProc#greyBitPlanesPacked(int[], int, int)}, whose rows are not
+ * word aligned, and from the 0 / 255 output of the binary filter. See {@link Morphology}.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public final class BinaryImage {
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] words;
+
+    public BinaryImage(int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Size should not be negative");
+        }
+        if ((long) ((width + 63) >>> 6) * height > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Image too large: " + width + 'x' + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words = new long[wordsPerRow * height];
+    }
+
+    /** pixels whose grey level is not less than threshold are set, 128 for the output of the binary filter */
+    public static BinaryImage fromArgb(int[] argb, int w, int h, int threshold) {
+        BaseImageProc.checkRect(argb, 0, w, w, h);
+        final int[] grey = BaseImageProc.grey(argb, w, h);
+        final BinaryImage image = new BinaryImage(w, h);
+        for (int y = 0; y < h; ++y) {
+            final int row = y * image.wordsPerRow;
+            for (int x = 0; x < w; ++x) {
+                if ((grey[y * w + x] & 0xFF) >= threshold) {
+                    image.words[row + (x >>> 6)] |= 1L << x;
+                }
+            }
+        }
+        return image;
+    }
+
+    /** from a plane of (w * h + 63) / 64 words in layout of {@link java.util.BitSet#valueOf(long[])} */
+    public static BinaryImage fromBitPlane(long[] plane, int w, int h) {
+        final BinaryImage image = new BinaryImage(w, h);
+        if (plane == null || plane.length < ((long) w * h + 63) / 64) {
+            throw new IllegalArgumentException("Plane should have " + ((long) w * h + 63) / 64 + " words");
+        }
+        for (int y = 0; y < h; ++y) {
+            final int row = y * image.wordsPerRow;
+            for (int i = 0; i < image.wordsPerRow; ++i) {
+                final long bit = (long) y * w + (i << 6);
+                final int j = (int) (bit >>> 6);
+                final int shift = (int) (bit & 63);
+                long word = plane[j] >>> shift;
+                if (shift != 0 && j + 1 < plane.length) {
+                    word |= plane[j + 1] << (64 - shift);
+                }
+                image.words[row + i] = word;
+            }
+            image.clearTail(y);
+        }
+        return image;
+    }
+
+    /** back to the layout of {@link #fromBitPlane(long[], int, int)} */
+    public long[] toBitPlane() {
+        final long[] plane = new long[(int) (((long) width * height + 63) / 64)];
+        for (int y = 0; y < height; ++y) {
+            final int row = y * wordsPerRow;
+            for (int i = 0; i < wordsPerRow; ++i) {
+                final long bit = (long) y * width + (i << 6);
+                final int j = (int) (bit >>> 6);
+                final int shift = (int) (bit & 63);
+                final long word = words[row + i];
+                plane[j] |= word << shift;
+                if (shift != 0 && j + 1 < plane.length) {
+                    plane[j + 1] |= word >>> (64 - shift);
+                }
+            }
+        }
+        return plane;
+    }
+
+    /** set pixels as foreground, others as background, both are argb */
+    public int[] toArgb(int foreground, int background) {
+        final int[] argb = new int[width * height];
+        for (int y = 0; y < height; ++y) {
+            final int row = y * wordsPerRow;
+            for (int x = 0; x < width; ++x) {
+                argb[y * width + x] = (words[row + (x >>> 6)] & (1L << x)) != 0 ? foreground : background;
+            }
+        }
+        return argb;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    /** row y is words [y * wordsPerRow, (y + 1) * wordsPerRow), not a copy */
+    public long[] getWords() {
+        return words;
+    }
+
+    public boolean get(int x, int y) {
+        checkPixel(x, y);
+        return (words[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    public void set(int x, int y, boolean value) {
+        checkPixel(x, y);
+        if (value) {
+            words[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+        } else {
+            words[y * wordsPerRow + (x >>> 6)] &= ~(1L << x);
+        }
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BinaryImage)) {
+            return false;
+        }
+        final BinaryImage that = (BinaryImage) o;
+        return width == that.width && height == that.height && Arrays.equals(words, that.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * width + height) + Arrays.hashCode(words);
+    }
+
+    /** zero the bits of row y past the width */
+    void clearTail(int y) {
+        if ((width & 63) != 0) {
+            words[(y + 1) * wordsPerRow - 1] &= ~(-1L << width);
+        }
+    }
+
+    private void checkPixel(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            throw new IllegalArgumentException("Pixel (" + x + ", " + y + ") out of image " + width + 'x' + height);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Quantize ARGB pixels to a palette of at most 256 colors, optionally with Floyd-Steinberg dithering.
+ * The palette comes from the octree of octree_palette.c over JNI, or is given.
+ * <p>
+ * Pixels are mapped by an inverse palette on a 32x32x32 grid of RGB instead of walking the octree:
+ * a cell holds the nearest palette color of its center, found on first use, so the search is paid once
+ * per cell and not per pixel. Without dithering, row strips run on the pool of {@link ParallelImageProc};
+ * the error of dithering flows down the image, so it runs row by row with two rows of error only.
+ * Alpha is ignored, the palette is opaque. One instance can quantize many images concurrently.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public final class ColorQuantizer {
+    public static final int MAX_COLORS = 256;
+
+    private static final int GRID_BITS = 5;
+    private static final int GRID_SHIFT = 8 - GRID_BITS;
+    private static final int GRID_MASK = (1 << GRID_BITS) - 1;
+    /** error of dithering is kept in 1/16 */
+    private static final int ERROR_SHIFT = 4;
+
+    private final int[] palette;
+    /** palette index + 1 per grid cell, 0 for not searched yet; races only store the same value */
+    private final int[] inverse;
+    private final ParallelImageProc parallel;
+
+    private ColorQuantizer(int[] palette, int[] inverse, ParallelImageProc parallel) {
+        this.palette = palette;
+        this.inverse = inverse;
+        this.parallel = parallel;
+    }
+
+    /** libimgio is loaded by NativeImageDecoder */
+    public static boolean isAvailable() {
+        return NativeImageDecoder.isAvailable();
+    }
+
+    /** a given palette of 1 to 256 colors, alpha of colors ignored */
+    public static ColorQuantizer of(int[] palette) {
+        if (palette.length == 0 || palette.length > MAX_COLORS) {
+            throw new IllegalArgumentException("Palette size should be in [1, " + MAX_COLORS + "]");
+        }
+        final int[] colors = new int[palette.length];
+        for (int i = 0; i < palette.length; ++i) {
+            colors[i] = 0xFF000000 | palette[i];
+        }
+        return new ColorQuantizer(colors, new int[1 << (GRID_BITS * 3)], null);
+    }
+
+    public static ColorQuantizer octree(int[] argb, int w, int h, int maxColors) {
+        return octree(argb, 0, w, w, h, maxColors);
+    }
+
+    /**
+     * palette of at most maxColors by the octree of the rectangle
+     * @throws IllegalStateException if libimgio is not loaded
+     */
+    public static ColorQuantizer octree(int[] argb, int argbOffset, int argbStride, int w, int h, int maxColors) {
+        return octree(argb, argbOffset, argbStride, w, h, maxColors, null, 0, 0);
+    }
+
+    /**
+     * palette of at most maxColors by the octree of the rectangle, and if indices is not null,
+     * every pixel mapped to its own octree leaf (index_of_palette), which is not always the nearest color
+     * @throws IllegalStateException if libimgio is not loaded
+     */
+    public static ColorQuantizer octree(int[] argb, int argbOffset, int argbStride, int w, int h, int maxColors,
+                                        byte[] indices, int indicesOffset, int indicesStride) {
+        if (!isAvailable()) {
+            throw new IllegalStateException("Native library imgio-1.0.0 unavailable");
+        }
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, w, h);
+        if (indices != null) {
+            checkIndices(indices, indicesOffset, indicesStride, w, h);
+        }
+        if (maxColors <= 0 || maxColors > MAX_COLORS) {
+            throw new IllegalArgumentException("Max colors should be in [1, " + MAX_COLORS + "]");
+        }
+        final int[] palette = nativeOctreePalette(argb, argbOffset, argbStride, w, h, maxColors,
+                indices, indicesOffset, indicesStride);
+        if (palette == null || palette.length == 0) {
+            throw new IllegalStateException("Octree palette failed");
+        }
+        return new ColorQuantizer(palette, new int[1 << (GRID_BITS * 3)], null);
+    }
+
+    /** same quantizer and inverse palette run on another pool, default is {@link ParallelImageProc#getDefault()} */
+    public ColorQuantizer withParallel(ParallelImageProc parallel) {
+        return new ColorQuantizer(palette, inverse, parallel);
+    }
+
+    public int[] getPalette() {
+        return palette.clone();
+    }
+
+    public int getColorCount() {
+        return palette.length;
+    }
+
+    /** index of the nearest palette color of the grid cell of rgb */
+    public int indexOf(int rgb) {
+        return inverseIndex(((rgb >> 16) & 0xFF) >> GRID_SHIFT, ((rgb >> 8) & 0xFF) >> GRID_SHIFT,
+                (rgb & 0xFF) >> GRID_SHIFT);
+    }
+
+    public byte[] quantize(int[] argb, int w, int h, boolean dither) {
+        final byte[] indices = new byte[w * h];
+        quantize(argb, 0, w, w, h, indices, 0, w, dither);
+        return indices;
+    }
+
+    public void quantize(final int[] argb, final int argbOffset, final int argbStride, final int w, int h,
+                         final byte[] indices, final int indicesOffset, final int indicesStride, boolean dither) {
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, w, h);
+        checkIndices(indices, indicesOffset, indicesStride, w, h);
+        if (dither) {
+            ditherRows(argb, argbOffset, argbStride, w, h, indices, indicesOffset, indicesStride);
+            return;
+        }
+        final ParallelImageProc parallel = this.parallel != null ? this.parallel : ParallelImageProc.getDefault();
+        parallel.executeRows(w, h, new ParallelImageProc.RowKernel() {
+            @Override
+            void apply(int rowFrom, int rowTo) {
+                mapRows(argb, argbOffset, argbStride, w, indices, indicesOffset, indicesStride, rowFrom, rowTo);
+            }
+        });
+    }
+
+    /** palette colors of indices, for preview */
+    public int[] toArgb(byte[] indices, int w, int h) {
+        checkIndices(indices, 0, w, w, h);
+        final int[] result = new int[w * h];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = palette[indices[i] & 0xFF];
+        }
+        return result;
+    }
+
+    /** TYPE_BYTE_INDEXED image over indices without copy, for palettized png or gif export by ImageIO */
+    public BufferedImage toIndexedImage(byte[] indices, int w, int h) {
+        checkIndices(indices, 0, w, w, h);
+        final int size = palette.length;
+        final byte[] r = new byte[size];
+        final byte[] g = new byte[size];
+        final byte[] b = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            r[i] = (byte) (palette[i] >> 16);
+            g[i] = (byte) (palette[i] >> 8);
+            b[i] = (byte) palette[i];
+        }
+        final int bits = size <= 2 ? 1 : size <= 4 ? 2 : size <= 16 ? 4 : 8;
+        final IndexColorModel colorModel = new IndexColorModel(bits, size, r, g, b);
+        final WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(indices, w * h),
+                w, h, w, 1, new int[] {0}, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private void mapRows(int[] argb, int argbOffset, int argbStride, int w,
+                         byte[] indices, int indicesOffset, int indicesStride, int rowFrom, int rowTo) {
+        final int[] inverse = this.inverse;
+        int pixel, cell, index;
+        for (int y = rowFrom; y < rowTo; ++y) {
+            final int argbRow = argbOffset + y * argbStride;
+            final int indicesRow = indicesOffset + y * indicesStride;
+            for (int x = 0; x < w; ++x) {
+                pixel = argb[argbRow + x];
+                cell = ((pixel >> (16 + GRID_SHIFT)) & GRID_MASK) << (GRID_BITS * 2)
+                        | ((pixel >> (8 + GRID_SHIFT)) & GRID_MASK) << GRID_BITS
+                        | ((pixel >> GRID_SHIFT) & GRID_MASK);
+                index = inverse[cell] - 1;
+                if (index < 0) {
+                    index = searchCell(cell);
+                }
+                indices[indicesRow + x] = (byte) index;
+            }
+        }
+    }
+
+    /** serpentine Floyd-Steinberg, error of the current and the next row in 1/16 with a pixel of margin */
+    private void ditherRows(int[] argb, int argbOffset, int argbStride, int w, int h,
+                            byte[] indices, int indicesOffset, int indicesStride) {
+        final int[] palette = this.palette;
+        int[] current = new int[(w + 2) * 3];
+        int[] next = new int[(w + 2) * 3];
+        int[] swap;
+        int pixel, color, index, e, r, g, b, errorR, errorG, errorB;
+        for (int y = 0; y < h; ++y) {
+            final boolean leftToRight = (y & 1) == 0;
+            final int step = leftToRight ? 1 : -1;
+            final int stepError = step * 3;
+            final int argbRow = argbOffset + y * argbStride;
+            final int indicesRow = indicesOffset + y * indicesStride;
+            for (int i = 0, x = leftToRight ? 0 : w - 1; i < w; ++i, x += step) {
+                pixel = argb[argbRow + x];
+                e = (x + 1) * 3;
+                r = clamp(((pixel >> 16) & 0xFF) + ((current[e] + 8) >> ERROR_SHIFT));
+                g = clamp(((pixel >> 8) & 0xFF) + ((current[e + 1] + 8) >> ERROR_SHIFT));
+                b = clamp((pixel & 0xFF) + ((current[e + 2] + 8) >> ERROR_SHIFT));
+                index = inverseIndex(r >> GRID_SHIFT, g >> GRID_SHIFT, b >> GRID_SHIFT);
+                indices[indicesRow + x] = (byte) index;
+                color = palette[index];
+                errorR = r - ((color >> 16) & 0xFF);
+                errorG = g - ((color >> 8) & 0xFF);
+                errorB = b - (color & 0xFF);
+                // 7/16 ahead, 3/16 behind below, 5/16 below, 1/16 ahead below
+                current[e + stepError] += errorR * 7;
+                current[e + stepError + 1] += errorG * 7;
+                current[e + stepError + 2] += errorB * 7;
+                next[e - stepError] += errorR * 3;
+                next[e - stepError + 1] += errorG * 3;
+                next[e - stepError + 2] += errorB * 3;
+                next[e] += errorR * 5;
+                next[e + 1] += errorG * 5;
+                next[e + 2] += errorB * 5;
+                next[e + stepError] += errorR;
+                next[e + stepError + 1] += errorG;
+                next[e + stepError + 2] += errorB;
+            }
+            swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, 0);
+        }
+    }
+
+    private int inverseIndex(int r5, int g5, int b5) {
+        final int cell = (r5 << (GRID_BITS * 2)) | (g5 << GRID_BITS) | b5;
+        final int index = inverse[cell] - 1;
+        return index >= 0 ? index : searchCell(cell);
+    }
+
+    /** nearest palette color of the cell center by squared distance */
+    private int searchCell(int cell) {
+        final int half = 1 << (GRID_SHIFT - 1);
+        final int r = ((cell >> (GRID_BITS * 2)) << GRID_SHIFT) + half;
+        final int g = (((cell >> GRID_BITS) & GRID_MASK) << GRID_SHIFT) + half;
+        final int b = ((cell & GRID_MASK) << GRID_SHIFT) + half;
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        int color, dr, dg, db, distance;
+        for (int i = 0; i < palette.length; ++i) {
+            color = palette[i];
+            dr = ((color >> 16) & 0xFF) - r;
+            dg = ((color >> 8) & 0xFF) - g;
+            db = (color & 0xFF) - b;
+            distance = dr * dr + dg * dg + db * db;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        inverse[cell] = best + 1;
+        return best;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 0xFF ? 0xFF : value;
+    }
+
+    /** same as {@link BaseImageProc#checkRect(int[], int, int, int, int)} for indices */
+    private static void checkIndices(byte[] indices, int offset, int stride, int w, int h) {
+        if (indices == null) {
+            throw new IllegalArgumentException("Indices array is null");
+        }
+        if (w < 0 || h < 0 || offset < 0 || stride < w
+                || (h > 0 && offset + (long) (h - 1) * stride + w > indices.length)) {
+            throw new IllegalArgumentException("Rectangle [offset=" + offset + ", stride=" + stride
+                    + ", w=" + w + ", h=" + h + "] out of array length " + indices.length);
+        }
+    }
+
+    private static native int[] nativeOctreePalette(int[] argb, int argbOffset, int argbStride,
+                                                    int w, int h, int maxColors,
+                                                    byte[] indices, int indicesOffset, int indicesStride);
+}
@@ -0,0 +1,526 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.util.Arrays;
+
+/**
+ * Convolution of the red, green and blue channels of ARGB pixels by an arbitrary kernel, alpha is kept.
+ * A kernel of rank 1 is detected and run as a horizontal then a vertical 1-D pass.
+ * <p>
+ * The result is cut into tiles which source and result fit in cache as strips of {@link ParallelImageProc} do,
+ * the tiles run on its pool. Each tile reads its own halo of kernel size around it, edges are clamped,
+ * so tiles never wait for each other; a separable tile keeps its horizontal pass in a tile buffer.
+ * Weights are fixed point ints, as many fraction bits as the sum of absolute weights allows without overflow
+ * (14 at most), so 8-bit channels are summed in int only. Sums are rounded to the nearest, then clamped.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public final class Convolution {
+    private static final int MAX_SHIFT = 14;
+    /** the largest accumulated value allowed, margin for rounding */
+    private static final long MAX_SUM = 1L << 30;
+    private static final int TILE_WIDTH = 256;
+    private static final float SEPARABLE_EPSILON = 1e-6F;
+
+    private static final ThreadLocal<Scratch> scratches = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final int kernelWidth;
+    private final int kernelHeight;
+    private final float[] weights;
+    /** factors of a separable kernel, null if not separable */
+    private final float[] horizontal;
+    private final float[] vertical;
+    private final int bias;
+    private final ParallelImageProc parallel;
+
+    private final int[] weightsFixed;
+    private final int shift;
+    private final int[] horizontalFixed;
+    private final int horizontalShift;
+    private final int[] verticalFixed;
+    /** fraction bits kept between the two passes */
+    private final int middleBits;
+    private final int verticalShift;
+
+    private Convolution(int kernelWidth, int kernelHeight, float[] weights, float[] horizontal, float[] vertical,
+                        int bias, ParallelImageProc parallel) {
+        this.kernelWidth = kernelWidth;
+        this.kernelHeight = kernelHeight;
+        this.weights = weights;
+        this.horizontal = horizontal;
+        this.vertical = vertical;
+        this.bias = bias;
+        this.parallel = parallel;
+        if (horizontal == null) {
+            final double sum = sumOfAbs(weights);
+            shift = fractionBits(255.0 * sum, MAX_SHIFT);
+            weightsFixed = toFixed(weights, shift);
+            horizontalFixed = verticalFixed = null;
+            horizontalShift = middleBits = verticalShift = 0;
+        } else {
+            final double sumH = sumOfAbs(horizontal);
+            final double sumV = sumOfAbs(vertical);
+            horizontalShift = fractionBits(255.0 * sumH, MAX_SHIFT);
+            final int bits = fractionBits(255.0 * sumH * sumV, MAX_SHIFT + 8);
+            middleBits = Math.min(Math.min(8, bits / 2), horizontalShift);
+            verticalShift = Math.min(MAX_SHIFT, bits - middleBits);
+            horizontalFixed = toFixed(horizontal, horizontalShift);
+            verticalFixed = toFixed(vertical, verticalShift);
+            weightsFixed = null;
+            shift = 0;
+        }
+    }
+
+    /**
+     * kernel of kernelWidth x kernelHeight weights in rows, anchored at (kernelWidth / 2, kernelHeight / 2);
+     * detected as separable if it is the outer product of a column and a row
+     */
+    public static Convolution of(int kernelWidth, int kernelHeight, float... weights) {
+        if (kernelWidth <= 0 || kernelHeight <= 0) {
+            throw new IllegalArgumentException("Kernel size should be positive");
+        }
+        if (weights == null || weights.length != kernelWidth * kernelHeight) {
+            throw new IllegalArgumentException("Weights length should be " + kernelWidth * kernelHeight);
+        }
+        checkFinite(weights);
+        final float[] copy = weights.clone();
+        final float[][] factors = factorize(kernelWidth, kernelHeight, copy);
+        if (factors != null) {
+            return new Convolution(kernelWidth, kernelHeight, copy, factors[0], factors[1], 0, null);
+        }
+        return new Convolution(kernelWidth, kernelHeight, copy, null, null, 0, null);
+    }
+
+    /** horizontal then vertical pass, the kernel is vertical x horizontal */
+    public static Convolution separable(float[] horizontal, float[] vertical) {
+        if (horizontal == null || vertical == null || horizontal.length == 0 || vertical.length == 0) {
+            throw new IllegalArgumentException("Factors should not be empty");
+        }
+        checkFinite(horizontal);
+        checkFinite(vertical);
+        final float[] weights = new float[horizontal.length * vertical.length];
+        for (int i = 0; i < vertical.length; ++i) {
+            for (int j = 0; j < horizontal.length; ++j) {
+                weights[i * horizontal.length + j] = vertical[i] * horizontal[j];
+            }
+        }
+        return new Convolution(horizontal.length, vertical.length, weights, horizontal.clone(), vertical.clone(),
+                0, null);
+    }
+
+    /** mean of (2 * radius + 1) square */
+    public static Convolution box(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius should not be negative");
+        }
+        final float[] factor = new float[radius * 2 + 1];
+        Arrays.fill(factor, 1.0F / factor.length);
+        return separable(factor, factor);
+    }
+
+    /** radius of 3 sigma */
+    public static Convolution gaussian(double sigma) {
+        if (!(sigma > 0.0) || Double.isInfinite(sigma)) {
+            throw new IllegalArgumentException("Sigma should be positive");
+        }
+        final int radius = Math.max(1, (int) Math.ceil(sigma * 3.0));
+        final float[] factor = new float[radius * 2 + 1];
+        double sum = 0.0;
+        for (int i = -radius; i <= radius; ++i) {
+            sum += Math.exp(-(i * i) / (2.0 * sigma * sigma));
+        }
+        for (int i = -radius; i <= radius; ++i) {
+            factor[i + radius] = (float) (Math.exp(-(i * i) / (2.0 * sigma * sigma)) / sum);
+        }
+        return separable(factor, factor);
+    }
+
+    /** value + amount * (value - mean of 4 neighbors * 4) */
+    public static Convolution sharpen(float amount) {
+        return of(3, 3,
+                0.0F, -amount, 0.0F,
+                -amount, 1.0F + 4.0F * amount, -amount,
+                0.0F, -amount, 0.0F);
+    }
+
+    /** negative laplacian of 8 neighbors, edges bright on black */
+    public static Convolution edge() {
+        return of(3, 3,
+                -1.0F, -1.0F, -1.0F,
+                -1.0F, 8.0F, -1.0F,
+                -1.0F, -1.0F, -1.0F);
+    }
+
+    /** horizontal gradient, separable, half grey for no gradient */
+    public static Convolution sobelX() {
+        return separable(new float[] {-1.0F, 0.0F, 1.0F}, new float[] {1.0F, 2.0F, 1.0F}).withBias(128);
+    }
+
+    /** vertical gradient, separable, half grey for no gradient */
+    public static Convolution sobelY() {
+        return separable(new float[] {1.0F, 2.0F, 1.0F}, new float[] {-1.0F, 0.0F, 1.0F}).withBias(128);
+    }
+
+    /** weights sum to 1, flat regions keep their value, so unlike sobel no bias is needed */
+    public static Convolution emboss() {
+        return of(3, 3,
+                -2.0F, -1.0F, 0.0F,
+                -1.0F, 1.0F, 1.0F,
+                0.0F, 1.0F, 2.0F);
+    }
+
+    /** added to every channel after the sum, before clamp */
+    public Convolution withBias(int bias) {
+        return new Convolution(kernelWidth, kernelHeight, weights, horizontal, vertical, bias, parallel);
+    }
+
+    /** run on another pool, default is {@link ParallelImageProc#getDefault()} */
+    public Convolution withParallel(ParallelImageProc parallel) {
+        return new Convolution(kernelWidth, kernelHeight, weights, horizontal, vertical, bias, parallel);
+    }
+
+    public int getKernelWidth() {
+        return kernelWidth;
+    }
+
+    public int getKernelHeight() {
+        return kernelHeight;
+    }
+
+    public float[] getWeights() {
+        return weights.clone();
+    }
+
+    public boolean isSeparable() {
+        return horizontal != null;
+    }
+
+    public int[] apply(int[] argb, int w, int h) {
+        final int[] result = new int[w * h];
+        apply(argb, 0, w, result, 0, w, w, h);
+        return result;
+    }
+
+    /** result may be argb itself, then the source rectangle is copied first */
+    public void apply(int[] argb, int argbOffset, int argbStride,
+                      final int[] result, final int resultOffset, final int resultStride, final int w, final int h) {
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, w, h);
+        BaseImageProc.checkRect(result, resultOffset, resultStride, w, h);
+        if (w == 0 || h == 0) {
+            return;
+        }
+        if (argb == result) {
+            final int[] copy = new int[w * h];
+            for (int y = 0; y < h; ++y) {
+                System.arraycopy(argb, argbOffset + y * argbStride, copy, y * w, w);
+            }
+            argb = copy;
+            argbOffset = 0;
+            argbStride = w;
+        }
+        final ParallelImageProc parallel = this.parallel != null ? this.parallel : ParallelImageProc.getDefault();
+        final int tileW = Math.min(w, TILE_WIDTH);
+        final int tileH = Math.min(h, parallel.getStripRows(tileW));
+        final int columns = (w + tileW - 1) / tileW;
+        final int rows = (h + tileH - 1) / tileH;
+        final int[] source = argb;
+        final int sourceOffset = argbOffset;
+        final int sourceStride = argbStride;
+        parallel.executeRange(columns * rows, 1, new ParallelImageProc.RowKernel() {
+            @Override
+            void apply(int tileFrom, int tileTo) {
+                final Scratch scratch = scratches.get();
+                for (int tile = tileFrom; tile < tileTo; ++tile) {
+                    final int x0 = (tile % columns) * tileW;
+                    final int y0 = (tile / columns) * tileH;
+                    final int tw = Math.min(tileW, w - x0);
+                    final int th = Math.min(tileH, h - y0);
+                    if (horizontal != null) {
+                        separableTile(source, sourceOffset, sourceStride, result, resultOffset, resultStride,
+                                w, h, x0, y0, tw, th, scratch);
+                    } else {
+                        fullTile(source, sourceOffset, sourceStride, result, resultOffset, resultStride,
+                                w, h, x0, y0, tw, th, scratch);
+                    }
+                }
+            }
+        });
+    }
+
+    /** horizontal pass of the tile rows and halo rows into the tile buffer, then vertical pass into result */
+    private void separableTile(int[] argb, int argbOffset, int argbStride,
+                               int[] result, int resultOffset, int resultStride,
+                               int w, int h, int x0, int y0, int tw, int th, Scratch scratch) {
+        final int[] hq = horizontalFixed;
+        final int[] vq = verticalFixed;
+        final int taps = hq.length;
+        final int vTaps = vq.length;
+        final int left = taps / 2;
+        final int top = vTaps / 2;
+        final int span = tw + taps - 1;
+        final int middleH = th + vTaps - 1;
+        final int[] columns = scratch.columns(span);
+        final int[] r = scratch.red(span);
+        final int[] g = scratch.green(span);
+        final int[] b = scratch.blue(span);
+        final int planeSize = tw * middleH;
+        final int[] middle = scratch.middle(planeSize * 3);
+        final int down = horizontalShift - middleBits;
+        final int downHalf = down > 0 ? 1 << (down - 1) : 0;
+        for (int i = 0; i < span; ++i) {
+            columns[i] = clamp(x0 - left + i, w);
+        }
+        int pixel, weight, sumR, sumG, sumB;
+        for (int row = 0; row < middleH; ++row) {
+            final int sourceRow = argbOffset + clamp(y0 - top + row, h) * argbStride;
+            for (int i = 0; i < span; ++i) {
+                pixel = argb[sourceRow + columns[i]];
+                r[i] = (pixel >> 16) & 0xFF;
+                g[i] = (pixel >> 8) & 0xFF;
+                b[i] = pixel & 0xFF;
+            }
+            final int middleRow = row * tw;
+            for (int x = 0; x < tw; ++x) {
+                sumR = downHalf;
+                sumG = downHalf;
+                sumB = downHalf;
+                for (int k = 0; k < taps; ++k) {
+                    weight = hq[k];
+                    sumR += weight * r[x + k];
+                    sumG += weight * g[x + k];
+                    sumB += weight * b[x + k];
+                }
+                middle[middleRow + x] = sumR >> down;
+                middle[planeSize + middleRow + x] = sumG >> down;
+                middle[planeSize * 2 + middleRow + x] = sumB >> down;
+            }
+        }
+        final int totalShift = middleBits + verticalShift;
+        final int half = totalShift > 0 ? 1 << (totalShift - 1) : 0;
+        for (int y = 0; y < th; ++y) {
+            Arrays.fill(r, 0, tw, half);
+            Arrays.fill(g, 0, tw, half);
+            Arrays.fill(b, 0, tw, half);
+            for (int k = 0; k < vTaps; ++k) {
+                weight = vq[k];
+                if (weight == 0) {
+                    continue;
+                }
+                final int middleRow = (y + k) * tw;
+                for (int x = 0; x < tw; ++x) {
+                    r[x] += weight * middle[middleRow + x];
+                    g[x] += weight * middle[planeSize + middleRow + x];
+                    b[x] += weight * middle[planeSize * 2 + middleRow + x];
+                }
+            }
+            store(argb, argbOffset + (y0 + y) * argbStride + x0, result, resultOffset + (y0 + y) * resultStride + x0,
+                    tw, r, g, b, totalShift);
+        }
+    }
+
+    /** the tile and its halo unpacked into channel planes with edges clamped, then summed row by row */
+    private void fullTile(int[] argb, int argbOffset, int argbStride,
+                          int[] result, int resultOffset, int resultStride,
+                          int w, int h, int x0, int y0, int tw, int th, Scratch scratch) {
+        final int[] wq = weightsFixed;
+        final int left = kernelWidth / 2;
+        final int top = kernelHeight / 2;
+        final int planeW = tw + kernelWidth - 1;
+        final int planeH = th + kernelHeight - 1;
+        final int planeSize = planeW * planeH;
+        final int[] columns = scratch.columns(planeW);
+        final int[] planes = scratch.middle(planeSize * 3);
+        final int[] r = scratch.red(tw);
+        final int[] g = scratch.green(tw);
+        final int[] b = scratch.blue(tw);
+        for (int i = 0; i < planeW; ++i) {
+            columns[i] = clamp(x0 - left + i, w);
+        }
+        int pixel, weight;
+        for (int row = 0; row < planeH; ++row) {
+            final int sourceRow = argbOffset + clamp(y0 - top + row, h) * argbStride;
+            final int planeRow = row * planeW;
+            for (int i = 0; i < planeW; ++i) {
+                pixel = argb[sourceRow + columns[i]];
+                planes[planeRow + i] = (pixel >> 16) & 0xFF;
+                planes[planeSize + planeRow + i] = (pixel >> 8) & 0xFF;
+                planes[planeSize * 2 + planeRow + i] = pixel & 0xFF;
+            }
+        }
+        final int half = shift > 0 ? 1 << (shift - 1) : 0;
+        for (int y = 0; y < th; ++y) {
+            Arrays.fill(r, 0, tw, half);
+            Arrays.fill(g, 0, tw, half);
+            Arrays.fill(b, 0, tw, half);
+            for (int ky = 0; ky < kernelHeight; ++ky) {
+                for (int kx = 0; kx < kernelWidth; ++kx) {
+                    weight = wq[ky * kernelWidth + kx];
+                    if (weight == 0) {
+                        continue;
+                    }
+                    final int base = (y + ky) * planeW + kx;
+                    for (int x = 0; x < tw; ++x) {
+                        r[x] += weight * planes[base + x];
+                        g[x] += weight * planes[planeSize + base + x];
+                        b[x] += weight * planes[planeSize * 2 + base + x];
+                    }
+                }
+            }
+            store(argb, argbOffset + (y0 + y) * argbStride + x0, result, resultOffset + (y0 + y) * resultStride + x0,
+                    tw, r, g, b, shift);
+        }
+    }
+
+    /** rounded sums shifted down, biased and clamped, alpha from the source pixel */
+    private void store(int[] argb, int argbIndex, int[] result, int resultIndex, int tw,
+                       int[] r, int[] g, int[] b, int shift) {
+        final int bias = this.bias;
+        for (int x = 0; x < tw; ++x) {
+            result[resultIndex + x] = (argb[argbIndex + x] & 0xFF000000)
+                    | clampComponent((r[x] >> shift) + bias) << 16
+                    | clampComponent((g[x] >> shift) + bias) << 8
+                    | clampComponent((b[x] >> shift) + bias);
+        }
+    }
+
+    /** rows and columns of a rank 1 kernel scaled so that the row has absolute sum 1, null if rank is not 1 */
+    private static float[][] factorize(int kernelWidth, int kernelHeight, float[] weights) {
+        int pivot = 0;
+        for (int i = 1; i < weights.length; ++i) {
+            if (Math.abs(weights[i]) > Math.abs(weights[pivot])) {
+                pivot = i;
+            }
+        }
+        final float pivotWeight = weights[pivot];
+        if (pivotWeight == 0.0F) {
+            return null;
+        }
+        final int pivotRow = pivot / kernelWidth;
+        final int pivotColumn = pivot % kernelWidth;
+        final float[] row = new float[kernelWidth];
+        final float[] column = new float[kernelHeight];
+        for (int j = 0; j < kernelWidth; ++j) {
+            row[j] = weights[pivotRow * kernelWidth + j] / pivotWeight;
+        }
+        for (int i = 0; i < kernelHeight; ++i) {
+            column[i] = weights[i * kernelWidth + pivotColumn];
+        }
+        final float tolerance = SEPARABLE_EPSILON * Math.abs(pivotWeight);
+        for (int i = 0; i < kernelHeight; ++i) {
+            for (int j = 0; j < kernelWidth; ++j) {
+                if (Math.abs(weights[i * kernelWidth + j] - column[i] * row[j]) > tolerance) {
+                    return null;
+                }
+            }
+        }
+        final float scale = (float) sumOfAbs(row);
+        for (int j = 0; j < kernelWidth; ++j) {
+            row[j] /= scale;
+        }
+        for (int i = 0; i < kernelHeight; ++i) {
+            column[i] *= scale;
+        }
+        return new float[][] {row, column};
+    }
+
+    private static void checkFinite(float[] weights) {
+        for (float weight : weights) {
+            if (Float.isNaN(weight) || Float.isInfinite(weight)) {
+                throw new IllegalArgumentException("Weights should be finite");
+            }
+        }
+    }
+
+    private static double sumOfAbs(float[] values) {
+        double sum = 0.0;
+        for (float value : values) {
+            sum += Math.abs(value);
+        }
+        return sum;
+    }
+
+    /** the most fraction bits, not more than limit, keeping maxValue in int sums */
+    private static int fractionBits(double maxValue, int limit) {
+        int bits = limit;
+        while (bits > 0 && maxValue * (1L << bits) >= MAX_SUM) {
+            --bits;
+        }
+        if (maxValue >= MAX_SUM) {
+            throw new IllegalArgumentException("Kernel weights too large for fixed point");
+        }
+        return bits;
+    }
+
+    /** rounded weights, the center one takes the rounding error so that the sum is kept */
+    private static int[] toFixed(float[] weights, int bits) {
+        final int[] fixed = new int[weights.length];
+        final double scale = 1L << bits;
+        double sum = 0.0;
+        long fixedSum = 0L;
+        for (int i = 0; i < weights.length; ++i) {
+            fixed[i] = (int) Math.round(weights[i] * scale);
+            sum += weights[i];
+            fixedSum += fixed[i];
+        }
+        fixed[weights.length / 2] += (int) (Math.round(sum * scale) - fixedSum);
+        return fixed;
+    }
+
+    private static int clamp(int index, int size) {
+        return index < 0 ? 0 : index >= size ? size - 1 : index;
+    }
+
+    private static int clampComponent(int value) {
+        return value < 0 ? 0 : value > 0xFF ? 0xFF : value;
+    }
+
+    /** buffers of a worker thread, grown on demand */
+    private static final class Scratch {
+        private int[] columns = new int[0];
+        private int[] red = new int[0];
+        private int[] green = new int[0];
+        private int[] blue = new int[0];
+        private int[] middle = new int[0];
+
+        int[] columns(int size) {
+            return columns.length >= size ? columns : (columns = new int[size]);
+        }
+
+        int[] red(int size) {
+            return red.length >= size ? red : (red = new int[size]);
+        }
+
+        int[] green(int size) {
+            return green.length >= size ? green : (green = new int[size]);
+        }
+
+        int[] blue(int size) {
+            return blue.length >= size ? blue : (blue = new int[size]);
+        }
+
+        int[] middle(int size) {
+            return middle.length >= size ? middle : (middle = new int[size]);
+        }
+    }
+}
@@ -0,0 +1,631 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Conformance of the neighborhood filters to plain references written straight from their definitions:
+ * {@link Convolution} against a double sum over the clamped window, rounded once,
+ * {@link IntegralImage} against summing every window cut at the edges, gaussian as its three stacked boxes,
+ * {@link MedianFilter} against sorting the window of every pixel, {@link Morphology} of grey, color and
+ * {@link BinaryImage} against the min or max of every window cut at the edges, dilation by the mirrored element.
+ * {@link NativeScaler} over libimgio against its java sums, if libimgio is in java.library.path.
+ * Fixed point may be 1 off per channel, everything else must be exact.
+ * Filters run on a pool of small strips, so that images of a few hundred pixels already cross tiles,
+ * and on sub-rectangles and in-place. Run main, exit status is 1 if any check fails.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public final class FilterConformance {
+    private static final long SEED = 20171015L;
+    private static final int MARGIN = 3;
+    /** 16 rows per strip of 256 pixels */
+    private static final int STRIP_BYTES = 32 * 1024;
+    /** w, h pairs; 300 x 70 is two tile columns and several tile rows */
+    private static final int[][] CONVOLUTION_SIZES = { {1, 1}, {2, 3}, {67, 5}, {300, 70} };
+    /** window w, h pairs, even sizes are anchored at (size / 2), 301 x 71 is larger than every image */
+    private static final int[][] WINDOWS = { {1, 1}, {2, 2}, {3, 3}, {4, 1}, {1, 5}, {9, 9}, {64, 3}, {301, 71} };
+    /** strips of 128 columns, 300 wide has a short last strip */
+    private static final int[][] MEDIAN_SIZES = { {1, 1}, {2, 3}, {5, 40}, {130, 9}, {300, 4} };
+    /** strips of 64 columns and of 8 words, so 130 and 600 are several strips with a short last one */
+    private static final int[][] MORPHOLOGY_SIZES = { {1, 1}, {2, 2}, {7, 3}, {64, 5}, {130, 65}, {600, 9} };
+    /** element w, h pairs, even sizes are anchored at (size / 2), 65 and 130 wide cross the packed words */
+    private static final int[][] ELEMENTS = {
+            {1, 1}, {2, 1}, {1, 2}, {2, 2}, {3, 3}, {4, 5}, {8, 2}, {15, 4}, {65, 1}, {130, 3}
+    };
+    /** source w, h and destination w, h */
+    private static final int[][] SCALES = {
+            {1, 1, 5, 3}, {2, 3, 1, 1}, {64, 64, 64, 64}, {67, 5, 300, 11}, {300, 70, 97, 151}, {640, 480, 160, 120}
+    };
+
+    private final ParallelImageProc parallel;
+    private final List<String> failures = new ArrayList<>();
+    private int checks;
+
+    private FilterConformance(ParallelImageProc parallel) {
+        this.parallel = parallel;
+    }
+
+    public static void main(String[] args) {
+        final List<String> failures = compare();
+        for (String failure : failures) {
+            System.out.println(failure);
+        }
+        System.out.println(failures.isEmpty() ? "All conform" : failures.size() + " checks failed");
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    /** @return description of each failed check, empty if every filter matches its reference */
+    public static List<String> compare() {
+        final ParallelImageProc parallel = new ParallelImageProc(new ForkJoinPool(4), STRIP_BYTES);
+        try {
+            final FilterConformance conformance = new FilterConformance(parallel);
+            conformance.checkConvolutions();
+            conformance.checkIntegralImages();
+            conformance.checkMedians();
+            conformance.checkMorphology();
+            conformance.checkScalers();
+            System.out.println(conformance.checks + " checks against the references");
+            return conformance.failures;
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    private void checkConvolutions() {
+        final Random random = new Random(SEED);
+        checkConvolution("box 0", Convolution.box(0), 0, 0, true);
+        checkConvolution("box 1", Convolution.box(1), 0, 1, true);
+        checkConvolution("box 4", Convolution.box(4), 0, 1, true);
+        checkConvolution("gaussian 0.6", Convolution.gaussian(0.6), 0, 1, true);
+        checkConvolution("gaussian 2", Convolution.gaussian(2.0), 0, 1, true);
+        checkConvolution("sharpen 0.5", Convolution.sharpen(0.5F), 0, 1, false);
+        checkConvolution("sharpen 3", Convolution.sharpen(3.0F), 0, 1, false);
+        checkConvolution("edge", Convolution.edge(), 0, 0, false);
+        checkConvolution("emboss", Convolution.emboss(), 0, 0, false);
+        checkConvolution("sobelX", Convolution.sobelX(), 128, 0, true);
+        checkConvolution("sobelY", Convolution.sobelY(), 128, 0, true);
+        checkConvolution("zero", Convolution.of(3, 3, new float[9]).withBias(7), 7, 0, false);
+        // even sizes are anchored at (size / 2)
+        checkConvolution("2x2", Convolution.of(2, 2, 0.25F, 0.25F, 0.25F, 0.25F), 0, 1, true);
+        checkConvolution("1x4", Convolution.of(1, 4, 0.1F, 0.2F, 0.3F, 0.4F), 0, 1, true);
+        checkConvolution("2x4 separable", Convolution.separable(new float[] {0.5F, 0.5F},
+                new float[] {0.25F, 0.25F, 0.25F, 0.25F}), 0, 1, true);
+        checkConvolution("4x3 random", Convolution.of(4, 3, randomWeights(random, 12, 0.3F)), 0, 1, false);
+        checkConvolution("5x3 random", Convolution.of(5, 3, randomWeights(random, 15, 0.3F)), 0, 1, false);
+        final float[] row = randomWeights(random, 5, 0.5F);
+        final float[] column = randomWeights(random, 3, 1.0F);
+        final float[] product = new float[15];
+        for (int i = 0; i < 3; ++i) {
+            for (int j = 0; j < 5; ++j) {
+                product[i * 5 + j] = column[i] * row[j];
+            }
+        }
+        checkConvolution("5x3 rank 1", Convolution.of(5, 3, product), 0, 1, true);
+        // integer weights of growing sums take fewer fraction bits down to none, fixed point is still exact
+        for (int s : new int[] {1, 256, 1 << 12, 1 << 19}) {
+            checkConvolution("3x3 integer " + s, Convolution.of(3, 3,
+                    s, -s, 0,
+                    0, s, -s,
+                    -s, 0, s).withBias(128), 128, 0, false);
+        }
+        for (int s : new int[] {2, 512, 1 << 18}) {
+            checkConvolution("3x1 integer " + s, Convolution.of(3, 1, -s, 0, s).withBias(128), 128, 0, true);
+        }
+        // positive weights reach the largest sums, an overflow turns white areas black
+        for (int s : new int[] {1 << 8, 1 << 16}) {
+            checkConvolution("3x3 positive " + s, Convolution.of(3, 3,
+                    s, 2 * s, s,
+                    2 * s, s, 2 * s,
+                    s, 2 * s, s), 0, 0, false);
+            checkConvolution("3x1 positive " + s, Convolution.of(3, 1, s, 2 * s, s), 0, 0, true);
+        }
+    }
+
+    private void checkConvolution(String name, Convolution convolution, int bias, int tolerance,
+                                  boolean separable) {
+        ++checks;
+        if (convolution.isSeparable() != separable) {
+            failures.add("convolution " + name + ": separable " + convolution.isSeparable());
+        }
+        final Convolution pooled = convolution.withParallel(parallel);
+        final float[] weights = convolution.getWeights();
+        final int kw = convolution.getKernelWidth();
+        final int kh = convolution.getKernelHeight();
+        for (int[] size : CONVOLUTION_SIZES) {
+            final int w = size[0];
+            final int h = size[1];
+            final int[][] images = images(w, h);
+            for (int i = 0; i < images.length; ++i) {
+                final String tag = "convolution " + name + " " + w + "x" + h + "#" + i;
+                final int[] result = pooled.apply(images[i], w, h);
+                checkArgb(tag, convolve(images[i], w, h, weights, kw, kh, bias), result, w, tolerance);
+                checkRect(tag, images[i], w, h, result, new RectOp() {
+                    @Override
+                    public void run(int[] src, int so, int ss, int[] dst, int dOff, int ds, int w, int h) {
+                        pooled.apply(src, so, ss, dst, dOff, ds, w, h);
+                    }
+                });
+            }
+        }
+    }
+
+    /** every channel summed in double over the window with clamped edges, rounded half up, biased and clamped */
+    private static int[] convolve(int[] argb, int w, int h, float[] weights, int kw, int kh, int bias) {
+        final int[] result = new int[w * h];
+        for (int y = 0; y < h; ++y) {
+            for (int x = 0; x < w; ++x) {
+                int pixel = argb[y * w + x] & 0xFF000000;
+                for (int shift = 16; shift >= 0; shift -= 8) {
+                    double sum = 0.0;
+                    for (int ky = 0; ky < kh; ++ky) {
+                        final int sy = clamp(y - kh / 2 + ky, h);
+                        for (int kx = 0; kx < kw; ++kx) {
+                            final int sx = clamp(x - kw / 2 + kx, w);
+                            sum += weights[ky * kw + kx] * ((argb[sy * w + sx] >> shift) & 0xFF);
+                        }
+                    }
+                    pixel |= clampComponent((int) Math.floor(sum + 0.5) + bias) << shift;
+                }
+                result[y * w + x] = pixel;
+            }
+        }
+        return result;
+    }
+
+    private void checkIntegralImages() {
+        for (int[] size : CONVOLUTION_SIZES) {
+            final int w = size[0];
+            final int h = size[1];
+            final int[][] images = images(w, h);
+            for (int i = 0; i < images.length; ++i) {
+                final String tag = w + "x" + h + "#" + i;
+                final IntegralImage integral = IntegralImage.of(images[i], 0, w, w, h, parallel);
+                checkSums("integral " + tag, integral, images[i], w, h);
+                for (final int[] window : WINDOWS) {
+                    final String name = "meanFilter " + window[0] + "x" + window[1] + " " + tag;
+                    final int[] result = integral.meanFilter(window[0], window[1]);
+                    check(name, mean(images[i], w, h, window[0], window[1]), result);
+                    checkRect(name, images[i], w, h, result, new RectOp() {
+                        @Override
+                        public void run(int[] src, int so, int ss, int[] dst, int dOff, int ds, int w, int h) {
+                            IntegralImage.of(src, so, ss, w, h, parallel).meanFilter(window[0], window[1],
+                                    dst, dOff, ds);
+                        }
+                    });
+                }
+                check("boxBlur 2 " + tag, mean(images[i], w, h, 5, 5), integral.boxBlur(2));
+                IntegralImage scratch = null;
+                for (final double sigma : new double[] {0.5, 1.0, 2.0, 5.0}) {
+                    final String name = "gaussianBlur " + sigma + " " + tag;
+                    int[] expected = images[i];
+                    for (int box : IntegralImage.boxSizesForGaussian(sigma, 3)) {
+                        expected = mean(expected, w, h, box, box);
+                    }
+                    check(name, expected, integral.gaussianBlur(sigma));
+                    // the scratch table of the previous sigma is summed again in place
+                    final int[] reused = new int[w * h];
+                    scratch = integral.gaussianBlur(sigma, reused, 0, w, scratch);
+                    check(name + " scratch", expected, reused);
+                    checkRect(name, images[i], w, h, expected, new RectOp() {
+                        @Override
+                        public void run(int[] src, int so, int ss, int[] dst, int dOff, int ds, int w, int h) {
+                            IntegralImage.of(src, so, ss, w, h, parallel).gaussianBlur(sigma, dst, dOff, ds);
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /** getSum of rectangles at every corner and of the whole image against adding pixels */
+    private void checkSums(String name, IntegralImage integral, int[] argb, int w, int h) {
+        final int[][] rects = { {0, 0, w, h}, {0, 0, 1, 1}, {w - 1, h - 1, 1, 1}, {w / 3, h / 2, w - w / 3, h / 2},
+                {0, 0, 0, 0}, {w / 2, 0, (w + 1) / 2, h} };
+        for (int[] rect : rects) {
+            for (int component = BaseImageProc.COMPONENT_RED; component <= BaseImageProc.COMPONENT_BLUE;
+                 ++component) {
+                final int shift = (BaseImageProc.COMPONENT_BLUE - component) * 8;
+                long sum = 0;
+                for (int y = rect[1]; y < rect[1] + rect[3]; ++y) {
+                    for (int x = rect[0]; x < rect[0] + rect[2]; ++x) {
+                        sum += (argb[y * w + x] >> shift) & 0xFF;
+                    }
+                }
+                ++checks;
+                final long actual = integral.getSum(component, rect[0], rect[1], rect[2], rect[3]);
+                if (actual != sum) {
+                    failures.add(name + " getSum " + component + " " + Arrays.toString(rect) + ": expected " + sum
+                            + ", actual " + actual);
+                }
+            }
+        }
+    }
+
+    /** every channel summed over the window cut at the edges, divided by the pixels left rounded half up */
+    private static int[] mean(int[] argb, int w, int h, int ww, int wh) {
+        final int[] result = new int[w * h];
+        for (int y = 0; y < h; ++y) {
+            final int y0 = Math.max(0, y - wh / 2);
+            final int y1 = Math.min(h, y - wh / 2 + wh);
+            for (int x = 0; x < w; ++x) {
+                final int x0 = Math.max(0, x - ww / 2);
+                final int x1 = Math.min(w, x - ww / 2 + ww);
+                final long count = (long) (x1 - x0) * (y1 - y0);
+                int pixel = argb[y * w + x] & 0xFF000000;
+                for (int shift = 16; shift >= 0; shift -= 8) {
+                    long sum = 0;
+                    for (int sy = y0; sy < y1; ++sy) {
+                        for (int sx = x0; sx < x1; ++sx) {
+                            sum += (argb[sy * w + sx] >> shift) & 0xFF;
+                        }
+                    }
+                    pixel |= (int) ((sum * 2 + count) / (2 * count)) << shift;
+                }
+                result[y * w + x] = pixel;
+            }
+        }
+        return result;
+    }
+
+    private void checkMedians() {
+        for (final int type : new int[] {BaseImageProc.TYPE_GREY_COLOR, BaseImageProc.TYPE_ARGB_COLOR}) {
+            final MedianFilter filter = MedianFilter.of(type).withParallel(parallel);
+            for (int[] size : MEDIAN_SIZES) {
+                final int w = size[0];
+                final int h = size[1];
+                final int[][] images = images(w, h);
+                for (int i = 0; i < images.length; ++i) {
+                    final String tag = w + "x" + h + "#" + i + " type " + type;
+                    for (int radius = 0; radius <= 15; ++radius) {
+                        final int r = radius;
+                        final int[] result = filter.median(images[i], w, h, r);
+                        checkArgb("median " + r + " " + tag, median(type, images[i], w, h, r, false), result,
+                                w, 0);
+                        checkRect("median " + r + " " + tag, images[i], w, h, result, new RectOp() {
+                            @Override
+                            public void run(int[] src, int so, int ss, int[] dst, int dOff, int ds, int w, int h) {
+                                filter.median(src, so, ss, dst, dOff, ds, w, h, r);
+                            }
+                        });
+                    }
+                    for (int maxRadius = 0; maxRadius <= 5; ++maxRadius) {
+                        final int r = maxRadius;
+                        final int[] result = filter.adaptive(images[i], w, h, r);
+                        checkArgb("adaptive " + r + " " + tag, median(type, images[i], w, h, r, true), result,
+                                w, 0);
+                        checkRect("adaptive " + r + " " + tag, images[i], w, h, result, new RectOp() {
+                            @Override
+                            public void run(int[] src, int so, int ss, int[] dst, int dOff, int ds, int w, int h) {
+                                filter.adaptive(src, so, ss, dst, dOff, ds, w, h, r);
+                            }
+                        });
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * the middle of the sorted window with clamped edges; adaptive grows the window from radius 1 until
+     * min &lt; median &lt; max or radius is maxRadius, then keeps the pixel if min &lt; pixel &lt; max, else the median
+     */
+    private static int[] median(int type, int[] argb, int w, int h, int radius, boolean adaptive) {
+        final int[][] planes = planes(type, argb, w, h);
+        final int[][] outputs = new int[planes.length][w * h];
+        final int[] window = new int[(radius * 2 + 1) * (radius * 2 + 1)];
+        for (int c = 0; c < planes.length; ++c) {
+            for (int y = 0; y < h; ++y) {
+                for (int x = 0; x < w; ++x) {
+                    final int value = planes[c][y * w + x];
+                    for (int r = adaptive ? Math.min(1, radius) : radius; r <= radius; ++r) {
+                        final int size = r * 2 + 1;
+                        int n = 0;
+                        for (int ky = -r; ky <= r; ++ky) {
+                            for (int kx = -r; kx <= r; ++kx) {
+                                window[n++] = planes[c][clamp(y + ky, h) * w + clamp(x + kx, w)];
+                            }
+                        }
+                        Arrays.sort(window, 0, n);
+                        final int min = window[0];
+                        final int median = window[size * size / 2];
+                        final int max = window[n - 1];
+                        outputs[c][y * w + x] = median;
+                        if (adaptive && ((min < median && median < max) || r == radius)) {
+                            outputs[c][y * w + x] = min < value && value < max ? value : median;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return fromPlanes(argb, outputs);
+    }
+
+    /** the grey level, or red, green and blue */
+    private static int[][] planes(int type, int[] argb, int w, int h) {
+        if (type == BaseImageProc.TYPE_GREY_COLOR) {
+            final int[] grey = BaseImageProc.grey(argb, w, h);
+            for (int i = 0; i < grey.length; ++i) {
+                grey[i] &= 0xFF;
+            }
+            return new int[][] {grey};
+        }
+        final int[][] planes = new int[3][argb.length];
+        for (int i = 0; i < argb.length; ++i) {
+            planes[0][i] = (argb[i] >> 16) & 0xFF;
+            planes[1][i] = (argb[i] >> 8) & 0xFF;
+            planes[2][i] = argb[i] & 0xFF;
+        }
+        return planes;
+    }
+
+    private void checkMorphology() {
+        for (int[] element : ELEMENTS) {
+            final Morphology morphology = Morphology.rectangle(element[0], element[1]).withParallel(parallel);
+            for (int[] size : MORPHOLOGY_SIZES) {
+                final int w = size[0];
+                final int h = size[1];
+                final int[][] images = images(w, h);
+                for (int op = Morphology.OP_ERODE; op <= Morphology.OP_BLACK_HAT; ++op) {
+                    final String tag = "morphology " + element[0] + "x" + element[1] + " op" + op + " "
+                            + w + "x" + h;
+                    for (int i = 0; i < images.length; ++i) {
+                        for (final int type : new int[] {BaseImageProc.TYPE_GREY_COLOR,
+                                BaseImageProc.TYPE_ARGB_COLOR}) {
+                            final int o = op;
+                            final int[] result = morphology.apply(op, type, images[i], w, h);
+                            final int[][] planes = planes(type, images[i], w, h);
+                            for (int c = 0; c < planes.length; ++c) {
+                                planes[c] = morphology(op, planes[c], w, h, element[0], element[1]);
+                            }
+                            checkArgb(tag + "#" + i + " type " + type, fromPlanes(images[i], planes), result, w, 0);
+                            checkRect(tag + "#" + i + " type " + type, images[i], w, h, result, new RectOp() {
+                                @Override
+                                public void run(int[] src, int so, int ss, int[] dst, int dOff, int ds,
+                                                int w, int h) {
+                                    morphology.apply(o, type, src, so, ss, dst, dOff, ds, w, h);
+                                }
+                            });
+                        }
+                        // bit 7 of green, noise is half set, the gradient has runs across the words
+                        final BinaryImage binary = new BinaryImage(w, h);
+                        final int[] bits = new int[w * h];
+                        for (int p = 0; p < bits.length; ++p) {
+                            bits[p] = (images[i][p] >> 15) & 1;
+                            binary.set(p % w, p / w, bits[p] != 0);
+                        }
+                        final BinaryImage copy = BinaryImage.fromBitPlane(binary.toBitPlane(), w, h);
+                        checkBinary(tag + "#" + i + " binary", morphology(op, bits, w, h, element[0], element[1]),
+                                morphology.apply(op, binary), w);
+                        ++checks;
+                        if (!binary.equals(copy)) {
+                            failures.add(tag + "#" + i + " binary: source changed");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkScalers() {
+        if (!NativeScaler.isAvailable()) {
+            System.out.println("libimgio not in java.library.path, NativeScaler not compared");
+            return;
+        }
+        final NativeScaler[] scalers = {
+                NativeScaler.bilinear(), NativeScaler.bicubic(), NativeScaler.bicubic(NativeScaler.S_FUNC_LAGRANGE),
+                NativeScaler.bicubicCustom(-0.5), NativeScaler.bicubicCustom(-2.0)
+        };
+        for (int s = 0; s < scalers.length; ++s) {
+            final NativeScaler scaler = scalers[s].withParallel(parallel);
+            final NativeScaler java = scaler.withJava();
+            for (int[] scale : SCALES) {
+                final int w = scale[0];
+                final int h = scale[1];
+                final int dstW = scale[2];
+                final int dstH = scale[3];
+                final int[][] images = images(w, h);
+                for (int i = 0; i < images.length; ++i) {
+                    final String tag = "scaler " + s + " " + w + "x" + h + " to " + dstW + "x" + dstH + "#" + i;
+                    final int[] expected = java.scale(images[i], w, h, dstW, dstH);
+                    check(tag, expected, scaler.scale(images[i], w, h, dstW, dstH));
+                    final IntBuffer source = BaseImageProc.allocateDirectPixels(w, h);
+                    source.put(images[i]).flip();
+                    final IntBuffer result = BaseImageProc.allocateDirectPixels(dstW, dstH);
+                    scaler.scale(source, w, h, result, dstW, dstH);
+                    final int[] direct = new int[dstW * dstH];
+                    result.get(direct);
+                    check(tag + " direct", expected, direct);
+                }
+            }
+        }
+    }
+
+    /** op of a plane of levels 0 to 255, bits are levels 0 and 1 */
+    private static int[] morphology(int op, int[] plane, int w, int h, int ew, int eh) {
+        switch (op) {
+            case Morphology.OP_ERODE:
+                return window(plane, w, h, ew, eh, false);
+            case Morphology.OP_DILATE:
+                return window(plane, w, h, ew, eh, true);
+            case Morphology.OP_OPEN:
+                return window(window(plane, w, h, ew, eh, false), w, h, ew, eh, true);
+            case Morphology.OP_CLOSE:
+                return window(window(plane, w, h, ew, eh, true), w, h, ew, eh, false);
+            case Morphology.OP_TOP_HAT:
+                return subtract(plane, morphology(Morphology.OP_OPEN, plane, w, h, ew, eh));
+            default:
+                return subtract(morphology(Morphology.OP_CLOSE, plane, w, h, ew, eh), plane);
+        }
+    }
+
+    /**
+     * min (or max) of the window anchored at (ew / 2, eh / 2), mirrored for max,
+     * that is [x - ew / 2, x - ew / 2 + ew) and [x - (ew - 1 - ew / 2), x + ew / 2 + 1), cut at the edges
+     */
+    private static int[] window(int[] plane, int w, int h, int ew, int eh, boolean max) {
+        final int left = max ? ew - 1 - ew / 2 : ew / 2;
+        final int top = max ? eh - 1 - eh / 2 : eh / 2;
+        final int[] result = new int[w * h];
+        for (int y = 0; y < h; ++y) {
+            for (int x = 0; x < w; ++x) {
+                int value = max ? 0 : 0xFF;
+                for (int wy = Math.max(0, y - top); wy < Math.min(h, y - top + eh); ++wy) {
+                    for (int wx = Math.max(0, x - left); wx < Math.min(w, x - left + ew); ++wx) {
+                        value = max ? Math.max(value, plane[wy * w + wx]) : Math.min(value, plane[wy * w + wx]);
+                    }
+                }
+                result[y * w + x] = value;
+            }
+        }
+        return result;
+    }
+
+    private static int[] subtract(int[] a, int[] b) {
+        final int[] result = new int[a.length];
+        for (int i = 0; i < a.length; ++i) {
+            result[i] = a[i] - b[i];
+        }
+        return result;
+    }
+
+    private void checkBinary(String name, int[] expected, BinaryImage actual, int w) {
+        ++checks;
+        for (int i = 0; i < expected.length; ++i) {
+            if ((expected[i] != 0) != actual.get(i % w, i / w)) {
+                failures.add(name + ": (" + i % w + ", " + i / w + ") expected " + expected[i]);
+                return;
+            }
+        }
+        // bits past the width must stay 0
+        final BinaryImage copy = BinaryImage.fromBitPlane(actual.toBitPlane(), actual.getWidth(), actual.getHeight());
+        if (!copy.equals(actual)) {
+            failures.add(name + ": bits set past the width");
+        }
+    }
+
+    /** alpha of the source, a single plane is grey */
+    private static int[] fromPlanes(int[] argb, int[][] planes) {
+        final int[] result = new int[argb.length];
+        for (int i = 0; i < argb.length; ++i) {
+            final int red = planes[0][i];
+            final int green = planes.length == 1 ? red : planes[1][i];
+            final int blue = planes.length == 1 ? red : planes[2][i];
+            result[i] = (argb[i] & 0xFF000000) | red << 16 | green << 8 | blue;
+        }
+        return result;
+    }
+
+    /** the whole-image result must come back from a sub-rectangle of padded arrays and in-place */
+    private void checkRect(String name, int[] image, int w, int h, int[] expected, RectOp op) {
+        final int argbStride = w + MARGIN;
+        final int resultStride = w + 2 * MARGIN;
+        final int[] source = pad(image, w, h, argbStride, MARGIN, 0x7F00FF00);
+        final int[] padded = new int[MARGIN + h * resultStride];
+        Arrays.fill(padded, 0x12345678);
+        op.run(source, MARGIN, argbStride, padded, MARGIN, resultStride, w, h);
+        final int[] wanted = pad(expected, w, h, resultStride, MARGIN, 0x12345678);
+        check(name + " sub-rectangle", wanted, padded);
+        op.run(source, MARGIN, argbStride, source, MARGIN, argbStride, w, h);
+        check(name + " in-place", pad(expected, w, h, argbStride, MARGIN, 0x7F00FF00), source);
+    }
+
+    private void check(String name, int[] expected, int[] actual) {
+        ++checks;
+        for (int i = 0; i < expected.length; ++i) {
+            if (expected[i] != actual[i]) {
+                failures.add(name + ": [" + i + "] expected 0x" + Integer.toHexString(expected[i])
+                        + ", actual 0x" + Integer.toHexString(actual[i]));
+                return;
+            }
+        }
+    }
+
+    /** alpha exact, red, green and blue within tolerance */
+    private void checkArgb(String name, int[] expected, int[] actual, int w, int tolerance) {
+        ++checks;
+        for (int i = 0; i < expected.length; ++i) {
+            final int e = expected[i];
+            final int a = actual[i];
+            boolean same = (e >>> 24) == (a >>> 24);
+            for (int shift = 0; same && shift <= 16; shift += 8) {
+                same = Math.abs(((e >> shift) & 0xFF) - ((a >> shift) & 0xFF)) <= tolerance;
+            }
+            if (!same) {
+                failures.add(name + ": (" + i % w + ", " + i / w + ") expected 0x" + Integer.toHexString(e)
+                        + ", actual 0x" + Integer.toHexString(a));
+                return;
+            }
+        }
+    }
+
+    /** random, gradient and salt and pepper over gradient, from a seed of the size */
+    private static int[][] images(int w, int h) {
+        final Random random = new Random(SEED + w * 31L + h);
+        final int[] noise = new int[w * h];
+        final int[] gradient = new int[w * h];
+        final int[] salted = new int[w * h];
+        for (int y = 0; y < h; ++y) {
+            for (int x = 0; x < w; ++x) {
+                final int i = y * w + x;
+                final int level = (x * 255 / Math.max(1, w - 1)) & 0xFF;
+                noise[i] = random.nextInt();
+                gradient[i] = (i * 0x01010101 & 0xFF000000) | (level << 16) | ((255 - level) << 8) | ((y * 17) & 0xFF);
+                final int dice = random.nextInt(10);
+                salted[i] = dice == 0 ? 0xFF000000 : dice == 1 ? 0xFFFFFFFF : gradient[i];
+            }
+        }
+        return new int[][] {noise, gradient, salted};
+    }
+
+    private static float[] randomWeights(Random random, int count, float scale) {
+        final float[] weights = new float[count];
+        for (int i = 0; i < count; ++i) {
+            weights[i] = (random.nextFloat() * 2.0F - 1.0F) * scale;
+        }
+        return weights;
+    }
+
+    private static int[] pad(int[] image, int w, int h, int stride, int offset, int fill) {
+        final int[] padded = new int[offset + h * stride];
+        Arrays.fill(padded, fill);
+        for (int y = 0; y < h; ++y) {
+            System.arraycopy(image, y * w, padded, offset + y * stride, w);
+        }
+        return padded;
+    }
+
+    private static int clamp(int index, int size) {
+        return index < 0 ? 0 : index >= size ? size - 1 : index;
+    }
+
+    private static int clampComponent(int value) {
+        return value < 0 ? 0 : value > 0xFF ? 0xFF : value;
+    }
+
+    private interface RectOp {
+        void run(int[] src, int so, int ss, int[] dst, int dOff, int ds, int w, int h);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import org.intellij.lang.annotations.MagicConstant;
+
+/**
+ * Immutable parameters of one point filter, passed along with each filter call instead of
+ * being kept as native global state, so filtering is reentrant and needs no lock.
+ * <p>
+ * A grey filter uses one spec, a color filter uses one spec per red/green/blue channel.
+ * Use the {@code withXxx} methods to derive a changed copy.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-09
+ */
+public final class FilterSpec {
+    /** index=no_filter, c=0, l=1, g=1, no binary levels */
+    public static final FilterSpec NONE = new FilterSpec(BaseImageProc.INDEX_NO_FILTER, 0.0F, 1.0F, 1.0F,
+            -1, BaseImageProc.BINARY_FILTER_POLICY_SAME, -1, BaseImageProc.BINARY_FILTER_POLICY_SAME);
+
+    final int index;
+    final float c;
+    final float l;
+    final float g;
+    final int lowLevel;
+    final int lowPolicy;
+    final int highLevel;
+    final int highPolicy;
+
+    /**
+     * @param index see {@link BaseImageProc#INDEX_NO_FILTER} and so on
+     * @param c like c + l * pow({filter-value}, g)
+     * @param lowLevel require: level >= 0 && level <= 255, or negative means not used
+     * @param lowPolicy 0=same as level, 1=value 0, 2=value 255, others=no change
+     */
+    public FilterSpec(@MagicConstant(intValues = {BaseImageProc.INDEX_NO_FILTER,
+                              BaseImageProc.INDEX_REVERSE_FILTER, BaseImageProc.INDEX_LINEAR_FILTER,
+                              BaseImageProc.INDEX_LOG_FILTER, BaseImageProc.INDEX_GAMMA_FILTER,
+                              BaseImageProc.INDEX_STRETCH_FILTER, BaseImageProc.INDEX_BINARY_FILTER})
+                              int index,
+                      float c, float l, float g,
+                      int lowLevel, int lowPolicy, int highLevel, int highPolicy) {
+        if (index < BaseImageProc.INDEX_NO_FILTER || index > BaseImageProc.INDEX_BINARY_FILTER) {
+            throw new IllegalArgumentException("Unknown filter index: " + index);
+        }
+        if (lowLevel > 255 || highLevel > 255) {
+            throw new IllegalArgumentException("Level should not greater than 255");
+        }
+        this.index = index;
+        this.c = c;
+        this.l = l;
+        this.g = g;
+        this.lowLevel = lowLevel;
+        this.lowPolicy = lowPolicy;
+        this.highLevel = highLevel;
+        this.highPolicy = highPolicy;
+    }
+
+    public static FilterSpec of(int index) {
+        return NONE.withIndex(index);
+    }
+
+    public FilterSpec withIndex(int index) {
+        return new FilterSpec(index, c, l, g, lowLevel, lowPolicy, highLevel, highPolicy);
+    }
+
+    /** like c + l * pow({filter-value}, g) */
+    public FilterSpec withParams(float c, float l, float g) {
+        return new FilterSpec(index, c, l, g, lowLevel, lowPolicy, highLevel, highPolicy);
+    }
+
+    /**
+     * require: level >= 0 && level <= 255
+     * policy: 0=same as level, 1=value 0, 2=value 255, others=no change
+     */
+    public FilterSpec withLevels(int lowLevel, int lowPolicy, int highLevel, int highPolicy) {
+        return new FilterSpec(index, c, l, g, lowLevel, lowPolicy, highLevel, highPolicy);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public float getC() {
+        return c;
+    }
+
+    public float getL() {
+        return l;
+    }
+
+    public float getG() {
+        return g;
+    }
+
+    public int getLowLevel() {
+        return lowLevel;
+    }
+
+    public int getLowPolicy() {
+        return lowPolicy;
+    }
+
+    public int getHighLevel() {
+        return highLevel;
+    }
+
+    public int getHighPolicy() {
+        return highPolicy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FilterSpec)) {
+            return false;
+        }
+        final FilterSpec that = (FilterSpec) o;
+        return index == that.index
+                && Float.compare(that.c, c) == 0
+                && Float.compare(that.l, l) == 0
+                && Float.compare(that.g, g) == 0
+                && lowLevel == that.lowLevel
+                && lowPolicy == that.lowPolicy
+                && highLevel == that.highLevel
+                && highPolicy == that.highPolicy;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = index;
+        result = 31 * result + Float.floatToIntBits(c);
+        result = 31 * result + Float.floatToIntBits(l);
+        result = 31 * result + Float.floatToIntBits(g);
+        result = 31 * result + lowLevel;
+        result = 31 * result + lowPolicy;
+        result = 31 * result + highLevel;
+        result = 31 * result + highPolicy;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "FilterSpec{" +
+                "index=" + index +
+                ", c=" + c +
+                ", l=" + l +
+                ", g=" + g +
+                ", lowLevel=" + lowLevel +
+                ", lowPolicy=" + lowPolicy +
+                ", highLevel=" + highLevel +
+                ", highPolicy=" + highPolicy +
+                '}';
+    }
+}
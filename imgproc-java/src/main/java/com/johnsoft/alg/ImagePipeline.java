@@ -0,0 +1,569 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.intellij.lang.annotations.MagicConstant;
+
+/**
+ * A chain of {@link BaseImageProc} point operations run as one fused kernel, such as
+ * grey -> gamma -> histogram equalization -> combine bits, without intermediate arrays.
+ * The result is the same as calling the operations one by one.
+ * <p>
+ * Every point operation is a channel mix (grey, or pick one channel into r, g, b) followed by
+ * a 256 entries lookup table per channel, consecutive operations are composed into one step
+ * while building, so the final pass reads each pixel once and writes once, strip by strip on
+ * {@link ParallelImageProc}. Histogram equalization needs the histograms of its input, so the
+ * pipeline is split there: a stats pass counts histograms of the steps before it (from the source
+ * histograms directly if possible), then the equalization is composed as a lookup table.
+ * <pre>
+ *     final ImagePipeline pipeline = ImagePipeline.builder()
+ *             .greyColor()
+ *             .greyFilter(FilterSpec.of(BaseImageProc.INDEX_GAMMA_FILTER).withParams(0.0F, 1.0F, 2.2F))
+ *             .equalizeGrey(true)
+ *             .combineBitsPlane(BaseImageProc.TYPE_GREY_COLOR, 0xF0)
+ *             .build();
+ *     final int[] result = pipeline.apply(argb, w, h);
+ * </pre>
+ * A pipeline is immutable and can be applied on many images from many threads.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-14
+ */
+public final class ImagePipeline {
+    /* channel mix of a step, same values as the histogram indexes of BaseImageProc.getAllHistograms */
+    private static final int MIX_NONE = -1;
+    private static final int MIX_GREY = BaseImageProc.TYPE_GREY_COLOR;
+    private static final int MIX_RED = BaseImageProc.COMPONENT_RED;
+    private static final int MIX_GREEN = BaseImageProc.COMPONENT_GREEN;
+    private static final int MIX_BLUE = BaseImageProc.COMPONENT_BLUE;
+    private static final int MIX_ALPHA = BaseImageProc.COMPONENT_ALPHA;
+
+    private static final int EQUALIZE_NONE = 0;
+    private static final int EQUALIZE_GREY = 1;
+    private static final int EQUALIZE_RGB = 2;
+
+    private static final int[] IDENTITY = constant(-1);
+    private static final int[] ZERO = constant(0);
+    private static final int[] FULL = constant(255);
+
+    /** point steps composed as far as possible, each equalization stage is kept as a marker step */
+    private final Step[] steps;
+    private final ParallelImageProc parallel;
+
+    private ImagePipeline(Step[] steps, ParallelImageProc parallel) {
+        this.steps = steps;
+        this.parallel = parallel;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int[] apply(int[] argb, int w, int h) {
+        BaseImageProc.checkRect(argb, 0, w, w, h);
+        final int[] result = new int[w * h];
+        apply(argb, 0, w, result, 0, w, w, h);
+        return result;
+    }
+
+    /** stride variant, result can be argb for in-place, since stats passes only read the source */
+    public void apply(final int[] argb, final int argbOffset, final int argbStride,
+                      int[] result, int resultOffset, int resultStride, final int w, final int h) {
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, w, h);
+        BaseImageProc.checkRect(result, resultOffset, resultStride, w, h);
+        final ParallelImageProc parallel = this.parallel != null ? this.parallel : ParallelImageProc.getDefault();
+        final List<Step> program = new ArrayList<>();
+        for (Step step : steps) {
+            if (step.equalize == EQUALIZE_NONE) {
+                append(program, step);
+            } else {
+                final int[][] histograms = histograms(program, step.equalize, argb, argbOffset, argbStride, w, h,
+                        parallel);
+                append(program, equalization(step, histograms));
+            }
+        }
+        final Step[] fused = program.toArray(new Step[program.size()]);
+        if (fused.length == 0) {
+            if (argb != result || argbOffset != resultOffset || argbStride != resultStride) {
+                for (int y = 0; y < h; ++y) {
+                    System.arraycopy(argb, argbOffset + y * argbStride, result, resultOffset + y * resultStride, w);
+                }
+            }
+            return;
+        }
+        parallel.execute(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                new ParallelImageProc.StripKernel() {
+                    @Override
+                    void apply(int[] argb, int argbOffset, int argbStride,
+                               int[] result, int resultOffset, int resultStride, int w, int h) {
+                        run(fused, argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h);
+                    }
+                });
+    }
+
+    /**
+     * histograms of grey, red, green and blue which the program produces, indexed as getAllHistograms.
+     * Of one step, the histograms are pushed through its lookup tables from the source histograms,
+     * unless grey is wanted but r, g, b differ after the step; else the program runs to count.
+     */
+    private static int[][] histograms(List<Step> program, int equalize, int[] argb, int argbOffset, int argbStride,
+                                      int w, int h, ParallelImageProc parallel) {
+        final boolean run = program.size() > 1
+                || (equalize == EQUALIZE_GREY && program.size() == 1 && !program.get(0).isGrey());
+        if (run) {
+            final Step[] fused = program.toArray(new Step[program.size()]);
+            return parallel.accumulate(argb, argbOffset, argbStride, w, h, 4, new ParallelImageProc.StatsKernel() {
+                @Override
+                void accumulate(int[] argb, int argbOffset, int argbStride, int w, int h, int[][] histograms) {
+                    count(fused, argb, argbOffset, argbStride, w, h, histograms);
+                }
+            });
+        }
+        final Step last = program.isEmpty() ? null : program.get(0);
+        final boolean withAlpha = last != null && last.mix == MIX_ALPHA;
+        final int[][] source = parallel.accumulate(argb, argbOffset, argbStride, w, h, withAlpha ? 5 : 4,
+                new ParallelImageProc.StatsKernel() {
+                    @Override
+                    void accumulate(int[] argb, int argbOffset, int argbStride, int w, int h, int[][] histograms) {
+                        BaseImageProc.getAllHistograms(argb, argbOffset, argbStride, w, 0, h, histograms);
+                    }
+                });
+        if (last == null) {
+            return source;
+        }
+        final int[][] histograms = new int[4][256];
+        if (last.mix == MIX_NONE) {
+            push(source[MIX_RED], last.red, histograms[MIX_RED]);
+            push(source[MIX_GREEN], last.green, histograms[MIX_GREEN]);
+            push(source[MIX_BLUE], last.blue, histograms[MIX_BLUE]);
+        } else {
+            final int[] mixed = source[last.mix];
+            push(mixed, last.red, histograms[MIX_RED]);
+            push(mixed, last.green, histograms[MIX_GREEN]);
+            push(mixed, last.blue, histograms[MIX_BLUE]);
+            if (last.isGrey()) {
+                // grey of (v, v, v) is v, as 19595 + 38469 + 7472 == 65536
+                push(mixed, last.red, histograms[MIX_GREY]);
+            }
+        }
+        return histograms;
+    }
+
+    private static void push(int[] source, int[] lut, int[] histogram) {
+        for (int i = 0; i < 256; ++i) {
+            histogram[lut[i]] += source[i];
+        }
+    }
+
+    private static Step equalization(Step marker, int[][] histograms) {
+        if (marker.equalize == EQUALIZE_GREY) {
+            final int[] lut = BaseImageProc.buildEqualizationLut(histograms[MIX_GREY], marker.usingClassic);
+            final int[] grey = clamp(lut);
+            return new Step(MIX_GREY, FULL, grey, grey, grey);
+        }
+        return new Step(MIX_NONE, IDENTITY,
+                mask(BaseImageProc.buildEqualizationLut(histograms[MIX_RED], marker.usingClassic)),
+                mask(BaseImageProc.buildEqualizationLut(histograms[MIX_GREEN], marker.usingClassic)),
+                mask(BaseImageProc.buildEqualizationLut(histograms[MIX_BLUE], marker.usingClassic)));
+    }
+
+    /** append a point step, composed into the last step when the mix allows */
+    private static void append(List<Step> program, Step step) {
+        if (program.isEmpty()) {
+            program.add(step);
+            return;
+        }
+        final int lastIndex = program.size() - 1;
+        final Step last = program.get(lastIndex);
+        if (last.equalize != EQUALIZE_NONE) {
+            program.add(step);
+            return;
+        }
+        final int mix;
+        final int[] base;
+        if (step.mix == MIX_NONE) {
+            program.set(lastIndex, new Step(last.mix, compose(last.alpha, step.alpha), compose(last.red, step.red),
+                    compose(last.green, step.green), compose(last.blue, step.blue)));
+            return;
+        } else if (step.mix == MIX_ALPHA) {
+            mix = MIX_ALPHA;
+            base = last.alpha;
+        } else if (last.mix != MIX_NONE) {
+            // r, g, b of last are the lookups of one mixed value, grey of (v, v, v) is v
+            mix = last.mix;
+            base = step.mix != MIX_GREY || last.isGrey() ? last.channel(step.mix) : null;
+        } else if (step.mix == MIX_GREY) {
+            mix = MIX_GREY;
+            base = last.red == IDENTITY && last.green == IDENTITY && last.blue == IDENTITY ? IDENTITY : null;
+        } else {
+            mix = step.mix;
+            base = last.channel(step.mix);
+        }
+        if (base == null) {
+            program.add(step);
+        } else {
+            program.set(lastIndex, new Step(mix, compose(last.alpha, step.alpha), compose(base, step.red),
+                    compose(base, step.green), compose(base, step.blue)));
+        }
+    }
+
+    private static void run(Step[] steps, int[] argb, int argbOffset, int argbStride,
+                            int[] result, int resultOffset, int resultStride, int w, int h) {
+        if (steps.length == 1) {
+            final Step step = steps[0];
+            final int[] alphas = step.alpha;
+            final int[] reds = step.red;
+            final int[] greens = step.green;
+            final int[] blues = step.blue;
+            final int mix = step.mix;
+            int color, v;
+            for (int y = 0; y < h; ++y) {
+                final int src = argbOffset + y * argbStride;
+                final int dst = resultOffset + y * resultStride;
+                for (int x = 0; x < w; ++x) {
+                    color = argb[src + x];
+                    if (mix == MIX_NONE) {
+                        result[dst + x] = (alphas[color >>> 24] << 24) | (reds[(color >> 16) & 0xFF] << 16)
+                                | (greens[(color >> 8) & 0xFF] << 8) | blues[color & 0xFF];
+                    } else {
+                        v = mix(mix, color);
+                        result[dst + x] = (alphas[color >>> 24] << 24) | (reds[v] << 16)
+                                | (greens[v] << 8) | blues[v];
+                    }
+                }
+            }
+            return;
+        }
+        for (int y = 0; y < h; ++y) {
+            final int src = argbOffset + y * argbStride;
+            final int dst = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                result[dst + x] = eval(steps, argb[src + x]);
+            }
+        }
+    }
+
+    private static void count(Step[] steps, int[] argb, int argbOffset, int argbStride, int w, int h,
+                              int[][] histograms) {
+        final int[] greys = histograms[MIX_GREY];
+        final int[] reds = histograms[MIX_RED];
+        final int[] greens = histograms[MIX_GREEN];
+        final int[] blues = histograms[MIX_BLUE];
+        int color;
+        for (int y = 0; y < h; ++y) {
+            final int src = argbOffset + y * argbStride;
+            for (int x = 0; x < w; ++x) {
+                color = eval(steps, argb[src + x]);
+                ++greys[JavaImageProcBackend.colorToGrey(color)];
+                ++reds[(color >> 16) & 0xFF];
+                ++greens[(color >> 8) & 0xFF];
+                ++blues[color & 0xFF];
+            }
+        }
+    }
+
+    private static int eval(Step[] steps, int color) {
+        int a = color >>> 24;
+        int r = (color >> 16) & 0xFF;
+        int g = (color >> 8) & 0xFF;
+        int b = color & 0xFF;
+        for (Step step : steps) {
+            switch (step.mix) {
+                case MIX_GREY:
+                    r = g = b = (r * 19595 + g * 38469 + b * 7472) >> 16;
+                    break;
+                case MIX_RED:
+                    g = b = r;
+                    break;
+                case MIX_GREEN:
+                    r = b = g;
+                    break;
+                case MIX_BLUE:
+                    r = g = b;
+                    break;
+                case MIX_ALPHA:
+                    r = g = b = a;
+                    break;
+                default:
+                    break;
+            }
+            a = step.alpha[a];
+            r = step.red[r];
+            g = step.green[g];
+            b = step.blue[b];
+        }
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int mix(int mix, int color) {
+        switch (mix) {
+            case MIX_GREY:
+                return JavaImageProcBackend.colorToGrey(color);
+            case MIX_RED:
+                return (color >> 16) & 0xFF;
+            case MIX_GREEN:
+                return (color >> 8) & 0xFF;
+            case MIX_BLUE:
+                return color & 0xFF;
+            default:
+                return color >>> 24;
+        }
+    }
+
+    /** second after first */
+    private static int[] compose(int[] first, int[] second) {
+        if (first == IDENTITY) {
+            return second;
+        }
+        if (second == IDENTITY) {
+            return first;
+        }
+        final int[] lut = new int[256];
+        for (int i = 0; i < 256; ++i) {
+            lut[i] = second[first[i]];
+        }
+        return lut;
+    }
+
+    /** a table of value, or the identity if value is negative */
+    private static int[] constant(int value) {
+        final int[] lut = new int[256];
+        for (int i = 0; i < 256; ++i) {
+            lut[i] = value < 0 ? i : value;
+        }
+        return lut;
+    }
+
+    private static int[] clamp(int[] values) {
+        final int[] lut = new int[256];
+        for (int i = 0; i < 256; ++i) {
+            lut[i] = values[i] > 255 ? 255 : values[i] < 0 ? 0 : values[i];
+        }
+        return lut;
+    }
+
+    private static int[] mask(int[] values) {
+        final int[] lut = new int[256];
+        for (int i = 0; i < 256; ++i) {
+            lut[i] = values[i] & 0xFF;
+        }
+        return lut;
+    }
+
+    private static int[] bitTest(int bit, int on) {
+        final int[] lut = new int[256];
+        for (int i = 0; i < 256; ++i) {
+            lut[i] = (i & (1 << bit)) == 0 ? 0 : on;
+        }
+        return lut;
+    }
+
+    /** mix, then lookup per channel, all tables have 256 values in [0, 255] */
+    private static final class Step {
+        final int mix;
+        final int[] alpha;
+        final int[] red;
+        final int[] green;
+        final int[] blue;
+        final int equalize;
+        final boolean usingClassic;
+
+        Step(int mix, int[] alpha, int[] red, int[] green, int[] blue) {
+            this(mix, alpha, red, green, blue, EQUALIZE_NONE, false);
+        }
+
+        Step(int mix, int[] alpha, int[] red, int[] green, int[] blue, int equalize, boolean usingClassic) {
+            this.mix = mix;
+            this.alpha = alpha;
+            this.red = red;
+            this.green = green;
+            this.blue = blue;
+            this.equalize = equalize;
+            this.usingClassic = usingClassic;
+        }
+
+        /** whether r, g and b are the same value after the step */
+        boolean isGrey() {
+            return mix != MIX_NONE && (red == green || Arrays.equals(red, green))
+                    && (red == blue || Arrays.equals(red, blue));
+        }
+
+        int[] channel(int mix) {
+            switch (mix) {
+                case MIX_GREEN:
+                    return green;
+                case MIX_BLUE:
+                    return blue;
+                default:
+                    return red;
+            }
+        }
+    }
+
+    /**
+     * Stages are named as the {@link BaseImageProc} operations, and have the same result.
+     * Point stages are composed while building.
+     */
+    public static final class Builder {
+        private final List<Step> steps = new ArrayList<>();
+        private ParallelImageProc parallel;
+
+        private Builder() {
+        }
+
+        /** default is {@link ParallelImageProc#getDefault()} */
+        public Builder parallel(ParallelImageProc parallel) {
+            this.parallel = parallel;
+            return this;
+        }
+
+        public Builder greyColor() {
+            return add(new Step(MIX_GREY, FULL, IDENTITY, IDENTITY, IDENTITY));
+        }
+
+        public Builder greyFilter(FilterSpec spec) {
+            return greyLut(BaseImageProc.buildLut(spec));
+        }
+
+        public Builder colorFilter(FilterSpec redSpec, FilterSpec greenSpec, FilterSpec blueSpec) {
+            return colorLut(BaseImageProc.buildLut(redSpec), BaseImageProc.buildLut(greenSpec),
+                    BaseImageProc.buildLut(blueSpec));
+        }
+
+        /** values of greyLut are clamped into [0, 255] */
+        public Builder greyLut(int[] greyLut) {
+            BaseImageProc.checkLut(greyLut);
+            final int[] grey = clamp(greyLut);
+            return add(new Step(MIX_GREY, FULL, grey, grey, grey));
+        }
+
+        /** only the lowest 8 bits of the values are used */
+        public Builder colorLut(int[] redLut, int[] greenLut, int[] blueLut) {
+            BaseImageProc.checkLut(redLut);
+            BaseImageProc.checkLut(greenLut);
+            BaseImageProc.checkLut(blueLut);
+            return add(new Step(MIX_NONE, FULL, mask(redLut), mask(greenLut), mask(blueLut)));
+        }
+
+        public Builder greyBitPlaneSlicing(int bitPosition) {
+            BaseImageProc.checkBitPosition(bitPosition);
+            final int[] bit = bitPosition < 8 ? bitTest(bitPosition, 255) : ZERO;
+            return add(new Step(MIX_GREY, FULL, bit, bit, bit));
+        }
+
+        public Builder colorBitPlaneSlicing(int bitPosition) {
+            BaseImageProc.checkBitPosition(bitPosition);
+            final int[] bit = bitTest(bitPosition & 7, 255);
+            switch (bitPosition >> 3) {
+                case 0:
+                    return add(new Step(MIX_BLUE, FULL, ZERO, ZERO, bit));
+                case 1:
+                    return add(new Step(MIX_GREEN, FULL, ZERO, bit, ZERO));
+                case 2:
+                    return add(new Step(MIX_RED, FULL, bit, ZERO, ZERO));
+                default:
+                    return add(new Step(MIX_ALPHA, FULL, bit, bit, bit));
+            }
+        }
+
+        public Builder colorComponentPlaneSlicing(@MagicConstant(intValues = {
+                                                          BaseImageProc.COMPONENT_ALPHA,
+                                                          BaseImageProc.COMPONENT_RED,
+                                                          BaseImageProc.COMPONENT_GREEN,
+                                                          BaseImageProc.COMPONENT_BLUE
+                                                  })
+                                                          int position,
+                                                  @MagicConstant(intValues = {
+                                                          BaseImageProc.TYPE_GREY_COLOR,
+                                                          BaseImageProc.TYPE_ARGB_COLOR
+                                                  })
+                                                          int type) {
+            switch (position) {
+                case BaseImageProc.COMPONENT_RED:
+                case BaseImageProc.COMPONENT_GREEN:
+                case BaseImageProc.COMPONENT_BLUE:
+                    if (type != BaseImageProc.TYPE_ARGB_COLOR) {
+                        return add(new Step(position, FULL, IDENTITY, IDENTITY, IDENTITY));
+                    }
+                    return add(new Step(MIX_NONE, FULL,
+                            position == BaseImageProc.COMPONENT_RED ? IDENTITY : ZERO,
+                            position == BaseImageProc.COMPONENT_GREEN ? IDENTITY : ZERO,
+                            position == BaseImageProc.COMPONENT_BLUE ? IDENTITY : ZERO));
+                case BaseImageProc.COMPONENT_ALPHA:
+                    return add(new Step(MIX_NONE, FULL, ZERO, ZERO, ZERO));
+                default:
+                    return add(new Step(MIX_NONE, FULL, FULL, FULL, FULL));
+            }
+        }
+
+        public Builder combineBitsPlane(@MagicConstant(intValues = {
+                                                BaseImageProc.TYPE_GREY_COLOR,
+                                                BaseImageProc.TYPE_ARGB_COLOR
+                                        })
+                                                int type,
+                                        int mask) {
+            if (type == BaseImageProc.TYPE_GREY_COLOR) {
+                final int[] grey = bitAnd(mask & 0xFF);
+                return add(new Step(MIX_GREY, FULL, grey, grey, grey));
+            }
+            return add(new Step(MIX_NONE, bitAnd(mask >>> 24), bitAnd((mask >> 16) & 0xFF),
+                    bitAnd((mask >> 8) & 0xFF), bitAnd(mask & 0xFF)));
+        }
+
+        /** as simpleHistogramEqualization with TYPE_GREY_COLOR */
+        public Builder equalizeGrey(boolean usingClassic) {
+            return add(new Step(MIX_NONE, IDENTITY, IDENTITY, IDENTITY, IDENTITY, EQUALIZE_GREY, usingClassic));
+        }
+
+        /** as {@link BaseImageProc#equalizeRgb(int[], int, int, boolean)}, alpha kept */
+        public Builder equalizeRgb(boolean usingClassic) {
+            return add(new Step(MIX_NONE, IDENTITY, IDENTITY, IDENTITY, IDENTITY, EQUALIZE_RGB, usingClassic));
+        }
+
+        public ImagePipeline build() {
+            final List<Step> program = new ArrayList<>();
+            for (Step step : steps) {
+                if (step.equalize == EQUALIZE_NONE) {
+                    append(program, step);
+                } else {
+                    program.add(step);
+                }
+            }
+            return new ImagePipeline(program.toArray(new Step[program.size()]), parallel);
+        }
+
+        private Builder add(Step step) {
+            steps.add(step);
+            return this;
+        }
+
+        private static int[] bitAnd(int mask) {
+            if (mask == 0xFF) {
+                return IDENTITY;
+            }
+            final int[] lut = new int[256];
+            for (int i = 0; i < 256; ++i) {
+                lut[i] = i & mask;
+            }
+            return lut;
+        }
+    }
+}
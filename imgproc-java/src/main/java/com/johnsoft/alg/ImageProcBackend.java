@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.nio.Buffer;
+
+/**
+ * The kernels behind {@link BaseImageProc}, which validates all arguments before calling a backend,
+ * and composes the allocating and {@link FilterSpec} methods from these primitives.
+ * All backends should give bit-identical results, which {@link ImageProcConformance} checks.
+ * <p>
+ * Rectangle methods read h rows of w pixels from argb starting at argbOffset with row stride argbStride,
+ * and write into result in the same way, result may be argb for in-place.
+ * Buffer methods read and write size pixels from the current position of direct buffers in native order.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-12
+ */
+public interface ImageProcBackend {
+    /** name for system property {@link BaseImageProc#BACKEND_PROPERTY} */
+    String getName();
+
+    int calcGrey(int argb);
+    double[] calcGreyFilter(double[] argb, FilterSpec spec);
+    int[] buildLut(FilterSpec spec);
+
+    void grey(int[] argb, int argbOffset, int argbStride,
+              int[] result, int resultOffset, int resultStride, int w, int h);
+    void greyColor(int[] argb, int argbOffset, int argbStride,
+                   int[] result, int resultOffset, int resultStride, int w, int h);
+    void greyLut(int[] argb, int argbOffset, int argbStride,
+                 int[] result, int resultOffset, int resultStride, int w, int h, int[] greyLut);
+    void colorLut(int[] argb, int argbOffset, int argbStride,
+                  int[] result, int resultOffset, int resultStride, int w, int h,
+                  int[] redLut, int[] greenLut, int[] blueLut);
+    void greyBitPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                             int[] result, int resultOffset, int resultStride, int w, int h, int bitPosition);
+    void colorBitPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                              int[] result, int resultOffset, int resultStride, int w, int h, int bitPosition);
+    void colorComponentPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                    int[] result, int resultOffset, int resultStride, int w, int h,
+                                    int position, int type);
+    void combineBitsPlane(int[] argb, int argbOffset, int argbStride,
+                          int[] result, int resultOffset, int resultStride, int w, int h, int type, int mask);
+    int[] combineSimplePlane(int[][] argbs, int w, int h);
+
+    /** 8 grey planes if grey, otherwise 24 rgb planes */
+    int[][] bitPlanesAll(int[] argb, int w, int h, boolean grey);
+    /** 8 grey planes if grey, otherwise 24 rgb planes, as bitsets */
+    long[][] bitPlanesPacked(int[] argb, int w, int h, boolean grey);
+
+    /** add into counts */
+    void getAllColorCounts(int[] argb, int argbOffset, int argbStride, int w, int h, int position, int[] counts);
+    /** add into 4 or 5 (with alpha) histograms */
+    void getAllHistograms(int[] argb, int argbOffset, int argbStride, int w, int h, int[][] histograms);
+    int[] simpleHistogramEqualization(int[] argb, int position, boolean usingClassic);
+    int[] buildEqualizationLut(int[] histogram, boolean usingClassic);
+    void equalizeRgb(int[] argb, int argbOffset, int argbStride,
+                     int[] result, int resultOffset, int resultStride, int w, int h,
+                     int[] redLut, int[] greenLut, int[] blueLut);
+    /** clipLimit in pixels per bin, 0 for none */
+    int[] buildClaheLut(int[] histogram, int clipLimit);
+    /**
+     * rows [rowFrom, rowTo) of the w * h image whose pixel (0, 0) is at argbOffset and resultOffset,
+     * columns built once per image by {@link JavaImageProcBackend#claheColumns(int, int, boolean)}
+     */
+    void claheInterpolate(int[] argb, int argbOffset, int argbStride,
+                          int[] result, int resultOffset, int resultStride, int w, int h, int rowFrom, int rowTo,
+                          int tilesX, int tilesY, int[] luts, int[] columns, boolean grey);
+
+    void grey(Buffer argb, Buffer result, int size);
+    void greyColor(Buffer argb, Buffer result, int size);
+    void greyLut(Buffer argb, Buffer result, int size, int[] greyLut);
+    void colorLut(Buffer argb, Buffer result, int size, int[] redLut, int[] greenLut, int[] blueLut);
+    void greyBitPlaneSlicing(Buffer argb, Buffer result, int size, int bitPosition);
+    void colorBitPlaneSlicing(Buffer argb, Buffer result, int size, int bitPosition);
+    void colorComponentPlaneSlicing(Buffer argb, Buffer result, int size, int position, int type);
+    /** write 256 counts */
+    void getAllColorCounts(Buffer argb, int size, int position, Buffer counts);
+}
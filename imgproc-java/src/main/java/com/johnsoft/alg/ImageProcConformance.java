@@ -0,0 +1,483 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Conformance suite of {@link ImageProcBackend}: runs every operation of two backends on the same
+ * fixed seed images, filter specs, sub-rectangles and in-place calls, and reports every difference.
+ * Run main with the native library in java.library.path, exit status is 1 if any operation differs.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-12
+ */
+public final class ImageProcConformance {
+    private static final long SEED = 20171012L;
+    /** w, h pairs, odd sizes so that rows and packed words never line up */
+    private static final int[][] SIZES = { {1, 1}, {7, 3}, {67, 5}, {128, 33}, {255, 2} };
+    private static final int MARGIN = 3;
+
+    private final ImageProcBackend expected;
+    private final ImageProcBackend actual;
+    private final List<String> failures = new ArrayList<>();
+    private int checks;
+
+    private ImageProcConformance(ImageProcBackend expected, ImageProcBackend actual) {
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    public static void main(String[] args) {
+        if (!NativeImageProcBackend.isAvailable()) {
+            System.out.println("Native library imgproc-1.0.0 not in java.library.path, nothing to compare");
+            System.exit(2);
+        }
+        final List<String> failures = compare(new JavaImageProcBackend(), new NativeImageProcBackend());
+        for (String failure : failures) {
+            System.out.println(failure);
+        }
+        System.out.println(failures.isEmpty() ? "All identical" : failures.size() + " operations differ");
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    /** @return description of each differed operation, empty if both backends are identical */
+    public static List<String> compare(ImageProcBackend expected, ImageProcBackend actual) {
+        final ImageProcConformance conformance = new ImageProcConformance(expected, actual);
+        conformance.run();
+        System.out.println(conformance.checks + " checks between " + expected.getName()
+                + " and " + actual.getName());
+        return conformance.failures;
+    }
+
+    private void run() {
+        final Random random = new Random(SEED);
+        final FilterSpec[] specs = filterSpecs();
+        checkScalars(random, specs);
+        for (int[] size : SIZES) {
+            final int w = size[0];
+            final int h = size[1];
+            final String tag = w + "x" + h;
+            final int[][] images = {
+                    randomImage(random, w * h),
+                    constantImage(w * h, 0x80FFFFFF),
+                    gradientImage(w, h)
+            };
+            for (int i = 0; i < images.length; ++i) {
+                final String name = tag + "#" + i;
+                checkPointOps(name, images[i], w, h, specs);
+                checkPlanes(name, images[i], w, h);
+                checkHistograms(name, images[i], w, h);
+                checkBuffers(name, images[i], w, h, specs);
+            }
+        }
+    }
+
+    private void checkScalars(Random random, FilterSpec[] specs) {
+        final int[] colors = randomImage(random, 4096);
+        final int[] greys = new int[colors.length];
+        final int[] others = new int[colors.length];
+        for (int i = 0; i < colors.length; ++i) {
+            greys[i] = expected.calcGrey(colors[i]);
+            others[i] = actual.calcGrey(colors[i]);
+        }
+        check("calcGrey", greys, others);
+        final double[] normals = new double[301];
+        for (int i = 0; i < normals.length; ++i) {
+            normals[i] = (i - 20) / 256.0;
+        }
+        for (int s = 0; s < specs.length; ++s) {
+            check("buildLut spec" + s, expected.buildLut(specs[s]), actual.buildLut(specs[s]));
+            final double[] e = expected.calcGreyFilter(normals, specs[s]);
+            final double[] a = actual.calcGreyFilter(normals, specs[s]);
+            ++checks;
+            if (!Arrays.equals(e, a)) {
+                failures.add("calcGreyFilter spec" + s + " differs");
+            }
+        }
+        check("buildLut null", expected.buildLut(null), actual.buildLut(null));
+        final int[] histogram = new int[256];
+        for (int i = 0; i < 256; ++i) {
+            histogram[i] = (i * 37) % 11 == 0 ? 0 : random.nextInt(1000);
+        }
+        final int[] single = new int[256];
+        single[200] = 5;
+        final int[] empty = new int[256];
+        for (boolean classic : new boolean[] {true, false}) {
+            check("buildEqualizationLut " + classic, expected.buildEqualizationLut(histogram, classic),
+                    actual.buildEqualizationLut(histogram, classic));
+            check("buildEqualizationLut single " + classic, expected.buildEqualizationLut(single, classic),
+                    actual.buildEqualizationLut(single, classic));
+            check("buildEqualizationLut empty " + classic, expected.buildEqualizationLut(empty, classic),
+                    actual.buildEqualizationLut(empty, classic));
+        }
+        for (int clipLimit : new int[] {0, 1, 3, 500, 2000}) {
+            check("buildClaheLut " + clipLimit, expected.buildClaheLut(histogram, clipLimit),
+                    actual.buildClaheLut(histogram, clipLimit));
+            check("buildClaheLut single " + clipLimit, expected.buildClaheLut(single, clipLimit),
+                    actual.buildClaheLut(single, clipLimit));
+            check("buildClaheLut empty " + clipLimit, expected.buildClaheLut(empty, clipLimit),
+                    actual.buildClaheLut(empty, clipLimit));
+        }
+    }
+
+    private void checkPointOps(String name, int[] image, int w, int h, FilterSpec[] specs) {
+        checkRect(name + " grey", image, w, h, new RectOp() {
+            @Override
+            public void run(ImageProcBackend b, int[] src, int so, int ss, int[] dst, int dOff, int ds, int w, int h) {
+                b.grey(src, so, ss, dst, dOff, ds, w, h);
+            }
+        });
+        checkRect(name + " greyColor", image, w, h, new RectOp() {
+            @Override
+            public void run(ImageProcBackend b, int[] src, int so, int ss, int[] dst, int dOff, int ds, int w, int h) {
+                b.greyColor(src, so, ss, dst, dOff, ds, w, h);
+            }
+        });
+        for (int s = 0; s < specs.length; ++s) {
+            final int[] lut = expected.buildLut(specs[s]);
+            final int[] lut2 = expected.buildLut(specs[(s + 7) % specs.length]);
+            final int[] lut3 = expected.buildLut(specs[(s + 13) % specs.length]);
+            checkRect(name + " greyLut spec" + s, image, w, h, new RectOp() {
+                @Override
+                public void run(ImageProcBackend b, int[] src, int so, int ss, int[] dst, int dOff, int ds,
+                                int w, int h) {
+                    b.greyLut(src, so, ss, dst, dOff, ds, w, h, lut);
+                }
+            });
+            checkRect(name + " colorLut spec" + s, image, w, h, new RectOp() {
+                @Override
+                public void run(ImageProcBackend b, int[] src, int so, int ss, int[] dst, int dOff, int ds,
+                                int w, int h) {
+                    b.colorLut(src, so, ss, dst, dOff, ds, w, h, lut, lut2, lut3);
+                }
+            });
+        }
+        for (int bit = 0; bit < 32; ++bit) {
+            final int bitPosition = bit;
+            checkRect(name + " greyBitPlaneSlicing " + bit, image, w, h, new RectOp() {
+                @Override
+                public void run(ImageProcBackend b, int[] src, int so, int ss, int[] dst, int dOff, int ds,
+                                int w, int h) {
+                    b.greyBitPlaneSlicing(src, so, ss, dst, dOff, ds, w, h, bitPosition);
+                }
+            });
+            checkRect(name + " colorBitPlaneSlicing " + bit, image, w, h, new RectOp() {
+                @Override
+                public void run(ImageProcBackend b, int[] src, int so, int ss, int[] dst, int dOff, int ds,
+                                int w, int h) {
+                    b.colorBitPlaneSlicing(src, so, ss, dst, dOff, ds, w, h, bitPosition);
+                }
+            });
+        }
+        for (int position = BaseImageProc.TYPE_GREY_COLOR; position <= BaseImageProc.COMPONENT_ALPHA + 1;
+             ++position) {
+            for (final int type : new int[] {BaseImageProc.TYPE_GREY_COLOR, BaseImageProc.TYPE_ARGB_COLOR}) {
+                final int component = position;
+                checkRect(name + " colorComponentPlaneSlicing " + position + "," + type, image, w, h,
+                        new RectOp() {
+                            @Override
+                            public void run(ImageProcBackend b, int[] src, int so, int ss, int[] dst, int dOff,
+                                            int ds, int w, int h) {
+                                b.colorComponentPlaneSlicing(src, so, ss, dst, dOff, ds, w, h, component, type);
+                            }
+                        });
+            }
+        }
+        for (final int mask : new int[] {0, 0xFF, 0xF0, 0x0F0F0F, 0xFFFFFFFF, 0x80808080}) {
+            for (final int type : new int[] {BaseImageProc.TYPE_GREY_COLOR, BaseImageProc.TYPE_ARGB_COLOR}) {
+                checkRect(name + " combineBitsPlane " + Integer.toHexString(mask) + "," + type, image, w, h,
+                        new RectOp() {
+                            @Override
+                            public void run(ImageProcBackend b, int[] src, int so, int ss, int[] dst, int dOff,
+                                            int ds, int w, int h) {
+                                b.combineBitsPlane(src, so, ss, dst, dOff, ds, w, h, type, mask);
+                            }
+                        });
+            }
+        }
+    }
+
+    private void checkPlanes(String name, int[] image, int w, int h) {
+        for (boolean grey : new boolean[] {true, false}) {
+            final int[][] e = expected.bitPlanesAll(image, w, h, grey);
+            final int[][] a = actual.bitPlanesAll(image, w, h, grey);
+            ++checks;
+            if (!Arrays.deepEquals(e, a)) {
+                failures.add(name + " bitPlanesAll grey=" + grey + " differs");
+            }
+            final long[][] ep = expected.bitPlanesPacked(image, w, h, grey);
+            final long[][] ap = actual.bitPlanesPacked(image, w, h, grey);
+            ++checks;
+            if (!Arrays.deepEquals(ep, ap)) {
+                failures.add(name + " bitPlanesPacked grey=" + grey + " differs");
+            }
+        }
+        final int[][] planes = {
+                image,
+                expected.bitPlanesAll(image, w, h, false)[3],
+                expected.bitPlanesAll(image, w, h, false)[12],
+                expected.bitPlanesAll(image, w, h, false)[21]
+        };
+        for (int count = 0; count <= planes.length; ++count) {
+            final int[][] argbs = Arrays.copyOf(planes, count);
+            check(name + " combineSimplePlane " + count, expected.combineSimplePlane(argbs, w, h),
+                    actual.combineSimplePlane(argbs, w, h));
+        }
+    }
+
+    private void checkHistograms(String name, int[] image, int w, int h) {
+        final int stride = w + MARGIN;
+        final int[] padded = pad(image, w, h, stride, MARGIN);
+        for (int position = BaseImageProc.TYPE_GREY_COLOR; position <= BaseImageProc.COMPONENT_ALPHA + 1;
+             ++position) {
+            final int[] e = new int[256];
+            final int[] a = new int[256];
+            Arrays.fill(e, 3);
+            Arrays.fill(a, 3);
+            expected.getAllColorCounts(padded, MARGIN, stride, w, h, position, e);
+            actual.getAllColorCounts(padded, MARGIN, stride, w, h, position, a);
+            check(name + " getAllColorCounts " + position, e, a);
+            for (boolean classic : new boolean[] {true, false}) {
+                check(name + " simpleHistogramEqualization " + position + "," + classic,
+                        expected.simpleHistogramEqualization(image, position, classic),
+                        actual.simpleHistogramEqualization(image, position, classic));
+            }
+        }
+        for (int count = 4; count <= 5; ++count) {
+            final int[][] e = new int[count][256];
+            final int[][] a = new int[count][256];
+            e[1][7] = a[1][7] = 11;
+            expected.getAllHistograms(padded, MARGIN, stride, w, h, e);
+            actual.getAllHistograms(padded, MARGIN, stride, w, h, a);
+            ++checks;
+            if (!Arrays.deepEquals(e, a)) {
+                failures.add(name + " getAllHistograms " + count + " differs");
+            }
+        }
+        final int[][] histograms = new int[4][256];
+        expected.getAllHistograms(image, 0, w, w, h, histograms);
+        for (boolean classic : new boolean[] {true, false}) {
+            final int[] red = expected.buildEqualizationLut(histograms[BaseImageProc.COMPONENT_RED], classic);
+            final int[] green = expected.buildEqualizationLut(histograms[BaseImageProc.COMPONENT_GREEN], classic);
+            final int[] blue = expected.buildEqualizationLut(histograms[BaseImageProc.COMPONENT_BLUE], classic);
+            checkRect(name + " equalizeRgb " + classic, image, w, h, new RectOp() {
+                @Override
+                public void run(ImageProcBackend b, int[] src, int so, int ss, int[] dst, int dOff, int ds,
+                                int w, int h) {
+                    b.equalizeRgb(src, so, ss, dst, dOff, ds, w, h, red, green, blue);
+                }
+            });
+        }
+        /* one tile column takes the banded path of wide tiles once the image is 128 pixels wide */
+        for (final int tilesX : new int[] {1, Math.min(w, 3)}) {
+            final int tilesY = Math.min(h, 2);
+            for (final boolean grey : new boolean[] {true, false}) {
+                final int[] luts = new int[tilesX * tilesY * (grey ? 256 : 3 * 256)];
+                for (int i = 0; i < luts.length; ++i) {
+                    luts[i] = (i * 7 + i / 256 * 31) & 0xFF;
+                }
+                checkRect(name + " claheInterpolate " + tilesX + "," + grey, image, w, h, new RectOp() {
+                    @Override
+                    public void run(ImageProcBackend b, int[] src, int so, int ss, int[] dst, int dOff, int ds,
+                                    int w, int h) {
+                        b.claheInterpolate(src, so, ss, dst, dOff, ds, w, h, h / 3, h, tilesX, tilesY, luts,
+                                JavaImageProcBackend.claheColumns(w, tilesX, grey), grey);
+                    }
+                });
+            }
+        }
+    }
+
+    private void checkBuffers(String name, int[] image, int w, int h, FilterSpec[] specs) {
+        final int size = w * h;
+        final int[] lut = expected.buildLut(specs[specs.length / 2]);
+        final int[] lut2 = expected.buildLut(specs[1]);
+        for (int op = 0; op < 8; ++op) {
+            /* counts are not pixels, so no in-place for op 7 */
+            for (int kind = 0; kind < (op == 7 ? 2 : 3); ++kind) {
+                final int[] e = runBuffer(expected, op, kind, image, size, lut, lut2);
+                final int[] a = runBuffer(actual, op, kind, image, size, lut, lut2);
+                check(name + " buffer op" + op + " kind" + kind, e, a);
+            }
+        }
+    }
+
+    /** kind 0: IntBuffer, 1: ByteBuffer, 2: in-place IntBuffer; pixels start at a non-zero position */
+    private static int[] runBuffer(ImageProcBackend backend, int op, int kind, int[] image, int size,
+                                   int[] lut, int[] lut2) {
+        final IntBuffer ints = ByteBuffer.allocateDirect((size + 2 * MARGIN) * 4)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        final IntBuffer results = ByteBuffer.allocateDirect((Math.max(size, 256) + 2 * MARGIN) * 4)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        ints.position(MARGIN);
+        ints.put(image);
+        ints.position(MARGIN);
+        results.position(MARGIN);
+        final Buffer source;
+        final Buffer target;
+        final IntBuffer output;
+        if (kind == 1) {
+            final ByteBuffer bytes = ByteBuffer.allocateDirect((size + 2 * MARGIN) * 4)
+                    .order(ByteOrder.nativeOrder());
+            bytes.asIntBuffer().put(ints.duplicate());
+            bytes.position(MARGIN * 4);
+            source = bytes;
+            target = results;
+            output = results;
+        } else if (kind == 2) {
+            source = ints;
+            target = ints;
+            output = ints;
+        } else {
+            source = ints;
+            target = results;
+            output = results;
+        }
+        switch (op) {
+            case 0:
+                backend.grey(source, target, size);
+                break;
+            case 1:
+                backend.greyColor(source, target, size);
+                break;
+            case 2:
+                backend.greyLut(source, target, size, lut);
+                break;
+            case 3:
+                backend.colorLut(source, target, size, lut, lut2, lut);
+                break;
+            case 4:
+                backend.greyBitPlaneSlicing(source, target, size, 5);
+                break;
+            case 5:
+                backend.colorBitPlaneSlicing(source, target, size, 14);
+                break;
+            case 6:
+                backend.colorComponentPlaneSlicing(source, target, size, BaseImageProc.COMPONENT_GREEN,
+                        BaseImageProc.TYPE_ARGB_COLOR);
+                break;
+            default:
+                backend.getAllColorCounts(source, size, BaseImageProc.COMPONENT_RED, target);
+                break;
+        }
+        final int[] all = new int[output.capacity()];
+        for (int i = 0; i < all.length; ++i) {
+            all[i] = output.get(i);
+        }
+        return all;
+    }
+
+    /** Run op on a sub-rectangle of a padded source into a padded result, then again in-place */
+    private void checkRect(String name, int[] image, int w, int h, RectOp op) {
+        final int argbStride = w + MARGIN;
+        final int resultStride = w + 2 * MARGIN;
+        final int[] source = pad(image, w, h, argbStride, MARGIN);
+        final int[] e = new int[MARGIN + h * resultStride];
+        final int[] a = new int[e.length];
+        Arrays.fill(e, 0x12345678);
+        Arrays.fill(a, 0x12345678);
+        op.run(expected, source.clone(), MARGIN, argbStride, e, MARGIN, resultStride, w, h);
+        op.run(actual, source.clone(), MARGIN, argbStride, a, MARGIN, resultStride, w, h);
+        check(name, e, a);
+        final int[] ei = source.clone();
+        final int[] ai = source.clone();
+        op.run(expected, ei, MARGIN, argbStride, ei, MARGIN, argbStride, w, h);
+        op.run(actual, ai, MARGIN, argbStride, ai, MARGIN, argbStride, w, h);
+        check(name + " in-place", ei, ai);
+    }
+
+    private void check(String name, int[] expectedValues, int[] actualValues) {
+        ++checks;
+        if (expectedValues.length != actualValues.length) {
+            failures.add(name + ": length " + expectedValues.length + " != " + actualValues.length);
+            return;
+        }
+        for (int i = 0; i < expectedValues.length; ++i) {
+            if (expectedValues[i] != actualValues[i]) {
+                failures.add(name + ": [" + i + "] " + expected.getName() + "=0x"
+                        + Integer.toHexString(expectedValues[i]) + ", " + actual.getName() + "=0x"
+                        + Integer.toHexString(actualValues[i]));
+                return;
+            }
+        }
+    }
+
+    private static int[] pad(int[] image, int w, int h, int stride, int offset) {
+        final int[] padded = new int[offset + h * stride];
+        Arrays.fill(padded, 0x7F00FF00);
+        for (int y = 0; y < h; ++y) {
+            System.arraycopy(image, y * w, padded, offset + y * stride, w);
+        }
+        return padded;
+    }
+
+    private static int[] randomImage(Random random, int size) {
+        final int[] image = new int[size];
+        for (int i = 0; i < size; ++i) {
+            image[i] = random.nextInt();
+        }
+        return image;
+    }
+
+    private static int[] constantImage(int size, int color) {
+        final int[] image = new int[size];
+        Arrays.fill(image, color);
+        return image;
+    }
+
+    private static int[] gradientImage(int w, int h) {
+        final int[] image = new int[w * h];
+        for (int y = 0; y < h; ++y) {
+            for (int x = 0; x < w; ++x) {
+                final int level = (x * 255 / Math.max(1, w - 1)) & 0xFF;
+                image[y * w + x] = 0xFF000000 | (level << 16) | ((255 - level) << 8) | ((y * 17) & 0xFF);
+            }
+        }
+        return image;
+    }
+
+    /** every filter index over edge parameters, including values which overflow int */
+    private static FilterSpec[] filterSpecs() {
+        final float[][] params = {
+                {0.0F, 1.0F, 1.0F}, {0.2F, 0.5F, 0.4F}, {-1.0F, 3.0F, 2.2F}, {0.0F, 1e10F, 0.0F},
+                {0.5F, -2.0F, -1.0F}, {Float.NaN, 1.0F, 1.0F}
+        };
+        final int[][] levels = { {-1, 0, -1, 0}, {64, 0, 192, 2}, {100, 1, 100, 3}, {30, 2, 250, 1} };
+        final List<FilterSpec> specs = new ArrayList<>();
+        for (int index = BaseImageProc.INDEX_NO_FILTER; index <= BaseImageProc.INDEX_BINARY_FILTER; ++index) {
+            for (float[] param : params) {
+                for (int[] level : levels) {
+                    specs.add(new FilterSpec(index, param[0], param[1], param[2],
+                            level[0], level[1], level[2], level[3]));
+                }
+            }
+        }
+        return specs.toArray(new FilterSpec[specs.size()]);
+    }
+
+    private interface RectOp {
+        void run(ImageProcBackend backend, int[] src, int so, int ss, int[] dst, int dOff, int ds, int w, int h);
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Summed-area table of the red, green and blue channels of ARGB pixels, so that the sum of any rectangle is
+ * four lookups, and box blur, mean filter and the 3 boxes approximation of gaussian blur cost the same per pixel
+ * whatever the radius is.
+ * <p>
+ * The three channels are packed side by side in one int array of (w + 1) x (h + 1) cells, row 0 and column 0
+ * being zeros. Sums wrap around in int, but the difference of four of them is exact modulo 2^32,
+ * so the sum of any rectangle up to {@link #MAX_AREA} pixels comes out right read as unsigned.
+ * Rows are summed first then columns, both on the pool of {@link ParallelImageProc}.
+ * Alpha is not summed, results keep the alpha of the source.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public final class IntegralImage {
+    /** the largest rectangle which sum of 8-bit values fits in 32 bits */
+    public static final int MAX_AREA = (int) (0xFFFFFFFFL / 0xFF);
+
+    /** ints per column block while summing columns */
+    private static final int COLUMN_BLOCK = 1024;
+    private static final int MAX_CACHED = 2;
+    private static final int RECIPROCAL_BITS = 54;
+    /** 1022 * count^2 below 2^RECIPROCAL_BITS */
+    private static final long MAX_RECIPROCAL_COUNT = 4 * 1024 * 1024 - 1;
+    private static final Map<Object, IntegralImage> cache = new WeakHashMap<>();
+
+    private final int width;
+    private final int height;
+    private final int[] table;
+    private final byte[] alpha;
+    private final ParallelImageProc parallel;
+
+    private IntegralImage(int[] argb, int argbOffset, int argbStride, int w, int h, ParallelImageProc parallel,
+                          IntegralImage recycled) {
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, w, h);
+        if (3L * (w + 1) * (h + 1) > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Image too large for summed-area table: " + w + 'x' + h);
+        }
+        this.width = w;
+        this.height = h;
+        this.parallel = parallel != null ? parallel : ParallelImageProc.getDefault();
+        if (recycled != null && recycled.table.length == 3 * (w + 1) * (h + 1)) {
+            table = recycled.table;
+            alpha = recycled.alpha;
+        } else {
+            table = new int[3 * (w + 1) * (h + 1)];
+            alpha = new byte[w * h];
+        }
+        sumRows(argb, argbOffset, argbStride);
+        sumColumns();
+    }
+
+    public static IntegralImage of(int[] argb, int w, int h) {
+        return new IntegralImage(argb, 0, w, w, h, null, null);
+    }
+
+    /** parallel is null for {@link ParallelImageProc#getDefault()} */
+    public static IntegralImage of(int[] argb, int argbOffset, int argbStride, int w, int h,
+                                   ParallelImageProc parallel) {
+        return new IntegralImage(argb, argbOffset, argbStride, w, h, parallel, null);
+    }
+
+    /**
+     * the table built at the first call for key, usually the BufferedImage argb comes from,
+     * so that blurs with another radius of the same image do not sum it again;
+     * pixels of key should not change, only the last few keys are kept, and not longer than the key lives
+     */
+    public static IntegralImage cached(Object key, int[] argb, int w, int h) {
+        synchronized (cache) {
+            IntegralImage integral = cache.get(key);
+            if (integral == null || integral.width != w || integral.height != h) {
+                if (cache.size() >= MAX_CACHED) {
+                    cache.clear();
+                }
+                integral = of(argb, w, h);
+                cache.put(key, integral);
+            }
+            return integral;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** sum of component (COMPONENT_RED, COMPONENT_GREEN or COMPONENT_BLUE of BaseImageProc) in the rectangle */
+    public long getSum(int component, int x, int y, int rw, int rh) {
+        if (component < BaseImageProc.COMPONENT_RED || component > BaseImageProc.COMPONENT_BLUE) {
+            throw new IllegalArgumentException("Component should be red, green or blue");
+        }
+        if (x < 0 || y < 0 || rw < 0 || rh < 0 || x + rw > width || y + rh > height) {
+            throw new IllegalArgumentException("Rectangle [x=" + x + ", y=" + y + ", w=" + rw + ", h=" + rh
+                    + "] out of image " + width + 'x' + height);
+        }
+        if ((long) rw * rh > MAX_AREA) {
+            throw new IllegalArgumentException("Rectangle area should not be larger than " + MAX_AREA);
+        }
+        final int rowLength = 3 * (width + 1);
+        final int c = component - BaseImageProc.COMPONENT_RED;
+        final int top = y * rowLength + c;
+        final int bottom = (y + rh) * rowLength + c;
+        return (table[bottom + 3 * (x + rw)] - table[top + 3 * (x + rw)]
+                - table[bottom + 3 * x] + table[top + 3 * x]) & 0xFFFFFFFFL;
+    }
+
+    public int[] boxBlur(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius should not be negative");
+        }
+        return meanFilter(radius * 2 + 1, radius * 2 + 1);
+    }
+
+    public int[] meanFilter(int windowWidth, int windowHeight) {
+        final int[] result = new int[width * height];
+        meanFilter(windowWidth, windowHeight, result, 0, width);
+        return result;
+    }
+
+    /**
+     * mean of the windowWidth x windowHeight window anchored at (windowWidth / 2, windowHeight / 2) like a
+     * {@link Convolution} kernel, the window is cut at image edges and the mean is over the pixels left,
+     * rounded half up in integers; result may be the array the table was built from
+     */
+    public void meanFilter(int windowWidth, int windowHeight,
+                           final int[] result, final int resultOffset, final int resultStride) {
+        if (windowWidth <= 0 || windowHeight <= 0) {
+            throw new IllegalArgumentException("Window size should be positive");
+        }
+        if ((long) Math.min(windowWidth, width) * Math.min(windowHeight, height) > MAX_AREA) {
+            throw new IllegalArgumentException("Window area should not be larger than " + MAX_AREA);
+        }
+        BaseImageProc.checkRect(result, resultOffset, resultStride, width, height);
+        final int w = width;
+        final int h = height;
+        final int left = windowWidth / 2;
+        final int top = windowHeight / 2;
+        final int windowH = windowHeight;
+        // cut window columns are the same for all rows, as cell offsets of the table
+        final int[] x0 = new int[w];
+        final int[] x1 = new int[w];
+        final int[] columnCount = new int[w];
+        for (int x = 0; x < w; ++x) {
+            final int from = Math.max(0, x - left);
+            final int to = Math.min(w, x - left + windowWidth);
+            x0[x] = 3 * from;
+            x1[x] = 3 * to;
+            columnCount[x] = to - from;
+        }
+        final int[] table = this.table;
+        final byte[] alpha = this.alpha;
+        parallel.executeRows(w, h, new ParallelImageProc.RowKernel() {
+            @Override
+            void apply(int rowFrom, int rowTo) {
+                final int rowLength = 3 * (w + 1);
+                int a, b, c, d;
+                long count;
+                long lastCount = 0;
+                long inverse = 0;
+                for (int y = rowFrom; y < rowTo; ++y) {
+                    final int from = Math.max(0, y - top);
+                    final int to = Math.min(h, y - top + windowH);
+                    final int upper = from * rowLength;
+                    final int lower = to * rowLength;
+                    final int rowCount = to - from;
+                    final int resultRow = resultOffset + y * resultStride;
+                    final int alphaRow = y * w;
+                    for (int x = 0; x < w; ++x) {
+                        a = upper + x0[x];
+                        b = upper + x1[x];
+                        c = lower + x0[x];
+                        d = lower + x1[x];
+                        count = (long) columnCount[x] * rowCount;
+                        if (count != lastCount) {
+                            // the window is only cut near the edges, so the count rarely changes
+                            lastCount = count;
+                            inverse = reciprocal(count);
+                        }
+                        result[resultRow + x] = alpha[alphaRow + x] << 24
+                                | mean(table[d] - table[b] - table[c] + table[a], count, inverse) << 16
+                                | mean(table[d + 1] - table[b + 1] - table[c + 1] + table[a + 1], count, inverse) << 8
+                                | mean(table[d + 2] - table[b + 2] - table[c + 2] + table[a + 2], count, inverse);
+                    }
+                }
+            }
+        });
+    }
+
+    public int[] gaussianBlur(double sigma) {
+        final int[] result = new int[width * height];
+        gaussianBlur(sigma, result, 0, width);
+        return result;
+    }
+
+    /**
+     * three mean filters which sizes give the variance of sigma, see "Fast Almost-Gaussian Filtering" of Kovesi;
+     * the first one reads this table, the others a table of the last result which is built in place
+     */
+    public void gaussianBlur(double sigma, int[] result, int resultOffset, int resultStride) {
+        gaussianBlur(sigma, result, resultOffset, resultStride, null);
+    }
+
+    /**
+     * same as {@link #gaussianBlur(double, int[], int, int)} with the table of the later passes kept by the caller:
+     * scratch is rebuilt in place if it has the size of this one, otherwise a new table is made; the table used is
+     * returned to be passed again, so that repeated blurs, like a preview while a slider is dragged, allocate
+     * no table. scratch should not be this table.
+     */
+    public IntegralImage gaussianBlur(double sigma, int[] result, int resultOffset, int resultStride,
+                                      IntegralImage scratch) {
+        if (!(sigma > 0.0) || Double.isInfinite(sigma)) {
+            throw new IllegalArgumentException("Sigma should be positive");
+        }
+        if (scratch == this) {
+            throw new IllegalArgumentException("Scratch table should not be the source table");
+        }
+        final int[] sizes = boxSizesForGaussian(sigma, 3);
+        meanFilter(sizes[0], sizes[0], result, resultOffset, resultStride);
+        IntegralImage pass = scratch;
+        for (int i = 1; i < sizes.length; ++i) {
+            if (pass != null && pass.width == width && pass.height == height) {
+                pass.rebuild(result, resultOffset, resultStride);
+            } else {
+                pass = new IntegralImage(result, resultOffset, resultStride, width, height, parallel, pass);
+            }
+            pass.meanFilter(sizes[i], sizes[i], result, resultOffset, resultStride);
+        }
+        return pass;
+    }
+
+    /** odd sizes of n boxes which stacked variance is the closest to sigma * sigma */
+    static int[] boxSizesForGaussian(double sigma, int n) {
+        final double ideal = Math.sqrt(12.0 * sigma * sigma / n + 1.0);
+        int lower = (int) Math.floor(ideal);
+        if (lower % 2 == 0) {
+            --lower;
+        }
+        final int upper = lower + 2;
+        final long lowerCount = Math.round((12.0 * sigma * sigma - n * lower * lower - 4.0 * n * lower - 3.0 * n)
+                / (-4.0 * lower - 4.0));
+        final int[] sizes = new int[n];
+        for (int i = 0; i < n; ++i) {
+            sizes[i] = i < lowerCount ? lower : upper;
+        }
+        return sizes;
+    }
+
+    /**
+     * sum / count rounded half up, (2 * sum + count) / (2 * count) in integers, as multiplying by a double
+     * reciprocal loses exact ties; multiplied by inverse of {@link #reciprocal(long)} unless it is 0
+     */
+    private static int mean(int sum, long count, long inverse) {
+        final long dividend = (sum & 0xFFFFFFFFL) * 2 + count;
+        if (inverse != 0) {
+            return (int) ((dividend * inverse) >>> RECIPROCAL_BITS);
+        }
+        return (int) (dividend / (count * 2));
+    }
+
+    /**
+     * floor(2^RECIPROCAL_BITS / (2 * count)) + 1: for dividends up to 511 * count, multiplying and shifting gives
+     * the exact quotient while 1022 * count^2 is below 2^RECIPROCAL_BITS, and the product fits in 63 bits;
+     * 0 for larger counts, which are divided
+     */
+    private static long reciprocal(long count) {
+        if (count > MAX_RECIPROCAL_COUNT) {
+            return 0;
+        }
+        return (1L << RECIPROCAL_BITS) / (count * 2) + 1;
+    }
+
+    /** sum another image of the same size into this table */
+    private void rebuild(int[] argb, int argbOffset, int argbStride) {
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, width, height);
+        sumRows(argb, argbOffset, argbStride);
+        sumColumns();
+    }
+
+    /** prefix sums along each row into rows [1, h] of the table, alpha copied */
+    private void sumRows(final int[] argb, final int argbOffset, final int argbStride) {
+        final int w = width;
+        final int[] table = this.table;
+        final byte[] alpha = this.alpha;
+        parallel.executeRows(w, height, new ParallelImageProc.RowKernel() {
+            @Override
+            void apply(int rowFrom, int rowTo) {
+                int pixel, red, green, blue, cell;
+                for (int y = rowFrom; y < rowTo; ++y) {
+                    final int sourceRow = argbOffset + y * argbStride;
+                    red = green = blue = 0;
+                    cell = 3 * (y + 1) * (w + 1);
+                    table[cell] = table[cell + 1] = table[cell + 2] = 0;
+                    for (int x = 0; x < w; ++x) {
+                        pixel = argb[sourceRow + x];
+                        alpha[y * w + x] = (byte) (pixel >>> 24);
+                        red += (pixel >> 16) & 0xFF;
+                        green += (pixel >> 8) & 0xFF;
+                        blue += pixel & 0xFF;
+                        cell += 3;
+                        table[cell] = red;
+                        table[cell + 1] = green;
+                        table[cell + 2] = blue;
+                    }
+                }
+            }
+        });
+    }
+
+    /** prefix sums down each column, blocks of columns in parallel and each block row by row */
+    private void sumColumns() {
+        final int rowLength = 3 * (width + 1);
+        final int h = height;
+        final int[] table = this.table;
+        parallel.executeRange((rowLength + COLUMN_BLOCK - 1) / COLUMN_BLOCK, 1, new ParallelImageProc.RowKernel() {
+            @Override
+            void apply(int blockFrom, int blockTo) {
+                final int from = blockFrom * COLUMN_BLOCK;
+                final int to = Math.min(rowLength, blockTo * COLUMN_BLOCK);
+                for (int y = 2; y <= h; ++y) {
+                    final int row = y * rowLength;
+                    final int upper = row - rowLength;
+                    for (int i = from; i < to; ++i) {
+                        table[row + i] += table[upper + i];
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,844 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import static com.johnsoft.alg.BaseImageProc.BINARY_FILTER_POLICY_MAX;
+import static com.johnsoft.alg.BaseImageProc.BINARY_FILTER_POLICY_MIN;
+import static com.johnsoft.alg.BaseImageProc.BINARY_FILTER_POLICY_SAME;
+import static com.johnsoft.alg.BaseImageProc.COMPONENT_ALPHA;
+import static com.johnsoft.alg.BaseImageProc.COMPONENT_BLUE;
+import static com.johnsoft.alg.BaseImageProc.COMPONENT_GREEN;
+import static com.johnsoft.alg.BaseImageProc.COMPONENT_RED;
+import static com.johnsoft.alg.BaseImageProc.INDEX_BINARY_FILTER;
+import static com.johnsoft.alg.BaseImageProc.INDEX_GAMMA_FILTER;
+import static com.johnsoft.alg.BaseImageProc.INDEX_LINEAR_FILTER;
+import static com.johnsoft.alg.BaseImageProc.INDEX_LOG_FILTER;
+import static com.johnsoft.alg.BaseImageProc.INDEX_REVERSE_FILTER;
+import static com.johnsoft.alg.BaseImageProc.INDEX_STRETCH_FILTER;
+import static com.johnsoft.alg.BaseImageProc.TYPE_ARGB_COLOR;
+import static com.johnsoft.alg.BaseImageProc.TYPE_GREY_COLOR;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Pure java backend, a port of BaseImageProc.c which needs no native library.
+ * Every kernel follows the c code step by step, including float or double precision and c round,
+ * so the results are bit-identical with {@link NativeImageProcBackend}.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-12
+ */
+public final class JavaImageProcBackend implements ImageProcBackend {
+    public static final String NAME = "java";
+
+    private static final int GREY_BIT_PLANE_COUNT = 8;
+    private static final int RGB_BIT_PLANE_COUNT = 24;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int calcGrey(int argb) {
+        return colorToGrey(argb);
+    }
+
+    @Override
+    public double[] calcGreyFilter(double[] argb, FilterSpec spec) {
+        final FilterSpec info = spec == null ? FilterSpec.NONE : spec;
+        final double[] result = new double[argb.length];
+        for (int i = 0; i < argb.length; ++i) {
+            result[i] = filter(info, (int) (argb[i] * 255.0)) / 255.0;
+        }
+        return result;
+    }
+
+    @Override
+    public int[] buildLut(FilterSpec spec) {
+        final FilterSpec info = spec == null ? FilterSpec.NONE : spec;
+        final int[] lut = new int[256];
+        for (int i = 0; i < 256; ++i) {
+            lut[i] = clamp(filter(info, i));
+        }
+        return lut;
+    }
+
+    @Override
+    public void grey(int[] argb, int argbOffset, int argbStride,
+                     int[] result, int resultOffset, int resultStride, int w, int h) {
+        for (int y = 0; y < h; ++y) {
+            final int src = argbOffset + y * argbStride;
+            final int dst = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                result[dst + x] = colorToGrey(argb[src + x]);
+            }
+        }
+    }
+
+    @Override
+    public void greyColor(int[] argb, int argbOffset, int argbStride,
+                          int[] result, int resultOffset, int resultStride, int w, int h) {
+        for (int y = 0; y < h; ++y) {
+            final int src = argbOffset + y * argbStride;
+            final int dst = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                result[dst + x] = greyToColor(colorToGrey(argb[src + x]));
+            }
+        }
+    }
+
+    @Override
+    public void greyLut(int[] argb, int argbOffset, int argbStride,
+                        int[] result, int resultOffset, int resultStride, int w, int h, int[] greyLut) {
+        final int[] colors = greyColors(greyLut);
+        for (int y = 0; y < h; ++y) {
+            final int src = argbOffset + y * argbStride;
+            final int dst = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                result[dst + x] = colors[colorToGrey(argb[src + x])];
+            }
+        }
+    }
+
+    @Override
+    public void colorLut(int[] argb, int argbOffset, int argbStride,
+                         int[] result, int resultOffset, int resultStride, int w, int h,
+                         int[] redLut, int[] greenLut, int[] blueLut) {
+        final int[] reds = new int[256];
+        final int[] greens = new int[256];
+        final int[] blues = new int[256];
+        shiftLuts(redLut, greenLut, blueLut, reds, greens, blues);
+        int color;
+        for (int y = 0; y < h; ++y) {
+            final int src = argbOffset + y * argbStride;
+            final int dst = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                color = argb[src + x];
+                result[dst + x] = reds[(color >> 16) & 0xFF] | greens[(color >> 8) & 0xFF] | blues[color & 0xFF];
+            }
+        }
+    }
+
+    @Override
+    public void greyBitPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                    int[] result, int resultOffset, int resultStride, int w, int h,
+                                    int bitPosition) {
+        final int bit = 1 << bitPosition;
+        for (int y = 0; y < h; ++y) {
+            final int src = argbOffset + y * argbStride;
+            final int dst = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                result[dst + x] = (colorToGrey(argb[src + x]) & bit) == 0 ? 0xFF000000 : 0xFFFFFFFF;
+            }
+        }
+    }
+
+    @Override
+    public void colorBitPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                     int[] result, int resultOffset, int resultStride, int w, int h,
+                                     int bitPosition) {
+        final int bit = 1 << bitPosition;
+        final int color = rgbBitPlaneColor(bitPosition);
+        for (int y = 0; y < h; ++y) {
+            final int src = argbOffset + y * argbStride;
+            final int dst = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                result[dst + x] = (argb[src + x] & bit) == 0 ? 0xFF000000 : color;
+            }
+        }
+    }
+
+    @Override
+    public void colorComponentPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                           int[] result, int resultOffset, int resultStride, int w, int h,
+                                           int position, int type) {
+        final int shift;
+        final int mask;
+        switch (position) {
+            case COMPONENT_RED:
+                shift = 16;
+                mask = 0x00FF0000;
+                break;
+            case COMPONENT_GREEN:
+                shift = 8;
+                mask = 0x0000FF00;
+                break;
+            case COMPONENT_BLUE:
+                shift = 0;
+                mask = 0x000000FF;
+                break;
+            default:
+                fill(result, resultOffset, resultStride, w, h,
+                        position == COMPONENT_ALPHA ? 0xFF000000 : 0xFFFFFFFF);
+                return;
+        }
+        final boolean color = type == TYPE_ARGB_COLOR;
+        int src;
+        for (int y = 0; y < h; ++y) {
+            final int from = argbOffset + y * argbStride;
+            final int dst = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                src = argb[from + x];
+                result[dst + x] = color ? 0xFF000000 | (src & mask) : greyToColor((src >> shift) & 0xFF);
+            }
+        }
+    }
+
+    @Override
+    public void combineBitsPlane(int[] argb, int argbOffset, int argbStride,
+                                 int[] result, int resultOffset, int resultStride, int w, int h,
+                                 int type, int mask) {
+        final boolean grey = type == TYPE_GREY_COLOR;
+        for (int y = 0; y < h; ++y) {
+            final int src = argbOffset + y * argbStride;
+            final int dst = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                result[dst + x] = grey ? greyToColor(colorToGrey(argb[src + x]) & mask) : argb[src + x] & mask;
+            }
+        }
+    }
+
+    @Override
+    public int[] combineSimplePlane(int[][] argbs, int w, int h) {
+        final int size = w * h;
+        final int[] result = new int[size];
+        if (argbs.length > 0) {
+            System.arraycopy(argbs[0], 0, result, 0, size);
+        }
+        int s, t;
+        for (int p = 1; p < argbs.length; ++p) {
+            final int[] target = argbs[p];
+            for (int i = 0; i < size; ++i) {
+                s = result[i];
+                t = target[i];
+                result[i] = assembleColor(keep((t >> 16) & 0xFF, (s >> 16) & 0xFF),
+                        keep((t >> 8) & 0xFF, (s >> 8) & 0xFF), keep(t & 0xFF, s & 0xFF));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int[][] bitPlanesAll(int[] argb, int w, int h, boolean grey) {
+        final int size = w * h;
+        final int count = grey ? GREY_BIT_PLANE_COUNT : RGB_BIT_PLANE_COUNT;
+        final int[][] planes = new int[count][size];
+        final int[] masks = new int[count];
+        for (int p = 0; p < count; ++p) {
+            masks[p] = (grey ? 0xFFFFFFFF : rgbBitPlaneColor(p)) & 0x00FFFFFF;
+        }
+        int value;
+        for (int i = 0; i < size; ++i) {
+            value = grey ? colorToGrey(argb[i]) : argb[i];
+            for (int p = 0; p < count; ++p) {
+                planes[p][i] = 0xFF000000 | (-((value >> p) & 1) & masks[p]);
+            }
+        }
+        return planes;
+    }
+
+    @Override
+    public long[][] bitPlanesPacked(int[] argb, int w, int h, boolean grey) {
+        final int size = w * h;
+        final int count = grey ? GREY_BIT_PLANE_COUNT : RGB_BIT_PLANE_COUNT;
+        final long[][] planes = new long[count][(size + 63) / 64];
+        final long[] words = new long[count];
+        int value;
+        for (int base = 0, word = 0; base < size; base += 64, ++word) {
+            final int n = Math.min(size - base, 64);
+            for (int p = 0; p < count; ++p) {
+                words[p] = 0L;
+            }
+            for (int j = 0; j < n; ++j) {
+                value = grey ? colorToGrey(argb[base + j]) : argb[base + j];
+                for (int p = 0; p < count; ++p) {
+                    words[p] |= ((long) ((value >> p) & 1)) << j;
+                }
+            }
+            for (int p = 0; p < count; ++p) {
+                planes[p][word] = words[p];
+            }
+        }
+        return planes;
+    }
+
+    @Override
+    public void getAllColorCounts(int[] argb, int argbOffset, int argbStride, int w, int h,
+                                  int position, int[] counts) {
+        for (int y = 0; y < h; ++y) {
+            final int src = argbOffset + y * argbStride;
+            switch (position) {
+                case COMPONENT_ALPHA:
+                    for (int x = 0; x < w; ++x) {
+                        ++counts[(argb[src + x] >> 24) & 0xFF];
+                    }
+                    break;
+                case COMPONENT_RED:
+                    for (int x = 0; x < w; ++x) {
+                        ++counts[(argb[src + x] >> 16) & 0xFF];
+                    }
+                    break;
+                case COMPONENT_GREEN:
+                    for (int x = 0; x < w; ++x) {
+                        ++counts[(argb[src + x] >> 8) & 0xFF];
+                    }
+                    break;
+                case COMPONENT_BLUE:
+                    for (int x = 0; x < w; ++x) {
+                        ++counts[argb[src + x] & 0xFF];
+                    }
+                    break;
+                default:
+                    for (int x = 0; x < w; ++x) {
+                        ++counts[colorToGrey(argb[src + x])];
+                    }
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void getAllHistograms(int[] argb, int argbOffset, int argbStride, int w, int h, int[][] histograms) {
+        final int[] greys = histograms[TYPE_GREY_COLOR];
+        final int[] reds = histograms[COMPONENT_RED];
+        final int[] greens = histograms[COMPONENT_GREEN];
+        final int[] blues = histograms[COMPONENT_BLUE];
+        final int[] alphas = histograms.length > COMPONENT_ALPHA ? histograms[COMPONENT_ALPHA] : null;
+        int color;
+        for (int y = 0; y < h; ++y) {
+            final int src = argbOffset + y * argbStride;
+            for (int x = 0; x < w; ++x) {
+                color = argb[src + x];
+                ++greys[colorToGrey(color)];
+                ++reds[(color >> 16) & 0xFF];
+                ++greens[(color >> 8) & 0xFF];
+                ++blues[color & 0xFF];
+            }
+            if (alphas != null) {
+                for (int x = 0; x < w; ++x) {
+                    ++alphas[(argb[src + x] >>> 24)];
+                }
+            }
+        }
+    }
+
+    @Override
+    public int[] simpleHistogramEqualization(int[] argb, int position, boolean usingClassic) {
+        final int size = argb.length;
+        final int[] counts = new int[256];
+        getAllColorCounts(argb, 0, size, size, 1, position, counts);
+        final int[] map = equalization(counts, size, usingClassic);
+        final int[] result = new int[size];
+        int color;
+        for (int i = 0; i < size; ++i) {
+            color = argb[i];
+            switch (position) {
+                case COMPONENT_ALPHA:
+                    result[i] = (map[(color >> 24) & 0xFF] << 24) | (color & 0x00FFFFFF);
+                    break;
+                case COMPONENT_RED:
+                    result[i] = (map[(color >> 16) & 0xFF] << 16) | (color & 0xFF00FFFF);
+                    break;
+                case COMPONENT_GREEN:
+                    result[i] = (map[(color >> 8) & 0xFF] << 8) | (color & 0xFFFF00FF);
+                    break;
+                case COMPONENT_BLUE:
+                    result[i] = map[color & 0xFF] | (color & 0xFFFFFF00);
+                    break;
+                default:
+                    result[i] = greyToColor(map[colorToGrey(color)]);
+                    break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int[] buildEqualizationLut(int[] histogram, boolean usingClassic) {
+        int counts = 0;
+        for (int i = 0; i < 256; ++i) {
+            counts += histogram[i];
+        }
+        return equalization(histogram, counts, usingClassic);
+    }
+
+    @Override
+    public void equalizeRgb(int[] argb, int argbOffset, int argbStride,
+                            int[] result, int resultOffset, int resultStride, int w, int h,
+                            int[] redLut, int[] greenLut, int[] blueLut) {
+        int color;
+        for (int y = 0; y < h; ++y) {
+            final int src = argbOffset + y * argbStride;
+            final int dst = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                color = argb[src + x];
+                result[dst + x] = (color & 0xFF000000) | (redLut[(color >> 16) & 0xFF] << 16)
+                        | (greenLut[(color >> 8) & 0xFF] << 8) | blueLut[color & 0xFF];
+            }
+        }
+    }
+
+    @Override
+    public int[] buildClaheLut(int[] histogram, int clipLimit) {
+        final int[] bins = new int[256];
+        int counts = 0;
+        for (int i = 0; i < 256; ++i) {
+            bins[i] = histogram[i];
+            counts += histogram[i];
+        }
+        final int[] lut = new int[256];
+        if (counts == 0) {
+            for (int i = 0; i < 256; ++i) {
+                lut[i] = i;
+            }
+            return lut;
+        }
+        if (clipLimit > 0) {
+            int excess = 0;
+            for (int i = 0; i < 256; ++i) {
+                if (bins[i] > clipLimit) {
+                    excess += bins[i] - clipLimit;
+                    bins[i] = clipLimit;
+                }
+            }
+            final int batch = excess / 256;
+            int residual = excess - batch * 256;
+            for (int i = 0; i < 256; ++i) {
+                bins[i] += batch;
+            }
+            if (residual > 0) {
+                final int step = Math.max(256 / residual, 1);
+                for (int i = 0; i < 256 && residual > 0; i += step, --residual) {
+                    ++bins[i];
+                }
+            }
+        }
+        long cdf = 0;
+        for (int i = 0; i < 256; ++i) {
+            cdf += bins[i];
+            lut[i] = (int) ((cdf * 255 + counts / 2) / counts);
+        }
+        return lut;
+    }
+
+    @Override
+    public void claheInterpolate(int[] argb, int argbOffset, int argbStride,
+                                 int[] result, int resultOffset, int resultStride, int w, int h,
+                                 int rowFrom, int rowTo, int tilesX, int tilesY, int[] luts, int[] columns,
+                                 boolean grey) {
+        if (w <= 0 || rowFrom >= rowTo) {
+            return;
+        }
+        final int bandSize = tilesX * (grey ? 256 : 3 * 256);
+        final boolean banded = (long) tilesX * 128 <= w;
+        final int[] band = banded ? new int[bandSize] : null;
+        final int[] ty0 = new int[1];
+        final int[] ty1 = new int[1];
+        final int[] wy = new int[1];
+        int color, v, r, g, b, left, right, wx;
+        for (int y = rowFrom; y < rowTo; ++y) {
+            claheAxis(ty0, ty1, wy, y, y + 1, h, tilesY);
+            final int top = ty0[0] * bandSize;
+            final int bottom = ty1[0] * bandSize;
+            final int wy0 = wy[0];
+            final int src = argbOffset + y * argbStride;
+            final int dst = resultOffset + y * resultStride;
+            if (banded) {
+                for (int i = 0; i < bandSize; ++i) {
+                    band[i] = luts[top + i] * (256 - wy0) + luts[bottom + i] * wy0;
+                }
+                if (grey) {
+                    for (int x = 0; x < w; ++x) {
+                        left = columns[x];
+                        right = columns[w + x];
+                        v = colorToGrey(argb[src + x]);
+                        result[dst + x] = greyToColor(claheBlendBand(band[left + v], band[right + v],
+                                columns[2 * w + x]));
+                    }
+                } else {
+                    for (int x = 0; x < w; ++x) {
+                        left = columns[x];
+                        right = columns[w + x];
+                        wx = columns[2 * w + x];
+                        color = argb[src + x];
+                        r = (color >> 16) & 0xFF;
+                        g = ((color >> 8) & 0xFF) + 256;
+                        b = (color & 0xFF) + 512;
+                        r = claheBlendBand(band[left + r], band[right + r], wx);
+                        g = claheBlendBand(band[left + g], band[right + g], wx);
+                        b = claheBlendBand(band[left + b], band[right + b], wx);
+                        result[dst + x] = (color & 0xFF000000) | (r << 16) | (g << 8) | b;
+                    }
+                }
+            } else if (grey) {
+                for (int x = 0; x < w; ++x) {
+                    left = columns[x];
+                    right = columns[w + x];
+                    v = colorToGrey(argb[src + x]);
+                    result[dst + x] = greyToColor(claheBlend(luts[top + left + v], luts[top + right + v],
+                            luts[bottom + left + v], luts[bottom + right + v], columns[2 * w + x], wy0));
+                }
+            } else {
+                for (int x = 0; x < w; ++x) {
+                    left = columns[x];
+                    right = columns[w + x];
+                    wx = columns[2 * w + x];
+                    color = argb[src + x];
+                    r = (color >> 16) & 0xFF;
+                    g = ((color >> 8) & 0xFF) + 256;
+                    b = (color & 0xFF) + 512;
+                    r = claheBlend(luts[top + left + r], luts[top + right + r],
+                            luts[bottom + left + r], luts[bottom + right + r], wx, wy0);
+                    g = claheBlend(luts[top + left + g], luts[top + right + g],
+                            luts[bottom + left + g], luts[bottom + right + g], wx, wy0);
+                    b = claheBlend(luts[top + left + b], luts[top + right + b],
+                            luts[bottom + left + b], luts[bottom + right + b], wx, wy0);
+                    result[dst + x] = (color & 0xFF000000) | (r << 16) | (g << 8) | b;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void grey(Buffer argb, Buffer result, int size) {
+        final IntBuffer src = pixels(argb);
+        final IntBuffer dst = pixels(result);
+        for (int i = 0; i < size; ++i) {
+            dst.put(i, colorToGrey(src.get(i)));
+        }
+    }
+
+    @Override
+    public void greyColor(Buffer argb, Buffer result, int size) {
+        final IntBuffer src = pixels(argb);
+        final IntBuffer dst = pixels(result);
+        for (int i = 0; i < size; ++i) {
+            dst.put(i, greyToColor(colorToGrey(src.get(i))));
+        }
+    }
+
+    @Override
+    public void greyLut(Buffer argb, Buffer result, int size, int[] greyLut) {
+        final int[] colors = greyColors(greyLut);
+        final IntBuffer src = pixels(argb);
+        final IntBuffer dst = pixels(result);
+        for (int i = 0; i < size; ++i) {
+            dst.put(i, colors[colorToGrey(src.get(i))]);
+        }
+    }
+
+    @Override
+    public void colorLut(Buffer argb, Buffer result, int size, int[] redLut, int[] greenLut, int[] blueLut) {
+        final int[] reds = new int[256];
+        final int[] greens = new int[256];
+        final int[] blues = new int[256];
+        shiftLuts(redLut, greenLut, blueLut, reds, greens, blues);
+        final IntBuffer src = pixels(argb);
+        final IntBuffer dst = pixels(result);
+        int color;
+        for (int i = 0; i < size; ++i) {
+            color = src.get(i);
+            dst.put(i, reds[(color >> 16) & 0xFF] | greens[(color >> 8) & 0xFF] | blues[color & 0xFF]);
+        }
+    }
+
+    @Override
+    public void greyBitPlaneSlicing(Buffer argb, Buffer result, int size, int bitPosition) {
+        final int bit = 1 << bitPosition;
+        final IntBuffer src = pixels(argb);
+        final IntBuffer dst = pixels(result);
+        for (int i = 0; i < size; ++i) {
+            dst.put(i, (colorToGrey(src.get(i)) & bit) == 0 ? 0xFF000000 : 0xFFFFFFFF);
+        }
+    }
+
+    @Override
+    public void colorBitPlaneSlicing(Buffer argb, Buffer result, int size, int bitPosition) {
+        final int bit = 1 << bitPosition;
+        final int color = rgbBitPlaneColor(bitPosition);
+        final IntBuffer src = pixels(argb);
+        final IntBuffer dst = pixels(result);
+        for (int i = 0; i < size; ++i) {
+            dst.put(i, (src.get(i) & bit) == 0 ? 0xFF000000 : color);
+        }
+    }
+
+    @Override
+    public void colorComponentPlaneSlicing(Buffer argb, Buffer result, int size, int position, int type) {
+        final IntBuffer src = pixels(argb);
+        final IntBuffer dst = pixels(result);
+        final int[] row = new int[Math.min(size, 4096)];
+        for (int i = 0; i < size; i += row.length) {
+            final int n = Math.min(row.length, size - i);
+            for (int j = 0; j < n; ++j) {
+                row[j] = src.get(i + j);
+            }
+            colorComponentPlaneSlicing(row, 0, n, row, 0, n, n, 1, position, type);
+            for (int j = 0; j < n; ++j) {
+                dst.put(i + j, row[j]);
+            }
+        }
+    }
+
+    @Override
+    public void getAllColorCounts(Buffer argb, int size, int position, Buffer counts) {
+        final int[] values = new int[256];
+        final IntBuffer src = pixels(argb);
+        final int shift;
+        switch (position) {
+            case COMPONENT_ALPHA:
+                shift = 24;
+                break;
+            case COMPONENT_RED:
+                shift = 16;
+                break;
+            case COMPONENT_GREEN:
+                shift = 8;
+                break;
+            case COMPONENT_BLUE:
+                shift = 0;
+                break;
+            default:
+                shift = -1;
+                break;
+        }
+        for (int i = 0; i < size; ++i) {
+            ++values[shift < 0 ? colorToGrey(src.get(i)) : (src.get(i) >> shift) & 0xFF];
+        }
+        final IntBuffer dst = pixels(counts);
+        for (int i = 0; i < 256; ++i) {
+            dst.put(i, values[i]);
+        }
+    }
+
+    static int colorToGrey(int argb) {
+        return (((argb >> 16) & 0xFF) * 19595 + ((argb >> 8) & 0xFF) * 38469 + (argb & 0xFF) * 7472) >> 16;
+    }
+
+    static int greyToColor(int grey) {
+        final int avg = clamp(grey);
+        return 0xFF000000 | (avg << 16) | (avg << 8) | avg;
+    }
+
+    private static int assembleColor(int r, int g, int b) {
+        return 0xFF000000 | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+    }
+
+    private static int clamp(int value) {
+        return value > 255 ? 255 : value < 0 ? 0 : value;
+    }
+
+    private static int keep(int target, int source) {
+        return target == 0 ? source : target;
+    }
+
+    private static int rgbBitPlaneColor(int bitPosition) {
+        if (bitPosition < 8) {
+            return 0xFF0000FF;
+        } else if (bitPosition < 16) {
+            return 0xFF00FF00;
+        } else if (bitPosition < 24) {
+            return 0xFFFF0000;
+        } else {
+            return 0xFFFFFFFF;
+        }
+    }
+
+    private static int[] greyColors(int[] greyLut) {
+        final int[] colors = new int[256];
+        for (int i = 0; i < 256; ++i) {
+            colors[i] = greyToColor(greyLut[i]);
+        }
+        return colors;
+    }
+
+    private static void shiftLuts(int[] redLut, int[] greenLut, int[] blueLut,
+                                  int[] reds, int[] greens, int[] blues) {
+        for (int i = 0; i < 256; ++i) {
+            reds[i] = 0xFF000000 | ((redLut[i] & 0xFF) << 16);
+            greens[i] = (greenLut[i] & 0xFF) << 8;
+            blues[i] = blueLut[i] & 0xFF;
+        }
+    }
+
+    private static void fill(int[] result, int resultOffset, int resultStride, int w, int h, int value) {
+        for (int y = 0; y < h; ++y) {
+            final int dst = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                result[dst + x] = value;
+            }
+        }
+    }
+
+    /** view of pixels from the current position in native order, the buffer itself is not changed */
+    private static IntBuffer pixels(Buffer buffer) {
+        if (buffer instanceof IntBuffer) {
+            return ((IntBuffer) buffer).slice();
+        }
+        return ((ByteBuffer) buffer).slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    /* histogram_equalization_classic and histogram_equalization_photoshop */
+    private static int[] equalization(int[] histogram, int counts, boolean usingClassic) {
+        final int[] map = new int[256];
+        double cum = 0.0;
+        for (int i = 0; i < 256; ++i) {
+            cum = cum + histogram[i] / (double) counts;
+            map[i] = (int) round(cum * 255.0);
+        }
+        if (!usingClassic) {
+            final int minVal = map[0];
+            final double scale = minVal < 255 ? 255.0 / (255.0 - minVal) : 0.0;
+            for (int i = 0; i < 256; ++i) {
+                map[i] = (int) round((map[i] - minVal) * scale);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * left tile lut offsets, right tile lut offsets and the 8 bits right weights of the w columns for
+     * {@link #claheInterpolate}, the same for every row so strips of one image share them
+     */
+    static int[] claheColumns(int w, int tilesX, boolean grey) {
+        final int tileSize = grey ? 256 : 3 * 256;
+        final int[] left = new int[w];
+        final int[] right = new int[w];
+        final int[] wx = new int[w];
+        claheAxis(left, right, wx, 0, w, w, tilesX);
+        final int[] columns = new int[3 * w];
+        for (int x = 0; x < w; ++x) {
+            columns[x] = left[x] * tileSize;
+            columns[w + x] = right[x] * tileSize;
+        }
+        System.arraycopy(wx, 0, columns, 2 * w, w);
+        return columns;
+    }
+
+    /* clahe_axis, positions doubled so that tile centres are exact */
+    private static void claheAxis(int[] lower, int[] upper, int[] weight, int from, int to, int size, int tiles) {
+        int i = 0;
+        for (int p = from; p < to; ++p) {
+            final long pos = 2L * p + 1;
+            while (i + 1 < tiles && (long) (i + 1) * size / tiles + (long) (i + 2) * size / tiles <= pos) {
+                ++i;
+            }
+            final long centre = (long) i * size / tiles + (long) (i + 1) * size / tiles;
+            final int k = p - from;
+            if (pos < centre || i + 1 == tiles) {
+                lower[k] = upper[k] = i;
+                weight[k] = 0;
+            } else {
+                final long next = (long) (i + 1) * size / tiles + (long) (i + 2) * size / tiles;
+                lower[k] = i;
+                upper[k] = i + 1;
+                weight[k] = (int) (((pos - centre) << 8) / (next - centre));
+            }
+        }
+    }
+
+    private static int claheBlend(int tl, int tr, int bl, int br, int wx, int wy) {
+        return ((tl * (256 - wx) + tr * wx) * (256 - wy) + (bl * (256 - wx) + br * wx) * wy + 32768) >> 16;
+    }
+
+    /* clahe_blend_band, top and bottom tiles already blended by wy */
+    private static int claheBlendBand(int left, int right, int wx) {
+        return (left * (256 - wx) + right * wx + 32768) >> 16;
+    }
+
+    /** c round, half away from zero, Math.round rounds half up and in long */
+    private static double round(double value) {
+        if (value < 0.0) {
+            return -round(-value);
+        }
+        final double floor = Math.floor(value);
+        return value - floor >= 0.5 ? floor + 1.0 : floor;
+    }
+
+    private static int filter(FilterSpec spec, int component) {
+        switch (spec.index) {
+            case INDEX_REVERSE_FILTER:
+                return 255 - component;
+            case INDEX_LINEAR_FILTER:
+                return (int) (spec.c + spec.l * component);
+            case INDEX_LOG_FILTER:
+                return logFilter(spec, component);
+            case INDEX_GAMMA_FILTER:
+                return gammaFilter(spec, component);
+            case INDEX_STRETCH_FILTER:
+                return stretchFilter(component);
+            case INDEX_BINARY_FILTER:
+                return binaryFilter(spec, component);
+            default:
+                return component;
+        }
+    }
+
+    private static int logFilter(FilterSpec spec, int component) {
+        final double argC = spec.c;
+        final double argL = spec.l;
+        final double argG = spec.g;
+        final double normal = component / 255.0;
+        final double result = argC + argL * (StrictMath.log(normal * argG + 1.0)
+                / (StrictMath.log(argG + 1.0) + 0.001));
+        return (int) (result * 255.0);
+    }
+
+    private static int gammaFilter(FilterSpec spec, int component) {
+        final float normal = component / 255.0F;
+        final float result = spec.c + spec.l * (float) StrictMath.pow(normal, spec.g);
+        return (int) (result * 255.0F);
+    }
+
+    private static int stretchFilter(int component) {
+        final double normal = component / 255.0;
+        final double m = 0.5;
+        final double temp = m / (normal + 0.05);
+        final double e1 = StrictMath.log(1.0 / 0.05 - 1.0) / StrictMath.log(m / 0.05);
+        final double e2 = StrictMath.log(1.0 / 0.95 - 1.0) / StrictMath.log(m / 0.95);
+        final double e = Math.ceil(Math.min(e1, e2));
+        final double result = 1.0 / (1.0 + StrictMath.pow(temp, e));
+        return (int) (result * 255.0);
+    }
+
+    private static int binaryFilter(FilterSpec spec, int component) {
+        if (spec.highLevel >= 0 && component >= spec.highLevel) {
+            return binaryPolicy(spec.highPolicy, spec.highLevel, component);
+        } else if (spec.lowLevel >= 0 && component <= spec.lowLevel) {
+            return binaryPolicy(spec.lowPolicy, spec.lowLevel, component);
+        } else {
+            return component;
+        }
+    }
+
+    private static int binaryPolicy(int policy, int level, int component) {
+        switch (policy) {
+            case BINARY_FILTER_POLICY_SAME:
+                return level;
+            case BINARY_FILTER_POLICY_MAX:
+                return 255;
+            case BINARY_FILTER_POLICY_MIN:
+                return 0;
+            default:
+                return component;
+        }
+    }
+}
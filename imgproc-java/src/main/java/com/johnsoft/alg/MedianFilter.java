@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.util.Arrays;
+
+import org.intellij.lang.annotations.MagicConstant;
+
+/**
+ * Median of the (2 * radius + 1) square around each pixel, by sliding histograms of Perreault and Hebert
+ * ("Median Filtering in Constant Time"): each column keeps the histogram of its window rows, moved down one row
+ * by one add and one remove, and the window histogram moves right by adding and removing column histograms.
+ * Histograms are split into 16 coarse and 256 fine bins; only the coarse ones are moved at every pixel, the fine
+ * bins of the coarse bin which holds the median are brought up to date on demand. So the cost per pixel does not
+ * grow with the radius, apart from the start of every strip row.
+ * <p>
+ * The image is cut into column strips of {@link #STRIP_WIDTH} pixels whose column histograms fit in cache,
+ * strips of every channel run on the pool of {@link ParallelImageProc}. Edges are clamped.
+ * TYPE_GREY_COLOR filters the grey level of {@link BaseImageProc#grey(int[], int, int)},
+ * TYPE_ARGB_COLOR filters red, green and blue apart; alpha is kept.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public final class MedianFilter {
+    /** columns per strip */
+    public static final int STRIP_WIDTH = 128;
+    /** column counts are char */
+    public static final int MAX_RADIUS = Character.MAX_VALUE / 2 - 1;
+
+    private static final ThreadLocal<Histograms> histograms = new ThreadLocal<Histograms>() {
+        @Override
+        protected Histograms initialValue() {
+            return new Histograms();
+        }
+    };
+
+    private final int type;
+    private final ParallelImageProc parallel;
+
+    private MedianFilter(int type, ParallelImageProc parallel) {
+        this.type = type;
+        this.parallel = parallel;
+    }
+
+    public static MedianFilter of(@MagicConstant(intValues = {BaseImageProc.TYPE_GREY_COLOR,
+            BaseImageProc.TYPE_ARGB_COLOR}) int type) {
+        if (type != BaseImageProc.TYPE_GREY_COLOR && type != BaseImageProc.TYPE_ARGB_COLOR) {
+            throw new IllegalArgumentException("Type should be TYPE_GREY_COLOR or TYPE_ARGB_COLOR");
+        }
+        return new MedianFilter(type, null);
+    }
+
+    /** run on another pool, default is {@link ParallelImageProc#getDefault()} */
+    public MedianFilter withParallel(ParallelImageProc parallel) {
+        return new MedianFilter(type, parallel);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int[] median(int[] argb, int w, int h, int radius) {
+        final int[] result = new int[w * h];
+        median(argb, 0, w, result, 0, w, w, h, radius);
+        return result;
+    }
+
+    /** result may be argb itself */
+    public void median(int[] argb, int argbOffset, int argbStride,
+                       int[] result, int resultOffset, int resultStride, int w, int h, int radius) {
+        checkRadius(radius);
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, w, h);
+        BaseImageProc.checkRect(result, resultOffset, resultStride, w, h);
+        if (w == 0 || h == 0) {
+            return;
+        }
+        final byte[][] planes = toPlanes(argb, argbOffset, argbStride, w, h);
+        final byte[][] medians = new byte[planes.length][w * h];
+        slide(planes, w, h, radius, medians, null, null);
+        fromPlanes(argb, argbOffset, argbStride, medians, result, resultOffset, resultStride, w, h);
+    }
+
+    public int[] adaptive(int[] argb, int w, int h, int maxRadius) {
+        final int[] result = new int[w * h];
+        adaptive(argb, 0, w, result, 0, w, w, h, maxRadius);
+        return result;
+    }
+
+    /**
+     * adaptive median of Hwang and Haddad: the window grows from radius 1 until its median is not an impulse
+     * (min &lt; median &lt; max), then the pixel is kept if it is not an impulse either, else replaced by the median;
+     * the median of maxRadius if the window never settles. Noise is removed, details of clean pixels are kept.
+     * Each radius is a constant time pass over the whole image, whose results are ignored by the pixels settled
+     * at a smaller radius; no more radii are run once every pixel is settled.
+     */
+    public void adaptive(int[] argb, int argbOffset, int argbStride,
+                         int[] result, int resultOffset, int resultStride, int w, int h, int maxRadius) {
+        checkRadius(maxRadius);
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, w, h);
+        BaseImageProc.checkRect(result, resultOffset, resultStride, w, h);
+        if (w == 0 || h == 0) {
+            return;
+        }
+        final byte[][] planes = toPlanes(argb, argbOffset, argbStride, w, h);
+        final int count = planes.length;
+        final byte[][] outputs = new byte[count][w * h];
+        final boolean[][] settled = new boolean[count][w * h];
+        final byte[][] medians = new byte[count][w * h];
+        final byte[][] mins = new byte[count][w * h];
+        final byte[][] maxs = new byte[count][w * h];
+        final int[] left = new int[count];
+        Arrays.fill(left, w * h);
+        for (int radius = Math.min(1, maxRadius); radius <= maxRadius; ++radius) {
+            slide(planes, w, h, radius, medians, mins, maxs);
+            boolean done = true;
+            for (int c = 0; c < count; ++c) {
+                final byte[] plane = planes[c];
+                final byte[] output = outputs[c];
+                final boolean[] isSettled = settled[c];
+                int min, median, max, value;
+                for (int i = 0; i < w * h; ++i) {
+                    if (isSettled[i]) {
+                        continue;
+                    }
+                    min = mins[c][i] & 0xFF;
+                    median = medians[c][i] & 0xFF;
+                    max = maxs[c][i] & 0xFF;
+                    if ((min < median && median < max) || radius == maxRadius) {
+                        value = plane[i] & 0xFF;
+                        output[i] = min < value && value < max ? (byte) value : (byte) median;
+                        isSettled[i] = true;
+                        --left[c];
+                    }
+                }
+                done &= left[c] == 0;
+            }
+            if (done) {
+                break;
+            }
+        }
+        fromPlanes(argb, argbOffset, argbStride, outputs, result, resultOffset, resultStride, w, h);
+    }
+
+    private static void checkRadius(int radius) {
+        if (radius < 0 || radius > MAX_RADIUS) {
+            throw new IllegalArgumentException("Radius should be in [0, " + MAX_RADIUS + "]");
+        }
+    }
+
+    /** one grey plane or red, green and blue planes */
+    private byte[][] toPlanes(int[] argb, int argbOffset, int argbStride, int w, int h) {
+        if (type == BaseImageProc.TYPE_GREY_COLOR) {
+            final int[] grey = new int[w * h];
+            BaseImageProc.grey(argb, argbOffset, argbStride, grey, 0, w, w, h);
+            final byte[] plane = new byte[w * h];
+            for (int i = 0; i < plane.length; ++i) {
+                plane[i] = (byte) grey[i];
+            }
+            return new byte[][] {plane};
+        }
+        final byte[][] planes = new byte[3][w * h];
+        int pixel;
+        for (int y = 0; y < h; ++y) {
+            final int row = argbOffset + y * argbStride;
+            for (int x = 0; x < w; ++x) {
+                pixel = argb[row + x];
+                planes[0][y * w + x] = (byte) (pixel >> 16);
+                planes[1][y * w + x] = (byte) (pixel >> 8);
+                planes[2][y * w + x] = (byte) pixel;
+            }
+        }
+        return planes;
+    }
+
+    private static void fromPlanes(int[] argb, int argbOffset, int argbStride, byte[][] planes,
+                                   int[] result, int resultOffset, int resultStride, int w, int h) {
+        final byte[] red = planes[0];
+        final byte[] green = planes.length == 1 ? red : planes[1];
+        final byte[] blue = planes.length == 1 ? red : planes[2];
+        for (int y = 0; y < h; ++y) {
+            final int row = argbOffset + y * argbStride;
+            final int resultRow = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                final int i = y * w + x;
+                result[resultRow + x] = (argb[row + x] & 0xFF000000)
+                        | (red[i] & 0xFF) << 16 | (green[i] & 0xFF) << 8 | (blue[i] & 0xFF);
+            }
+        }
+    }
+
+    /** every strip of every plane on the pool, mins and maxs may be null */
+    private void slide(final byte[][] planes, final int w, final int h, final int radius,
+                       final byte[][] medians, final byte[][] mins, final byte[][] maxs) {
+        final ParallelImageProc parallel = this.parallel != null ? this.parallel : ParallelImageProc.getDefault();
+        final int strips = (w + STRIP_WIDTH - 1) / STRIP_WIDTH;
+        parallel.executeRange(strips * planes.length, 1, new ParallelImageProc.RowKernel() {
+            @Override
+            void apply(int from, int to) {
+                final Histograms hs = histograms.get();
+                for (int i = from; i < to; ++i) {
+                    final int c = i / strips;
+                    final int x0 = (i % strips) * STRIP_WIDTH;
+                    slideStrip(planes[c], w, h, radius, x0, Math.min(w, x0 + STRIP_WIDTH),
+                            medians[c], mins == null ? null : mins[c], maxs == null ? null : maxs[c], hs);
+                }
+            }
+        });
+    }
+
+    /** columns [xFrom, xTo) of all rows, column histograms cover [xFrom - radius, xTo + radius) */
+    private static void slideStrip(byte[] plane, int w, int h, int radius, int xFrom, int xTo,
+                                   byte[] medians, byte[] mins, byte[] maxs, Histograms hs) {
+        final int size = radius * 2 + 1;
+        final int columnCount = xTo - xFrom + radius * 2;
+        final char[] fine = hs.fine(columnCount * 256);
+        final char[] coarse = hs.coarse(columnCount * 16);
+        final int[] columns = hs.columns(columnCount);
+        final int[] kernelCoarse = hs.kernelCoarse;
+        final int[] kernelFine = hs.kernelFine;
+        final int[] updated = hs.updated;
+        Arrays.fill(fine, 0, columnCount * 256, (char) 0);
+        Arrays.fill(coarse, 0, columnCount * 16, (char) 0);
+        for (int i = 0; i < columnCount; ++i) {
+            columns[i] = clamp(xFrom - radius + i, w);
+        }
+        for (int k = -radius; k <= radius; ++k) {
+            addRow(plane, clamp(k, h) * w, columns, columnCount, fine, coarse, 1);
+        }
+        final int rank = size * size / 2;
+        int sum, bin, value;
+        for (int y = 0; y < h; ++y) {
+            if (y > 0) {
+                addRow(plane, clamp(y - radius - 1, h) * w, columns, columnCount, fine, coarse, -1);
+                addRow(plane, clamp(y + radius, h) * w, columns, columnCount, fine, coarse, 1);
+            }
+            Arrays.fill(kernelCoarse, 0);
+            for (int i = 0; i < size; ++i) {
+                for (int b = 0; b < 16; ++b) {
+                    kernelCoarse[b] += coarse[i * 16 + b];
+                }
+            }
+            Arrays.fill(updated, -size); // far enough to be summed again
+            final int row = y * w;
+            for (int x = xFrom; x < xTo; ++x) {
+                // window covers local columns [lx, lx + size)
+                final int lx = x - xFrom;
+                if (lx > 0) {
+                    final int in = (lx + size - 1) * 16;
+                    final int out = (lx - 1) * 16;
+                    for (int b = 0; b < 16; ++b) {
+                        kernelCoarse[b] += coarse[in + b] - coarse[out + b];
+                    }
+                }
+                sum = 0;
+                bin = 0;
+                while (sum + kernelCoarse[bin] <= rank) {
+                    sum += kernelCoarse[bin++];
+                }
+                updateFine(bin, lx, size, fine, kernelFine, updated);
+                value = bin << 4;
+                while (sum + kernelFine[value] <= rank) {
+                    sum += kernelFine[value++];
+                }
+                medians[row + x] = (byte) value;
+                if (mins != null) {
+                    bin = 0;
+                    while (kernelCoarse[bin] == 0) {
+                        ++bin;
+                    }
+                    updateFine(bin, lx, size, fine, kernelFine, updated);
+                    value = bin << 4;
+                    while (kernelFine[value] == 0) {
+                        ++value;
+                    }
+                    mins[row + x] = (byte) value;
+                    bin = 15;
+                    while (kernelCoarse[bin] == 0) {
+                        --bin;
+                    }
+                    updateFine(bin, lx, size, fine, kernelFine, updated);
+                    value = (bin << 4) + 15;
+                    while (kernelFine[value] == 0) {
+                        --value;
+                    }
+                    maxs[row + x] = (byte) value;
+                }
+            }
+        }
+    }
+
+    /** count the row into the column histograms, sign 1 to add or -1 to remove */
+    private static void addRow(byte[] plane, int row, int[] columns, int columnCount,
+                               char[] fine, char[] coarse, int sign) {
+        int value;
+        for (int i = 0; i < columnCount; ++i) {
+            value = plane[row + columns[i]] & 0xFF;
+            fine[(i << 8) + value] += sign;
+            coarse[(i << 4) + (value >> 4)] += sign;
+        }
+    }
+
+    /** bring the 16 fine bins of coarse bin to the window at lx, by moving them or by summing them again */
+    private static void updateFine(int bin, int lx, int size, char[] fine, int[] kernelFine, int[] updated) {
+        final int last = updated[bin];
+        if (last == lx) {
+            return;
+        }
+        final int base = bin << 4;
+        if ((lx - last) * 2 < size) {
+            for (int j = last + 1; j <= lx; ++j) {
+                final int in = ((j + size - 1) << 8) + base;
+                final int out = ((j - 1) << 8) + base;
+                for (int v = 0; v < 16; ++v) {
+                    kernelFine[base + v] += fine[in + v] - fine[out + v];
+                }
+            }
+        } else {
+            Arrays.fill(kernelFine, base, base + 16, 0);
+            for (int i = lx; i < lx + size; ++i) {
+                final int column = (i << 8) + base;
+                for (int v = 0; v < 16; ++v) {
+                    kernelFine[base + v] += fine[column + v];
+                }
+            }
+        }
+        updated[bin] = lx;
+    }
+
+    private static int clamp(int index, int size) {
+        return index < 0 ? 0 : index >= size ? size - 1 : index;
+    }
+
+    /** buffers of a worker thread, grown on demand */
+    private static final class Histograms {
+        final int[] kernelCoarse = new int[16];
+        final int[] kernelFine = new int[256];
+        /** window position each fine bin group is up to date with */
+        final int[] updated = new int[16];
+        private char[] fine = new char[0];
+        private char[] coarse = new char[0];
+        private int[] columns = new int[0];
+
+        char[] fine(int size) {
+            return fine.length >= size ? fine : (fine = new char[size]);
+        }
+
+        char[] coarse(int size) {
+            return coarse.length >= size ? coarse : (coarse = new char[size]);
+        }
+
+        int[] columns(int size) {
+            return columns.length >= size ? columns : (columns = new int[size]);
+        }
+    }
+}
@@ -0,0 +1,477 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import org.intellij.lang.annotations.MagicConstant;
+
+/**
+ * Erosion, dilation, opening, closing and top-hats by a rectangle, as a row pass and a column pass.
+ * <p>
+ * Grey and color images use van Herk / Gil-Werman: the padded line is cut into blocks of the element size,
+ * with the running min (or max) from the start and from the end of each block, so any window is one comparison of
+ * the two, about 3 comparisons per pixel for any element size. {@link BinaryImage} packs 64 pixels per long:
+ * columns run van Herk / Gil-Werman over whole words, rows AND (or OR) the row with itself shifted by 1, 2, 4 ...
+ * bits, so a word of 64 pixels costs log2 of the element width operations.
+ * <p>
+ * Dilation uses the element mirrored about its anchor, so that open and close stay below and above the source
+ * for even sizes too. Pixels outside the image never win, that is the window is cut at the edges. Row passes run on strips of rows,
+ * column passes on strips of columns, both on the pool of {@link ParallelImageProc}.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public final class Morphology {
+    public static final int OP_ERODE = 0;
+    public static final int OP_DILATE = 1;
+    /** dilate of erode, removes bright spots smaller than the element */
+    public static final int OP_OPEN = 2;
+    /** erode of dilate, fills dark holes smaller than the element */
+    public static final int OP_CLOSE = 3;
+    /** source minus open, the bright spots open removed */
+    public static final int OP_TOP_HAT = 4;
+    /** close minus source, the dark holes close filled */
+    public static final int OP_BLACK_HAT = 5;
+
+    /** columns per strip of the column pass, words for binary images */
+    private static final int STRIP_WIDTH = 64;
+    private static final int WORD_STRIP_WIDTH = 8;
+
+    private static final ThreadLocal<Scratch> scratches = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final int width;
+    private final int height;
+    private final ParallelImageProc parallel;
+
+    private Morphology(int width, int height, ParallelImageProc parallel) {
+        this.width = width;
+        this.height = height;
+        this.parallel = parallel;
+    }
+
+    /** width x height rectangle anchored at (width / 2, height / 2) */
+    public static Morphology rectangle(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Element size should be positive");
+        }
+        return new Morphology(width, height, null);
+    }
+
+    /** (2 * radius + 1) square */
+    public static Morphology square(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius should not be negative");
+        }
+        return rectangle(radius * 2 + 1, radius * 2 + 1);
+    }
+
+    /** run on another pool, default is {@link ParallelImageProc#getDefault()} */
+    public Morphology withParallel(ParallelImageProc parallel) {
+        return new Morphology(width, height, parallel);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] apply(@MagicConstant(valuesFromClass = Morphology.class) int op,
+                       @MagicConstant(intValues = {BaseImageProc.TYPE_GREY_COLOR,
+                               BaseImageProc.TYPE_ARGB_COLOR}) int type,
+                       int[] argb, int w, int h) {
+        final int[] result = new int[w * h];
+        apply(op, type, argb, 0, w, result, 0, w, w, h);
+        return result;
+    }
+
+    /**
+     * TYPE_GREY_COLOR works on the grey level of {@link BaseImageProc#grey(int[], int, int)},
+     * TYPE_ARGB_COLOR on red, green and blue apart; alpha is kept, result may be argb itself
+     */
+    public void apply(@MagicConstant(valuesFromClass = Morphology.class) int op,
+                      @MagicConstant(intValues = {BaseImageProc.TYPE_GREY_COLOR,
+                              BaseImageProc.TYPE_ARGB_COLOR}) int type,
+                      int[] argb, int argbOffset, int argbStride,
+                      int[] result, int resultOffset, int resultStride, int w, int h) {
+        checkOp(op);
+        if (type != BaseImageProc.TYPE_GREY_COLOR && type != BaseImageProc.TYPE_ARGB_COLOR) {
+            throw new IllegalArgumentException("Type should be TYPE_GREY_COLOR or TYPE_ARGB_COLOR");
+        }
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, w, h);
+        BaseImageProc.checkRect(result, resultOffset, resultStride, w, h);
+        if (w == 0 || h == 0) {
+            return;
+        }
+        final byte[][] planes = toPlanes(type, argb, argbOffset, argbStride, w, h);
+        final byte[] temp = new byte[w * h];
+        final byte[] output = new byte[w * h];
+        for (int c = 0; c < planes.length; ++c) {
+            final byte[] plane = planes[c];
+            switch (op) {
+                case OP_ERODE:
+                case OP_DILATE:
+                    pass(plane, temp, output, w, h, op == OP_DILATE);
+                    break;
+                case OP_OPEN:
+                case OP_TOP_HAT:
+                    pass(plane, output, temp, w, h, false);
+                    pass(temp, output, output, w, h, true);
+                    break;
+                default: // OP_CLOSE, OP_BLACK_HAT
+                    pass(plane, output, temp, w, h, true);
+                    pass(temp, output, output, w, h, false);
+                    break;
+            }
+            if (op == OP_TOP_HAT || op == OP_BLACK_HAT) {
+                for (int i = 0; i < plane.length; ++i) {
+                    final int difference = (plane[i] & 0xFF) - (output[i] & 0xFF);
+                    plane[i] = (byte) (op == OP_TOP_HAT ? difference : -difference);
+                }
+            } else {
+                System.arraycopy(output, 0, plane, 0, plane.length);
+            }
+        }
+        final byte[] red = planes[0];
+        final byte[] green = planes.length == 1 ? red : planes[1];
+        final byte[] blue = planes.length == 1 ? red : planes[2];
+        for (int y = 0; y < h; ++y) {
+            final int row = argbOffset + y * argbStride;
+            final int resultRow = resultOffset + y * resultStride;
+            for (int x = 0; x < w; ++x) {
+                final int i = y * w + x;
+                result[resultRow + x] = (argb[row + x] & 0xFF000000)
+                        | (red[i] & 0xFF) << 16 | (green[i] & 0xFF) << 8 | (blue[i] & 0xFF);
+            }
+        }
+    }
+
+    /** a new image, source is not changed */
+    public BinaryImage apply(@MagicConstant(valuesFromClass = Morphology.class) int op, BinaryImage source) {
+        checkOp(op);
+        if (source == null) {
+            throw new IllegalArgumentException("Source is null");
+        }
+        final BinaryImage output = new BinaryImage(source.getWidth(), source.getHeight());
+        if (source.getWidth() == 0 || source.getHeight() == 0) {
+            return output;
+        }
+        final BinaryImage temp = new BinaryImage(source.getWidth(), source.getHeight());
+        switch (op) {
+            case OP_ERODE:
+            case OP_DILATE:
+                pass(source, temp, output, op == OP_DILATE);
+                break;
+            case OP_OPEN:
+            case OP_TOP_HAT:
+                pass(source, output, temp, false);
+                pass(temp, output, output, true);
+                break;
+            default: // OP_CLOSE, OP_BLACK_HAT
+                pass(source, output, temp, true);
+                pass(temp, output, output, false);
+                break;
+        }
+        if (op == OP_TOP_HAT || op == OP_BLACK_HAT) {
+            final long[] words = output.getWords();
+            final long[] sourceWords = source.getWords();
+            for (int i = 0; i < words.length; ++i) {
+                words[i] = op == OP_TOP_HAT ? sourceWords[i] & ~words[i] : words[i] & ~sourceWords[i];
+            }
+        }
+        return output;
+    }
+
+    private static void checkOp(int op) {
+        if (op < OP_ERODE || op > OP_BLACK_HAT) {
+            throw new IllegalArgumentException("Unknown operation: " + op);
+        }
+    }
+
+    private static byte[][] toPlanes(int type, int[] argb, int argbOffset, int argbStride, int w, int h) {
+        if (type == BaseImageProc.TYPE_GREY_COLOR) {
+            final int[] grey = new int[w * h];
+            BaseImageProc.grey(argb, argbOffset, argbStride, grey, 0, w, w, h);
+            final byte[] plane = new byte[w * h];
+            for (int i = 0; i < plane.length; ++i) {
+                plane[i] = (byte) grey[i];
+            }
+            return new byte[][] {plane};
+        }
+        final byte[][] planes = new byte[3][w * h];
+        int pixel;
+        for (int y = 0; y < h; ++y) {
+            final int row = argbOffset + y * argbStride;
+            for (int x = 0; x < w; ++x) {
+                pixel = argb[row + x];
+                planes[0][y * w + x] = (byte) (pixel >> 16);
+                planes[1][y * w + x] = (byte) (pixel >> 8);
+                planes[2][y * w + x] = (byte) pixel;
+            }
+        }
+        return planes;
+    }
+
+    private ParallelImageProc parallel() {
+        return parallel != null ? parallel : ParallelImageProc.getDefault();
+    }
+
+    /** erode (min) or dilate (max) source into result, rows into temp first; result may be source */
+    private void pass(final byte[] source, final byte[] temp, final byte[] result, final int w, final int h,
+                      final boolean max) {
+        final int size = width;
+        final int left = max ? width - 1 - width / 2 : width / 2;
+        parallel().executeRows(w, h, new ParallelImageProc.RowKernel() {
+            @Override
+            void apply(int rowFrom, int rowTo) {
+                final Scratch scratch = scratches.get();
+                final int length = (w + size - 1 + size - 1) / size * size;
+                final int[] forward = scratch.forward(length);
+                final int[] backward = scratch.backward(length);
+                for (int y = rowFrom; y < rowTo; ++y) {
+                    vanHerk(source, y * w, w, size, left, max, forward, backward, length);
+                    for (int x = 0; x < w; ++x) {
+                        final int a = backward[x];
+                        final int b = forward[x + size - 1];
+                        temp[y * w + x] = (byte) (max ? Math.max(a, b) : Math.min(a, b));
+                    }
+                }
+            }
+        });
+        final int vSize = height;
+        final int top = max ? height - 1 - height / 2 : height / 2;
+        final int strips = (w + STRIP_WIDTH - 1) / STRIP_WIDTH;
+        parallel().executeRange(strips, 1, new ParallelImageProc.RowKernel() {
+            @Override
+            void apply(int stripFrom, int stripTo) {
+                final Scratch scratch = scratches.get();
+                final int length = (h + vSize - 1 + vSize - 1) / vSize * vSize;
+                final int[] forward = scratch.forward(length * STRIP_WIDTH);
+                final int[] backward = scratch.backward(length * STRIP_WIDTH);
+                final int identity = max ? 0 : 0xFF;
+                int value;
+                for (int strip = stripFrom; strip < stripTo; ++strip) {
+                    // the strip is walked row by row, forward and backward are length rows of n columns
+                    final int x0 = strip * STRIP_WIDTH;
+                    final int n = Math.min(w, x0 + STRIP_WIDTH) - x0;
+                    for (int p = 0; p < length; ++p) {
+                        final int y = p - top;
+                        final int base = p * n;
+                        final boolean first = p % vSize == 0;
+                        for (int c = 0; c < n; ++c) {
+                            value = y >= 0 && y < h ? temp[y * w + x0 + c] & 0xFF : identity;
+                            backward[base + c] = value;
+                            if (!first) {
+                                value = max ? Math.max(value, forward[base - n + c])
+                                        : Math.min(value, forward[base - n + c]);
+                            }
+                            forward[base + c] = value;
+                        }
+                    }
+                    for (int p = length - 2; p >= 0; --p) {
+                        if (p % vSize != vSize - 1) {
+                            final int base = p * n;
+                            for (int c = 0; c < n; ++c) {
+                                backward[base + c] = max ? Math.max(backward[base + c], backward[base + n + c])
+                                        : Math.min(backward[base + c], backward[base + n + c]);
+                            }
+                        }
+                    }
+                    for (int y = 0; y < h; ++y) {
+                        final int a = y * n;
+                        final int b = (y + vSize - 1) * n;
+                        for (int c = 0; c < n; ++c) {
+                            result[y * w + x0 + c] = (byte) (max ? Math.max(backward[a + c], forward[b + c])
+                                    : Math.min(backward[a + c], forward[b + c]));
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * running min or max of the line padded by lead pixels in front, from the start (forward) and from the end
+     * (backward) of each block of size; window [i, i + size) of the padded line is backward[i] vs forward[i + size - 1]
+     */
+    private static void vanHerk(byte[] line, int start, int count, int size, int lead, boolean max,
+                                int[] forward, int[] backward, int length) {
+        final int identity = max ? 0 : 0xFF;
+        int value;
+        for (int i = 0; i < length; ++i) {
+            final int index = i - lead;
+            value = index >= 0 && index < count ? line[start + index] & 0xFF : identity;
+            backward[i] = value;
+            if (i % size != 0) {
+                value = max ? Math.max(value, forward[i - 1]) : Math.min(value, forward[i - 1]);
+            }
+            forward[i] = value;
+        }
+        for (int i = length - 2; i >= 0; --i) {
+            if (i % size != size - 1) {
+                backward[i] = max ? Math.max(backward[i], backward[i + 1]) : Math.min(backward[i], backward[i + 1]);
+            }
+        }
+    }
+
+    /** binary erode (and) or dilate (or), rows by shifts into temp, then columns by van Herk into result */
+    private void pass(final BinaryImage source, final BinaryImage temp, final BinaryImage result, final boolean or) {
+        final int w = source.getWidth();
+        final int h = source.getHeight();
+        final int wordsPerRow = source.getWordsPerRow();
+        final long[] sourceWords = source.getWords();
+        final long[] tempWords = temp.getWords();
+        final long[] resultWords = result.getWords();
+        final long pad = or ? 0L : -1L;
+        final int size = width;
+        final int left = or ? width - 1 - width / 2 : width / 2;
+        parallel().executeRows(w, h, new ParallelImageProc.RowKernel() {
+            @Override
+            void apply(int rowFrom, int rowTo) {
+                final int padWords = (size + 63) / 64 + 1;
+                final int length = wordsPerRow + padWords * 2;
+                final long[] line = scratches.get().line(length);
+                for (int y = rowFrom; y < rowTo; ++y) {
+                    final int row = y * wordsPerRow;
+                    for (int i = 0; i < padWords; ++i) {
+                        line[i] = pad;
+                        line[length - 1 - i] = pad;
+                    }
+                    System.arraycopy(sourceWords, row, line, padWords, wordsPerRow);
+                    if ((w & 63) != 0 && !or) {
+                        line[padWords + wordsPerRow - 1] |= -1L << w;
+                    }
+                    // line[p] becomes the and (or) of bits [p, p + span), span doubled each round
+                    int span = 1;
+                    while (span * 2 <= size) {
+                        combineShifted(line, length, span, or, pad);
+                        span *= 2;
+                    }
+                    if (span < size) {
+                        combineShifted(line, length, size - span, or, pad);
+                    }
+                    for (int i = 0; i < wordsPerRow; ++i) {
+                        tempWords[row + i] = bitsAt(line, length, ((padWords + i) << 6) - left, pad);
+                    }
+                    temp.clearTail(y);
+                }
+            }
+        });
+        final int vSize = height;
+        final int top = or ? height - 1 - height / 2 : height / 2;
+        final int strips = (wordsPerRow + WORD_STRIP_WIDTH - 1) / WORD_STRIP_WIDTH;
+        parallel().executeRange(strips, 1, new ParallelImageProc.RowKernel() {
+            @Override
+            void apply(int stripFrom, int stripTo) {
+                final Scratch scratch = scratches.get();
+                final int length = (h + vSize - 1 + vSize - 1) / vSize * vSize;
+                final long[] forward = scratch.forwardWords(length * WORD_STRIP_WIDTH);
+                final long[] backward = scratch.backwardWords(length * WORD_STRIP_WIDTH);
+                long value;
+                for (int strip = stripFrom; strip < stripTo; ++strip) {
+                    final int i0 = strip * WORD_STRIP_WIDTH;
+                    final int n = Math.min(wordsPerRow, i0 + WORD_STRIP_WIDTH) - i0;
+                    for (int p = 0; p < length; ++p) {
+                        final int y = p - top;
+                        final int base = p * n;
+                        final boolean first = p % vSize == 0;
+                        for (int c = 0; c < n; ++c) {
+                            value = y >= 0 && y < h ? tempWords[y * wordsPerRow + i0 + c] : pad;
+                            backward[base + c] = value;
+                            if (!first) {
+                                value = or ? value | forward[base - n + c] : value & forward[base - n + c];
+                            }
+                            forward[base + c] = value;
+                        }
+                    }
+                    for (int p = length - 2; p >= 0; --p) {
+                        if (p % vSize != vSize - 1) {
+                            final int base = p * n;
+                            for (int c = 0; c < n; ++c) {
+                                backward[base + c] = or ? backward[base + c] | backward[base + n + c]
+                                        : backward[base + c] & backward[base + n + c];
+                            }
+                        }
+                    }
+                    for (int y = 0; y < h; ++y) {
+                        final int a = y * n;
+                        final int b = (y + vSize - 1) * n;
+                        for (int c = 0; c < n; ++c) {
+                            resultWords[y * wordsPerRow + i0 + c] = or ? backward[a + c] | forward[b + c]
+                                    : backward[a + c] & forward[b + c];
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /** line[i] op= bits of line from bit (i * 64 + shift), in place since only later bits are read */
+    private static void combineShifted(long[] line, int length, int shift, boolean or, long pad) {
+        for (int i = 0; i < length; ++i) {
+            final long shifted = bitsAt(line, length, (i << 6) + shift, pad);
+            line[i] = or ? line[i] | shifted : line[i] & shifted;
+        }
+    }
+
+    /** 64 bits from bit position, bits past the end are pad */
+    private static long bitsAt(long[] line, int length, int position, long pad) {
+        final int j = position >> 6;
+        final int shift = position & 63;
+        final long low = j < length ? line[j] : pad;
+        if (shift == 0) {
+            return low;
+        }
+        final long high = j + 1 < length ? line[j + 1] : pad;
+        return (low >>> shift) | (high << (64 - shift));
+    }
+
+    /** buffers of a worker thread, grown on demand */
+    private static final class Scratch {
+        private int[] forward = new int[0];
+        private int[] backward = new int[0];
+        private long[] forwardWords = new long[0];
+        private long[] backwardWords = new long[0];
+        private long[] line = new long[0];
+
+        int[] forward(int size) {
+            return forward.length >= size ? forward : (forward = new int[size]);
+        }
+
+        int[] backward(int size) {
+            return backward.length >= size ? backward : (backward = new int[size]);
+        }
+
+        long[] forwardWords(int size) {
+            return forwardWords.length >= size ? forwardWords : (forwardWords = new long[size]);
+        }
+
+        long[] backwardWords(int size) {
+            return backwardWords.length >= size ? backwardWords : (backwardWords = new long[size]);
+        }
+
+        long[] line(int size) {
+            return line.length >= size ? line : (line = new long[size]);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Frames of an animated gif pulled one by one over imgio_gif_stream_next of libimgio. Only the composed screen
+ * and one raster line live in native memory, so opening is instant and memory does not grow with frame count.
+ * Each frame is copied into a caller supplied {@link Frame}, which can be reused as a ring of buffers.
+ * <p>
+ * Not thread safe, use one stream from one thread at a time.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public final class NativeGifStream implements Closeable {
+    /** same as DISPOSE_* of gif_lib.h */
+    public static final int DISPOSAL_UNSPECIFIED = 0;
+    public static final int DISPOSE_DO_NOT = 1;
+    public static final int DISPOSE_BACKGROUND = 2;
+    public static final int DISPOSE_PREVIOUS = 3;
+
+    /** gif delay below this plays too fast everywhere, browsers use 100ms instead */
+    private static final int MIN_DELAY_MILLIS = 20;
+    private static final int DEFAULT_DELAY_MILLIS = 100;
+
+    /** libimgio is loaded by NativeImageDecoder */
+    public static boolean isAvailable() {
+        return NativeImageDecoder.isAvailable();
+    }
+
+    /** a screen sized TYPE_INT_ARGB image and the properties of the frame last decoded into it */
+    public static final class Frame {
+        private final BufferedImage image;
+        private final int[] argb;
+        private int index = -1;
+        private int delayMillis;
+        private int disposalMode;
+
+        private Frame(int width, int height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            argb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        /** -1 if nothing decoded yet */
+        public int getIndex() {
+            return index;
+        }
+
+        public int getDelayMillis() {
+            return delayMillis;
+        }
+
+        public int getDisposalMode() {
+            return disposalMode;
+        }
+    }
+
+    private final String path;
+    private final int width;
+    private final int height;
+    private final int[] info = new int[5];
+    private long handle;
+    private int loopCount;
+    private int frameCount = -1;
+
+    private NativeGifStream(String path, long handle, int width, int height) {
+        this.path = path;
+        this.handle = handle;
+        this.width = width;
+        this.height = height;
+    }
+
+    /** throws IOException if libimgio is not loaded or the file is not a readable gif */
+    public static NativeGifStream open(File file) throws IOException {
+        if (!isAvailable()) {
+            throw new IOException("native library imgio-1.0.0 not loaded");
+        }
+        final String path = file.getAbsolutePath();
+        final int[] size = new int[2];
+        final long handle = nativeOpen(path, size);
+        if (handle == 0L) {
+            throw new IOException("Can't open gif: " + path);
+        }
+        if ((long) size[0] * size[1] > Integer.MAX_VALUE / 4) {
+            nativeClose(handle);
+            throw new IOException("Gif screen too large: " + size[0] + 'x' + size[1]);
+        }
+        return new NativeGifStream(path, handle, size[0], size[1]);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** 0 means forever, known once the first frame is decoded */
+    public int getLoopCount() {
+        return loopCount;
+    }
+
+    /** -1 until the end is reached once */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public Frame newFrame() {
+        return new Frame(width, height);
+    }
+
+    /** decode the next frame into frame, return false at the end; frame is untouched then */
+    public boolean next(Frame frame) throws IOException {
+        checkOpen();
+        if (frame.argb.length != width * height) {
+            throw new IllegalArgumentException("Frame is not created by this stream");
+        }
+        final int result = nativeNext(handle, frame.argb, info);
+        if (result < 0) {
+            throw new IOException("Can't decode gif: " + path);
+        }
+        loopCount = info[3];
+        if (result == 0) {
+            frameCount = info[4];
+            return false;
+        }
+        frame.index = info[0];
+        frame.delayMillis = info[1] * 10 < MIN_DELAY_MILLIS ? DEFAULT_DELAY_MILLIS : info[1] * 10;
+        frame.disposalMode = info[2];
+        return true;
+    }
+
+    /** back to the first frame */
+    public void rewind() throws IOException {
+        checkOpen();
+        if (nativeRewind(handle) != 0) {
+            throw new IOException("Can't reopen gif: " + path);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (handle != 0L) {
+            nativeClose(handle);
+            handle = 0L;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (handle == 0L) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private static native long nativeOpen(String path, int[] size);
+
+    private static native int nativeNext(long handle, int[] argb, int[] info);
+
+    private static native int nativeRewind(long handle);
+
+    private static native void nativeClose(long handle);
+}
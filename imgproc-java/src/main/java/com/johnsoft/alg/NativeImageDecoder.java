@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Decode png, jpeg and the first frame of gif over imgio_read_argb of libimgio, straight into the int[] which backs
+ * the {@link DataBufferInt} of the result, no intermediate raster and no color conversion by java2d.
+ * Other formats (webp, tiff, bmp ...) or files libimgio rejects (cmyk jpeg, corrupt data) fall back to
+ * {@link ImageIO}. Every {@link #read(File)} prints the decoder used and the time it took.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public final class NativeImageDecoder {
+    /** same as imgio_type of image_io.h */
+    public static final int TYPE_UNKNOWN = 0;
+    public static final int TYPE_JPEG = 1;
+    public static final int TYPE_PNG = 2;
+    public static final int TYPE_GIF = 3;
+
+    private static final Throwable loadError = loadLibrary();
+
+    private static Throwable loadLibrary() {
+        try {
+            System.loadLibrary("imgio-1.0.0");
+            return null;
+        } catch (UnsatisfiedLinkError | SecurityException e) {
+            System.out.println("NativeImageDecoder: native library imgio-1.0.0 not loaded, use ImageIO");
+            return e;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return loadError == null;
+    }
+
+    private NativeImageDecoder() {
+    }
+
+    /** type and size from the file header */
+    public static final class Info {
+        private final int type;
+        private final int width;
+        private final int height;
+
+        private Info(int type, int width, int height) {
+            this.type = type;
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public String toString() {
+            return "Info{type=" + type + ", width=" + width + ", height=" + height + '}';
+        }
+    }
+
+    /** null if libimgio is not loaded or the file is not a png, jpeg or gif */
+    public static Info readInfo(File file) {
+        if (!isAvailable()) {
+            return null;
+        }
+        final int[] size = new int[2];
+        final int type = nativeReadInfo(file.getAbsolutePath(), size);
+        if (type == TYPE_UNKNOWN || size[0] <= 0 || size[1] <= 0
+                || (long) size[0] * size[1] > Integer.MAX_VALUE / 4) {
+            return null;
+        }
+        return new Info(type, size[0], size[1]);
+    }
+
+    /**
+     * decode into argb[0, width * height) of info, return false if libimgio failed and argb is untouched
+     */
+    public static boolean decode(File file, Info info, int[] argb) {
+        if (argb.length < info.width * info.height) {
+            throw new IllegalArgumentException("Array length should not be less than " + info.width * info.height);
+        }
+        return isAvailable() && nativeDecode(file.getAbsolutePath(), info.type, argb, info.width, info.height) == 0;
+    }
+
+    /**
+     * decode into the direct buffer from its position without copy, ints are in native byte order
+     * (see {@link java.nio.ByteOrder#nativeOrder()}), position and limit are not changed;
+     * return false if libimgio failed
+     */
+    public static boolean decode(File file, Info info, ByteBuffer argb) {
+        if (!argb.isDirect()) {
+            throw new IllegalArgumentException("Buffer should be direct");
+        }
+        if (argb.remaining() < info.width * info.height * 4) {
+            throw new IllegalArgumentException("Buffer remaining should not be less than "
+                    + info.width * info.height * 4);
+        }
+        return isAvailable() && nativeDecodeDirect(file.getAbsolutePath(), info.type, argb, argb.position(),
+                info.width, info.height) == 0;
+    }
+
+    /**
+     * TYPE_INT_RGB for jpeg, TYPE_INT_ARGB for png and gif, whatever ImageIO gives for others;
+     * null if no decoder can read the file, like {@link ImageIO#read(File)}
+     */
+    public static BufferedImage read(File file) throws IOException {
+        final long start = System.nanoTime();
+        final Info info = readInfo(file);
+        if (info != null) {
+            final BufferedImage image = new BufferedImage(info.width, info.height,
+                    info.type == TYPE_JPEG ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            final int[] argb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            if (decode(file, info, argb)) {
+                report(file, image, "native", start);
+                return image;
+            }
+        }
+        final BufferedImage image = ImageIO.read(file);
+        report(file, image, "ImageIO", start);
+        return image;
+    }
+
+    private static void report(File file, BufferedImage image, String decoder, long start) {
+        final double millis = (System.nanoTime() - start) / 1000000.0;
+        if (image == null) {
+            System.out.println(String.format(Locale.US, "NativeImageDecoder: %s not decoded by %s in %.2f ms",
+                    file.getName(), decoder, millis));
+        } else {
+            System.out.println(String.format(Locale.US, "NativeImageDecoder: %s %dx%d decoded by %s in %.2f ms",
+                    file.getName(), image.getWidth(), image.getHeight(), decoder, millis));
+        }
+    }
+
+    private static native int nativeReadInfo(String path, int[] size);
+
+    private static native int nativeDecode(String path, int type, int[] argb, int w, int h);
+
+    private static native int nativeDecodeDirect(String path, int type, ByteBuffer argb, int argbOffset,
+                                                 int w, int h);
+}
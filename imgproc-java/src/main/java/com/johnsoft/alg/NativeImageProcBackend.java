@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+
+/**
+ * JNI backend over libimgproc, the library is loaded once with the class,
+ * and a load failure is kept for {@link #isAvailable()} instead of thrown.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-12
+ */
+public final class NativeImageProcBackend implements ImageProcBackend {
+    public static final String NAME = "native";
+    private static final Throwable loadError = loadLibrary();
+
+    private static Throwable loadLibrary() {
+        try {
+            System.loadLibrary("imgproc-1.0.0");
+            return null;
+        } catch (UnsatisfiedLinkError | SecurityException e) {
+            return e;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return loadError == null;
+    }
+
+    /** @throws IllegalStateException if the native library load failed */
+    public NativeImageProcBackend() {
+        if (loadError != null) {
+            throw new IllegalStateException("Native library imgproc-1.0.0 unavailable", loadError);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int calcGrey(int argb) {
+        return nativeCalcGrey(argb);
+    }
+
+    @Override
+    public double[] calcGreyFilter(double[] argb, FilterSpec spec) {
+        return nativeCalcGreyFilter(argb, spec);
+    }
+
+    @Override
+    public int[] buildLut(FilterSpec spec) {
+        return nativeBuildLut(spec);
+    }
+
+    @Override
+    public void grey(int[] argb, int argbOffset, int argbStride,
+                     int[] result, int resultOffset, int resultStride, int w, int h) {
+        nativeGreyRect(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h);
+    }
+
+    @Override
+    public void greyColor(int[] argb, int argbOffset, int argbStride,
+                          int[] result, int resultOffset, int resultStride, int w, int h) {
+        nativeGreyColorRect(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h);
+    }
+
+    @Override
+    public void greyLut(int[] argb, int argbOffset, int argbStride,
+                        int[] result, int resultOffset, int resultStride, int w, int h, int[] greyLut) {
+        nativeGreyLutRect(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h, greyLut);
+    }
+
+    @Override
+    public void colorLut(int[] argb, int argbOffset, int argbStride,
+                         int[] result, int resultOffset, int resultStride, int w, int h,
+                         int[] redLut, int[] greenLut, int[] blueLut) {
+        nativeColorLutRect(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                redLut, greenLut, blueLut);
+    }
+
+    @Override
+    public void greyBitPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                    int[] result, int resultOffset, int resultStride, int w, int h,
+                                    int bitPosition) {
+        nativeGreyBitPlaneSlicingRect(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                bitPosition);
+    }
+
+    @Override
+    public void colorBitPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                     int[] result, int resultOffset, int resultStride, int w, int h,
+                                     int bitPosition) {
+        nativeColorBitPlaneSlicingRect(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                bitPosition);
+    }
+
+    @Override
+    public void colorComponentPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                           int[] result, int resultOffset, int resultStride, int w, int h,
+                                           int position, int type) {
+        nativeColorComponentPlaneSlicingRect(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                position, type);
+    }
+
+    @Override
+    public void combineBitsPlane(int[] argb, int argbOffset, int argbStride,
+                                 int[] result, int resultOffset, int resultStride, int w, int h,
+                                 int type, int mask) {
+        nativeCombineBitsPlaneRect(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                type, mask);
+    }
+
+    @Override
+    public int[] combineSimplePlane(int[][] argbs, int w, int h) {
+        return nativeCombineSimplePlane(argbs, w, h);
+    }
+
+    @Override
+    public int[][] bitPlanesAll(int[] argb, int w, int h, boolean grey) {
+        return (int[][]) nativeBitPlanesAll(argb, w, h, grey, false);
+    }
+
+    @Override
+    public long[][] bitPlanesPacked(int[] argb, int w, int h, boolean grey) {
+        return (long[][]) nativeBitPlanesAll(argb, w, h, grey, true);
+    }
+
+    @Override
+    public void getAllColorCounts(int[] argb, int argbOffset, int argbStride, int w, int h,
+                                  int position, int[] counts) {
+        nativeGetAllColorCountsRect(argb, argbOffset, argbStride, w, h, position, counts);
+    }
+
+    @Override
+    public void getAllHistograms(int[] argb, int argbOffset, int argbStride, int w, int h, int[][] histograms) {
+        nativeGetAllHistograms(argb, argbOffset, argbStride, w, h, histograms);
+    }
+
+    @Override
+    public int[] simpleHistogramEqualization(int[] argb, int position, boolean usingClassic) {
+        return nativeSimpleHistogramEqualization(argb, position, usingClassic);
+    }
+
+    @Override
+    public int[] buildEqualizationLut(int[] histogram, boolean usingClassic) {
+        return nativeBuildEqualizationLut(histogram, usingClassic);
+    }
+
+    @Override
+    public void equalizeRgb(int[] argb, int argbOffset, int argbStride,
+                            int[] result, int resultOffset, int resultStride, int w, int h,
+                            int[] redLut, int[] greenLut, int[] blueLut) {
+        nativeEqualizeRgbRect(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                redLut, greenLut, blueLut);
+    }
+
+    @Override
+    public int[] buildClaheLut(int[] histogram, int clipLimit) {
+        return nativeBuildClaheLut(histogram, clipLimit);
+    }
+
+    @Override
+    public void claheInterpolate(int[] argb, int argbOffset, int argbStride,
+                                 int[] result, int resultOffset, int resultStride, int w, int h,
+                                 int rowFrom, int rowTo, int tilesX, int tilesY, int[] luts, int[] columns,
+                                 boolean grey) {
+        nativeClaheInterpolateRect(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                rowFrom, rowTo, tilesX, tilesY, luts, columns, grey);
+    }
+
+    @Override
+    public void grey(Buffer argb, Buffer result, int size) {
+        nativeGreyDirect(argb, byteOffset(argb), result, byteOffset(result), size);
+    }
+
+    @Override
+    public void greyColor(Buffer argb, Buffer result, int size) {
+        nativeGreyColorDirect(argb, byteOffset(argb), result, byteOffset(result), size);
+    }
+
+    @Override
+    public void greyLut(Buffer argb, Buffer result, int size, int[] greyLut) {
+        nativeGreyLutDirect(argb, byteOffset(argb), result, byteOffset(result), size, greyLut);
+    }
+
+    @Override
+    public void colorLut(Buffer argb, Buffer result, int size, int[] redLut, int[] greenLut, int[] blueLut) {
+        nativeColorLutDirect(argb, byteOffset(argb), result, byteOffset(result), size, redLut, greenLut, blueLut);
+    }
+
+    @Override
+    public void greyBitPlaneSlicing(Buffer argb, Buffer result, int size, int bitPosition) {
+        nativeGreyBitPlaneSlicingDirect(argb, byteOffset(argb), result, byteOffset(result), size, bitPosition);
+    }
+
+    @Override
+    public void colorBitPlaneSlicing(Buffer argb, Buffer result, int size, int bitPosition) {
+        nativeColorBitPlaneSlicingDirect(argb, byteOffset(argb), result, byteOffset(result), size, bitPosition);
+    }
+
+    @Override
+    public void colorComponentPlaneSlicing(Buffer argb, Buffer result, int size, int position, int type) {
+        nativeColorComponentPlaneSlicingDirect(argb, byteOffset(argb), result, byteOffset(result), size,
+                position, type);
+    }
+
+    @Override
+    public void getAllColorCounts(Buffer argb, int size, int position, Buffer counts) {
+        nativeGetAllColorCountsDirect(argb, byteOffset(argb), counts, byteOffset(counts), size, position);
+    }
+
+    private static int byteOffset(Buffer buffer) {
+        return buffer instanceof IntBuffer ? buffer.position() << 2 : buffer.position();
+    }
+
+    private static native int nativeCalcGrey(int argb);
+    private static native double[] nativeCalcGreyFilter(double[] argb, FilterSpec spec);
+    private static native int[] nativeBuildLut(FilterSpec spec);
+    private static native int[] nativeCombineSimplePlane(int[][] argbs, int w, int h);
+    private static native Object[] nativeBitPlanesAll(int[] argb, int w, int h, boolean grey, boolean packed);
+    private static native int[] nativeSimpleHistogramEqualization(int[] argb, int position, boolean usingClassic);
+    private static native int[] nativeBuildEqualizationLut(int[] histogram, boolean usingClassic);
+
+    private static native void nativeGreyRect(int[] argb, int argbOffset, int argbStride,
+                                              int[] result, int resultOffset, int resultStride, int w, int h);
+    private static native void nativeGreyColorRect(int[] argb, int argbOffset, int argbStride,
+                                                   int[] result, int resultOffset, int resultStride, int w, int h);
+    private static native void nativeGreyLutRect(int[] argb, int argbOffset, int argbStride,
+                                                 int[] result, int resultOffset, int resultStride,
+                                                 int w, int h, int[] greyLut);
+    private static native void nativeColorLutRect(int[] argb, int argbOffset, int argbStride,
+                                                  int[] result, int resultOffset, int resultStride,
+                                                  int w, int h, int[] redLut, int[] greenLut, int[] blueLut);
+    private static native void nativeGreyBitPlaneSlicingRect(int[] argb, int argbOffset, int argbStride,
+                                                             int[] result, int resultOffset, int resultStride,
+                                                             int w, int h, int bitPosition);
+    private static native void nativeColorBitPlaneSlicingRect(int[] argb, int argbOffset, int argbStride,
+                                                              int[] result, int resultOffset, int resultStride,
+                                                              int w, int h, int bitPosition);
+    private static native void nativeColorComponentPlaneSlicingRect(int[] argb, int argbOffset, int argbStride,
+                                                                    int[] result, int resultOffset,
+                                                                    int resultStride, int w, int h,
+                                                                    int position, int type);
+    private static native void nativeCombineBitsPlaneRect(int[] argb, int argbOffset, int argbStride,
+                                                          int[] result, int resultOffset, int resultStride,
+                                                          int w, int h, int type, int mask);
+    private static native void nativeGetAllColorCountsRect(int[] argb, int argbOffset, int argbStride,
+                                                           int w, int h, int position, int[] counts);
+    private static native void nativeGetAllHistograms(int[] argb, int argbOffset, int argbStride, int w, int h,
+                                                      int[][] histograms);
+    private static native void nativeEqualizeRgbRect(int[] argb, int argbOffset, int argbStride,
+                                                     int[] result, int resultOffset, int resultStride,
+                                                     int w, int h, int[] redLut, int[] greenLut, int[] blueLut);
+    private static native int[] nativeBuildClaheLut(int[] histogram, int clipLimit);
+    private static native void nativeClaheInterpolateRect(int[] argb, int argbOffset, int argbStride,
+                                                          int[] result, int resultOffset, int resultStride,
+                                                          int w, int h, int rowFrom, int rowTo,
+                                                          int tilesX, int tilesY, int[] luts, int[] columns,
+                                                          boolean grey);
+
+    private static native void nativeGreyDirect(Buffer argb, int argbOffset,
+                                                Buffer result, int resultOffset, int size);
+    private static native void nativeGreyColorDirect(Buffer argb, int argbOffset,
+                                                     Buffer result, int resultOffset, int size);
+    private static native void nativeGreyLutDirect(Buffer argb, int argbOffset,
+                                                   Buffer result, int resultOffset, int size, int[] greyLut);
+    private static native void nativeColorLutDirect(Buffer argb, int argbOffset,
+                                                    Buffer result, int resultOffset, int size,
+                                                    int[] redLut, int[] greenLut, int[] blueLut);
+    private static native void nativeGreyBitPlaneSlicingDirect(Buffer argb, int argbOffset,
+                                                               Buffer result, int resultOffset, int size,
+                                                               int bitPosition);
+    private static native void nativeColorBitPlaneSlicingDirect(Buffer argb, int argbOffset,
+                                                                Buffer result, int resultOffset, int size,
+                                                                int bitPosition);
+    private static native void nativeColorComponentPlaneSlicingDirect(Buffer argb, int argbOffset,
+                                                                      Buffer result, int resultOffset, int size,
+                                                                      int position, int type);
+    private static native void nativeGetAllColorCountsDirect(Buffer argb, int argbOffset,
+                                                             Buffer counts, int countsOffset, int size,
+                                                             int position);
+}
@@ -0,0 +1,386 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.intellij.lang.annotations.MagicConstant;
+
+/**
+ * Bilinear and bicubic convolution scale of ARGB pixels over imgio_argb_scale_rows of libimgio,
+ * the separable form of imgio_rgba_scale_bilinear and imgio_rgba_scale_bicubic_convolution.
+ * <p>
+ * Source index and weight of every tap are prepared once per (source size, destination size) pair
+ * and cached, so a scale only gathers and sums. Destination rows are split into strips on the pool of
+ * {@link ParallelImageProc}, each strip is one native call writing into the result directly.
+ * Pixel centers are aligned and taps out of the image are clamped to the edge.
+ * If libimgio is not loaded, the same tables are summed in java with the same result.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public final class NativeScaler {
+    public static final int METHOD_BILINEAR = 0;
+    public static final int METHOD_BICUBIC = 1;
+
+    /** imgio_scale_bicubic_s_default, same as S_FUNC_CUSTOM with a = -1 */
+    public static final int S_FUNC_DEFAULT = 0;
+    /** imgio_scale_bicubic_s_custom, a in [-0.5, -1.0, -2.0] is good */
+    public static final int S_FUNC_CUSTOM = 1;
+    /** imgio_scale_bicubic_s_lagrange */
+    public static final int S_FUNC_LAGRANGE = 2;
+
+    private static final int CACHE_SIZE = 16;
+    private static final Throwable loadError = loadLibrary();
+    private static final Map<String, Axis> axisCache = new LinkedHashMap<String, Axis>(CACHE_SIZE, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Axis> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static Throwable loadLibrary() {
+        try {
+            System.loadLibrary("imgio-1.0.0");
+            return null;
+        } catch (UnsatisfiedLinkError | SecurityException e) {
+            System.out.println("NativeScaler: native library imgio-1.0.0 not loaded, use java");
+            return e;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return loadError == null;
+    }
+
+    private final int method;
+    private final int sFunc;
+    private final double a;
+    private final ParallelImageProc parallel;
+    /** sum in java even if libimgio is loaded */
+    private final boolean java;
+
+    private NativeScaler(int method, int sFunc, double a, ParallelImageProc parallel, boolean java) {
+        this.method = method;
+        this.sFunc = sFunc;
+        this.a = a;
+        this.parallel = parallel;
+        this.java = java;
+    }
+
+    /** 2x2 taps, for thumbnails */
+    public static NativeScaler bilinear() {
+        return new NativeScaler(METHOD_BILINEAR, S_FUNC_DEFAULT, -1.0, null, false);
+    }
+
+    /** 4x4 taps of imgio_scale_bicubic_s_default, for zoom in */
+    public static NativeScaler bicubic() {
+        return bicubic(S_FUNC_DEFAULT);
+    }
+
+    public static NativeScaler bicubic(@MagicConstant(intValues = {S_FUNC_DEFAULT, S_FUNC_LAGRANGE}) int sFunc) {
+        if (sFunc != S_FUNC_DEFAULT && sFunc != S_FUNC_LAGRANGE) {
+            throw new IllegalArgumentException("Unknown s_func: " + sFunc + ", use bicubicCustom for S_FUNC_CUSTOM");
+        }
+        return new NativeScaler(METHOD_BICUBIC, sFunc, -1.0, null, false);
+    }
+
+    /** S(a, x) of imgio_scale_bicubic_s_custom */
+    public static NativeScaler bicubicCustom(double a) {
+        if (Double.isNaN(a) || Double.isInfinite(a)) {
+            throw new IllegalArgumentException("Parameter a should be finite");
+        }
+        return new NativeScaler(METHOD_BICUBIC, S_FUNC_CUSTOM, a, null, false);
+    }
+
+    /** same scaler run on another pool, default is {@link ParallelImageProc#getDefault()} */
+    public NativeScaler withParallel(ParallelImageProc parallel) {
+        return new NativeScaler(method, sFunc, a, parallel, java);
+    }
+
+    /** same scaler on the java sums, to check them against libimgio */
+    NativeScaler withJava() {
+        return new NativeScaler(method, sFunc, a, parallel, true);
+    }
+
+    public int getMethod() {
+        return method;
+    }
+
+    public int getSFunc() {
+        return sFunc;
+    }
+
+    public int[] scale(int[] argb, int w, int h, int dstW, int dstH) {
+        BaseImageProc.checkRect(argb, 0, w, w, h);
+        checkSize(dstW, dstH);
+        final int[] result = new int[dstW * dstH];
+        scale(argb, 0, w, w, h, result, 0, dstW, dstW, dstH);
+        return result;
+    }
+
+    /** the source rectangle w * h is scaled into the result rectangle dstW * dstH, result can not be argb */
+    public void scale(final int[] argb, final int argbOffset, final int argbStride, int w, int h,
+                      final int[] result, final int resultOffset, final int resultStride, final int dstW, int dstH) {
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, w, h);
+        BaseImageProc.checkRect(result, resultOffset, resultStride, dstW, dstH);
+        checkSize(w, h);
+        checkSize(dstW, dstH);
+        if (argb == result) {
+            throw new IllegalArgumentException("Scale can not be in-place");
+        }
+        final Axis x = axis(w, dstW);
+        final Axis y = axis(h, dstH);
+        execute(dstW, dstH, new ParallelImageProc.RowKernel() {
+            @Override
+            void apply(int rowFrom, int rowTo) {
+                if (!java && isAvailable()) {
+                    nativeScaleRows(argb, argbOffset, argbStride, result, resultOffset, resultStride,
+                            dstW, rowFrom, rowTo, x.taps, x.index, x.weight, y.index, y.weight);
+                } else {
+                    scaleRows(IntBuffer.wrap(argb, argbOffset, argb.length - argbOffset).slice(), argbStride,
+                            IntBuffer.wrap(result, resultOffset, result.length - resultOffset).slice(), resultStride,
+                            dstW, rowFrom, rowTo, x, y);
+                }
+            }
+        });
+    }
+
+    /**
+     * direct buffers (or heap buffers in java) of native order pixels from their positions,
+     * rows are packed as w and dstW
+     */
+    public void scale(Buffer argb, int w, int h, Buffer result, int dstW, int dstH) {
+        checkSize(w, h);
+        checkSize(dstW, dstH);
+        final IntBuffer src = pixels(argb, (long) w * h);
+        final IntBuffer dst = pixels(result, (long) dstW * dstH);
+        if (result.isReadOnly()) {
+            throw new IllegalArgumentException("Result buffer is read-only");
+        }
+        final Axis x = axis(w, dstW);
+        final Axis y = axis(h, dstH);
+        final boolean direct = !java && isAvailable() && argb.isDirect() && result.isDirect();
+        final int srcOffset = byteOffset(argb);
+        final int dstOffset = byteOffset(result);
+        final Buffer srcBuffer = argb;
+        final Buffer dstBuffer = result;
+        final int srcStride = w;
+        final int dstStride = dstW;
+        execute(dstW, dstH, new ParallelImageProc.RowKernel() {
+            @Override
+            void apply(int rowFrom, int rowTo) {
+                if (direct) {
+                    nativeScaleRowsDirect(srcBuffer, srcOffset, srcStride, dstBuffer, dstOffset, dstStride,
+                            dstStride, rowFrom, rowTo, x.taps, x.index, x.weight, y.index, y.weight);
+                } else {
+                    scaleRows(src, srcStride, dst, dstStride, dstStride, rowFrom, rowTo, x, y);
+                }
+            }
+        });
+    }
+
+    private void execute(int dstW, int dstH, ParallelImageProc.RowKernel kernel) {
+        final ParallelImageProc parallel = this.parallel != null ? this.parallel : ParallelImageProc.getDefault();
+        parallel.executeRows(dstW, dstH, kernel);
+    }
+
+    /** java version of imgio_argb_scale_rows, the same order of sums for the same result */
+    private static void scaleRows(IntBuffer argb, int argbStride, IntBuffer result, int resultStride,
+                                  int w, int rowFrom, int rowTo, Axis x, Axis y) {
+        final int taps = x.taps;
+        final int[] xIndex = x.index;
+        final double[] xWeight = x.weight;
+        double a, r, g, b, ra, rr, rg, rb, weight;
+        int pixel, rowSrc;
+        for (int i = rowFrom; i < rowTo; ++i) {
+            final int yi = i * taps;
+            final int rowDst = i * resultStride;
+            for (int j = 0; j < w; ++j) {
+                final int xi = j * taps;
+                a = r = g = b = 0.0;
+                for (int ty = 0; ty < taps; ++ty) {
+                    rowSrc = y.index[yi + ty] * argbStride;
+                    ra = rr = rg = rb = 0.0;
+                    for (int tx = 0; tx < taps; ++tx) {
+                        pixel = argb.get(rowSrc + xIndex[xi + tx]);
+                        weight = xWeight[xi + tx];
+                        ra += weight * ((pixel >> 24) & 0xFF);
+                        rr += weight * ((pixel >> 16) & 0xFF);
+                        rg += weight * ((pixel >> 8) & 0xFF);
+                        rb += weight * (pixel & 0xFF);
+                    }
+                    weight = y.weight[yi + ty];
+                    a += weight * ra;
+                    r += weight * rr;
+                    g += weight * rg;
+                    b += weight * rb;
+                }
+                result.put(rowDst + j, (roundComponent(a) << 24) | (roundComponent(r) << 16)
+                        | (roundComponent(g) << 8) | roundComponent(b));
+            }
+        }
+    }
+
+    private static int roundComponent(double value) {
+        value += 0.5;
+        return value <= 0.0 ? 0 : value >= 255.0 ? 255 : (int) value;
+    }
+
+    /** cached tables of one axis, the same key may be computed twice by racing threads, which is harmless */
+    private Axis axis(int srcSize, int dstSize) {
+        final String key = method + ":" + sFunc + ":" + a + ":" + srcSize + ":" + dstSize;
+        Axis axis;
+        synchronized (axisCache) {
+            axis = axisCache.get(key);
+        }
+        if (axis == null) {
+            axis = createAxis(srcSize, dstSize);
+            synchronized (axisCache) {
+                axisCache.put(key, axis);
+            }
+        }
+        return axis;
+    }
+
+    private Axis createAxis(int srcSize, int dstSize) {
+        final int taps = method == METHOD_BILINEAR ? 2 : 4;
+        final int[] index = new int[dstSize * taps];
+        final double[] weight = new double[dstSize * taps];
+        final double ratio = srcSize / (double) dstSize;
+        for (int i = 0; i < dstSize; ++i) {
+            final double position = (i + 0.5) * ratio - 0.5;
+            final double floor = Math.floor(position);
+            final double fraction = position - floor;
+            final int base = (int) floor;
+            final int offset = i * taps;
+            if (method == METHOD_BILINEAR) {
+                index[offset] = clamp(base, srcSize);
+                index[offset + 1] = clamp(base + 1, srcSize);
+                weight[offset] = 1.0 - fraction;
+                weight[offset + 1] = fraction;
+            } else {
+                for (int t = 0; t < 4; ++t) {
+                    index[offset + t] = clamp(base - 1 + t, srcSize);
+                    weight[offset + t] = s(fraction + 1.0 - t);
+                }
+            }
+        }
+        return new Axis(taps, index, weight);
+    }
+
+    private double s(double x) {
+        switch (sFunc) {
+            case S_FUNC_CUSTOM:
+                return sCustom(a, x);
+            case S_FUNC_LAGRANGE:
+                return sLagrange(x);
+            default:
+                return sDefault(x);
+        }
+    }
+
+    /** S(a,x) */
+    private static double sCustom(double a, double x) {
+        final double y = (x >= 0.0 ? x : -x);
+        if (y >= 0.0 && y < 1.0) {
+            return (a + 2.0) * StrictMath.pow(y, 3.0) - (a + 3.0) * StrictMath.pow(y, 2.0) + 1.0;
+        } else if (y >= 1.0 && y < 2.0) {
+            return a * StrictMath.pow(y, 3.0) - 5.0 * a * StrictMath.pow(y, 2.0) + 8.0 * a * y - 4.0 * a;
+        }
+        return 0.0;
+    }
+
+    /** S(-1,x) */
+    private static double sDefault(double x) {
+        final double y = (x >= 0.0 ? x : -x);
+        if (y >= 0.0 && y < 1.0) {
+            return 1.0 - 2.0 * StrictMath.pow(y, 2.0) + StrictMath.pow(y, 3.0);
+        } else if (y >= 1.0 && y < 2.0) {
+            return 4.0 - 8.0 * y + 5.0 * StrictMath.pow(y, 2.0) - StrictMath.pow(y, 3.0);
+        }
+        return 0.0;
+    }
+
+    private static double sLagrange(double x) {
+        final double y = (x >= 0.0 ? x : -x);
+        if (y < 1.0) {
+            return 1.0 / 2.0 * StrictMath.pow(y, 3.0) - StrictMath.pow(y, 2.0) - 1.0 / 2.0 * y + 1.0;
+        } else if (y < 2.0) {
+            return -1.0 / 6.0 * StrictMath.pow(y, 3.0) + StrictMath.pow(y, 2.0) - 11.0 / 6.0 * y + 1.0;
+        }
+        return 0.0;
+    }
+
+    private static int clamp(int index, int size) {
+        return index < 0 ? 0 : index >= size ? size - 1 : index;
+    }
+
+    private static void checkSize(int w, int h) {
+        if (w <= 0 || h <= 0) {
+            throw new IllegalArgumentException("Size " + w + "x" + h + " should be positive");
+        }
+    }
+
+    private static IntBuffer pixels(Buffer buffer, long size) {
+        final IntBuffer pixels;
+        if (buffer instanceof IntBuffer) {
+            pixels = ((IntBuffer) buffer).slice();
+        } else if (buffer instanceof ByteBuffer) {
+            pixels = ((ByteBuffer) buffer).slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+        } else {
+            throw new IllegalArgumentException("Require IntBuffer or ByteBuffer");
+        }
+        if (pixels.remaining() < size) {
+            throw new IllegalArgumentException("Buffer remaining " + pixels.remaining() + " less than " + size);
+        }
+        return pixels;
+    }
+
+    private static int byteOffset(Buffer buffer) {
+        return buffer instanceof IntBuffer ? buffer.position() * 4 : buffer.position();
+    }
+
+    private static final class Axis {
+        final int taps;
+        /** taps per destination position, clamped source index */
+        final int[] index;
+        final double[] weight;
+
+        Axis(int taps, int[] index, double[] weight) {
+            this.taps = taps;
+            this.index = index;
+            this.weight = weight;
+        }
+    }
+
+    private static native void nativeScaleRows(int[] argb, int argbOffset, int argbStride,
+                                               int[] result, int resultOffset, int resultStride,
+                                               int w, int rowFrom, int rowTo, int taps,
+                                               int[] xIndex, double[] xWeight, int[] yIndex, double[] yWeight);
+
+    private static native void nativeScaleRowsDirect(Buffer argb, int argbOffset, int argbStride,
+                                                     Buffer result, int resultOffset, int resultStride,
+                                                     int w, int rowFrom, int rowTo, int taps,
+                                                     int[] xIndex, double[] xWeight,
+                                                     int[] yIndex, double[] yWeight);
+}
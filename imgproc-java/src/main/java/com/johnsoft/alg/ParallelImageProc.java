@@ -0,0 +1,557 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.alg;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import org.intellij.lang.annotations.MagicConstant;
+
+/**
+ * Multi-core execution of the {@link BaseImageProc} kernels.
+ * The image is split into row strips which source and result both fit in cache,
+ * each strip is handed to the stride variants of {@link BaseImageProc} on a ForkJoinPool,
+ * so all strips write into the final result array directly without extra copy.
+ * Histograms are counted per strip into partial counts, and merged while joining.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-09
+ */
+public final class ParallelImageProc {
+    /** bytes of source and result pixels per strip, about the size of a L2 cache */
+    public static final int DEFAULT_STRIP_BYTES = 256 * 1024;
+
+    private static ParallelImageProc defaultInstance;
+
+    private final ForkJoinPool pool;
+    private final int stripBytes;
+
+    /** shared instance use all processors */
+    public static synchronized ParallelImageProc getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new ParallelImageProc(new ForkJoinPool(), DEFAULT_STRIP_BYTES);
+        }
+        return defaultInstance;
+    }
+
+    public ParallelImageProc(int parallelism) {
+        this(new ForkJoinPool(parallelism), DEFAULT_STRIP_BYTES);
+    }
+
+    public ParallelImageProc(ForkJoinPool pool, int stripBytes) {
+        if (pool == null) {
+            throw new IllegalArgumentException("ForkJoinPool is null");
+        }
+        if (stripBytes <= 0) {
+            throw new IllegalArgumentException("Strip bytes should be positive");
+        }
+        this.pool = pool;
+        this.stripBytes = stripBytes;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /** rows per strip for the image width, source and result row both counted */
+    public int getStripRows(int w) {
+        return Math.max(1, stripBytes / (Math.max(1, w) * 8));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public int[] grey(int[] argb, int w, int h) {
+        final int[] result = new int[w * h];
+        grey(argb, 0, w, result, 0, w, w, h);
+        return result;
+    }
+
+    public void grey(int[] argb, int argbOffset, int argbStride,
+                     int[] result, int resultOffset, int resultStride, int w, int h) {
+        execute(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h, new StripKernel() {
+            @Override
+            void apply(int[] argb, int argbOffset, int argbStride,
+                       int[] result, int resultOffset, int resultStride, int w, int h) {
+                BaseImageProc.grey(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h);
+            }
+        });
+    }
+
+    public int[] greyColor(int[] argb, int w, int h) {
+        final int[] result = new int[w * h];
+        greyColor(argb, 0, w, result, 0, w, w, h);
+        return result;
+    }
+
+    public void greyColor(int[] argb, int argbOffset, int argbStride,
+                          int[] result, int resultOffset, int resultStride, int w, int h) {
+        execute(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h, new StripKernel() {
+            @Override
+            void apply(int[] argb, int argbOffset, int argbStride,
+                       int[] result, int resultOffset, int resultStride, int w, int h) {
+                BaseImageProc.greyColor(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h);
+            }
+        });
+    }
+
+    public int[] greyFilter(int[] argb, int w, int h, FilterSpec spec) {
+        final int[] result = new int[w * h];
+        greyFilter(argb, 0, w, result, 0, w, w, h, spec);
+        return result;
+    }
+
+    public void greyFilter(int[] argb, int argbOffset, int argbStride,
+                           int[] result, int resultOffset, int resultStride, int w, int h,
+                           FilterSpec spec) {
+        final int[] greyLut = BaseImageProc.buildLut(spec); // compile once for all strips
+        execute(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h, new StripKernel() {
+            @Override
+            void apply(int[] argb, int argbOffset, int argbStride,
+                       int[] result, int resultOffset, int resultStride, int w, int h) {
+                BaseImageProc.greyLut(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                        greyLut);
+            }
+        });
+    }
+
+    public int[] colorFilter(int[] argb, int w, int h,
+                             FilterSpec redSpec, FilterSpec greenSpec, FilterSpec blueSpec) {
+        final int[] result = new int[w * h];
+        colorFilter(argb, 0, w, result, 0, w, w, h, redSpec, greenSpec, blueSpec);
+        return result;
+    }
+
+    public void colorFilter(int[] argb, int argbOffset, int argbStride,
+                            int[] result, int resultOffset, int resultStride, int w, int h,
+                            FilterSpec redSpec, FilterSpec greenSpec, FilterSpec blueSpec) {
+        final int[] redLut = BaseImageProc.buildLut(redSpec);
+        final int[] greenLut = BaseImageProc.buildLut(greenSpec);
+        final int[] blueLut = BaseImageProc.buildLut(blueSpec);
+        execute(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h, new StripKernel() {
+            @Override
+            void apply(int[] argb, int argbOffset, int argbStride,
+                       int[] result, int resultOffset, int resultStride, int w, int h) {
+                BaseImageProc.colorLut(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                        redLut, greenLut, blueLut);
+            }
+        });
+    }
+
+    public void greyBitPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                    int[] result, int resultOffset, int resultStride, int w, int h,
+                                    final int bitPosition) {
+        execute(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h, new StripKernel() {
+            @Override
+            void apply(int[] argb, int argbOffset, int argbStride,
+                       int[] result, int resultOffset, int resultStride, int w, int h) {
+                BaseImageProc.greyBitPlaneSlicing(argb, argbOffset, argbStride,
+                        result, resultOffset, resultStride, w, h, bitPosition);
+            }
+        });
+    }
+
+    public void colorBitPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                     int[] result, int resultOffset, int resultStride, int w, int h,
+                                     final int bitPosition) {
+        execute(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h, new StripKernel() {
+            @Override
+            void apply(int[] argb, int argbOffset, int argbStride,
+                       int[] result, int resultOffset, int resultStride, int w, int h) {
+                BaseImageProc.colorBitPlaneSlicing(argb, argbOffset, argbStride,
+                        result, resultOffset, resultStride, w, h, bitPosition);
+            }
+        });
+    }
+
+    public void colorComponentPlaneSlicing(int[] argb, int argbOffset, int argbStride,
+                                           int[] result, int resultOffset, int resultStride, int w, int h,
+                                           @MagicConstant(intValues = {
+                                                   BaseImageProc.COMPONENT_ALPHA,
+                                                   BaseImageProc.COMPONENT_RED,
+                                                   BaseImageProc.COMPONENT_GREEN,
+                                                   BaseImageProc.COMPONENT_BLUE
+                                           })
+                                           final int position,
+                                           @MagicConstant(intValues = {
+                                                   BaseImageProc.TYPE_GREY_COLOR,
+                                                   BaseImageProc.TYPE_ARGB_COLOR
+                                           })
+                                           final int type) {
+        execute(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h, new StripKernel() {
+            @Override
+            void apply(int[] argb, int argbOffset, int argbStride,
+                       int[] result, int resultOffset, int resultStride, int w, int h) {
+                BaseImageProc.colorComponentPlaneSlicing(argb, argbOffset, argbStride,
+                        result, resultOffset, resultStride, w, h, position, type);
+            }
+        });
+    }
+
+    public void combineBitsPlane(int[] argb, int argbOffset, int argbStride,
+                                 int[] result, int resultOffset, int resultStride, int w, int h,
+                                 @MagicConstant(intValues = {
+                                         BaseImageProc.TYPE_GREY_COLOR,
+                                         BaseImageProc.TYPE_ARGB_COLOR
+                                 })
+                                 final int type, final int mask) {
+        execute(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h, new StripKernel() {
+            @Override
+            void apply(int[] argb, int argbOffset, int argbStride,
+                       int[] result, int resultOffset, int resultStride, int w, int h) {
+                BaseImageProc.combineBitsPlane(argb, argbOffset, argbStride,
+                        result, resultOffset, resultStride, w, h, type, mask);
+            }
+        });
+    }
+
+    /** same as {@link BaseImageProc#getAllColorCounts(int[], int)} */
+    public int[] getAllColorCounts(int[] argb, int w, int h,
+                                   @MagicConstant(intValues = {
+                                           BaseImageProc.TYPE_GREY_COLOR,
+                                           BaseImageProc.COMPONENT_ALPHA,
+                                           BaseImageProc.COMPONENT_RED,
+                                           BaseImageProc.COMPONENT_GREEN,
+                                           BaseImageProc.COMPONENT_BLUE
+                                   })
+                                   int position) {
+        return getAllColorCounts(argb, 0, w, w, h, position);
+    }
+
+    /** @return 256 counts of the rectangle */
+    public int[] getAllColorCounts(int[] argb, int argbOffset, int argbStride, int w, int h,
+                                   @MagicConstant(intValues = {
+                                           BaseImageProc.TYPE_GREY_COLOR,
+                                           BaseImageProc.COMPONENT_ALPHA,
+                                           BaseImageProc.COMPONENT_RED,
+                                           BaseImageProc.COMPONENT_GREEN,
+                                           BaseImageProc.COMPONENT_BLUE
+                                   })
+                                   int position) {
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, w, h);
+        final CountTask task = new CountTask(argb, argbOffset, argbStride, w, 0, h, getStripRows(w), position);
+        if (h <= task.stripRows) {
+            return task.compute();
+        }
+        return pool.invoke(task);
+    }
+
+    /** same as {@link BaseImageProc#getAllHistograms(int[], int, int, boolean)}, partial histograms per strip */
+    public int[][] getAllHistograms(int[] argb, int w, int h, boolean withAlpha) {
+        return accumulate(argb, 0, w, w, h, withAlpha ? 5 : 4, new StatsKernel() {
+            @Override
+            void accumulate(int[] argb, int argbOffset, int argbStride, int w, int h, int[][] histograms) {
+                BaseImageProc.getAllHistograms(argb, argbOffset, argbStride, w, 0, h, histograms);
+            }
+        });
+    }
+
+    /** same as {@link BaseImageProc#equalizeRgb(int[], int, int, boolean)}, both passes run in strips */
+    public int[] equalizeRgb(int[] argb, int w, int h, boolean usingClassic) {
+        final int[][] histograms = getAllHistograms(argb, w, h, false);
+        final int[] redLut = BaseImageProc.buildEqualizationLut(histograms[BaseImageProc.COMPONENT_RED],
+                usingClassic);
+        final int[] greenLut = BaseImageProc.buildEqualizationLut(histograms[BaseImageProc.COMPONENT_GREEN],
+                usingClassic);
+        final int[] blueLut = BaseImageProc.buildEqualizationLut(histograms[BaseImageProc.COMPONENT_BLUE],
+                usingClassic);
+        final int[] result = new int[w * h];
+        execute(argb, 0, w, result, 0, w, w, h, new StripKernel() {
+            @Override
+            void apply(int[] argb, int argbOffset, int argbStride,
+                       int[] result, int resultOffset, int resultStride, int w, int h) {
+                BaseImageProc.equalizeRgb(argb, argbOffset, argbStride, result, resultOffset, resultStride, w, h,
+                        redLut, greenLut, blueLut);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * same as {@link BaseImageProc#clahe(int[], int, int, int, int, float, int)}, tile histograms and mappings
+     * are built in parallel, then one pass in strips reads every pixel once and interpolates the four tile mappings
+     */
+    public int[] clahe(int[] argb, int w, int h, int tilesX, int tilesY, float clipLimit,
+                       @MagicConstant(intValues = {BaseImageProc.TYPE_GREY_COLOR, BaseImageProc.TYPE_ARGB_COLOR})
+                       int type) {
+        final int[] result = new int[w * h];
+        clahe(argb, w, h, tilesX, tilesY, clipLimit, type, result, 0, w);
+        return result;
+    }
+
+    /** same as {@link #clahe(int[], int, int, int, int, float, int)} into a rectangle of result */
+    public void clahe(int[] argb, final int w, final int h, final int tilesX, final int tilesY,
+                      final float clipLimit,
+                      @MagicConstant(intValues = {BaseImageProc.TYPE_GREY_COLOR, BaseImageProc.TYPE_ARGB_COLOR})
+                      int type, final int[] result, final int resultOffset, final int resultStride) {
+        BaseImageProc.checkRect(argb, 0, w, w, h);
+        BaseImageProc.checkRect(result, resultOffset, resultStride, w, h);
+        final boolean grey = BaseImageProc.checkClahe(w, h, tilesX, tilesY, type);
+        final int[] source = argb;
+        final int[] luts = new int[tilesX * tilesY * (grey ? 256 : 3 * 256)];
+        final int[] columns = JavaImageProcBackend.claheColumns(w, tilesX, grey);
+        executeRange(tilesX * tilesY, 1, new RowKernel() {
+            @Override
+            void apply(int tileFrom, int tileTo) {
+                BaseImageProc.buildClaheLuts(source, w, h, tilesX, tilesY, clipLimit, grey, tileFrom, tileTo, luts);
+            }
+        });
+        executeRows(w, h, new RowKernel() {
+            @Override
+            void apply(int rowFrom, int rowTo) {
+                BaseImageProc.claheInterpolate(source, 0, w, result, resultOffset, resultStride, w, h,
+                        rowFrom, rowTo, tilesX, tilesY, luts, columns, grey);
+            }
+        });
+    }
+
+    /** run kernel on every strip of the rectangle, see {@link ImagePipeline} */
+    void execute(int[] argb, int argbOffset, int argbStride,
+                 int[] result, int resultOffset, int resultStride, int w, int h, StripKernel kernel) {
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, w, h);
+        BaseImageProc.checkRect(result, resultOffset, resultStride, w, h);
+        final StripTask task = new StripTask(argb, argbOffset, argbStride, result, resultOffset, resultStride,
+                w, 0, h, getStripRows(w), kernel);
+        if (h <= task.stripRows) {
+            task.compute(); // one strip, not worth a thread switch
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    /** count histograms of the rectangle by kernel per strip, partial histograms are merged while joining */
+    int[][] accumulate(int[] argb, int argbOffset, int argbStride, int w, int h, int count, StatsKernel kernel) {
+        BaseImageProc.checkRect(argb, argbOffset, argbStride, w, h);
+        final HistogramTask task = new HistogramTask(argb, argbOffset, argbStride, w, 0, h, getStripRows(w),
+                count, kernel);
+        if (h <= task.stripRows) {
+            return task.compute();
+        }
+        return pool.invoke(task);
+    }
+
+    /** rows of [0, h) of w pixels per strip, no source or result bound, see {@link NativeScaler} */
+    void executeRows(int w, int h, RowKernel kernel) {
+        executeRange(h, getStripRows(w), kernel);
+    }
+
+    /** [0, count) split down to grain, for rows or tiles, see {@link Convolution} */
+    void executeRange(int count, int grain, RowKernel kernel) {
+        final RowTask task = new RowTask(kernel, 0, count, Math.max(1, grain));
+        if (count <= task.stripRows) {
+            task.compute(); // one strip, not worth a thread switch
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    /** rows (or tiles) [rowFrom, rowTo) of an output whose rows are independent */
+    static abstract class RowKernel {
+        abstract void apply(int rowFrom, int rowTo);
+    }
+
+    /** the stride variant of a kernel, w * h is the strip */
+    static abstract class StripKernel {
+        abstract void apply(int[] argb, int argbOffset, int argbStride,
+                            int[] result, int resultOffset, int resultStride, int w, int h);
+    }
+
+    /** add counts of the w * h strip into histograms, which are not cleared before */
+    static abstract class StatsKernel {
+        abstract void accumulate(int[] argb, int argbOffset, int argbStride, int w, int h, int[][] histograms);
+    }
+
+    /** rows [fromRow, toRow) split by half until not more than stripRows */
+    private static final class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RowKernel kernel;
+        private final int fromRow;
+        private final int toRow;
+        private final int stripRows;
+
+        RowTask(RowKernel kernel, int fromRow, int toRow, int stripRows) {
+            this.kernel = kernel;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.stripRows = stripRows;
+        }
+
+        @Override
+        protected void compute() {
+            final int rows = toRow - fromRow;
+            if (rows <= stripRows) {
+                kernel.apply(fromRow, toRow);
+                return;
+            }
+            final int middle = fromRow + rows / 2;
+            invokeAll(new RowTask(kernel, fromRow, middle, stripRows), new RowTask(kernel, middle, toRow, stripRows));
+        }
+    }
+
+    private static final class StripTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] argb;
+        private final int argbOffset;
+        private final int argbStride;
+        private final int[] result;
+        private final int resultOffset;
+        private final int resultStride;
+        private final int w;
+        private final int fromRow;
+        private final int toRow;
+        private final int stripRows;
+        private final StripKernel kernel;
+
+        StripTask(int[] argb, int argbOffset, int argbStride,
+                  int[] result, int resultOffset, int resultStride,
+                  int w, int fromRow, int toRow, int stripRows, StripKernel kernel) {
+            this.argb = argb;
+            this.argbOffset = argbOffset;
+            this.argbStride = argbStride;
+            this.result = result;
+            this.resultOffset = resultOffset;
+            this.resultStride = resultStride;
+            this.w = w;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.stripRows = stripRows;
+            this.kernel = kernel;
+        }
+
+        @Override
+        protected void compute() {
+            final int rows = toRow - fromRow;
+            if (rows <= stripRows) {
+                kernel.apply(argb, argbOffset + fromRow * argbStride, argbStride,
+                        result, resultOffset + fromRow * resultStride, resultStride, w, rows);
+                return;
+            }
+            final int middle = fromRow + rows / 2;
+            invokeAll(new StripTask(argb, argbOffset, argbStride, result, resultOffset, resultStride,
+                            w, fromRow, middle, stripRows, kernel),
+                    new StripTask(argb, argbOffset, argbStride, result, resultOffset, resultStride,
+                            w, middle, toRow, stripRows, kernel));
+        }
+    }
+
+    /** partial counts of rows [fromRow, toRow), merged into the left half while joining */
+    private static final class CountTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] argb;
+        private final int argbOffset;
+        private final int argbStride;
+        private final int w;
+        private final int fromRow;
+        private final int toRow;
+        private final int stripRows;
+        private final int position;
+
+        CountTask(int[] argb, int argbOffset, int argbStride,
+                  int w, int fromRow, int toRow, int stripRows, int position) {
+            this.argb = argb;
+            this.argbOffset = argbOffset;
+            this.argbStride = argbStride;
+            this.w = w;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.stripRows = stripRows;
+            this.position = position;
+        }
+
+        @Override
+        protected int[] compute() {
+            final int rows = toRow - fromRow;
+            if (rows <= stripRows) {
+                final int[] counts = new int[256];
+                BaseImageProc.getAllColorCounts(argb, argbOffset + fromRow * argbStride, argbStride, w, rows,
+                        position, counts);
+                return counts;
+            }
+            final int middle = fromRow + rows / 2;
+            final CountTask right = new CountTask(argb, argbOffset, argbStride, w, middle, toRow,
+                    stripRows, position);
+            right.fork();
+            final int[] counts = new CountTask(argb, argbOffset, argbStride, w, fromRow, middle,
+                    stripRows, position).compute();
+            final int[] rightCounts = right.join();
+            for (int i = 0; i < 256; ++i) {
+                counts[i] += rightCounts[i];
+            }
+            return counts;
+        }
+    }
+
+    /** partial histograms of rows [fromRow, toRow), merged into the left half while joining */
+    private static final class HistogramTask extends RecursiveTask<int[][]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] argb;
+        private final int argbOffset;
+        private final int argbStride;
+        private final int w;
+        private final int fromRow;
+        private final int toRow;
+        private final int stripRows;
+        private final int count;
+        private final StatsKernel kernel;
+
+        HistogramTask(int[] argb, int argbOffset, int argbStride, int w, int fromRow, int toRow, int stripRows,
+                      int count, StatsKernel kernel) {
+            this.argb = argb;
+            this.argbOffset = argbOffset;
+            this.argbStride = argbStride;
+            this.w = w;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.stripRows = stripRows;
+            this.count = count;
+            this.kernel = kernel;
+        }
+
+        @Override
+        protected int[][] compute() {
+            final int rows = toRow - fromRow;
+            if (rows <= stripRows) {
+                final int[][] histograms = new int[count][256];
+                kernel.accumulate(argb, argbOffset + fromRow * argbStride, argbStride, w, rows, histograms);
+                return histograms;
+            }
+            final int middle = fromRow + rows / 2;
+            final HistogramTask right = new HistogramTask(argb, argbOffset, argbStride, w, middle, toRow,
+                    stripRows, count, kernel);
+            right.fork();
+            final int[][] histograms = new HistogramTask(argb, argbOffset, argbStride, w, fromRow, middle,
+                    stripRows, count, kernel).compute();
+            final int[][] rightHistograms = right.join();
+            for (int c = 0; c < count; ++c) {
+                for (int i = 0; i < 256; ++i) {
+                    histograms[c][i] += rightHistograms[c][i];
+                }
+            }
+            return histograms;
+        }
+    }
+}
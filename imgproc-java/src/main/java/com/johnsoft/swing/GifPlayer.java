@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.swing;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.swing.Timer;
+
+import com.johnsoft.alg.NativeGifStream;
+import com.johnsoft.alg.NativeImageDecoder;
+
+/**
+ * Play an animated gif in a {@link JImageView} without decoding all frames up front.
+ * A decoder thread pulls frames from {@link NativeGifStream} into a ring of {@link #RING_SIZE} reusable frames,
+ * the swing timer shows them with the gif delays and gives the shown one back to the ring.
+ * Memory is the ring plus the shown frame, whatever the frame count is.
+ * All methods should be called in ui thread.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+final class GifPlayer implements ActionListener {
+    private static final int RING_SIZE = 3;
+    /** recheck interval if the decoder is behind */
+    private static final int WAIT_MILLIS = 5;
+
+    private final File file;
+    private final Timer timer;
+    /** first two frames already pulled, the stream and the second frame are given to the first playback */
+    private NativeGifStream openedStream;
+    private NativeGifStream.Frame openedFrame;
+    private NativeGifStream.Frame current;
+    private Playback playback;
+    private JImageView view;
+
+    private GifPlayer(File file, NativeGifStream stream, NativeGifStream.Frame first, NativeGifStream.Frame second) {
+        this.file = file;
+        this.openedStream = stream;
+        this.openedFrame = second;
+        this.current = first;
+        timer = new Timer(0, this);
+        timer.setRepeats(false);
+    }
+
+    /** null if libimgio is not loaded, the file is not a gif or the gif has only one frame */
+    static GifPlayer open(File file) {
+        final NativeImageDecoder.Info info = NativeImageDecoder.readInfo(file);
+        if (info == null || info.getType() != NativeImageDecoder.TYPE_GIF) {
+            return null;
+        }
+        NativeGifStream stream = null;
+        try {
+            stream = NativeGifStream.open(file);
+            final NativeGifStream.Frame first = stream.newFrame();
+            final NativeGifStream.Frame second = stream.newFrame();
+            if (stream.next(first) && stream.next(second)) {
+                final GifPlayer player = new GifPlayer(file, stream, first, second);
+                stream = null;
+                return player;
+            }
+        } catch (IOException e) {
+            System.out.println("GifPlayer: " + e.getMessage());
+        } finally {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+        return null;
+    }
+
+    BufferedImage getImage() {
+        return current.getImage();
+    }
+
+    /** begin or resume from the first frame, the current frame is shown until the next one is ready */
+    void start(JImageView view) {
+        if (playback != null) {
+            return;
+        }
+        NativeGifStream stream = openedStream;
+        final NativeGifStream.Frame preloaded = openedFrame;
+        openedStream = null;
+        openedFrame = null;
+        if (stream == null) {
+            try {
+                stream = NativeGifStream.open(file);
+            } catch (IOException e) {
+                System.out.println("GifPlayer: " + e.getMessage());
+                return;
+            }
+        }
+        this.view = view;
+        playback = new Playback(stream, preloaded, file.getName());
+        timer.setInitialDelay(current.getDelayMillis());
+        timer.restart();
+    }
+
+    /** stop decoding and release the native stream, the current frame stays */
+    void stop() {
+        timer.stop();
+        if (playback != null) {
+            playback.quit();
+            playback = null;
+        }
+        if (openedStream != null) {
+            openedStream.close();
+            openedStream = null;
+            openedFrame = null;
+        }
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        if (playback == null) {
+            return;
+        }
+        final NativeGifStream.Frame next = playback.ready.poll();
+        if (next == null) {
+            if (!playback.finished) {
+                timer.setInitialDelay(WAIT_MILLIS);
+                timer.restart();
+            }
+            return;
+        }
+        final NativeGifStream.Frame shown = current;
+        current = next;
+        view.getImagePaintInfo().image = current.getImage();
+        view.invalidateScaledImage();
+        view.repaint();
+        playback.free.offer(shown);
+        timer.setInitialDelay(current.getDelayMillis());
+        timer.restart();
+    }
+
+    private static final class Playback implements Runnable {
+        final BlockingQueue<NativeGifStream.Frame> free = new ArrayBlockingQueue<>(RING_SIZE + 1);
+        final BlockingQueue<NativeGifStream.Frame> ready = new ArrayBlockingQueue<>(RING_SIZE + 1);
+        final NativeGifStream stream;
+        final Thread thread;
+        /** no more frames, loop count reached or decode failed */
+        volatile boolean finished;
+
+        /** preloaded is the next frame already decoded, or null */
+        Playback(NativeGifStream stream, NativeGifStream.Frame preloaded, String name) {
+            this.stream = stream;
+            if (preloaded != null) {
+                ready.add(preloaded);
+            }
+            for (int i = ready.size(); i < RING_SIZE; ++i) {
+                free.add(stream.newFrame());
+            }
+            thread = new Thread(this, "GifPlayer-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void quit() {
+            thread.interrupt();
+        }
+
+        /** loop count n of NETSCAPE2.0 means n more times after the first play, 0 means forever */
+        @Override
+        public void run() {
+            int played = 0;
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    final NativeGifStream.Frame frame = free.take();
+                    if (!stream.next(frame)) {
+                        ++played;
+                        if (stream.getLoopCount() != 0 && played > stream.getLoopCount()) {
+                            break;
+                        }
+                        stream.rewind();
+                        if (!stream.next(frame)) {
+                            break;
+                        }
+                    }
+                    ready.put(frame);
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            } catch (IOException e) {
+                System.out.println("GifPlayer: " + e.getMessage());
+            } finally {
+                finished = true;
+                stream.close();
+            }
+        }
+    }
+}
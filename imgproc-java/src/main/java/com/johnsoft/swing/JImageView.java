@@ -23,9 +23,14 @@ import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 
 import javax.swing.JLabel;
 
+import com.johnsoft.alg.NativeScaler;
+
 /**
  * @author John Kenrinus Lee
  * @version 2017-06-04
@@ -103,7 +108,13 @@ public class JImageView extends JLabel {
         }
     }
 
+    private static final NativeScaler thumbnailScaler = NativeScaler.bilinear();
+    private static final NativeScaler zoomScaler = NativeScaler.bicubic();
+
     private ImagePaintInfo imagePaintInfo;
+    /** whole image scaled once for the current paint size, instead of scaled by awt on every paint */
+    private Image scaledSource;
+    private BufferedImage scaledImage;
 
     public ImagePaintInfo getImagePaintInfo() {
         return imagePaintInfo;
@@ -111,6 +122,13 @@ public class JImageView extends JLabel {
 
     public void setImagePaintInfo(ImagePaintInfo imagePaintInfo) {
         this.imagePaintInfo = imagePaintInfo;
+        invalidateScaledImage();
+    }
+
+    /** should be called in ui thread if pixels of the image changed but the image object not */
+    public void invalidateScaledImage() {
+        scaledSource = null;
+        scaledImage = null;
     }
 
     public Color colorAtPoint(Point point) {
@@ -160,8 +178,7 @@ public class JImageView extends JLabel {
             }
                 break;
             case ImagePaintInfo.TYPE_FIT_IMAGE_SIZE: {
-                g.drawImage(pi.image, pi.dstX, pi.dstY, (pi.dstX + pi.dstW), (pi.dstY + pi.dstH),
-                        0, 0, imageWidth, imageHeight, null);
+                view.drawScaledImage(g, pi.image, pi.dstX, pi.dstY, pi.dstW, pi.dstH);
             }
                 break;
             case ImagePaintInfo.TYPE_FIT_VIEW_SIZE: {
@@ -171,24 +188,22 @@ public class JImageView extends JLabel {
             }
                 break;
             case ImagePaintInfo.TYPE_FILL_IMAGE_VIEW: { // scale base view
-                g.drawImage(pi.image, rectangle.x, rectangle.y,
-                        (rectangle.x + rectangle.width), (rectangle.y + rectangle.height),
-                        0, 0, imageWidth, imageHeight, null);
+                view.drawScaledImage(g, pi.image, rectangle.x, rectangle.y, rectangle.width, rectangle.height);
             }
                 break;
             case ImagePaintInfo.TYPE_RATIO_CENTER: { // scale base ratio of long side or both
                 Dimension scaledSize = getScaledSizeByRatio(rectangle.width, rectangle.height,
                         imageWidth, imageHeight);
-                g.drawImage(pi.image,
+                view.drawScaledImage(g, pi.image,
                         rectangle.x + (rectangle.width - scaledSize.width) / 2,
                         rectangle.y + (rectangle.height - scaledSize.height) / 2,
-                        scaledSize.width, scaledSize.height, null);
+                        scaledSize.width, scaledSize.height);
             }
                 break;
             case ImagePaintInfo.TYPE_RATIO_START: { // scale base ratio of long side or both
                 Dimension scaledSize = getScaledSizeByRatio(rectangle.width, rectangle.height,
                         imageWidth, imageHeight);
-                g.drawImage(pi.image, rectangle.x, rectangle.y, scaledSize.width, scaledSize.height, null);
+                view.drawScaledImage(g, pi.image, rectangle.x, rectangle.y, scaledSize.width, scaledSize.height);
             }
                 break;
             case ImagePaintInfo.TYPE_ORIGINAL_CENTER: { // no scale
@@ -203,27 +218,27 @@ public class JImageView extends JLabel {
             }
                 break;
             case ImagePaintInfo.TYPE_FULL_WIDTH_CENTER: {
-                g.drawImage(pi.image,
+                view.drawScaledImage(g, pi.image,
                         rectangle.x + (rectangle.width - imageWidth) / 2,
                         rectangle.y + (rectangle.height - imageHeight) / 2,
-                        rectangle.width, (int) (rectangle.width * (imageHeight / (float) imageWidth)), null);
+                        rectangle.width, (int) (rectangle.width * (imageHeight / (float) imageWidth)));
             }
                 break;
             case ImagePaintInfo.TYPE_FULL_WIDTH_START: {
-                g.drawImage(pi.image, rectangle.x, rectangle.y,
-                        rectangle.width, (int) (rectangle.width * (imageHeight / (float) imageWidth)), null);
+                view.drawScaledImage(g, pi.image, rectangle.x, rectangle.y,
+                        rectangle.width, (int) (rectangle.width * (imageHeight / (float) imageWidth)));
             }
                 break;
             case ImagePaintInfo.TYPE_FULL_HEIGHT_CENTER: {
-                g.drawImage(pi.image,
+                view.drawScaledImage(g, pi.image,
                         rectangle.x + (rectangle.width - imageWidth) / 2,
                         rectangle.y + (rectangle.height - imageHeight) / 2,
-                        (int) (rectangle.height * (imageWidth / (float) imageHeight)), rectangle.height, null);
+                        (int) (rectangle.height * (imageWidth / (float) imageHeight)), rectangle.height);
             }
                 break;
             case ImagePaintInfo.TYPE_FULL_HEIGHT_START: {
-                g.drawImage(pi.image, rectangle.x, rectangle.y,
-                        (int) (rectangle.height * (imageWidth / (float) imageHeight)), rectangle.height, null);
+                view.drawScaledImage(g, pi.image, rectangle.x, rectangle.y,
+                        (int) (rectangle.height * (imageWidth / (float) imageHeight)), rectangle.height);
             }
                 break;
             default:
@@ -231,6 +246,58 @@ public class JImageView extends JLabel {
         }
     }
 
+    /**
+     * draw the whole image into (x, y, w, h), the scaled copy is kept until the image or size changed,
+     * bilinear for thumbnails and bicubic for zoom in. The pixels of TYPE_INT_* images are scaled in place
+     * of their DataBufferInt into a copy of the same type, other images, like the indexed and binary ones,
+     * are left to awt so that they are never expanded to 32 bits
+     */
+    private void drawScaledImage(Graphics g, Image image, int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        final int imageWidth = image.getWidth(null);
+        final int imageHeight = image.getHeight(null);
+        if ((w == imageWidth && h == imageHeight) || !isIntPacked(image)
+                || imageWidth <= 0 || imageHeight <= 0) {
+            g.drawImage(image, x, y, w, h, null);
+            return;
+        }
+        if (scaledSource != image || scaledImage.getWidth() != w || scaledImage.getHeight() != h) {
+            final WritableRaster raster = ((BufferedImage) image).getRaster();
+            final DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+            final SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            final int stride = model.getScanlineStride();
+            final int offset = buffer.getOffset()
+                    + model.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+            final BufferedImage scaled = new BufferedImage(w, h, ((BufferedImage) image).getType());
+            final int[] result = ((DataBufferInt) scaled.getRaster().getDataBuffer()).getData();
+            final NativeScaler scaler = (w > imageWidth || h > imageHeight) ? zoomScaler : thumbnailScaler;
+            scaler.scale(buffer.getData(), offset, stride, imageWidth, imageHeight, result, 0, w, w, h);
+            scaledSource = image;
+            scaledImage = scaled;
+        }
+        g.drawImage(scaledImage, x, y, null);
+    }
+
+    /** one int per pixel, four 8 bit channels that scale independently */
+    private static boolean isIntPacked(Image image) {
+        if (!(image instanceof BufferedImage)) {
+            return false;
+        }
+        final BufferedImage bufferedImage = (BufferedImage) image;
+        switch (bufferedImage.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_ARGB_PRE:
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_BGR:
+                return bufferedImage.getRaster().getDataBuffer() instanceof DataBufferInt
+                        && bufferedImage.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel;
+            default:
+                return false;
+        }
+    }
+
     private static Dimension getScaledSizeByRatio(int viewWidth, int viewHeight, int imageWidth, int imageHeight) {
         int scaledWidth, scaledHeight;
         if (viewWidth >= imageWidth && viewHeight >= imageHeight) {
@@ -46,6 +46,7 @@ import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 
 import com.johnsoft.UiFace;
+import com.johnsoft.alg.NativeImageDecoder;
 
 /**
  * @author John Kenrinus Lee
@@ -54,9 +55,16 @@ import com.johnsoft.UiFace;
 public class SwingImageView implements UiFace.ImageView {
     private final ImageLabel imageLabel;
 
+    /** animated gif plays while the view is showing, frames are decoded on the fly */
     public SwingImageView(File imageFile) {
+        final GifPlayer gifPlayer = GifPlayer.open(imageFile);
+        if (gifPlayer != null) {
+            imageLabel = new ImageLabel(gifPlayer.getImage());
+            imageLabel.gifPlayer = gifPlayer;
+            return;
+        }
         try {
-            imageLabel = new ImageLabel(ImageIO.read(imageFile));
+            imageLabel = new ImageLabel(NativeImageDecoder.read(imageFile));
         } catch (IOException e) {
             throw new IllegalArgumentException(e);
         }
@@ -71,11 +79,7 @@ public class SwingImageView implements UiFace.ImageView {
     }
 
     public SwingImageView(String imageFilePath) {
-        try {
-            imageLabel = new ImageLabel(ImageIO.read(new File(imageFilePath)));
-        } catch (IOException e) {
-            throw new IllegalArgumentException(e);
-        }
+        this(new File(imageFilePath));
     }
 
     public SwingImageView(InputStream imageSource) {
@@ -105,6 +109,8 @@ public class SwingImageView implements UiFace.ImageView {
     public void setRGB(int startX, int startY, int w, int h,
                        int[] rgbArray, int offset, int scansize) {
         getImage().setRGB(startX, startY, w, h, rgbArray, offset, scansize);
+        imageLabel.invalidateScaledImage();
+        imageLabel.repaint();
     }
 
     private BufferedImage getImage() {
@@ -124,6 +130,7 @@ public class SwingImageView implements UiFace.ImageView {
     private static final class ImageLabel extends JImageView implements UiFace.Peer {
         private MouseSupport mouseSupport;
         private WheelEventSupport wheelSupport;
+        private GifPlayer gifPlayer;
 
         ImageLabel(Image image) {
             JImageView.ImagePaintInfo info = new JImageView.ImagePaintInfo();
@@ -148,6 +155,22 @@ public class SwingImageView implements UiFace.ImageView {
                 }
             });
         }
+
+        @Override
+        public void addNotify() {
+            super.addNotify();
+            if (gifPlayer != null) {
+                gifPlayer.start(this);
+            }
+        }
+
+        @Override
+        public void removeNotify() {
+            if (gifPlayer != null) {
+                gifPlayer.stop();
+            }
+            super.removeNotify();
+        }
     }
 
     private static final class MouseSupport extends MouseAdapter {
@@ -31,6 +31,7 @@ import javax.swing.text.JTextComponent;
 
 import com.johnsoft.UiFace;
 import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.FilterSpec;
 import com.johnsoft.swing.JImageView;
 import com.johnsoft.swing.SwingImageView;
 
@@ -59,15 +60,16 @@ public abstract class AbstractBaseFilterAction implements UiFace.Action {
 
     protected abstract int[] subAction(JFrame frame, int[] data, int w, int h);
 
-    protected static void handleDocument(BaseFilterDocument doc) {
-        BaseImageProc.filterIndex(doc.type, doc.filterIndex);
+    protected static FilterSpec toFilterSpec(BaseFilterDocument doc) {
+        FilterSpec spec = FilterSpec.of(doc.filterIndex);
         if (doc.filterIndex == BaseImageProc.INDEX_LINEAR_FILTER
                 || doc.filterIndex == BaseImageProc.INDEX_LOG_FILTER
                 || doc.filterIndex == BaseImageProc.INDEX_GAMMA_FILTER) {
-            BaseImageProc.filterParam(doc.c, doc.l, doc.g);
+            spec = spec.withParams(doc.c, doc.l, doc.g);
         } else if (doc.filterIndex == BaseImageProc.INDEX_BINARY_FILTER) {
-            BaseImageProc.filterParam2(doc.lowLevel, doc.lowPolicy, doc.highLevel, doc.highPolicy);
+            spec = spec.withLevels(doc.lowLevel, doc.lowPolicy, doc.highLevel, doc.highPolicy);
         }
+        return spec;
     }
 
     protected static class BaseFilterDocument {
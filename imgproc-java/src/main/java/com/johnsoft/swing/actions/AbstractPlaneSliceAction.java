@@ -24,6 +24,8 @@ import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
 import java.util.ArrayList;
 
 import javax.swing.BorderFactory;
@@ -136,6 +138,37 @@ public abstract class AbstractPlaneSliceAction implements UiFace.Action {
         return imageView;
     }
 
+    /**
+     * View of a packed bit plane, backed by a 1 bit per pixel image instead of 32 bits ARGB,
+     * set pixel painted by color and clear pixel painted by black
+     */
+    protected static SelectableImageView newBitPlaneView(long[] plane, int w, int h, int color) {
+        final IndexColorModel colorModel = new IndexColorModel(1, 2,
+                new byte[] { 0, (byte) (color >>> 16) },
+                new byte[] { 0, (byte) (color >>> 8) },
+                new byte[] { 0, (byte) color });
+        final BufferedImage bufferedImage = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_BINARY, colorModel);
+        final byte[] raster = ((DataBufferByte) bufferedImage.getRaster().getDataBuffer()).getData();
+        final int rowBytes = (w + 7) >>> 3;
+        for (int y = 0, index = 0; y < h; ++y) {
+            final int row = y * rowBytes;
+            for (int x = 0; x < w; ++x, ++index) {
+                if (BaseImageProc.isBitSet(plane, index)) {
+                    raster[row + (x >>> 3)] |= 0x80 >>> (x & 7);
+                }
+            }
+        }
+        SelectableImageView imageView = new SelectableImageView();
+        JImageView.ImagePaintInfo info = new JImageView.ImagePaintInfo();
+        info.image = bufferedImage;
+        info.usePreferredSize = true;
+        info.noResize = true;
+        info.scaleType = JImageView.ImagePaintInfo.TYPE_RATIO_CENTER;
+        imageView.setImagePaintInfo(info);
+        imageView.setPreferredSize(new Dimension(300, 300));
+        return imageView;
+    }
+
     protected static final class SelectableImageView extends JImageView {
         private boolean selected;
 
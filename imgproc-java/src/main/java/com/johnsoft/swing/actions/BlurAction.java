@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.swing.actions;
+
+import java.awt.Color;
+import java.awt.ComponentOrientation;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Locale;
+
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.WindowConstants;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import com.johnsoft.UiFace;
+import com.johnsoft.alg.IntegralImage;
+import com.johnsoft.swing.GridBagAssembler;
+import com.johnsoft.swing.JImageView;
+import com.johnsoft.swing.SwingImageView;
+
+/**
+ * Box or gaussian blur with a radius slider previewed while dragging. The summed-area table of the image is
+ * {@link IntegralImage#cached(Object, int[], int, int) cached}, so every radius costs the same and opening
+ * the dialog again on the same image does not sum it again.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public class BlurAction implements UiFace.Action {
+    private static final int MAX_RADIUS = 100;
+
+    @Override
+    public void action(UiFace uiFace, UiFace.Control control) {
+        final UiFace.TabPane tabPane = uiFace.getTabPane();
+        final BufferedImage image = (BufferedImage) tabPane.getActiveTabData();
+        if (image != null) {
+            final int w = image.getWidth();
+            final int h = image.getHeight();
+            int[] data = new int[w * h];
+            image.getRGB(0, 0, w, h, data, 0, w);
+            final IntegralImage integral = IntegralImage.cached(image, data, w, h);
+            data = showBlurDialog((JFrame) uiFace.getMainWindow().getPeer(), integral, data, w, h);
+            if (data != null) {
+                final SwingImageView resultView = new SwingImageView(w, h, data);
+                final String title = tabPane.getActiveTabIdentifier();
+                tabPane.addTabWithExistTitle(title, resultView);
+            }
+        }
+    }
+
+    /** null if cancelled */
+    private static int[] showBlurDialog(JFrame frame, final IntegralImage integral, int[] data, int w, int h) {
+        final JDialog dialog = new JDialog(frame, "Blur", true);
+        final JImageView preview = AbstractBaseFilterAction.newImageView(data, w, h);
+        final BufferedImage previewImage = (BufferedImage) preview.getImagePaintInfo().image;
+        final int[] previewData = ((DataBufferInt) previewImage.getRaster().getDataBuffer()).getData();
+        final JComboBox<String> kind = new JComboBox<>(new String[] {"box blur", "gaussian blur"});
+        final JSlider radius = new JSlider(0, MAX_RADIUS, 0);
+        final JLabel radiusLabel = new JLabel("radius 0");
+        final JButton applyBtn = new JButton("Apply");
+        final JButton cancelBtn = new JButton("Cancel");
+        final boolean[] apply = new boolean[1];
+        final IntegralImage[] scratch = new IntegralImage[1];
+        final Runnable update = new Runnable() {
+            @Override
+            public void run() {
+                final long start = System.nanoTime();
+                scratch[0] = blur(integral, kind.getSelectedIndex(), radius.getValue(), previewData, scratch[0]);
+                radiusLabel.setText(String.format(Locale.US, "radius %d, %.1f ms", radius.getValue(),
+                        (System.nanoTime() - start) / 1000000.0));
+                preview.invalidateScaledImage();
+                preview.repaint();
+            }
+        };
+        radius.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                update.run();
+            }
+        });
+        kind.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                update.run();
+            }
+        });
+        applyBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                apply[0] = true;
+                dialog.dispose();
+            }
+        });
+        cancelBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                dialog.dispose();
+            }
+        });
+        final JPanel panel = new JPanel();
+        final Color color = panel.getBackground();
+        new GridBagAssembler(panel, ComponentOrientation.LEFT_TO_RIGHT)
+                .fill(GridBagAssembler.FILL_HORIZONTAL)
+                .padding(20, 20, 20, 20)
+                .wrapLine().gridwidth(4).add(preview).gridwidth(1)
+                .wrapLine().add(AbstractBaseFilterAction.newLabel("kind", color))
+                .nextColumn().add(kind)
+                .nextColumn().add(radius)
+                .nextColumn().add(radiusLabel)
+                .wrapLine().gridx(2).add(applyBtn).nextColumn().add(cancelBtn);
+        dialog.setContentPane(panel);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.pack();
+        dialog.setMinimumSize(dialog.getPreferredSize());
+        dialog.setLocationRelativeTo(null);
+        dialog.setVisible(true);
+        if (!apply[0]) {
+            return null;
+        }
+        final int[] result = new int[w * h];
+        blur(integral, kind.getSelectedIndex(), radius.getValue(), result, scratch[0]);
+        return result;
+    }
+
+    /**
+     * gaussian radius is 3 sigma, as {@link com.johnsoft.alg.Convolution#gaussian(double)};
+     * scratch is the table of the gaussian passes kept by the dialog, returned for the next call
+     */
+    private static IntegralImage blur(IntegralImage integral, int kind, int radius, int[] result,
+                                      IntegralImage scratch) {
+        if (kind == 0 || radius == 0) {
+            integral.meanFilter(radius * 2 + 1, radius * 2 + 1, result, 0, integral.getWidth());
+            return scratch;
+        }
+        return integral.gaussianBlur(radius / 3.0, result, 0, integral.getWidth(), scratch);
+    }
+}
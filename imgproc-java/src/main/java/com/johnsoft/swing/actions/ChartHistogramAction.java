@@ -41,7 +41,7 @@ public class ChartHistogramAction implements UiFace.Action {
             image.getRGB(0, 0, w, h, data, 0, w);
 
             JDialog dialog = new JDialog((JFrame) null, false);
-            dialog.setContentPane(HistogramChart.newAllTypeViews(data));
+            dialog.setContentPane(HistogramChart.newAllTypeViews(data, w, h));
             dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
             dialog.setSize(1000, 680);
             dialog.setLocationRelativeTo(null);
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.swing.actions;
+
+import java.awt.Color;
+import java.awt.ComponentOrientation;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Locale;
+
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.WindowConstants;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import com.johnsoft.UiFace;
+import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.ParallelImageProc;
+import com.johnsoft.swing.GridBagAssembler;
+import com.johnsoft.swing.JImageView;
+import com.johnsoft.swing.SwingImageView;
+
+/**
+ * Contrast limited adaptive histogram equalization with the tile grid and clip limit previewed while dragging,
+ * on the full image, see {@link ParallelImageProc#clahe(int[], int, int, int, int, float, int)}.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public class ClaheAction implements UiFace.Action {
+    private static final int MAX_TILES = 32;
+    /** clip limit slider is in tenths */
+    private static final int MAX_CLIP = 100;
+
+    @Override
+    public void action(UiFace uiFace, UiFace.Control control) {
+        final UiFace.TabPane tabPane = uiFace.getTabPane();
+        final BufferedImage image = (BufferedImage) tabPane.getActiveTabData();
+        if (image != null) {
+            final int w = image.getWidth();
+            final int h = image.getHeight();
+            int[] data = new int[w * h];
+            image.getRGB(0, 0, w, h, data, 0, w);
+            data = showClaheDialog((JFrame) uiFace.getMainWindow().getPeer(), data, w, h);
+            if (data != null) {
+                final SwingImageView resultView = new SwingImageView(w, h, data);
+                final String title = tabPane.getActiveTabIdentifier();
+                tabPane.addTabWithExistTitle(title, resultView);
+            }
+        }
+    }
+
+    /** null if cancelled */
+    private static int[] showClaheDialog(JFrame frame, final int[] data, final int w, final int h) {
+        final JDialog dialog = new JDialog(frame, "CLAHE", true);
+        final JImageView preview = AbstractBaseFilterAction.newImageView(data, w, h);
+        final BufferedImage previewImage = (BufferedImage) preview.getImagePaintInfo().image;
+        final int[] previewData = ((DataBufferInt) previewImage.getRaster().getDataBuffer()).getData();
+        final JComboBox<String> kind = new JComboBox<>(new String[] {"grey", "color"});
+        final int maxTiles = Math.max(1, Math.min(MAX_TILES, Math.min(w, h)));
+        final JSlider tiles = new JSlider(1, maxTiles, Math.min(8, maxTiles));
+        final JSlider clip = new JSlider(0, MAX_CLIP, 20);
+        final JLabel tilesLabel = new JLabel();
+        final JLabel clipLabel = new JLabel();
+        final JButton applyBtn = new JButton("Apply");
+        final JButton cancelBtn = new JButton("Cancel");
+        final boolean[] apply = new boolean[1];
+        final Runnable update = new Runnable() {
+            @Override
+            public void run() {
+                final long start = System.nanoTime();
+                clahe(data, w, h, kind.getSelectedIndex(), tiles.getValue(), clip.getValue(), previewData);
+                tilesLabel.setText(String.format(Locale.US, "%1$dx%1$d tiles, %2$.1f ms", tiles.getValue(),
+                        (System.nanoTime() - start) / 1000000.0));
+                clipLabel.setText(clip.getValue() == 0 ? "no clip limit"
+                        : String.format(Locale.US, "clip limit %.1f", clip.getValue() / 10.0f));
+                preview.invalidateScaledImage();
+                preview.repaint();
+            }
+        };
+        final ChangeListener changeListener = new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                update.run();
+            }
+        };
+        tiles.addChangeListener(changeListener);
+        clip.addChangeListener(changeListener);
+        kind.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                update.run();
+            }
+        });
+        applyBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                apply[0] = true;
+                dialog.dispose();
+            }
+        });
+        cancelBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                dialog.dispose();
+            }
+        });
+        update.run();
+        final JPanel panel = new JPanel();
+        final Color color = panel.getBackground();
+        new GridBagAssembler(panel, ComponentOrientation.LEFT_TO_RIGHT)
+                .fill(GridBagAssembler.FILL_HORIZONTAL)
+                .padding(20, 20, 20, 20)
+                .wrapLine().gridwidth(4).add(preview).gridwidth(1)
+                .wrapLine().add(AbstractBaseFilterAction.newLabel("kind", color))
+                .nextColumn().add(kind)
+                .nextColumn().add(tiles)
+                .nextColumn().add(tilesLabel)
+                .wrapLine().gridx(2).add(clip)
+                .nextColumn().add(clipLabel)
+                .wrapLine().gridx(2).add(applyBtn).nextColumn().add(cancelBtn);
+        dialog.setContentPane(panel);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.pack();
+        dialog.setMinimumSize(dialog.getPreferredSize());
+        dialog.setLocationRelativeTo(null);
+        dialog.setVisible(true);
+        if (!apply[0]) {
+            return null;
+        }
+        final int[] result = new int[w * h];
+        clahe(data, w, h, kind.getSelectedIndex(), tiles.getValue(), clip.getValue(), result);
+        return result;
+    }
+
+    /** written into result straight, the preview pixels while the sliders move */
+    private static void clahe(int[] data, int w, int h, int kind, int tiles, int clip, int[] result) {
+        ParallelImageProc.getDefault().clahe(data, w, h, tiles, tiles, clip / 10.0f,
+                kind == 0 ? BaseImageProc.TYPE_GREY_COLOR : BaseImageProc.TYPE_ARGB_COLOR, result, 0, w);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.swing.actions;
+
+import java.awt.Color;
+import java.awt.ComponentOrientation;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.WindowConstants;
+
+import com.johnsoft.alg.Convolution;
+import com.johnsoft.swing.DialogUtilities;
+import com.johnsoft.swing.GridBagAssembler;
+
+/**
+ * Filter by a preset {@link Convolution}, or by a kernel typed as rows of weights.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public class ConvolutionAction extends AbstractBaseFilterAction {
+    public static final String BOX_BLUR = "box_blur";
+    public static final String GAUSSIAN_BLUR = "gaussian_blur";
+    public static final String SHARPEN = "sharpen";
+    public static final String EDGE = "edge";
+    public static final String EMBOSS = "emboss";
+    public static final String CUSTOM = "custom";
+
+    private final String name;
+
+    public ConvolutionAction(String name) {
+        this.name = name;
+    }
+
+    @Override
+    protected int[] subAction(JFrame frame, int[] data, int w, int h) {
+        final Convolution convolution;
+        if (BOX_BLUR.equals(name)) {
+            convolution = Convolution.box(2);
+        } else if (GAUSSIAN_BLUR.equals(name)) {
+            convolution = Convolution.gaussian(2.0);
+        } else if (SHARPEN.equals(name)) {
+            convolution = Convolution.sharpen(1.0F);
+        } else if (EDGE.equals(name)) {
+            convolution = Convolution.edge();
+        } else if (EMBOSS.equals(name)) {
+            convolution = Convolution.emboss();
+        } else if (CUSTOM.equals(name)) {
+            convolution = showKernelDialog(frame);
+            if (convolution == null) {
+                return null;
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown convolution: " + name);
+        }
+        return convolution.apply(data, w, h);
+    }
+
+    /** null if cancelled or the kernel is invalid */
+    private static Convolution showKernelDialog(JFrame frame) {
+        final JDialog dialog = new JDialog(frame, "Convolution Kernel", true);
+        final JTextArea kernelText = new JTextArea("0 -1 0\n-1 5 -1\n0 -1 0", 7, 30);
+        final JTextField biasField = newTextField("0");
+        final JCheckBox normalizeBox = new JCheckBox("normalize", false);
+        final JButton applyBtn = new JButton("Apply");
+        final JButton cancelBtn = new JButton("Cancel");
+        final boolean[] apply = new boolean[1];
+        applyBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                apply[0] = true;
+                dialog.dispose();
+            }
+        });
+        cancelBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                dialog.dispose();
+            }
+        });
+        final JPanel panel = new JPanel();
+        final Color color = panel.getBackground();
+        new GridBagAssembler(panel, ComponentOrientation.LEFT_TO_RIGHT)
+                .fill(GridBagAssembler.FILL_HORIZONTAL)
+                .padding(30, 30, 30, 30)
+                .wrapLine().gridwidth(4).add(new JLabel("rows of weights, separated by spaces or commas"))
+                .wrapLine().add(new JScrollPane(kernelText)).gridwidth(1)
+                .wrapLine().add(newLabel("bias", color))
+                .nextColumn().insets(0, 0, 0, 20).add(biasField).zeroInsets()
+                .nextColumn().add(normalizeBox)
+                .wrapLine().gridx(2).add(applyBtn).nextColumn().add(cancelBtn);
+        dialog.setContentPane(panel);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.pack();
+        dialog.setMinimumSize(dialog.getPreferredSize());
+        dialog.setLocationRelativeTo(null);
+        dialog.setVisible(true);
+        if (!apply[0]) {
+            return null;
+        }
+        try {
+            Convolution convolution = parseKernel(kernelText.getText(), normalizeBox.isSelected());
+            return convolution.withBias(Integer.parseInt(biasField.getText().trim()));
+        } catch (IllegalArgumentException e) {
+            DialogUtilities.showInfoMessageBox("Parameters invalid: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** NumberFormatException is an IllegalArgumentException */
+    private static Convolution parseKernel(String text, boolean normalize) {
+        final String[] lines = text.trim().split("\\s*\\n\\s*");
+        final int kernelHeight = lines.length;
+        final int kernelWidth = lines[0].split("[\\s,]+").length;
+        final float[] weights = new float[kernelWidth * kernelHeight];
+        float sum = 0.0F;
+        for (int i = 0; i < kernelHeight; ++i) {
+            final String[] values = lines[i].split("[\\s,]+");
+            if (values.length != kernelWidth) {
+                throw new IllegalArgumentException("row " + (i + 1) + " should have " + kernelWidth + " weights");
+            }
+            for (int j = 0; j < kernelWidth; ++j) {
+                weights[i * kernelWidth + j] = Float.parseFloat(values[j]);
+                sum += weights[i * kernelWidth + j];
+            }
+        }
+        if (normalize && sum != 0.0F) {
+            for (int i = 0; i < weights.length; ++i) {
+                weights[i] /= sum;
+            }
+        }
+        return Convolution.of(kernelWidth, kernelHeight, weights);
+    }
+}
@@ -42,6 +42,8 @@ import javax.swing.event.DocumentListener;
 
 import com.johnsoft.OnObject;
 import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.FilterSpec;
+import com.johnsoft.alg.ParallelImageProc;
 import com.johnsoft.swing.GridBagAssembler;
 import com.johnsoft.swing.JImageView;
 import com.johnsoft.swing.MainThreadUtils;
@@ -62,12 +64,14 @@ public class FilterColorPictureAction extends AbstractBaseFilterAction {
     private JImageView imageView;
     private JTextArea description;
     private int[] data;
+    private int[] result;
     private int width;
     private int height;
 
     @Override
     protected int[] subAction(JFrame frame, int[] data, int w, int h) {
         this.data = data;
+        this.result = null;
         this.width = w;
         this.height = h;
         final int openOption = JOptionPane.showConfirmDialog(null,
@@ -99,22 +103,25 @@ public class FilterColorPictureAction extends AbstractBaseFilterAction {
         MainThreadUtils.postDelay(new Runnable() {
             @Override
             public void run() {
-                handleDocument(redGroup.getDocument());
-                handleDocument(greenGroup.getDocument());
-                handleDocument(blueGroup.getDocument());
+                final FilterSpec redSpec = toFilterSpec(redGroup.getDocument());
+                final FilterSpec greenSpec = toFilterSpec(greenGroup.getDocument());
+                final FilterSpec blueSpec = toFilterSpec(blueGroup.getDocument());
 
+                final int[] target;
                 if (applyToOrigin) {
-                    // state in jni
-                    final int[] result = BaseImageProc.colorFilter(data, width, height);
-                    final BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-                    bufferedImage.setRGB(0, 0, width, height, result, 0, width);
-                    imageView.getImagePaintInfo().image = bufferedImage;
+                    if (result == null) {
+                        result = new int[width * height];
+                    }
+                    target = result;
                 } else {
-                    data = BaseImageProc.colorFilter(data, width, height);
-                    final BufferedImage bufferedImage = (BufferedImage) imageView.getImagePaintInfo().image;
-                    bufferedImage.setRGB(0, 0, width, height, data, 0, width);
+                    target = data; // overlay effect, filter in-place
                 }
+                ParallelImageProc.getDefault().colorFilter(data, 0, width, target, 0, width, width, height,
+                        redSpec, greenSpec, blueSpec);
+                final BufferedImage bufferedImage = (BufferedImage) imageView.getImagePaintInfo().image;
+                bufferedImage.setRGB(0, 0, width, height, target, 0, width);
 
+                imageView.invalidateScaledImage();
                 imageView.repaint();
             }
         }, delayed);
@@ -41,6 +41,7 @@ import javax.swing.WindowConstants;
 import org.jfree.chart.ChartPanel;
 
 import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.ParallelImageProc;
 import com.johnsoft.swing.DialogUtilities;
 import com.johnsoft.swing.GridBagAssembler;
 import com.johnsoft.swing.charts.MappingLineChart;
@@ -70,8 +71,7 @@ public class FilterGreyPictureAction extends AbstractBaseFilterAction {
             DialogUtilities.showInfoMessageBox("Parameters invalid");
             return null;
         }
-        handleDocument(view.getDocument());
-        return BaseImageProc.greyFilter(data, w, h);
+        return ParallelImageProc.getDefault().greyFilter(data, w, h, toFilterSpec(view.getDocument()));
     }
 
     private static class BaseFilterView {
@@ -175,8 +175,7 @@ public class FilterGreyPictureAction extends AbstractBaseFilterAction {
                 @Override
                 public void actionPerformed(ActionEvent e) {
                     if (!isFieldsInvalid() && chartPanel != null) {
-                        handleDocument(getDocument());
-                        MappingLineChart.updateData(chartPanel);
+                        MappingLineChart.updateData(chartPanel, toFilterSpec(getDocument()));
                     }
                 }
             });
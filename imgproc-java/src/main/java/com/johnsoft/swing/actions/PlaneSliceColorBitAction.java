@@ -26,10 +26,10 @@ public class PlaneSliceColorBitAction extends AbstractPlaneSliceAction {
     @Override
     protected SelectableImageView[] getImageViews(int[] data, int w, int h) {
         SelectableImageView[] imageViews = new SelectableImageView[24];
-        int[] result;
+        final long[][] planes = BaseImageProc.colorBitPlanesPacked(data, w, h);
         for (int i = 0; i < 24; ++i) {
-            result = BaseImageProc.colorBitPlaneSlicing(data, w, h, i);
-            imageViews[i] = newImageView(result, w, h);
+            final int color = i < 8 ? 0xFF0000FF : (i < 16 ? 0xFF00FF00 : 0xFFFF0000);
+            imageViews[i] = newBitPlaneView(planes[i], w, h, color);
         }
         return imageViews;
     }
@@ -27,29 +27,29 @@ public class PlaneSliceColorCompAction extends AbstractPlaneSliceAction {
     protected SelectableImageView[] getImageViews(int[] data, int w, int h) {
         SelectableImageView[] imageViews = new SelectableImageView[6];
         int i = 0;
-        int[] result;
+        final int[] result = new int[w * h];
 
-        result = BaseImageProc.colorComponentPlaneSlicing(data, w, h,
+        BaseImageProc.colorComponentPlaneSlicing(data, 0, w, result, 0, w, w, h,
                 BaseImageProc.COMPONENT_RED, BaseImageProc.TYPE_ARGB_COLOR);
         imageViews[i++] = newImageView(result, w, h);
 
-        result = BaseImageProc.colorComponentPlaneSlicing(data, w, h,
+        BaseImageProc.colorComponentPlaneSlicing(data, 0, w, result, 0, w, w, h,
                 BaseImageProc.COMPONENT_GREEN, BaseImageProc.TYPE_ARGB_COLOR);
         imageViews[i++] = newImageView(result, w, h);
 
-        result = BaseImageProc.colorComponentPlaneSlicing(data, w, h,
+        BaseImageProc.colorComponentPlaneSlicing(data, 0, w, result, 0, w, w, h,
                 BaseImageProc.COMPONENT_BLUE, BaseImageProc.TYPE_ARGB_COLOR);
         imageViews[i++] = newImageView(result, w, h);
 
-        result = BaseImageProc.colorComponentPlaneSlicing(data, w, h,
+        BaseImageProc.colorComponentPlaneSlicing(data, 0, w, result, 0, w, w, h,
                 BaseImageProc.COMPONENT_RED, BaseImageProc.TYPE_GREY_COLOR);
         imageViews[i++] = newImageView(result, w, h);
 
-        result = BaseImageProc.colorComponentPlaneSlicing(data, w, h,
+        BaseImageProc.colorComponentPlaneSlicing(data, 0, w, result, 0, w, w, h,
                 BaseImageProc.COMPONENT_GREEN, BaseImageProc.TYPE_GREY_COLOR);
         imageViews[i++] = newImageView(result, w, h);
 
-        result = BaseImageProc.colorComponentPlaneSlicing(data, w, h,
+        BaseImageProc.colorComponentPlaneSlicing(data, 0, w, result, 0, w, w, h,
                 BaseImageProc.COMPONENT_BLUE, BaseImageProc.TYPE_GREY_COLOR);
         imageViews[i] = newImageView(result, w, h);
 
@@ -26,10 +26,9 @@ public class PlaneSliceGreyBitAction extends AbstractPlaneSliceAction {
     @Override
     protected SelectableImageView[] getImageViews(int[] data, int w, int h) {
         SelectableImageView[] imageViews = new SelectableImageView[8];
-        int[] result;
+        final long[][] planes = BaseImageProc.greyBitPlanesPacked(data, w, h);
         for (int i = 0; i < 8; ++i) {
-            result = BaseImageProc.greyBitPlaneSlicing(data, w, h, i);
-            imageViews[i] = newImageView(result, w, h);
+            imageViews[i] = newBitPlaneView(planes[i], w, h, 0xFFFFFFFF);
         }
         return imageViews;
     }
@@ -20,6 +20,7 @@ import java.awt.image.BufferedImage;
 
 import com.johnsoft.UiFace;
 import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.ParallelImageProc;
 import com.johnsoft.swing.SwingImageView;
 
 /**
@@ -60,9 +61,7 @@ public class SimpleHistEqualizeAction implements UiFace.Action {
             int[] data = new int[w * h];
             image.getRGB(0, 0, w, h, data, 0, w);
             if (type == BaseImageProc.TYPE_ARGB_COLOR) {
-                data = histogramEqualization(data, BaseImageProc.COMPONENT_RED);
-                data = histogramEqualization(data, BaseImageProc.COMPONENT_GREEN);
-                data = histogramEqualization(data, BaseImageProc.COMPONENT_BLUE);
+                data = ParallelImageProc.getDefault().equalizeRgb(data, w, h, !sUsingPhotoshop);
             } else {
                 data = histogramEqualization(data, type);
             }
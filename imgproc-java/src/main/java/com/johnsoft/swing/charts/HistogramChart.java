@@ -42,6 +42,7 @@ import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.ui.RectangleEdge;
 
 import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.ParallelImageProc;
 import com.johnsoft.swing.GridBagAssembler;
 
 /**
@@ -49,18 +50,23 @@ import com.johnsoft.swing.GridBagAssembler;
  * @version 2017-07-06
  */
 public class HistogramChart {
-    public static JComponent newAllTypeViews(int[] data) {
+    public static JComponent newAllTypeViews(int[] data, int w, int h) {
+        final int[][] histograms = ParallelImageProc.getDefault().getAllHistograms(data, w, h, false);
+        final int[] grey = histograms[BaseImageProc.TYPE_GREY_COLOR];
+        final int[] red = histograms[BaseImageProc.COMPONENT_RED];
+        final int[] green = histograms[BaseImageProc.COMPONENT_GREEN];
+        final int[] blue = histograms[BaseImageProc.COMPONENT_BLUE];
         final JPanel panel = new JPanel();
         final GridBagAssembler assembler = new GridBagAssembler(panel, ComponentOrientation.LEFT_TO_RIGHT);
         assembler.fill(GridBagAssembler.FILL_NONE).insets(5, 5, 5, 5);
-        assembler.wrapLine().add(newView(data, Color.GRAY, false))
-                .nextColumn().add(newView(data, Color.RED, false))
-                .wrapLine().add(newView(data, Color.GREEN, false))
-                .nextColumn().add(newView(data, Color.BLUE, false))
-                .wrapLine().add(newView(data, Color.GRAY, true))
-                .nextColumn().add(newView(data, Color.RED, true))
-                .wrapLine().add(newView(data, Color.GREEN, true))
-                .nextColumn().add(newView(data, Color.BLUE, true));
+        assembler.wrapLine().add(newCountsView(grey, Color.GRAY, false))
+                .nextColumn().add(newCountsView(red, Color.RED, false))
+                .wrapLine().add(newCountsView(green, Color.GREEN, false))
+                .nextColumn().add(newCountsView(blue, Color.BLUE, false))
+                .wrapLine().add(newCountsView(grey, Color.GRAY, true))
+                .nextColumn().add(newCountsView(red, Color.RED, true))
+                .wrapLine().add(newCountsView(green, Color.GREEN, true))
+                .nextColumn().add(newCountsView(blue, Color.BLUE, true));
         final JScrollPane scrollPane = new JScrollPane(panel);
         scrollPane.getVerticalScrollBar().setUnitIncrement(4);
         scrollPane.getHorizontalScrollBar().setUnitIncrement(4);
@@ -68,7 +74,16 @@ public class HistogramChart {
     }
 
     public static JComponent newView(int[] data, Color color, boolean useColorBar) {
-        final JFreeChart chart = makeChart(assembleDatasetUsingC(data, color), useColorBar, color);
+        return newChartView(assembleDatasetUsingC(data, color), color, useColorBar);
+    }
+
+    /** @param colorCounts 256 counts computed already, such as one of BaseImageProc.getAllHistograms() */
+    public static JComponent newCountsView(int[] colorCounts, Color color, boolean useColorBar) {
+        return newChartView(makeCategoryDataset(colorCounts), color, useColorBar);
+    }
+
+    private static JComponent newChartView(CategoryDataset dataset, Color color, boolean useColorBar) {
+        final JFreeChart chart = makeChart(dataset, useColorBar, color);
         final ChartPanel panel = new ChartPanel(chart, false, true,
                 false, true, true);
         panel.setPreferredSize(new Dimension(480, 320));
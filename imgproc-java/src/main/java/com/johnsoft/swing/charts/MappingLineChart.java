@@ -24,6 +24,7 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.data.xy.DefaultXYDataset;
 
 import com.johnsoft.alg.BaseImageProc;
+import com.johnsoft.alg.FilterSpec;
 
 /**
  * @author John Kenrinus Lee
@@ -64,9 +65,14 @@ public class MappingLineChart {
     }
 
     /** If call, then should call after newView() called first */
-    public static void updateData(ChartPanel panel) {
+    public static void updateData(ChartPanel panel, FilterSpec spec) {
         final double[][] data = (double[][]) panel.getClientProperty("data");
-        data[1] = BaseImageProc.calcGreyFilter(data[0]);
+        final int[] lut = BaseImageProc.buildLut(spec);
+        final double[] result = new double[256];
+        for (int i = 0; i < 256; ++i) {
+            result[i] = lut[i] / 255.0;
+        }
+        data[1] = result;
         final JFreeChart chart = panel.getChart();
         final XYPlot plot = chart.getXYPlot();
         final DefaultXYDataset dataset = (DefaultXYDataset) plot.getDataset();
@@ -30,97 +30,93 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 
 /**
  * @author John Kenrinus Lee
  * @version 2017-03-31
  */
 public final class ARGBFileParser extends FileParser {
+    /** argb of every rgb565 value, as {@link #rgb565ToArgb8888(int)} */
+    private static final int[] RGB565_TO_ARGB = new int[1 << 16];
+
+    static {
+        for (int i = 0; i < RGB565_TO_ARGB.length; ++i) {
+            RGB565_TO_ARGB[i] = rgb565ToArgb8888(i);
+        }
+    }
+
     @Override
-    public void fillToBuffer(FileParser.FileHead head, int frameIndex, ColorSetter setter) {
+    protected void decode(FileParser.FileHead head, ByteBuffer frame, int[] argbOut, int offset, int stride) {
         final int width = head.width;
         final int height = head.height;
-        final int format = head.format;
-        final boolean endianMatches = head.endianMatches;
-
-        DataInputStream input = null;
-        try {
-            input = new DataInputStream(new BufferedInputStream(new FileInputStream(head.file)));
-            int skipLength = 0;
-            if (format == FORMAT_RGB565) {
-                skipLength = frameIndex * (width * height) * 2/* unsigned short */;
-            } else if (format == FORMAT_RGBA8888 || format == FORMAT_ARGB8888) {
-                skipLength = frameIndex * (width * height) * 4/* unsigned int */;
-            } else if (format == FORMAT_RGB_3BYTE || format == FORMAT_BGR_3BYTE) {
-                skipLength = frameIndex * (width * height) * 3/* 3 byte */;
-            } else {
-                throw new IllegalStateException("Logical error!");
-            }
-            final byte[] bytes = new byte[8192];
-            while (skipLength > 0) {
-                skipLength -= input.read(bytes, 0, Math.min(skipLength, 8192));
+        frame.order(frameOrder(head));
+        switch (head.format) {
+            case FORMAT_RGB565: {
+                final ShortBuffer shorts = frame.asShortBuffer();
+                for (int i = 0; i < height; ++i) {
+                    final int row = offset + i * stride;
+                    final int src = i * width;
+                    for (int j = 0; j < width; ++j) {
+                        argbOut[row + j] = RGB565_TO_ARGB[shorts.get(src + j) & 0xFFFF];
+                    }
+                }
             }
-
-            int raw;
-            for (int i = 0; i < height; ++i) {
-                for (int j = 0; j < width; ++j) {
-                    final int color;
-                    switch (format) {
-                        case FORMAT_RGB565: {
-                            raw = input.readUnsignedShort();
-                            if (!endianMatches) {
-                                raw = convertByteOrderUnsignedShort(raw);
-                            }
-                            color = rgb565ToArgb8888(raw);
-                        }
-                            break;
-                        case FORMAT_RGBA8888: {
-                            raw = input.readInt();
-                            if (!endianMatches) {
-                                raw = convertByteOrderUnsignedInteger(raw);
-                            }
-                            color = rgba8888ToArgb8888(raw);
-                        }
-                            break;
-                        case FORMAT_ARGB8888: {
-                            raw = input.readInt();
-                            if (!endianMatches) {
-                                raw = convertByteOrderUnsignedInteger(raw);
-                            }
-                            color = raw;
-                        }
-                            break;
-                        case FORMAT_RGB_3BYTE: {
-                            color = convertRgb888ToArgb8888(input.readUnsignedByte(), input.readUnsignedByte(),
-                                    input.readUnsignedByte(), endianMatches);
-                            break;
-                        }
-                        case FORMAT_BGR_3BYTE: {
-                            color = convertBgr888ToArgb8888(input.readUnsignedByte(), input.readUnsignedByte(),
-                                    input.readUnsignedByte(), endianMatches);
-                            break;
-                        }
-                        default:
-                            throw new IllegalStateException("Logical error!");
+                break;
+            case FORMAT_RGBA8888: {
+                final IntBuffer ints = frame.asIntBuffer();
+                for (int i = 0; i < height; ++i) {
+                    final int row = offset + i * stride;
+                    ints.get(argbOut, row, width);
+                    for (int j = row; j < row + width; ++j) {
+                        argbOut[j] = rgba8888ToArgb8888(argbOut[j]);
                     }
-                    final int[] argb = convertColorToArgb(color);
-                    setter.set(j, i, width, height, argb[0], argb[1], argb[2], argb[3]);
                 }
             }
-        } catch (Exception e) {
-            throw new IllegalStateException(e);
-        } finally {
-            if (input != null) {
-                try {
-                    input.close();
-                } catch (IOException ignored) {
-                    // do noting
+                break;
+            case FORMAT_ARGB8888: {
+                final IntBuffer ints = frame.asIntBuffer();
+                for (int i = 0; i < height; ++i) {
+                    ints.get(argbOut, offset + i * stride, width);
                 }
             }
+                break;
+            case FORMAT_RGB_3BYTE:
+                decodeThreeBytes(frame, width, height, argbOut, offset, stride, 0, 2);
+                break;
+            case FORMAT_BGR_3BYTE:
+                decodeThreeBytes(frame, width, height, argbOut, offset, stride, 2, 0);
+                break;
+            default:
+                throw new IllegalStateException("Logical error!");
         }
     }
 
+    /** rows are bulk read, red and blue are at byte redPos and bluePos of every pixel */
+    private static void decodeThreeBytes(ByteBuffer frame, int width, int height, int[] argbOut, int offset,
+                                         int stride, int redPos, int bluePos) {
+        final byte[] line = new byte[width * 3];
+        for (int i = 0; i < height; ++i) {
+            final int row = offset + i * stride;
+            frame.get(line);
+            for (int j = 0, k = 0; j < width; ++j, k += 3) {
+                argbOut[row + j] = 0xFF000000 | ((line[k + redPos] & 0xFF) << 16)
+                        | ((line[k + 1] & 0xFF) << 8) | (line[k + bluePos] & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Order that multi-byte pixels of the frame are read in: big endian as DataInputStream did, swapped when
+     * the endian of the file name differs from the host, so the views give what the stream reading gave.
+     */
+    private static ByteOrder frameOrder(FileParser.FileHead head) {
+        return head.endianMatches ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    }
+
     public static /*unsigned*/int convertByteOrderUnsignedShort(int unsignedShort) {
         unsignedShort = unsignedShort & 0x0000FFFF;
         int a = unsignedShort & 0x0000FF00;
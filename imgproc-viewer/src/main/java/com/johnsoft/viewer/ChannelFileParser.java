@@ -22,10 +22,7 @@ import static com.johnsoft.viewer.FileParser.FileHead.FORMAT_G;
 import static com.johnsoft.viewer.FileParser.FileHead.FORMAT_YUV;
 import static com.johnsoft.viewer.FileParser.FileHead.FORMAT_R;
 
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 
 /**
  * @author John Kenrinus Lee
@@ -33,55 +30,44 @@ import java.nio.channels.FileChannel;
  */
 public final class ChannelFileParser extends FileParser {
     @Override
-    public void fillToBuffer(FileHead head, int frameIndex, ColorSetter setter) {
+    protected void decode(FileHead head, ByteBuffer frame, int[] argbOut, int offset, int stride) {
         final int width = head.width;
         final int height = head.height;
-        final int format = head.format;
-        final int length = width * height;
-        final byte[] buffer = new byte[length];
-        FileChannel channel = null;
-        try {
-            channel = new FileInputStream(head.file).getChannel();
-            channel.position(frameIndex * length);
-
-            if (channel.read(ByteBuffer.wrap(buffer)) != buffer.length) {
-                throw new IllegalArgumentException("Read size not equals calculate size!");
-            }
-        } catch (Exception e) {
-            throw new IllegalStateException(e);
-        } finally {
-            if (channel != null) {
-                try {
-                    channel.close();
-                } catch (IOException ignored) {
-                    // do nothing
+        switch (head.format) {
+            case FORMAT_YUV: {
+                for (int i = 0; i < height; ++i) {
+                    final int row = offset + i * stride;
+                    for (int j = 0; j < width; ++j) {
+                        argbOut[row + j] = YCbCrFileParser.aycbcr2argbPacked(255, frame.get(i * width + j), 128, 128);
+                    }
                 }
             }
+                break;
+            case FORMAT_R:
+                decodeChannel(frame, width, height, argbOut, offset, stride, 0x010000);
+                break;
+            case FORMAT_G:
+                decodeChannel(frame, width, height, argbOut, offset, stride, 0x000100);
+                break;
+            case FORMAT_B:
+                decodeChannel(frame, width, height, argbOut, offset, stride, 0x000001);
+                break;
+            case FORMAT_A:
+                decodeChannel(frame, width, height, argbOut, offset, stride, 0x010101);
+                break;
+            default:
+                throw new IllegalStateException("Logical error!");
         }
+    }
+
+    /** byte * multiplier places each byte into the components of an opaque pixel, 0x010101 for grey */
+    private static void decodeChannel(ByteBuffer frame, int width, int height, int[] argbOut, int offset,
+                                      int stride, int multiplier) {
         for (int i = 0; i < height; ++i) {
+            final int row = offset + i * stride;
+            final int start = i * width;
             for (int j = 0; j < width; ++j) {
-                final int index = i * width + j;
-                final int value = buffer[index];
-                switch (format) {
-                    case FORMAT_YUV:
-                        final int[] argb = YCbCrFileParser.aycbcr2argb(255, value, 128, 128);
-                        setter.set(j, i, width, height, argb[0], argb[1], argb[2], argb[3]);
-                        break;
-                    case FORMAT_R:
-                        setter.set(j, i, width, height, 255, value, 0, 0);
-                        break;
-                    case FORMAT_G:
-                        setter.set(j, i, width, height, 255, 0, value, 0);
-                        break;
-                    case FORMAT_B:
-                        setter.set(j, i, width, height, 255, 0, 0, value);
-                        break;
-                    case FORMAT_A:
-                        setter.set(j, i, width, height, 255, value, value, value);
-                        break;
-                    default:
-                        throw new IllegalStateException("Logical error!");
-                }
+                argbOut[row + j] = 0xFF000000 | ((frame.get(start + j) & 0xFF) * multiplier);
             }
         }
     }
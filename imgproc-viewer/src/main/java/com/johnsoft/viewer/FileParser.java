@@ -45,15 +45,30 @@ import static com.johnsoft.viewer.FileParser.FileHead.FORMAT_YV24;
 import static com.johnsoft.viewer.FileParser.FileHead.FORMAT_YVU444;
 import static com.johnsoft.viewer.FileParser.FileHead.FORMAT_YVYU422;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * @author John Kenrinus Lee
  * @version 2017-04-06
  */
-public abstract class FileParser {
+public abstract class FileParser implements Closeable {
     /**
+     * Frames are served from read-only mappings of at most this size aligned to whole frames,
+     * so files over 2 GB can be mapped window by window.
+     */
+    private static final long MAP_WINDOW_SIZE = 1L << 30;
+
+    /**
+     * Per pixel callback of {@link #fillToBuffer(FileHead, int, ColorSetter)}, an adapter over
+     * {@link #decodeFrame(FileHead, int, int[], int, int)} which should be used for whole frames.
+     *
      * @see SafeColorSetter
      */
     public interface ColorSetter {
@@ -226,6 +241,15 @@ public abstract class FileParser {
 
     public static int getFrameCount(FileHead head) {
         final long length = head.file.length();
+        final int frameSize = getFrameSize(head);
+        if (frameSize <= 0 || length % frameSize != 0) {
+            return -1;
+        }
+        return (int) (length / frameSize);
+    }
+
+    /** @return bytes of one frame, -1 if the format is unknown */
+    public static int getFrameSize(FileHead head) {
         final int format = head.format;
         final int width = head.width;
         final int height = head.height;
@@ -278,17 +302,115 @@ public abstract class FileParser {
             default:
                 return -1;
         }
-        if (length % frameSize != 0) {
-            return -1;
-        }
-        return (int) (length / frameSize);
+        return frameSize;
     }
 
     private FileHead head;
+    private File mappedFile;
+    private FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
 
     public final FileHead getHead() {
         return head;
     }
 
-    public abstract void fillToBuffer(FileHead head, int frameIndex, ColorSetter setter);
+    /**
+     * Bytes of the frame as a big endian slice of a read-only mapping of the file, position 0 and capacity
+     * one frame. The file is opened once and a window is mapped again only when the frame is out of it,
+     * so random access costs page faults instead of open, read and close of the file and a copy of the frame.
+     */
+    protected final synchronized ByteBuffer mapFrame(FileHead head, int frameIndex) {
+        final int frameSize = getFrameSize(head);
+        if (frameSize <= 0) {
+            throw new IllegalArgumentException("Unknown format!");
+        }
+        final long start = (long) frameIndex * frameSize;
+        final long end = start + frameSize;
+        try {
+            if (channel == null || !head.file.equals(mappedFile)) {
+                close();
+                channel = new FileInputStream(head.file).getChannel();
+                mappedFile = head.file;
+            }
+            final long length = channel.size();
+            if (frameIndex < 0 || end > length) {
+                throw new IllegalArgumentException("Frame " + frameIndex + " out of " + head.file);
+            }
+            if (window == null || start < windowStart || end > windowEnd) {
+                final long framesPerWindow = Math.max(1, MAP_WINDOW_SIZE / frameSize);
+                windowStart = frameIndex / framesPerWindow * framesPerWindow * frameSize;
+                windowEnd = Math.min(length, windowStart + framesPerWindow * frameSize);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        final ByteBuffer frame = window.duplicate();
+        frame.position((int) (start - windowStart));
+        frame.limit((int) (end - windowStart));
+        return frame.slice();
+    }
+
+    /** close the file, the mapping is released by gc when no frame slice is referenced */
+    @Override
+    public synchronized void close() {
+        window = null;
+        mappedFile = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // do nothing
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Decode the frame into argbOut as argb ints, row y of the image starts at offset + y * stride,
+     * so the frame can go straight into the pixels of a TYPE_INT_ARGB BufferedImage or a part of a larger array.
+     */
+    public final void decodeFrame(FileHead head, int frameIndex, int[] argbOut, int offset, int stride) {
+        checkOutput(head, argbOut, offset, stride);
+        decode(head, mapFrame(head, frameIndex), argbOut, offset, stride);
+    }
+
+    /** Compatibility adapter: the frame is decoded in bulk, then every pixel is handed to setter in row order */
+    public void fillToBuffer(FileHead head, int frameIndex, ColorSetter setter) {
+        final int width = head.width;
+        final int height = head.height;
+        final int[] argb = new int[width * height];
+        decodeFrame(head, frameIndex, argb, 0, width);
+        forEachPixel(argb, width, height, setter);
+    }
+
+    /** frame is a whole frame from position 0, argbOut is checked */
+    protected abstract void decode(FileHead head, ByteBuffer frame, int[] argbOut, int offset, int stride);
+
+    protected static void checkOutput(FileHead head, int[] argbOut, int offset, int stride) {
+        final int width = head.width;
+        final int height = head.height;
+        if (argbOut == null) {
+            throw new IllegalArgumentException("Output array is null");
+        }
+        if (offset < 0 || stride < width
+                || (height > 0 && offset + (long) (height - 1) * stride + width > argbOut.length)) {
+            throw new IllegalArgumentException("Frame " + width + 'x' + height + " at offset " + offset
+                    + " with stride " + stride + " out of array length " + argbOut.length);
+        }
+    }
+
+    /** hand the four 8 bit components of each packed pixel to setter */
+    static void forEachPixel(int[] pixels, int width, int height, ColorSetter setter) {
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                final int color = pixels[y * width + x];
+                setter.set(x, y, width, height, (color >>> 24), (color >> 16) & 0xFF, (color >> 8) & 0xFF,
+                        color & 0xFF);
+            }
+        }
+    }
 }
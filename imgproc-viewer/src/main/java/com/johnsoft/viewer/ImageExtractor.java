@@ -42,59 +42,39 @@ public class ImageExtractor {
     private DataOutputStream output;
 
     public ImageExtractor(File file, final String weight, int frameIndex) {
+        FileParser parser = null;
         try {
             output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.getPath()
                     + "." + weight)));
-            FileParser parser = FileParser.parseFormat(file);
-            FileParser.FileHead head = parser.getHead();
+            parser = FileParser.parseFormat(file);
+            final FileParser.FileHead head = parser.getHead();
+            final int[] pixels = new int[head.width * head.height];
+            final byte[] bytes = new byte[pixels.length];
             if (parser instanceof ARGBFileParser) {
-                ((ARGBFileParser) parser).fillToBuffer(head, frameIndex, new FileParser.SafeColorSetter() {
-                    @Override
-                    public void onColor(int x, int y, int w, int h, int alpha, int r, int g, int b) {
-                        try {
-                            if ("a".equals(weight)) {
-                                output.writeByte(alpha);
-                            } else if ("r".equals(weight)) {
-                                output.writeByte(r);
-                            } else if ("g".equals(weight)) {
-                                output.writeByte(g);
-                            } else if ("b".equals(weight)) {
-                                output.writeByte(b);
-                            } else if ("grey".equals(weight)) {
-                                output.writeByte(ARGBFileParser.convertArgbToGrey(alpha, r, g, b));
-                            } else {
-                                throw new IllegalArgumentException("Unknown weight parameter!");
-                            }
-                        } catch (IOException e) {
-                            throw new IllegalStateException(e);
-                        }
+                parser.decodeFrame(head, frameIndex, pixels, 0, head.width);
+                if ("grey".equals(weight)) {
+                    for (int i = 0; i < pixels.length; ++i) {
+                        final int color = pixels[i];
+                        bytes[i] = (byte) ARGBFileParser.convertArgbToGrey(color >>> 24, color >> 16, color >> 8,
+                                color);
                     }
-                });
+                } else {
+                    extract(pixels, bytes, shiftOf(weight, "a", "r", "g", "b"));
+                }
+                output.write(bytes);
             } else if (parser instanceof YCbCrFileParser) {
-                ((YCbCrFileParser) parser).fillToBufferRaw(head, frameIndex, new FileParser.SafeColorSetter() {
-                    @Override
-                    public void onColor(int x, int y, int w, int h, int alpha, int Y, int Cb, int Cr) {
-                        try {
-                            if ("y".equals(weight)) {
-                                output.writeByte(Y);
-                            } else if ("u".equals(weight)) {
-                                output.writeByte(Cb);
-                            } else if ("v".equals(weight)) {
-                                output.writeByte(Cr);
-                            } else {
-                                throw new IllegalStateException("Unknown weight parameter!");
-                            }
-                        } catch (IOException e) {
-                            throw new IllegalStateException(e);
-                        }
-                    }
-                });
+                ((YCbCrFileParser) parser).decodeFrameRaw(head, frameIndex, pixels, 0, head.width);
+                extract(pixels, bytes, shiftOf(weight, null, "y", "u", "v"));
+                output.write(bytes);
             } else {
                 System.err.println("Can't extract any thing!");
             }
         } catch (Exception e) {
             throw new IllegalStateException(e);
         } finally {
+            if (parser != null) {
+                parser.close();
+            }
             if (output != null) {
                 try {
                     output.close();
@@ -104,4 +84,20 @@ public class ImageExtractor {
             }
         }
     }
+
+    /** bit shift of the weight among the components from the high byte down */
+    private static int shiftOf(String weight, String... components) {
+        for (int i = 0; i < components.length; ++i) {
+            if (weight.equals(components[i])) {
+                return 24 - i * 8;
+            }
+        }
+        throw new IllegalArgumentException("Unknown weight parameter!");
+    }
+
+    private static void extract(int[] pixels, byte[] bytes, int shift) {
+        for (int i = 0; i < pixels.length; ++i) {
+            bytes[i] = (byte) (pixels[i] >> shift);
+        }
+    }
 }
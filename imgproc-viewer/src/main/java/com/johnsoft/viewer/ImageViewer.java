@@ -29,6 +29,7 @@ import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.util.Locale;
 
@@ -68,12 +69,12 @@ public class ImageViewer {
         FileParser parser = FileParser.parseFormat(file);
         FileParser.FileHead head = parser.getHead();
         final BufferedImage image = new BufferedImage(head.width, head.height, BufferedImage.TYPE_INT_ARGB);
-        parser.fillToBuffer(head, frameIndex, new FileParser.SafeColorSetter() {
-            @Override
-            public void onColor(int x, int y, int w, int h, int alpha, int rOrY, int gOrCb, int bOrCr) {
-                image.setRGB(x, y, ARGBFileParser.convertArgbToColor(alpha, rOrY, gOrCb, bOrCr));
-            }
-        });
+        try {
+            final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            parser.decodeFrame(head, frameIndex, pixels, 0, head.width);
+        } finally {
+            parser.close();
+        }
         prepareWindow(file.getName(), image, onClosed);
     }
 
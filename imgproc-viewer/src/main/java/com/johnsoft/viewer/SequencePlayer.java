@@ -0,0 +1,600 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.johnsoft.viewer;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.util.Locale;
+
+import javax.swing.AbstractAction;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.JSpinner;
+import javax.swing.JToggleButton;
+import javax.swing.KeyStroke;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.UIManager;
+import javax.swing.WindowConstants;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Plays every frame of a raw file that {@link FileParser#parseFormat(File)} knows at a target fps, with step and
+ * seek. A decoder thread decodes ahead into a fixed ring of images backed by {@link DataBufferInt}, a clock thread
+ * picks the frame due at every deadline, and the EDT only swaps the shown image and repaints. When decoding falls
+ * behind, the decoder skips to the frame due by the time it would be decoded and the skipped frames are counted as
+ * dropped, so playback keeps time instead of slowing down.
+ *
+ * @author John Kenrinus Lee
+ * @version 2017-10-15
+ */
+public class SequencePlayer {
+    public static void main(final String[] args) {
+        Locale.setDefault(Locale.ENGLISH);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final double fps = args.length > 1 ? Double.parseDouble(args[1]) : 30;
+                    final int frameIndex = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+                    UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+                    final SequencePlayer player = new SequencePlayer(new File(args[0]), fps);
+                    player.seek(frameIndex);
+                    player.showWindow(null);
+                    player.play();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    private static final int RING_SIZE = 6;
+    private static final int FREE = 0;
+    private static final int DECODING = 1;
+    private static final int READY = 2;
+    private static final int SHOWN = 3;
+
+    private static final class Slot {
+        final BufferedImage image;
+        final int[] pixels;
+        int frameIndex = -1;
+        int state = FREE;
+
+        Slot(int width, int height, int type) {
+            image = new BufferedImage(width, height, type);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+    }
+
+    private final FileParser parser;
+    private final FileParser.FileHead head;
+    private final int frameCount;
+    private final Slot[] ring = new Slot[RING_SIZE];
+    private final Object lock = new Object();
+    private final JComponent view;
+    private final Thread decoder;
+    private final Thread clock;
+
+    // guarded by lock
+    private boolean quit;
+    private boolean playing;
+    private boolean showPending;
+    private int decodeNext;
+    private int showNext;
+    private int generation;
+    private long periodNanos;
+    private long baseNanos;
+    private int baseFrame;
+    private long dropped;
+    private long decodeNanos;
+
+    // written on the EDT only
+    private volatile Slot shown;
+    private volatile int shownIndex = -1;
+    private volatile long presented;
+
+    public SequencePlayer(File file, double fps) {
+        parser = FileParser.parseFormat(file);
+        head = parser.getHead();
+        frameCount = FileParser.getFrameCount(head);
+        if (frameCount <= 0) {
+            parser.close();
+            throw new IllegalArgumentException("No frame in " + file);
+        }
+        setFps(fps);
+        final int type = parser instanceof ARGBFileParser ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        for (int i = 0; i < RING_SIZE; ++i) {
+            ring[i] = new Slot(head.width, head.height, type);
+        }
+        view = new JComponent() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                final Slot slot = shown;
+                if (slot == null || slot.image.getColorModel().hasAlpha()) {
+                    g.setColor(getBackground());
+                    g.fillRect(0, 0, getWidth(), getHeight());
+                }
+                if (slot != null) {
+                    g.drawImage(slot.image, 0, 0, getWidth(), getHeight(), null);
+                }
+            }
+        };
+        view.setPreferredSize(new Dimension(head.width, head.height));
+        view.setOpaque(true);
+        decoder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                decodeLoop();
+            }
+        }, "SequencePlayer-decoder");
+        clock = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                presentLoop();
+            }
+        }, "SequencePlayer-clock");
+        decoder.setDaemon(true);
+        clock.setDaemon(true);
+        decoder.start();
+        clock.start();
+    }
+
+    public JComponent getView() {
+        return view;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /** index of the frame on screen, -1 before the first one is shown */
+    public int getShownIndex() {
+        return shownIndex;
+    }
+
+    /** frames shown on the EDT since open */
+    public long getPresentedCount() {
+        return presented;
+    }
+
+    /** frames of playback never shown because they were not decoded in their interval */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    public boolean isPlaying() {
+        synchronized (lock) {
+            return playing;
+        }
+    }
+
+    public void setFps(double fps) {
+        if (!(fps > 0) || fps > 1000) {
+            throw new IllegalArgumentException("Fps should be in (0, 1000]");
+        }
+        synchronized (lock) {
+            periodNanos = (long) (1000000000L / fps);
+            rebase();
+            lock.notifyAll();
+        }
+    }
+
+    /** play from the next frame, from the first one if the last was shown */
+    public void play() {
+        synchronized (lock) {
+            if (showNext >= frameCount) {
+                seekLocked(0);
+            }
+            playing = true;
+            rebase();
+            lock.notifyAll();
+        }
+    }
+
+    public void pause() {
+        synchronized (lock) {
+            playing = false;
+            lock.notifyAll();
+        }
+    }
+
+    /** pause and show the frame delta away from the shown one */
+    public void step(int delta) {
+        synchronized (lock) {
+            playing = false;
+            final int from = shownIndex < 0 ? showNext : shownIndex;
+            seekLocked(Math.max(0, Math.min(frameCount - 1, from + delta)));
+        }
+    }
+
+    /** show frameIndex, playback goes on from it if playing */
+    public void seek(int frameIndex) {
+        if (frameIndex < 0 || frameIndex >= frameCount) {
+            throw new IllegalArgumentException("Frame " + frameIndex + " out of [0, " + frameCount + ')');
+        }
+        synchronized (lock) {
+            seekLocked(frameIndex);
+        }
+    }
+
+    /** stop both threads and close the file */
+    public void close() {
+        synchronized (lock) {
+            quit = true;
+            lock.notifyAll();
+        }
+        try {
+            decoder.join(1000);
+            clock.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        parser.close();
+    }
+
+    /** a window of the view with play, step, seek and fps controls, onClosed after close, exit if null */
+    public JFrame showWindow(final Runnable onClosed) {
+        final JFrame frame = new JFrame("SequencePlayer[" + head.file.getName() + "]");
+        final JToggleButton playBtn = new JToggleButton("play");
+        final JButton prevBtn = new JButton("<");
+        final JButton nextBtn = new JButton(">");
+        final JSlider seekBar = new JSlider(0, frameCount - 1, 0);
+        final JSpinner fpsSpinner = new JSpinner(new SpinnerNumberModel(
+                Math.max(1, Math.rint(1000000000.0 / periodNanos)), 1, 1000, 1));
+        final JLabel status = new JLabel();
+        final boolean[] syncing = new boolean[1];
+        playBtn.addItemListener(new ItemListener() {
+            @Override
+            public void itemStateChanged(ItemEvent e) {
+                if (syncing[0]) {
+                    return;
+                }
+                if (playBtn.isSelected()) {
+                    play();
+                } else {
+                    pause();
+                }
+            }
+        });
+        prevBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                step(-1);
+            }
+        });
+        nextBtn.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                step(1);
+            }
+        });
+        seekBar.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                if (!syncing[0]) {
+                    seek(seekBar.getValue());
+                }
+            }
+        });
+        fpsSpinner.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                setFps(((Number) fpsSpinner.getValue()).doubleValue());
+            }
+        });
+        final Timer statusTimer = new Timer(200, new ActionListener() {
+            private long lastPresented;
+            private long lastNanos = System.nanoTime();
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                final long now = System.nanoTime();
+                final long count = getPresentedCount();
+                final double fps = (count - lastPresented) * 1e9 / (now - lastNanos);
+                lastPresented = count;
+                lastNanos = now;
+                status.setText(String.format(Locale.US, "%d/%d  %.1f fps  dropped %d",
+                        getShownIndex(), frameCount - 1, fps, getDroppedCount()));
+                syncing[0] = true;
+                playBtn.setSelected(isPlaying());
+                if (!seekBar.getValueIsAdjusting() && getShownIndex() >= 0) {
+                    seekBar.setValue(getShownIndex());
+                }
+                syncing[0] = false;
+            }
+        });
+        bindKey(frame, KeyEvent.VK_SPACE, new Runnable() {
+            @Override
+            public void run() {
+                playBtn.doClick();
+            }
+        });
+        bindKey(frame, KeyEvent.VK_LEFT, new Runnable() {
+            @Override
+            public void run() {
+                step(-1);
+            }
+        });
+        bindKey(frame, KeyEvent.VK_RIGHT, new Runnable() {
+            @Override
+            public void run() {
+                step(1);
+            }
+        });
+        status.setPreferredSize(new Dimension(260, 30));
+        final JPanel controls = new JPanel(new BorderLayout());
+        final JPanel west = new JPanel();
+        west.add(prevBtn);
+        west.add(playBtn);
+        west.add(nextBtn);
+        final JPanel east = new JPanel();
+        east.add(new JLabel("fps"));
+        east.add(fpsSpinner);
+        east.add(status);
+        controls.add(west, BorderLayout.WEST);
+        controls.add(seekBar);
+        controls.add(east, BorderLayout.EAST);
+        final JPanel content = new JPanel(new BorderLayout());
+        content.add(view);
+        content.add(controls, BorderLayout.SOUTH);
+        frame.setContentPane(content);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                statusTimer.stop();
+                close();
+                if (onClosed != null) {
+                    onClosed.run();
+                } else {
+                    System.exit(0);
+                }
+            }
+        });
+        frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        frame.pack();
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+        statusTimer.start();
+        return frame;
+    }
+
+    private static void bindKey(JFrame frame, int keyCode, final Runnable action) {
+        final String name = "SequencePlayer-" + keyCode;
+        frame.getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+                .put(KeyStroke.getKeyStroke(keyCode, 0), name);
+        frame.getRootPane().getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+
+    /** frame showNext is due now */
+    private void rebase() {
+        baseFrame = showNext;
+        baseNanos = System.nanoTime();
+    }
+
+    private int dueFrame(long now) {
+        return baseFrame + (int) ((now - baseNanos) / periodNanos);
+    }
+
+    /**
+     * Frames decoded ahead from frameIndex on are kept when all of [frameIndex, decodeNext) is in the ring,
+     * so stepping forward is served from it; the decoder may have skipped frames, so otherwise the ring is
+     * flushed and a decode in flight is discarded when it finishes.
+     */
+    private void seekLocked(int frameIndex) {
+        boolean keep = frameIndex <= decodeNext;
+        for (int i = frameIndex; keep && i < decodeNext; ++i) {
+            keep = find(READY, i) != null || find(DECODING, i) != null;
+        }
+        if (!keep) {
+            ++generation;
+            decodeNext = frameIndex;
+        }
+        for (Slot slot : ring) {
+            if (slot.state == READY && (!keep || slot.frameIndex < frameIndex)) {
+                slot.state = FREE;
+            }
+        }
+        showNext = frameIndex;
+        showPending = true;
+        rebase();
+        lock.notifyAll();
+    }
+
+    private void decodeLoop() {
+        while (true) {
+            Slot slot = null;
+            final int frameIndex;
+            final int decodingGeneration;
+            synchronized (lock) {
+                while (!quit) {
+                    if (playing) {
+                        final int due = dueFrame(System.nanoTime() + decodeNanos);
+                        decodeNext = Math.max(decodeNext, Math.max(showNext, due));
+                    }
+                    slot = decodeNext < frameCount ? find(FREE, -1) : null;
+                    if (slot != null) {
+                        break;
+                    }
+                    waitLocked(-1);
+                }
+                if (quit) {
+                    return;
+                }
+                frameIndex = decodeNext++;
+                decodingGeneration = generation;
+                slot.frameIndex = frameIndex;
+                slot.state = DECODING;
+            }
+            final long start = System.nanoTime();
+            try {
+                parser.decodeFrame(head, frameIndex, slot.pixels, 0, head.width);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                synchronized (lock) {
+                    slot.state = FREE;
+                    playing = false;
+                    lock.notifyAll();
+                }
+                continue;
+            }
+            final long elapsed = System.nanoTime() - start;
+            synchronized (lock) {
+                decodeNanos = decodeNanos == 0 ? elapsed : (decodeNanos * 7 + elapsed) / 8;
+                slot.state = decodingGeneration == generation ? READY : FREE;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void presentLoop() {
+        synchronized (lock) {
+            while (!quit) {
+                long timeout = -1;
+                if (playing) {
+                    final long now = System.nanoTime();
+                    final int due = dueFrame(now);
+                    if (due >= frameCount) {
+                        dropped += Math.max(0, frameCount - showNext);
+                        showNext = frameCount;
+                        playing = false;
+                        continue;
+                    }
+                    if (due < showNext) {
+                        timeout = baseNanos + (showNext - baseFrame) * periodNanos - now;
+                    } else {
+                        final Slot slot = latestReady(due);
+                        if (slot != null) {
+                            dropped += slot.frameIndex - showNext;
+                            showNext = slot.frameIndex + 1;
+                            showPending = false;
+                            releaseStale(slot.frameIndex);
+                            present(slot, slot.frameIndex);
+                            continue;
+                        }
+                        timeout = baseNanos + (due + 1 - baseFrame) * periodNanos - now;
+                    }
+                } else if (showPending) {
+                    final Slot slot = find(READY, showNext);
+                    if (slot != null) {
+                        showPending = false;
+                        present(slot, showNext++);
+                        continue;
+                    }
+                }
+                if (timeout == 0) {
+                    continue;
+                }
+                waitLocked(timeout);
+            }
+        }
+    }
+
+    /** hand the slot to the EDT, the slot shown before is free once it is replaced */
+    private void present(final Slot slot, final int frameIndex) {
+        slot.state = SHOWN;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                final Slot old = shown;
+                shown = slot;
+                shownIndex = frameIndex;
+                ++presented;
+                view.repaint();
+                if (old != null && old != slot) {
+                    synchronized (lock) {
+                        old.state = FREE;
+                        lock.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /** the ready frame nearest to due and not after it, the frames in between are not worth showing */
+    private Slot latestReady(int due) {
+        Slot latest = null;
+        for (Slot slot : ring) {
+            if (slot.state == READY && slot.frameIndex <= due && slot.frameIndex >= showNext
+                    && (latest == null || slot.frameIndex > latest.frameIndex)) {
+                latest = slot;
+            }
+        }
+        return latest;
+    }
+
+    /** free frames decoded ahead which are already late */
+    private void releaseStale(int due) {
+        boolean released = false;
+        for (Slot slot : ring) {
+            if (slot.state == READY && slot.frameIndex < due) {
+                slot.state = FREE;
+                released = true;
+            }
+        }
+        if (released) {
+            lock.notifyAll();
+        }
+    }
+
+    /** slot in state, of frameIndex unless it is -1 */
+    private Slot find(int state, int frameIndex) {
+        for (Slot slot : ring) {
+            if (slot.state == state && (frameIndex < 0 || slot.frameIndex == frameIndex)) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    /** wait for a notify or timeout nanos, forever if negative */
+    private void waitLocked(long timeout) {
+        try {
+            if (timeout < 0) {
+                lock.wait();
+            } else if (timeout > 0) {
+                lock.wait(timeout / 1000000, (int) (timeout % 1000000));
+            }
+        } catch (InterruptedException e) {
+            quit = true;
+        }
+    }
+}
@@ -16,11 +16,7 @@
  */
 package com.johnsoft.viewer;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 
 /**
  * ffmpeg -i aixiao.mp4 -an -f rawvideo -vframes 1 -vcodec rawvideo -ss "0:0:6" -s 1024x768 -pix_fmt nv12
@@ -31,44 +27,109 @@ import java.nio.channels.FileChannel;
  */
 public final class YCbCrFileParser extends FileParser {
     @Override
-    public void fillToBuffer(FileParser.FileHead head, int frameIndex, final ColorSetter setter) {
-        fillYuvToBuffer(head, frameIndex, new SafeColorSetter() {
-            @Override
-            public void onColor(int x, int y, int w, int h, int alpha, int Y, int Cb, int Cr) {
-                final int[] argb = aycbcr2argb(alpha, Y, Cb, Cr);
-                setter.set(x, y, w, h, argb[0], argb[1], argb[2], argb[3]);
-            }
-        });
+    protected void decode(FileHead head, ByteBuffer frame, int[] argbOut, int offset, int stride) {
+        decodeYuv(head, frame, argbOut, offset, stride, false);
+    }
+
+    /**
+     * Same as {@link #decodeFrame(FileHead, int, int[], int, int)} without the conversion to rgb,
+     * each int is 0xFF, Y, Cb and Cr from the high byte down.
+     */
+    public void decodeFrameRaw(FileHead head, int frameIndex, int[] aycbcrOut, int offset, int stride) {
+        checkOutput(head, aycbcrOut, offset, stride);
+        decodeYuv(head, mapFrame(head, frameIndex), aycbcrOut, offset, stride, true);
     }
 
+    /** adapter over {@link #decodeFrameRaw(FileHead, int, int[], int, int)} */
     public void fillToBufferRaw(FileHead head, int frameIndex, ColorSetter setter) {
-        fillYuvToBuffer(head, frameIndex, setter);
+        final int[] aycbcr = new int[head.width * head.height];
+        decodeFrameRaw(head, frameIndex, aycbcr, 0, head.width);
+        forEachPixel(aycbcr, head.width, head.height, setter);
     }
 
-    private static void fillYuvToBuffer(FileHead head, int frameIndex, ColorSetter setter) {
-        final File file = head.file;
+    private static void decodeYuv(FileHead head, ByteBuffer frame, int[] out, int offset, int stride, boolean raw) {
         final int width = head.width;
         final int height = head.height;
-        final int format = head.format;
-        if (format == FileHead.FORMAT_YUV420P || format == FileHead.FORMAT_YV12
-                || format == FileHead.FORMAT_YUV420SP || format == FileHead.FORMAT_NV21) {
-            fillYuv420ToBuffer(head, setter, file, width, height, format, frameIndex);
-        } else if (format == FileHead.FORMAT_YUV422P || format == FileHead.FORMAT_YV16
-                || format == FileHead.FORMAT_YUV422SP || format == FileHead.FORMAT_NV61) {
-            fillYuv422ToBuffer(head, setter, file, width, height, format, frameIndex);
-        } else if (format == FileHead.FORMAT_YUV444P || format == FileHead.FORMAT_YV24
-                || format == FileHead.FORMAT_YUV444SP || format == FileHead.FORMAT_NV42) {
-            fillYuv444ToBuffer(head, setter, file, width, height, format, frameIndex);
-        } else if (format == FileHead.FORMAT_YUV444 || format == FileHead.FORMAT_YVU444) {
-            fillYuv444PackedToBuffer(head, setter, file, width, height, format, frameIndex);
-        } else if (format == FileHead.FORMAT_YUYV422 || format == FileHead.FORMAT_YVYU422
-                || format == FileHead.FORMAT_UYVY422 || format == FileHead.FORMAT_VYUY422) {
-            fillYuv422PackedToBuffer(head, setter, file, width, height, format, frameIndex);
+        final int numOfPixels = width * height;
+        final int uvRowBytes = (width + 1) / 2;
+        final int uvSize420 = uvRowBytes * ((height + 1) / 2);
+        final int uvSize422 = uvRowBytes * height;
+        final int line422 = (width + width % 2) * 2;
+        switch (head.format) {
+            case FileHead.FORMAT_YUV420P:
+                decodePlanar(frame, width, height, numOfPixels, numOfPixels + uvSize420, 1, uvRowBytes, true, true,
+                        out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_YV12:
+                decodePlanar(frame, width, height, numOfPixels + uvSize420, numOfPixels, 1, uvRowBytes, true, true,
+                        out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_YUV420SP:
+                decodePlanar(frame, width, height, numOfPixels, numOfPixels + 1, 2, uvRowBytes * 2, true, true,
+                        out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_NV21:
+                decodePlanar(frame, width, height, numOfPixels + 1, numOfPixels, 2, uvRowBytes * 2, true, true,
+                        out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_YUV422P:
+                decodePlanar(frame, width, height, numOfPixels, numOfPixels + uvSize422, 1, uvRowBytes, true, false,
+                        out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_YV16:
+                decodePlanar(frame, width, height, numOfPixels + uvSize422, numOfPixels, 1, uvRowBytes, true, false,
+                        out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_YUV422SP:
+                decodePlanar(frame, width, height, numOfPixels, numOfPixels + 1, 2, uvRowBytes * 2, true, false,
+                        out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_NV61:
+                decodePlanar(frame, width, height, numOfPixels + 1, numOfPixels, 2, uvRowBytes * 2, true, false,
+                        out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_YUV444P:
+                decodePlanar(frame, width, height, numOfPixels, numOfPixels * 2, 1, width, false, false,
+                        out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_YV24:
+                decodePlanar(frame, width, height, numOfPixels * 2, numOfPixels, 1, width, false, false,
+                        out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_YUV444SP:
+                decodePlanar(frame, width, height, numOfPixels, numOfPixels + 1, 2, width * 2, false, false,
+                        out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_NV42:
+                decodePlanar(frame, width, height, numOfPixels + 1, numOfPixels, 2, width * 2, false, false,
+                        out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_YUV444:
+                decodePacked(frame, width, height, width * 3, 0, 3, 1, 2, 3, false, out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_YVU444:
+                decodePacked(frame, width, height, width * 3, 0, 3, 2, 1, 3, false, out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_YUYV422:
+                decodePacked(frame, width, height, line422, 0, 2, 1, 3, 4, true, out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_UYVY422:
+                decodePacked(frame, width, height, line422, 1, 2, 0, 2, 4, true, out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_YVYU422:
+                decodePacked(frame, width, height, line422, 0, 2, 3, 1, 4, true, out, offset, stride, raw);
+                break;
+            case FileHead.FORMAT_VYUY422:
+                decodePacked(frame, width, height, line422, 1, 2, 2, 0, 4, true, out, offset, stride, raw);
+                break;
+            default:
+                break;
         }
     }
 
     /**
-     *  odd resolution, like 3x3 image:
+     *  Planar and semi-planar layouts, the luma plane then chroma from uOff and vOff with chromaRowBytes per
+     *  chroma row, one chroma row per two luma rows if halfHeight. Odd resolution, like 3x3 image:
      *
      *  Y1 Y2 Y3
      *  Y4 Y5 Y6
@@ -81,193 +142,27 @@ public final class YCbCrFileParser extends FileParser {
      *  | Y1 U1 V1 | Y2 U1 V1 | Y3 U2 V2 | Y4 U1 V1 | Y5 U1 V1 | Y6 U2 V2 |
      *  | Y7 U3 V3 | Y8 U3 V3 | Y9 U4 V4 |
      */
-    private static void fillYuv420ToBuffer(FileHead head, ColorSetter setter, File file, int width, int height,
-                                           int format, int frameIndex) {
-        final int uvRowBytes = (width + 1) / 2;
-        final int halfHeight = (height + 1) / 2;
-        final int uvSize = uvRowBytes * halfHeight;
-        final int numOfPixels = width * height;
-        final int length = numOfPixels + uvSize * 2;
-        final byte[] buffer = new byte[length];
-        readFileToBuffer(file, frameIndex * length, buffer);
-
-        final int posOfU;
-        final int posOfV;
-        if (format == FileHead.FORMAT_YUV420P || format == FileHead.FORMAT_YUV420SP) {
-            posOfU = numOfPixels;
-            posOfV = uvSize + numOfPixels;
-        } else if (format == FileHead.FORMAT_YV12 || format == FileHead.FORMAT_NV21) {
-            posOfU = uvSize + numOfPixels;
-            posOfV = numOfPixels;
-        } else {
-            throw new IllegalStateException("Logical error!");
-        }
-        final int base;
-        if (format == FileHead.FORMAT_YUV420P || format == FileHead.FORMAT_YV12) {
-            base = uvRowBytes;
-        } else if (format == FileHead.FORMAT_YUV420SP || format == FileHead.FORMAT_NV21) {
-            base = uvRowBytes * 2;
-        } else {
-            throw new IllegalStateException("Logical error!");
-        }
-
-        for (int i = 0; i < height; ++i) {
-            final int step = (i / 2) * base;
-            final int startY = i * width;
-            final int startU = posOfU + step;
-            final int startV = posOfV + step;
-            for (int j = 0; j < width; ++j) {
-                final int indexY = startY + j;
-                final int indexU, indexV;
-                if (format == FileHead.FORMAT_YUV420SP) {
-                    indexU = startU + j - j % 2;
-                    indexV = indexU + 1;
-                } else if (format == FileHead.FORMAT_NV21) {
-                    indexV = startV + j - j % 2;
-                    indexU = indexV + 1;
-                } else {
-                    indexU = startU + j / 2;
-                    indexV = startV + j / 2;
-                }
-                setter.set(j, i, width, height, 255, buffer[indexY], buffer[indexU], buffer[indexV]);
-            }
-        }
-    }
-
-    private static void fillYuv422ToBuffer(FileHead head, ColorSetter setter, File file, int width, int height,
-                                           int format, int frameIndex) {
-        final int uvRowBytes = (width + 1) / 2;
-        final int uvSize = uvRowBytes * height;
-        final int numOfPixels = width * height;
-        final int length = numOfPixels + uvSize * 2;
-        final byte[] buffer = new byte[length];
-        readFileToBuffer(file, frameIndex * length, buffer);
-
-        final int posOfU;
-        final int posOfV;
-        if (format == FileHead.FORMAT_YUV422P || format == FileHead.FORMAT_YUV422SP) {
-            posOfU = numOfPixels;
-            posOfV = uvSize + numOfPixels;
-        } else if (format == FileHead.FORMAT_YV16 || format == FileHead.FORMAT_NV61) {
-            posOfU = uvSize + numOfPixels;
-            posOfV = numOfPixels;
-        } else {
-            throw new IllegalStateException("Logical error!");
-        }
-        final int base;
-        if (format == FileHead.FORMAT_YUV422P || format == FileHead.FORMAT_YV16) {
-            base = uvRowBytes;
-        } else if (format == FileHead.FORMAT_YUV422SP || format == FileHead.FORMAT_NV61) {
-            base = uvRowBytes * 2;
-        } else {
-            throw new IllegalStateException("Logical error!");
-        }
-
-        for (int i = 0; i < height; ++i) {
-            final int step = i * base;
-            final int startY = i * width;
-            final int startU = posOfU + step;
-            final int startV = posOfV + step;
-            for (int j = 0; j < width; ++j) {
-                final int indexY = startY + j;
-                final int indexU, indexV;
-                if (format == FileHead.FORMAT_YUV422SP) {
-                    indexU = startU + j - j % 2;
-                    indexV = indexU + 1;
-                } else if (format == FileHead.FORMAT_NV61) {
-                    indexV = startV + j - j % 2;
-                    indexU = indexV + 1;
-                } else {
-                    indexU = startU + j / 2;
-                    indexV = startV + j / 2;
-                }
-                setter.set(j, i, width, height, 255, buffer[indexY], buffer[indexU], buffer[indexV]);
-            }
-        }
-    }
-
-    private static void fillYuv444ToBuffer(FileHead head, ColorSetter setter, File file, int width, int height,
-                                           int format, int frameIndex) {
-        final int numOfPixels = width * height;
-        final int length = numOfPixels * 3;
-        final byte[] buffer = new byte[length];
-        readFileToBuffer(file, frameIndex * length, buffer);
-
-        final int posOfU;
-        final int posOfV;
-        if (format == FileHead.FORMAT_YUV444P || format == FileHead.FORMAT_YUV444SP) {
-            posOfU = numOfPixels;
-            posOfV = posOfU + numOfPixels;
-        } else if (format == FileHead.FORMAT_YV24 || format == FileHead.FORMAT_NV42) {
-            posOfV = numOfPixels;
-            posOfU = posOfV + numOfPixels;
-        } else {
-            throw new IllegalStateException("Logical error!");
-        }
-        final int base;
-        if (format == FileHead.FORMAT_YUV444P || format == FileHead.FORMAT_YV24) {
-            base = width;
-        } else if (format == FileHead.FORMAT_YUV444SP || format == FileHead.FORMAT_NV42) {
-            base = width * 2;
-        } else {
-            throw new IllegalStateException("Logical error!");
-        }
-
-        for (int i = 0; i < height; ++i) {
-            final int step = i * base;
-            final int startY = i * width;
-            final int startU = posOfU + step;
-            final int startV = posOfV + step;
-            for (int j = 0; j < width; ++j) {
-                final int indexY = startY + j;
-                final int indexU, indexV;
-                if (format == FileHead.FORMAT_YUV444SP) {
-                    indexU = startU + j * 2;
-                    indexV = indexU + 1;
-                } else if (format == FileHead.FORMAT_NV42) {
-                    indexV = startV + j * 2;
-                    indexU = indexV + 1;
-                } else {
-                    indexU = startU + j;
-                    indexV = startV + j;
-                }
-                setter.set(j, i, width, height, 255, buffer[indexY], buffer[indexU], buffer[indexV]);
-            }
-        }
-    }
-
-    private static void fillYuv444PackedToBuffer(FileHead head, ColorSetter setter, File file, int width, int height,
-                                                 int format, int frameIndex) {
-        final int numOfPixels = width * height;
-        final int length = numOfPixels * 3;
-        final byte[] buffer = new byte[length];
-        readFileToBuffer(file, frameIndex * length, buffer);
-
-        final int stepU;
-        final int stepV;
-        if (format == FileHead.FORMAT_YUV444) {
-            stepU = 1;
-            stepV = 2;
-        } else if (format == FileHead.FORMAT_YVU444) {
-            stepV = 1;
-            stepU = 2;
-        } else {
-            throw new IllegalStateException("Logical error!");
-        }
-
-        final int line = width * 3;
+    private static void decodePlanar(ByteBuffer frame, int width, int height, int uOff, int vOff, int cStep,
+                                     int chromaRowBytes, boolean halfWidth, boolean halfHeight,
+                                     int[] out, int offset, int stride, boolean raw) {
         for (int i = 0; i < height; ++i) {
-            final int startY = i * line;
-            for (int j = 0; j < width; ++j) {
-                final int indexY = startY + j * 3;
-                final int indexU = indexY + stepU;
-                final int indexV = indexY + stepV;
-                setter.set(j, i, width, height, 255, buffer[indexY], buffer[indexU], buffer[indexV]);
+            final int chroma = (halfHeight ? i / 2 : i) * chromaRowBytes;
+            if (raw) {
+                yuvRowToRaw(frame, i * width, 1, uOff + chroma, vOff + chroma, cStep, halfWidth,
+                        out, offset + i * stride, width);
+            } else if (halfHeight && i + 1 < height) {
+                yuv420RowsToArgb(frame, i * width, (i + 1) * width, uOff + chroma, vOff + chroma, cStep,
+                        out, offset + i * stride, offset + (i + 1) * stride, width);
+                ++i;
+            } else {
+                yuvRowToArgb(frame, i * width, 1, uOff + chroma, vOff + chroma, cStep, halfWidth,
+                        out, offset + i * stride, width);
             }
         }
     }
 
     /**
+     *  Packed layouts, every row of lineBytes holds luma from yPos and chroma from uPos and vPos.
      *  6x3 image:
      *
      *  Y0  U0  Y1  V0  Y2  U1  Y3  V1  Y4  U2  Y5  V2
@@ -281,82 +176,96 @@ public final class YCbCrFileParser extends FileParser {
      *
      *  |Y0 U0 V0 | Y1 U0 V0 | Y2 U1 V1 | Y3 U1 V1 | Y4 U2 V2 | Y5 U2 V2 |
      */
-    private static void fillYuv422PackedToBuffer(FileHead head, ColorSetter setter, File file, int width, int height,
-                                                 int format, int frameIndex) {
-        final int length = ((width + width % 2) * height) * 2;
-        final byte[] buffer = new byte[length];
-        readFileToBuffer(file, frameIndex * length, buffer);
-
-        final int yBase;
-        final int stepOddU, stepEvenU;
-        final int stepOddV, stepEvenV;
-        if (format == FileHead.FORMAT_YUYV422) {
-            yBase = 0;
-            stepEvenU = 1;
-            stepOddU = -1;
-            stepEvenV = 3;
-            stepOddV = 1;
-        } else if (format == FileHead.FORMAT_YVYU422) {
-            yBase = 0;
-            stepEvenU = 3;
-            stepOddU = 1;
-            stepEvenV = 1;
-            stepOddV = -1;
-        } else if (format == FileHead.FORMAT_UYVY422) {
-            yBase = 1;
-            stepEvenU = -1;
-            stepOddU = -3;
-            stepEvenV = 1;
-            stepOddV = -1;
-        } else if (format == FileHead.FORMAT_VYUY422) {
-            yBase = 1;
-            stepEvenU = 1;
-            stepOddU = -1;
-            stepEvenV = -1;
-            stepOddV = -3;
-        } else {
-            throw new IllegalStateException("Logical error!");
+    private static void decodePacked(ByteBuffer frame, int width, int height, int lineBytes, int yPos, int yStep,
+                                     int uPos, int vPos, int cStep, boolean halfWidth,
+                                     int[] out, int offset, int stride, boolean raw) {
+        for (int i = 0; i < height; ++i) {
+            final int line = i * lineBytes;
+            if (raw) {
+                yuvRowToRaw(frame, line + yPos, yStep, line + uPos, line + vPos, cStep, halfWidth,
+                        out, offset + i * stride, width);
+            } else {
+                yuvRowToArgb(frame, line + yPos, yStep, line + uPos, line + vPos, cStep, halfWidth,
+                        out, offset + i * stride, width);
+            }
         }
+    }
 
-        final int line = (width + width % 2) * 2;
-        for (int i = 0; i < height; ++i) {
-            final int startY = i * line + yBase;
+    /**
+     * Convert one row into opaque argb ints without allocation. Luma of pixel j is the byte at yOff + j * yStep,
+     * chroma is at uOff + k * cStep and vOff + k * cStep where k is j / 2 if halfWidth, so that a chroma sample
+     * is looked up once for its two pixels, otherwise j.
+     */
+    public static void yuvRowToArgb(ByteBuffer frame, int yOff, int yStep, int uOff, int vOff, int cStep,
+                                    boolean halfWidth, int[] out, int outOff, int width) {
+        if (!halfWidth) {
             for (int j = 0; j < width; ++j) {
-                final int indexY = startY + j * 2;
-                final int indexU, indexV;
-                if (j % 2 == 0) {
-                    indexU = indexY + stepEvenU;
-                    indexV = indexY + stepEvenV;
-                } else {
-                    indexU = indexY + stepOddU;
-                    indexV = indexY + stepOddV;
-                }
-                setter.set(j, i, width, height, 255, buffer[indexY], buffer[indexU], buffer[indexV]);
+                final int Cb = frame.get(uOff + j * cStep) & 0xFF;
+                final int Cr = frame.get(vOff + j * cStep) & 0xFF;
+                out[outOff + j] = argb(frame.get(yOff + j * yStep) & 0xFF, R_OFFSET[Cr],
+                        G_CB_OFFSET[Cb] - GCrDiffTable[Cr], B_OFFSET[Cb]);
+            }
+            return;
+        }
+        for (int j = 0, k = 0; j < width; j += 2, ++k) {
+            final int Cb = frame.get(uOff + k * cStep) & 0xFF;
+            final int Cr = frame.get(vOff + k * cStep) & 0xFF;
+            final int rd = R_OFFSET[Cr];
+            final int gd = G_CB_OFFSET[Cb] - GCrDiffTable[Cr];
+            final int bd = B_OFFSET[Cb];
+            out[outOff + j] = argb(frame.get(yOff + j * yStep) & 0xFF, rd, gd, bd);
+            if (j + 1 < width) {
+                out[outOff + j + 1] = argb(frame.get(yOff + (j + 1) * yStep) & 0xFF, rd, gd, bd);
             }
         }
     }
 
-    private static void readFileToBuffer(File file, long skipOffset, byte[] buffer) {
-        FileChannel channel = null;
-        try {
-            channel = new FileInputStream(file).getChannel();
-            channel.position(skipOffset);
-            if (channel.read(ByteBuffer.wrap(buffer)) != buffer.length) {
-                throw new IllegalArgumentException("Read size not equals calculate size!");
-            }
-        } catch (Exception e) {
-            throw new IllegalStateException(e);
-        } finally {
-            if (channel != null) {
-                try {
-                    channel.close();
-                } catch (IOException ignored) {
-                    // do nothing
-                }
+    /**
+     * Convert two luma rows sharing one chroma row of a 4:2:0 frame, so that a chroma sample is looked up once
+     * for its four pixels. Luma bytes are contiguous from yOff0 and yOff1, chroma is addressed as
+     * {@link #yuvRowToArgb(ByteBuffer, int, int, int, int, int, boolean, int[], int, int)} with half width.
+     */
+    public static void yuv420RowsToArgb(ByteBuffer frame, int yOff0, int yOff1, int uOff, int vOff, int cStep,
+                                        int[] out, int outOff0, int outOff1, int width) {
+        for (int j = 0, k = 0; j < width; j += 2, ++k) {
+            final int Cb = frame.get(uOff + k * cStep) & 0xFF;
+            final int Cr = frame.get(vOff + k * cStep) & 0xFF;
+            final int rd = R_OFFSET[Cr];
+            final int gd = G_CB_OFFSET[Cb] - GCrDiffTable[Cr];
+            final int bd = B_OFFSET[Cb];
+            out[outOff0 + j] = argb(frame.get(yOff0 + j) & 0xFF, rd, gd, bd);
+            out[outOff1 + j] = argb(frame.get(yOff1 + j) & 0xFF, rd, gd, bd);
+            if (j + 1 < width) {
+                out[outOff0 + j + 1] = argb(frame.get(yOff0 + j + 1) & 0xFF, rd, gd, bd);
+                out[outOff1 + j + 1] = argb(frame.get(yOff1 + j + 1) & 0xFF, rd, gd, bd);
             }
         }
     }
 
+    /** addressed as yuvRowToArgb, each int is 0xFF, Y, Cb and Cr from the high byte down */
+    public static void yuvRowToRaw(ByteBuffer frame, int yOff, int yStep, int uOff, int vOff, int cStep,
+                                   boolean halfWidth, int[] out, int outOff, int width) {
+        for (int j = 0; j < width; ++j) {
+            final int k = halfWidth ? j / 2 : j;
+            out[outOff + j] = 0xFF000000 | ((frame.get(yOff + j * yStep) & 0xFF) << 16)
+                    | ((frame.get(uOff + k * cStep) & 0xFF) << 8) | (frame.get(vOff + k * cStep) & 0xFF);
+        }
+    }
+
+    /** same as {@link #aycbcr2argb(int, int, int, int)} packed into one argb int, without allocation */
+    public static int aycbcr2argbPacked(/*uint_8*/int alpha, /*uint_8*/int Y, /*uint_8*/int Cb, /*uint_8*/int Cr) {
+        Y = 0xFF & Y;
+        Cb = 0xFF & Cb;
+        Cr = 0xFF & Cr;
+        final int rgb = argb(Y, R_OFFSET[Cr], G_CB_OFFSET[Cb] - GCrDiffTable[Cr], B_OFFSET[Cb]) & 0x00FFFFFF;
+        return ((alpha > 255 ? 255 : alpha < 0 ? 0 : alpha) << 24) | rgb;
+    }
+
+    /** Y and the clamp offset of each component from the tables below */
+    private static int argb(int Y, int rd, int gd, int bd) {
+        return 0xFF000000 | (CLAMP[Y + rd] << 16) | (CLAMP[Y + gd] << 8) | CLAMP[Y + bd];
+    }
+
     public static final int[] aycbcr2argb(/*uint_8*/int alpha, /*uint_8*/int Y, /*uint_8*/int Cb, /*uint_8*/int Cr) {
         return aycbcr2argbXXX(alpha, Y, Cb, Cr);
     }
@@ -478,6 +387,25 @@ public final class YCbCrFileParser extends FileParser {
             200, 202, 203, 205, 207, 209, 211, 212, 214, 216, 218, 219, 221, 223, 225,
     };
 
+    /** CLAMP[v + CLAMP_MARGIN] is v clamped into [0, 255], wide enough for Y plus any of the diff tables */
+    private static final int CLAMP_MARGIN = 256;
+    private static final int[] CLAMP = new int[256 + CLAMP_MARGIN * 2];
+    /* the diff tables with CLAMP_MARGIN folded in, green is G_CB_OFFSET[Cb] - GCrDiffTable[Cr] */
+    private static final int[] R_OFFSET = new int[256];
+    private static final int[] G_CB_OFFSET = new int[256];
+    private static final int[] B_OFFSET = new int[256];
+
+    static {
+        for (int i = 0; i < CLAMP.length; ++i) {
+            CLAMP[i] = Math.max(0, Math.min(255, i - CLAMP_MARGIN));
+        }
+        for (int i = 0; i < 256; ++i) {
+            R_OFFSET[i] = RDiffTable[i] + CLAMP_MARGIN;
+            G_CB_OFFSET[i] = CLAMP_MARGIN - GCbDiffTable[i];
+            B_OFFSET[i] = BDiffTable[i] + CLAMP_MARGIN;
+        }
+    }
+
     public static void main(String[] args) {
         generateTables();
     }
@@ -16,6 +16,10 @@
  */
 package com.johnsoft.viewer.benchmark;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import org.openjdk.jmh.annotations.Benchmark;
@@ -24,14 +28,25 @@ import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
 
+import com.johnsoft.viewer.FileParser;
 import com.johnsoft.viewer.YCbCrFileParser;
 
 /**
+ * Single conversions and full 1080p frames of every planar, semi-planar and packed layout. Run main for
+ * the gc profiler as well, its churn and count columns show what a frame allocates besides the time.
+ *
  * @author John Kenrinus Lee
  * @version 2017-04-07
  */
@@ -59,4 +74,71 @@ public class YuvTest {
     public void calcYuvXXX() {
         YCbCrFileParser.aycbcr2argbXXX(255, 100, 22, 22);
     }
+
+    @Benchmark
+    @Threads(1)
+    public int calcYuvPacked() {
+        return YCbCrFileParser.aycbcr2argbPacked(255, 100, 22, 22);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int[] decodeFrame(Frame frame) {
+        frame.parser.decodeFrame(frame.parser.getHead(), 0, frame.argb, 0, Frame.WIDTH);
+        return frame.argb;
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int[] decodeFrameRaw(Frame frame) {
+        frame.parser.decodeFrameRaw(frame.parser.getHead(), 0, frame.argb, 0, Frame.WIDTH);
+        return frame.argb;
+    }
+
+    /** one frame of random bytes in a temporary file named as the viewer expects */
+    @State(Scope.Benchmark)
+    public static class Frame {
+        static final int WIDTH = 1920;
+        static final int HEIGHT = 1080;
+
+        @Param({"yuv420p", "yv12", "nv12", "nv21", "yuv422p", "yv16", "nv16", "nv61", "yuv444p", "yv24", "nv24",
+                "nv42", "yuv444", "yvu444", "yuyv422", "uyvy422", "yvyu422", "vyuy422"})
+        String layout;
+
+        File file;
+        YCbCrFileParser parser;
+        final int[] argb = new int[WIDTH * HEIGHT];
+
+        @Setup
+        public void setup() throws IOException {
+            file = File.createTempFile("bench", "_le_" + WIDTH + 'x' + HEIGHT + '.' + layout);
+            file.deleteOnExit();
+            parser = (YCbCrFileParser) FileParser.parseFormat(file);
+            final byte[] bytes = new byte[FileParser.getFrameSize(parser.getHead())];
+            new Random(layout.hashCode()).nextBytes(bytes);
+            final FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            parser.close();
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(YuvTest.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
 }